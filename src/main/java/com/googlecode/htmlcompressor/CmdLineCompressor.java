@@ -42,8 +42,11 @@ import java.util.regex.PatternSyntaxException;
 import com.google.javascript.jscomp.CompilationLevel;
 import com.google.javascript.jscomp.JSSourceFile;
 import com.googlecode.htmlcompressor.analyzer.HtmlAnalyzer;
+import com.googlecode.htmlcompressor.analyzer.HtmlCorpusAnalyzer;
 import com.googlecode.htmlcompressor.compressor.ClosureJavaScriptCompressor;
 import com.googlecode.htmlcompressor.compressor.Compressor;
+import com.googlecode.htmlcompressor.compressor.FastCssCompressor;
+import com.googlecode.htmlcompressor.compressor.FastJavaScriptCompressor;
 import com.googlecode.htmlcompressor.compressor.HtmlCompressor;
 import com.googlecode.htmlcompressor.compressor.XmlCompressor;
 
@@ -62,6 +65,8 @@ public class CmdLineCompressor {
 	
 	private boolean helpOpt;
 	private boolean analyzeOpt;
+	private String analyzeBudgetOpt;
+	private String analyzeFormatOpt;
 	private String charsetOpt;
 	private String outputFilenameOpt;
 	private String patternsFilenameOpt;
@@ -81,6 +86,7 @@ public class CmdLineCompressor {
 	private boolean compressJsOpt;
 	private boolean compressCssOpt;
 	private String jsCompressorOpt;
+	private String cssCompressorOpt;
 
 	private boolean simpleDoctypeOpt;
 	private boolean removeScriptAttributesOpt;
@@ -115,6 +121,8 @@ public class CmdLineCompressor {
 		Option helpOpt = parser.addBooleanOption('h', "help");
 		Option helpOptAlt = parser.addBooleanOption('?', "help_alt");
 		Option analyzeOpt = parser.addBooleanOption('a', "analyze");
+		Option analyzeBudgetOpt = parser.addStringOption("analyze-budget");
+		Option analyzeFormatOpt = parser.addStringOption("analyze-format");
 		Option recursiveOpt = parser.addBooleanOption('r', "recursive");
 		Option charsetOpt = parser.addStringOption('c', "charset");
 		Option outputFilenameOpt = parser.addStringOption('o', "output");
@@ -134,6 +142,7 @@ public class CmdLineCompressor {
 		Option compressJsOpt = parser.addBooleanOption("compress-js");
 		Option compressCssOpt = parser.addBooleanOption("compress-css");
 		Option jsCompressorOpt = parser.addStringOption("js-compressor");
+		Option cssCompressorOpt = parser.addStringOption("css-compressor");
 		
 		Option simpleDoctypeOpt = parser.addBooleanOption("simple-doctype");
 		Option removeScriptAttributesOpt = parser.addBooleanOption("remove-script-attr");
@@ -160,6 +169,8 @@ public class CmdLineCompressor {
 			
 			this.helpOpt = (Boolean)parser.getOptionValue(helpOpt, false) || (Boolean)parser.getOptionValue(helpOptAlt, false);
 			this.analyzeOpt = (Boolean)parser.getOptionValue(analyzeOpt, false);
+			this.analyzeBudgetOpt = (String)parser.getOptionValue(analyzeBudgetOpt);
+			this.analyzeFormatOpt = (String)parser.getOptionValue(analyzeFormatOpt, HtmlCorpusAnalyzer.FORMAT_TEXT);
 			this.recursiveOpt = (Boolean)parser.getOptionValue(recursiveOpt, false);
 			this.charsetOpt = (String)parser.getOptionValue(charsetOpt, "UTF-8");
 			this.outputFilenameOpt = (String)parser.getOptionValue(outputFilenameOpt);
@@ -178,6 +189,7 @@ public class CmdLineCompressor {
 			this.compressJsOpt = (Boolean)parser.getOptionValue(compressJsOpt, false);
 			this.compressCssOpt = (Boolean)parser.getOptionValue(compressCssOpt, false);
 			this.jsCompressorOpt = (String)parser.getOptionValue(jsCompressorOpt, HtmlCompressor.JS_COMPRESSOR_YUI);
+			this.cssCompressorOpt = (String)parser.getOptionValue(cssCompressorOpt, HtmlCompressor.CSS_COMPRESSOR_YUI);
 			
 			this.simpleDoctypeOpt = (Boolean)parser.getOptionValue(simpleDoctypeOpt, false);
 			this.removeScriptAttributesOpt = (Boolean)parser.getOptionValue(removeScriptAttributesOpt, false);
@@ -263,9 +275,35 @@ public class CmdLineCompressor {
 				}
 			}
 			
-			if(analyzeOpt) {
+			if(analyzeOpt && isCorpusAnalysis()) {
+				//corpus analyzer mode
+				if(!analyzeFormatOpt.equalsIgnoreCase(HtmlCorpusAnalyzer.FORMAT_TEXT) && !analyzeFormatOpt.equalsIgnoreCase(HtmlCorpusAnalyzer.FORMAT_CSV) && !analyzeFormatOpt.equalsIgnoreCase(HtmlCorpusAnalyzer.FORMAT_JSON)) {
+					throw new IllegalArgumentException("Unknown analyzer format: " + analyzeFormatOpt);
+				}
+				if(analyzeBudgetOpt != null) {
+					throw new IllegalArgumentException("Analyzer time budget is only supported for a single file or URL with text format");
+				}
+				HtmlCorpusAnalyzer analyzer = new HtmlCorpusAnalyzer(HtmlCompressor.JS_COMPRESSOR_CLOSURE.equalsIgnoreCase(jsCompressorOpt) ? HtmlCompressor.JS_COMPRESSOR_CLOSURE : HtmlCompressor.JS_COMPRESSOR_YUI);
+				analyzer.setCharset(charsetOpt);
+				analyzer.setFormat(analyzeFormatOpt);
+				//files are listed before the output is opened, so input errors can still be printed to <stdout>
+				List<File> files = buildInputFileList();
+				Writer output = buildWriter(outputFilenameOpt);
+				try {
+					analyzer.analyze(files, output);
+				} finally {
+					closeStream(output);
+				}
+			} else if(analyzeOpt) {
 				//analyzer mode
 				HtmlAnalyzer analyzer = new HtmlAnalyzer(HtmlCompressor.JS_COMPRESSOR_CLOSURE.equalsIgnoreCase(jsCompressorOpt) ? HtmlCompressor.JS_COMPRESSOR_CLOSURE : HtmlCompressor.JS_COMPRESSOR_YUI);
+				if(analyzeBudgetOpt != null) {
+					try {
+						analyzer.setTimeBudget(Double.parseDouble(analyzeBudgetOpt));
+					} catch (NumberFormatException e) {
+						throw new IllegalArgumentException("Invalid analyzer time budget: " + analyzeBudgetOpt);
+					}
+				}
 				analyzer.analyze(readResource(buildReader(fileArgsOpt.length > 0 ? fileArgsOpt[0] : null)));
 			} else {
 				//compression mode
@@ -396,6 +434,13 @@ public class CmdLineCompressor {
 			}
 			
 			htmlCompressor.setJavaScriptCompressor(closureCompressor);
+		} else if(compressJsOpt && HtmlCompressor.JS_COMPRESSOR_FAST.equalsIgnoreCase(jsCompressorOpt)) {
+			htmlCompressor.setJavaScriptCompressor(new FastJavaScriptCompressor());
+		}
+		
+		//switch css compressor to built-in one
+		if(compressCssOpt && HtmlCompressor.CSS_COMPRESSOR_FAST.equalsIgnoreCase(cssCompressorOpt)) {
+			htmlCompressor.setCssCompressor(new FastCssCompressor());
 		}
 
 		return htmlCompressor;
@@ -409,6 +454,51 @@ public class CmdLineCompressor {
 		return xmlCompressor;
 	}
 	
+	private boolean isCorpusAnalysis() {
+		if(fileArgsOpt.length > 1 || !analyzeFormatOpt.equalsIgnoreCase(HtmlCorpusAnalyzer.FORMAT_TEXT)) {
+			return true;
+		}
+		return fileArgsOpt.length == 1 && !urlPattern.matcher(fileArgsOpt[0]).matches() && new File(fileArgsOpt[0]).isDirectory();
+	}
+	
+	private List<File> buildInputFileList() throws IllegalArgumentException {
+		List<File> files = new ArrayList<File>();
+		
+		if(fileArgsOpt.length == 0) {
+			throw new IllegalArgumentException("Files or directories to analyze must be provided");
+		}
+		
+		for(int i=0; i<fileArgsOpt.length; i++) {
+			if(urlPattern.matcher(fileArgsOpt[i]).matches()) {
+				if(fileArgsOpt.length > 1) {
+					throw new IllegalArgumentException("Input URL should be single when analyzing");
+				}
+				throw new IllegalArgumentException("Input URL can only be analyzed with text format");
+			}
+			
+			File inputFile = new File(fileArgsOpt[i]);
+			if(inputFile.isDirectory()) {
+				//subdirectories are returned by the filter only in recursive mode
+				Stack<File> fileStack = new Stack<File>();
+				fileStack.push(inputFile);
+				while(!fileStack.isEmpty()) {
+					File child = fileStack.pop();
+					for(File f : child.listFiles(new CompressorFileFilter(typeOpt, filemaskOpt, recursiveOpt))) {
+						if(f.isDirectory()) {
+							fileStack.push(f);
+						} else {
+							files.add(f);
+						}
+					}
+				}
+			} else {
+				files.add(inputFile);
+			}
+		}
+		
+		return files;
+	}
+	
 	private Map<String, String> buildInputOutputMap() throws IllegalArgumentException, IOException {
 		Map<String, String> map = new HashMap<String, String>();
 		
@@ -565,7 +655,15 @@ public class CmdLineCompressor {
 				+ " -o, --output <path>           Filename or directory for compression results.\n"
 				+ "                               If none provided outputs result to <stdout>\n"
 				+ " -a, --analyze                 Tries different settings and displays report.\n"
-				+ "                               All settings except --js-compressor are ignored\n\n"
+				+ "                               All settings except --js-compressor and\n"
+				+ "                               --analyze-* are ignored\n"
+				+ " --analyze-budget <ms>         CPU time per page that settings recommended\n"
+				+ "                               by analyzer should fit in, unlimited by default.\n"
+				+ "                               Not supported for multiple files or directories\n"
+				+ " --analyze-format <text|csv|json>\n"
+				+ "                               Report format for analyzing multiple files or\n"
+				+ "                               directories, percentiles of gains and time costs\n"
+				+ "                               are written to --output or <stdout>\n\n"
 	
 				+ "XML Compression Options:\n"
 				+ " --preserve-comments           Preserve comments\n"
@@ -590,9 +688,13 @@ public class CmdLineCompressor {
 				+ " --remove-surrounding-spaces <min|max|all|custom_list>\n" 
 				+ "                               Predefined or custom comma separated list of tags\n"
 				+ " --compress-js                 Enable inline JavaScript compression\n"
-				+ " --compress-css                Enable inline CSS compression using YUICompressor\n"
-				+ " --js-compressor <yui|closure> Switch inline JavaScript compressor between\n"
-				+ "                               YUICompressor (default) and Closure Compiler\n\n"
+				+ " --compress-css                Enable inline CSS compression\n"
+				+ " --js-compressor <yui|closure|fast>\n"
+				+ "                               Switch inline JavaScript compressor between\n"
+				+ "                               YUICompressor (default), Closure Compiler\n"
+				+ "                               and built-in one\n"
+				+ " --css-compressor <yui|fast>   Switch inline CSS compressor between\n"
+				+ "                               YUICompressor (default) and built-in one\n\n"
 				
 				+ "JavaScript Compression Options for YUI Compressor:\n"
 				+ " --nomunge                     Minify only, do not obfuscate\n"
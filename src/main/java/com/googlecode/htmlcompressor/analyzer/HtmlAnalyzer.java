@@ -14,26 +14,58 @@ package com.googlecode.htmlcompressor.analyzer;
  * limitations under the License.
  */
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Formatter;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import com.googlecode.htmlcompressor.compressor.ClosureJavaScriptCompressor;
+import com.googlecode.htmlcompressor.compressor.Compressor;
 import com.googlecode.htmlcompressor.compressor.HtmlCompressor;
+import com.googlecode.htmlcompressor.compressor.YuiCssCompressor;
+import com.googlecode.htmlcompressor.compressor.YuiJavaScriptCompressor;
 
 /**
  * Class that compresses provided source with different compression 
  * settings and displays page size gains in a report
  * 
+ * <p>Each report line is calculated by a separate compressor instance configured with 
+ * all settings up to and including the current one, so sizes of the lines are evaluated concurrently. 
+ * Inline JavaScript and CSS blocks are compressed only once and shared between the lines.
+ * 
+ * <p>Besides the size gain, an incremental CPU time of each setting is measured on a single 
+ * thread once all sizes are known, as a median difference of several alternating runs with and 
+ * without the setting. A set of settings that gives the most bytes per millisecond within 
+ * a given time budget is recommended together with the matching command line flags.
+ * 
  * @author <a href="mailto:serg472@gmail.com">Sergiy Kovalchuk</a>
  */
 public class HtmlAnalyzer {
 	
 	private String jsCompressor = HtmlCompressor.JS_COMPRESSOR_YUI;
 	
+	private int threads = Runtime.getRuntime().availableProcessors();
+	
+	private int warmupRuns = 2;
+	private int timedRuns = 5;
+	
+	private double timeBudget = 0;
+	
 	public HtmlAnalyzer() { 
 		
 	}
-
+	
 	public HtmlAnalyzer(String jsCompressor) { 
 		this.jsCompressor = jsCompressor;
 	}
@@ -41,157 +73,385 @@ public class HtmlAnalyzer {
 	public void analyze(String source) {
 		int originalSize = source.length();
 		
-		HtmlCompressor compressor = getCleanCompressor();
-		String compResult = compressor.compress(source);
+		List<Step> steps = buildSteps();
+		AnalyzerCompressors compressors = new AnalyzerCompressors(true);
+		StepResult[] results;
+		
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, steps.size())));
+		try {
+			results = evaluate(source, steps, compressors, executor);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		} finally {
+			executor.shutdownNow();
+		}
 		
 		printHeader();
 		
-		System.out.println(formatLine("Compression disabled", originalSize, originalSize, originalSize));
+		System.out.println(formatLine("Compression disabled", originalSize, originalSize, originalSize, 0));
+		
+		for(int i = 0; i < steps.size(); i++) {
+			if(results[i] != null) {
+				System.out.println(formatLine(steps.get(i).getDescription(), originalSize, results[i].size, results[i].size + results[i].gain, results[i].time));
+			} else {
+				System.out.println(formatEmptyLine(steps.get(i).getDescription()));
+			}
+		}
+		
+		printFooter();
+		
+		printRecommendation(source, steps, results, compressors);
+		
+	}
+	
+	/**
+	 * Compresses the source with all settings on the given executor, or on the calling 
+	 * thread if it is <code>null</code>, and then measures time of each setting on the calling thread.
+	 * 
+	 * @return results in the same order as steps, with <code>null</code> for
+	 * steps that could not be evaluated because of missing compressor jar files.
+	 * Gain and time of each result are relative to the previous evaluated step.
+	 */
+	StepResult[] evaluate(String source, List<Step> steps, ExecutorService executor) throws InterruptedException {
+		return evaluate(source, steps, new AnalyzerCompressors(true), executor);
+	}
+	
+	private StepResult[] evaluate(String source, List<Step> steps, AnalyzerCompressors compressors, ExecutorService executor) throws InterruptedException {
+		List<Future<StepResult>> futures = new ArrayList<Future<StepResult>>();
+		for(int i = 0; i < steps.size(); i++) {
+			StepTask task = new StepTask(source, steps.subList(0, i + 1), compressors);
+			if(executor != null) {
+				futures.add(executor.submit(task));
+			} else {
+				FutureTask<StepResult> future = new FutureTask<StepResult>(task);
+				future.run();
+				futures.add(future);
+			}
+		}
+		StepResult[] results = collect(source.length(), futures);
+		
+		//timed runs don't compete for CPU with compressions of other steps
+		measureTimes(source, steps, results, compressors);
+		
+		return results;
+	}
+	
+	/**
+	 * Waits for submitted compressions and calculates gain of each step.
+	 */
+	private StepResult[] collect(int originalSize, List<Future<StepResult>> futures) throws InterruptedException {
+		
+		StepResult[] results = new StepResult[futures.size()];
 		int prevSize = originalSize;
 		
+		for(int i = 0; i < futures.size(); i++) {
+			try {
+				StepResult result = futures.get(i).get();
+				result.gain = prevSize - result.size;
+				results[i] = result;
+				
+				prevSize = result.size;
+			} catch (ExecutionException e) {
+				if(e.getCause() instanceof NoClassDefFoundError) {
+					results[i] = null;
+				} else if(e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException)e.getCause();
+				} else if(e.getCause() instanceof Error) {
+					throw (Error)e.getCause();
+				} else {
+					throw new RuntimeException(e.getCause());
+				}
+			}
+		}
+		
+		return results;
+	}
+	
+	/**
+	 * Measures incremental time of each evaluated step. JavaScript and CSS compressors 
+	 * already remember compressed blocks, so each step is timed against the previous one 
+	 * without them, except for steps that compress inline blocks, which get new compressors 
+	 * that don't remember anything for every run.
+	 */
+	private void measureTimes(String source, List<Step> steps, StepResult[] results, AnalyzerCompressors compressors) {
+		HtmlCompressor prevCompressor = null;
+		for(int i = 0; i < steps.size(); i++) {
+			if(results[i] == null) {
+				continue;
+			}
+			
+			HtmlCompressor compressor = getCompressor(steps.subList(0, i + 1), compressors);
+			if(steps.get(i).isBlockCompression()) {
+				results[i].time = measure(getCompressor(steps.subList(0, i), compressors), steps.get(i), prevCompressor, source);
+			} else {
+				results[i].time = measure(compressor, null, prevCompressor, source);
+			}
+			prevCompressor = compressor;
+		}
+	}
+	
+	/**
+	 * Greedily picks settings with the best size gain per CPU time until the time budget is exhausted.
+	 * Base step is always selected, steps that depend on another step are only selected after it.
+	 */
+	boolean[] recommend(List<Step> steps, StepResult[] results) {
+		boolean[] selected = new boolean[steps.size()];
+		
+		double budget = timeBudget * 1000000;
+		long spent = 0;
+		if(results[0] != null) {
+			selected[0] = true;
+			spent = results[0].time;
+		}
+		
+		while(true) {
+			int best = -1;
+			double bestRatio = 0;
+			for(int i = 1; i < steps.size(); i++) {
+				StepResult result = results[i];
+				if(selected[i] || result == null || result.gain <= 0) {
+					continue;
+				}
+				Step parent = steps.get(i).getParent();
+				if(parent != null && !selected[steps.indexOf(parent)]) {
+					continue;
+				}
+				if(budget > 0 && spent + result.time > budget) {
+					continue;
+				}
+				double ratio = (double) result.gain / Math.max(1, result.time);
+				if(best == -1 || ratio > bestRatio) {
+					best = i;
+					bestRatio = ratio;
+				}
+			}
+			
+			if(best == -1) {
+				break;
+			}
+			
+			selected[best] = true;
+			spent += results[best].time;
+		}
+		
+		return selected;
+	}
+	
+	/**
+	 * Returns command line flags that enable selected settings.
+	 */
+	String buildFlags(List<Step> steps, boolean[] selected) {
+		StringBuilder flags = new StringBuilder();
+		for(int i = 0; i < steps.size(); i++) {
+			Step step = steps.get(i);
+			String flag = null;
+			if(selected[i]) {
+				//setting is superseded by the selected one that depends on it
+				boolean superseded = false;
+				for(int j = 0; j < steps.size(); j++) {
+					if(selected[j] && steps.get(j).getParent() == step) {
+						superseded = true;
+						break;
+					}
+				}
+				if(!superseded) {
+					flag = step.getEnabledFlag();
+				}
+			} else {
+				flag = step.getDisabledFlag();
+			}
+			
+			if(flag != null) {
+				if(flags.length() > 0) {
+					flags.append(" ");
+				}
+				flags.append(flag);
+			}
+		}
+		return flags.toString();
+	}
+	
+	List<Step> buildSteps() {
+		List<Step> steps = new ArrayList<Step>();
 		
 		//spaces inside tags
-		System.out.println(formatLine("All settings disabled", originalSize, compResult.length(), prevSize));
-		prevSize = compResult.length();
+		steps.add(new Step("All settings disabled", null, null, null) {
+			void apply(HtmlCompressor compressor, AnalyzerCompressors compressors) {
+			}
+		});
 		
 		//remove comments
-		compressor.setRemoveComments(true);
-		compResult = compressor.compress(source);
-		System.out.println(formatLine("Comments removed", originalSize, compResult.length(), prevSize));	
-		prevSize = compResult.length();
+		steps.add(new Step("Comments removed", null, "--preserve-comments", null) {
+			void apply(HtmlCompressor compressor, AnalyzerCompressors compressors) {
+				compressor.setRemoveComments(true);
+			}
+		});
 		
 		//remove mulispaces
-		compressor.setRemoveMultiSpaces(true);
-		compResult = compressor.compress(source);
-		System.out.println(formatLine("Multiple spaces removed", originalSize, compResult.length(), prevSize));
-		prevSize = compResult.length();
+		steps.add(new Step("Multiple spaces removed", null, "--preserve-multi-spaces", null) {
+			void apply(HtmlCompressor compressor, AnalyzerCompressors compressors) {
+				compressor.setRemoveMultiSpaces(true);
+			}
+		});
 		
 		//remove intertag spaces
-		compressor.setRemoveIntertagSpaces(true);
-		compResult = compressor.compress(source);
-		System.out.println(formatLine("No spaces between tags", originalSize, compResult.length(), prevSize));
-		prevSize = compResult.length();
-
+		steps.add(new Step("No spaces between tags", "--remove-intertag-spaces", null, null) {
+			void apply(HtmlCompressor compressor, AnalyzerCompressors compressors) {
+				compressor.setRemoveIntertagSpaces(true);
+			}
+		});
+		
 		//remove min surrounding spaces
-		compressor.setRemoveSurroundingSpaces(HtmlCompressor.BLOCK_TAGS_MIN);
-		compResult = compressor.compress(source);
-		System.out.println(formatLine("No surround spaces (min)", originalSize, compResult.length(), prevSize));
-		prevSize = compResult.length();
-
+		Step surroundingMin = new Step("No surround spaces (min)", "--remove-surrounding-spaces min", null, null) {
+			void apply(HtmlCompressor compressor, AnalyzerCompressors compressors) {
+				compressor.setRemoveSurroundingSpaces(HtmlCompressor.BLOCK_TAGS_MIN);
+			}
+		};
+		steps.add(surroundingMin);
+		
 		//remove max surrounding spaces
-		compressor.setRemoveSurroundingSpaces(HtmlCompressor.BLOCK_TAGS_MAX);
-		compResult = compressor.compress(source);
-		System.out.println(formatLine("No surround spaces (max)", originalSize, compResult.length(), prevSize));
-		prevSize = compResult.length();
-
+		Step surroundingMax = new Step("No surround spaces (max)", "--remove-surrounding-spaces max", null, surroundingMin) {
+			void apply(HtmlCompressor compressor, AnalyzerCompressors compressors) {
+				compressor.setRemoveSurroundingSpaces(HtmlCompressor.BLOCK_TAGS_MAX);
+			}
+		};
+		steps.add(surroundingMax);
+		
 		//remove all surrounding spaces
-		compressor.setRemoveSurroundingSpaces(HtmlCompressor.ALL_TAGS);
-		compResult = compressor.compress(source);
-		System.out.println(formatLine("No surround spaces (all)", originalSize, compResult.length(), prevSize));
-		prevSize = compResult.length();
+		steps.add(new Step("No surround spaces (all)", "--remove-surrounding-spaces all", null, surroundingMax) {
+			void apply(HtmlCompressor compressor, AnalyzerCompressors compressors) {
+				compressor.setRemoveSurroundingSpaces(HtmlCompressor.ALL_TAGS);
+			}
+		});
 		
 		//remove quotes
-		compressor.setRemoveQuotes(true);
-		compResult = compressor.compress(source);
-		System.out.println(formatLine("Quotes removed from tags", originalSize, compResult.length(), prevSize));
-		prevSize = compResult.length();
+		steps.add(new Step("Quotes removed from tags", "--remove-quotes", null, null) {
+			void apply(HtmlCompressor compressor, AnalyzerCompressors compressors) {
+				compressor.setRemoveQuotes(true);
+			}
+		});
 		
 		//link attrib
-		compressor.setRemoveLinkAttributes(true);
-		compResult = compressor.compress(source);
-		System.out.println(formatLine("<link> attr. removed", originalSize, compResult.length(), prevSize));
-		prevSize = compResult.length();
+		steps.add(new Step("<link> attr. removed", "--remove-link-attr", null, null) {
+			void apply(HtmlCompressor compressor, AnalyzerCompressors compressors) {
+				compressor.setRemoveLinkAttributes(true);
+			}
+		});
 		
 		//style attrib
-		compressor.setRemoveStyleAttributes(true);
-		compResult = compressor.compress(source);
-		System.out.println(formatLine("<style> attr. removed", originalSize, compResult.length(), prevSize));
-		prevSize = compResult.length();
+		steps.add(new Step("<style> attr. removed", "--remove-style-attr", null, null) {
+			void apply(HtmlCompressor compressor, AnalyzerCompressors compressors) {
+				compressor.setRemoveStyleAttributes(true);
+			}
+		});
 		
 		//script attrib
-		compressor.setRemoveScriptAttributes(true);
-		compResult = compressor.compress(source);
-		System.out.println(formatLine("<script> attr. removed", originalSize, compResult.length(), prevSize));
-		prevSize = compResult.length();
+		steps.add(new Step("<script> attr. removed", "--remove-script-attr", null, null) {
+			void apply(HtmlCompressor compressor, AnalyzerCompressors compressors) {
+				compressor.setRemoveScriptAttributes(true);
+			}
+		});
 		
 		//form attrib
-		compressor.setRemoveFormAttributes(true);
-		compResult = compressor.compress(source);
-		System.out.println(formatLine("<form> attr. removed", originalSize, compResult.length(), prevSize));
-		prevSize = compResult.length();
+		steps.add(new Step("<form> attr. removed", "--remove-form-attr", null, null) {
+			void apply(HtmlCompressor compressor, AnalyzerCompressors compressors) {
+				compressor.setRemoveFormAttributes(true);
+			}
+		});
 		
 		//input attrib
-		compressor.setRemoveInputAttributes(true);
-		compResult = compressor.compress(source);
-		System.out.println(formatLine("<input> attr. removed", originalSize, compResult.length(), prevSize));
-		prevSize = compResult.length();
+		steps.add(new Step("<input> attr. removed", "--remove-input-attr", null, null) {
+			void apply(HtmlCompressor compressor, AnalyzerCompressors compressors) {
+				compressor.setRemoveInputAttributes(true);
+			}
+		});
 		
 		//simple bool
-		compressor.setSimpleBooleanAttributes(true);
-		compResult = compressor.compress(source);
-		System.out.println(formatLine("Simple boolean attributes", originalSize, compResult.length(), prevSize));
-		prevSize = compResult.length();
+		steps.add(new Step("Simple boolean attributes", "--simple-bool-attr", null, null) {
+			void apply(HtmlCompressor compressor, AnalyzerCompressors compressors) {
+				compressor.setSimpleBooleanAttributes(true);
+			}
+		});
 		
 		//simple doctype
-		compressor.setSimpleDoctype(true);
-		compResult = compressor.compress(source);
-		System.out.println(formatLine("Simple doctype", originalSize, compResult.length(), prevSize));
-		prevSize = compResult.length();
+		steps.add(new Step("Simple doctype", "--simple-doctype", null, null) {
+			void apply(HtmlCompressor compressor, AnalyzerCompressors compressors) {
+				compressor.setSimpleDoctype(true);
+			}
+		});
 		
 		//js protocol
-		compressor.setRemoveJavaScriptProtocol(true);
-		compResult = compressor.compress(source);
-		System.out.println(formatLine("Remove js pseudo-protocol", originalSize, compResult.length(), prevSize));
-		prevSize = compResult.length();
-
+		steps.add(new Step("Remove js pseudo-protocol", "--remove-js-protocol", null, null) {
+			void apply(HtmlCompressor compressor, AnalyzerCompressors compressors) {
+				compressor.setRemoveJavaScriptProtocol(true);
+			}
+		});
+		
 		//http protocol
-		compressor.setRemoveHttpProtocol(true);
-		compResult = compressor.compress(source);
-		System.out.println(formatLine("Remove http protocol", originalSize, compResult.length(), prevSize));
-		prevSize = compResult.length();
-
+		steps.add(new Step("Remove http protocol", "--remove-http-protocol", null, null) {
+			void apply(HtmlCompressor compressor, AnalyzerCompressors compressors) {
+				compressor.setRemoveHttpProtocol(true);
+			}
+		});
+		
 		//https protocol
-		compressor.setRemoveHttpsProtocol(true);
-		compResult = compressor.compress(source);
-		System.out.println(formatLine("Remove https protocol", originalSize, compResult.length(), prevSize));
-		prevSize = compResult.length();
-
+		steps.add(new Step("Remove https protocol", "--remove-https-protocol", null, null) {
+			void apply(HtmlCompressor compressor, AnalyzerCompressors compressors) {
+				compressor.setRemoveHttpsProtocol(true);
+			}
+		});
 		
 		//inline css
-		try {
-			compressor.setCompressCss(true);
-			compResult = compressor.compress(source);
-			System.out.println(formatLine("Compress inline CSS (YUI)", originalSize, compResult.length(), prevSize));
-			prevSize = compResult.length();
-		} catch (NoClassDefFoundError e){
-			System.out.println(formatEmptyLine("Compress inline CSS (YUI)"));
-		}
+		steps.add(new Step("Compress inline CSS (YUI)", "--compress-css", null, null) {
+			void apply(HtmlCompressor compressor, AnalyzerCompressors compressors) {
+				compressor.setCompressCss(true);
+				compressor.setCssCompressor(compressors.getCssCompressor());
+			}
+			
+			boolean isBlockCompression() {
+				return true;
+			}
+		});
 		
 		if(jsCompressor.equals(HtmlCompressor.JS_COMPRESSOR_YUI)) {
 			//inline js yui
-			try {
-				compressor.setCompressJavaScript(true);
-				compResult = compressor.compress(source);
-				System.out.println(formatLine("Compress inline JS (YUI)", originalSize, compResult.length(), prevSize));
-				prevSize = compResult.length();
-			} catch (NoClassDefFoundError e){
-				System.out.println(formatEmptyLine("Compress inline JS (YUI)"));
-			}
+			steps.add(new Step("Compress inline JS (YUI)", "--compress-js", null, null) {
+				void apply(HtmlCompressor compressor, AnalyzerCompressors compressors) {
+					compressor.setCompressJavaScript(true);
+					compressor.setJavaScriptCompressor(compressors.getJavaScriptCompressor());
+				}
+				
+				boolean isBlockCompression() {
+					return true;
+				}
+			});
 		} else {
-			//inline js yui
-			try {
-				compressor.setCompressJavaScript(true);
-				compressor.setJavaScriptCompressor(new ClosureJavaScriptCompressor());
-				compResult = compressor.compress(source);
-				System.out.println(formatLine("Compress JS (Closure)", originalSize, compResult.length(), prevSize));
-				prevSize = compResult.length();
-			} catch (NoClassDefFoundError e){
-				System.out.println(formatEmptyLine("Compress JS (Closure)"));
-			}
+			//inline js closure
+			steps.add(new Step("Compress JS (Closure)", "--compress-js --js-compressor closure", null, null) {
+				void apply(HtmlCompressor compressor, AnalyzerCompressors compressors) {
+					compressor.setCompressJavaScript(true);
+					compressor.setJavaScriptCompressor(compressors.getJavaScriptCompressor());
+				}
+				
+				boolean isBlockCompression() {
+					return true;
+				}
+			});
 		}
 		
-		printFooter();
-		
+		return steps;
+	}
+	
+	Compressor createJavaScriptCompressor() {
+		if(jsCompressor.equals(HtmlCompressor.JS_COMPRESSOR_YUI)) {
+			return new YuiJavaScriptCompressor();
+		}
+		return new ClosureJavaScriptCompressor();
+	}
+	
+	Compressor createCssCompressor() {
+		return new YuiCssCompressor();
 	}
 	
 	private HtmlCompressor getCleanCompressor() {
@@ -202,33 +462,150 @@ public class HtmlAnalyzer {
 		return compressor;
 	}
 	
-	private String formatLine(String descr, int originalSize, int compressedSize, int prevSize) {
+	private HtmlCompressor getCompressor(List<Step> steps, AnalyzerCompressors compressors) {
+		HtmlCompressor compressor = getCleanCompressor();
+		for(Step step : steps) {
+			step.apply(compressor, compressors);
+		}
+		return compressor;
+	}
+	
+	/**
+	 * Returns a compressor configured with given steps and JavaScript and CSS compressors 
+	 * that don't remember their results.
+	 */
+	HtmlCompressor getCompressor(List<Step> steps) {
+		return getCompressor(steps, new AnalyzerCompressors(false));
+	}
+	
+	/**
+	 * Returns median CPU time (or wall time if CPU time is not supported) of compressing the source, 
+	 * in nanoseconds. If a previous compressor is given, runs of both compressors alternate and 
+	 * the median difference between them is returned.
+	 * 
+	 * @param blockStep step that compresses inline blocks, applied before each run with 
+	 * new JavaScript and CSS compressors that don't remember anything, or <code>null</code>
+	 */
+	private long measure(HtmlCompressor compressor, Step blockStep, HtmlCompressor prevCompressor, String source) {
+		for(int i = 0; i < warmupRuns; i++) {
+			if(blockStep != null) {
+				blockStep.apply(compressor, new AnalyzerCompressors(false));
+			}
+			compressor.compress(source);
+			if(prevCompressor != null) {
+				prevCompressor.compress(source);
+			}
+		}
+		
+		long[] times = new long[Math.max(1, timedRuns)];
+		for(int i = 0; i < times.length; i++) {
+			if(blockStep != null) {
+				blockStep.apply(compressor, new AnalyzerCompressors(false));
+			}
+			
+			long start = currentTime();
+			compressor.compress(source);
+			times[i] = currentTime() - start;
+			
+			if(prevCompressor != null) {
+				start = currentTime();
+				prevCompressor.compress(source);
+				times[i] -= currentTime() - start;
+			}
+		}
+		
+		Arrays.sort(times);
+		return Math.max(0, times[times.length / 2]);
+	}
+	
+	private long currentTime() {
+		ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		if(threadBean.isCurrentThreadCpuTimeSupported() && threadBean.isThreadCpuTimeEnabled()) {
+			return threadBean.getCurrentThreadCpuTime();
+		}
+		return System.nanoTime();
+	}
+	
+	/**
+	 * Compresses the source with selected settings only, as gains and times of the steps were 
+	 * measured on top of all previous ones and don't add up when some of them are not selected.
+	 * 
+	 * @return size of the compressed source and its time, with times of inline block 
+	 * compression taken from the selected steps
+	 */
+	private StepResult evaluateSelected(String source, List<Step> steps, StepResult[] results, boolean[] selected, AnalyzerCompressors compressors) {
+		List<Step> selectedSteps = new ArrayList<Step>();
+		long blockTime = 0;
+		for(int i = 0; i < steps.size(); i++) {
+			if(selected[i]) {
+				selectedSteps.add(steps.get(i));
+				if(steps.get(i).isBlockCompression()) {
+					blockTime += results[i].time;
+				}
+			}
+		}
+		
+		HtmlCompressor compressor = getCompressor(selectedSteps, compressors);
+		StepResult result = new StepResult();
+		result.size = compressor.compress(source).length();
+		result.gain = source.length() - result.size;
+		result.time = measure(compressor, null, null, source) + blockTime;
+		return result;
+	}
+	
+	private void printRecommendation(String source, List<Step> steps, StepResult[] results, AnalyzerCompressors compressors) {
+		boolean[] selected = recommend(steps, results);
+		
+		StringBuilder settings = new StringBuilder();
+		for(int i = 1; i < steps.size(); i++) {
+			if(selected[i]) {
+				settings.append("  ").append(steps.get(i).getDescription()).append(System.getProperty("line.separator"));
+			}
+		}
+		
+		StepResult estimate = evaluateSelected(source, steps, results, selected, compressors);
+		
+		System.out.println();
+		if(timeBudget > 0) {
+			System.out.println("Recommended settings for " + formatTime((long) (timeBudget * 1000000)) + " per page budget:");
+		} else {
+			System.out.println("Recommended settings (no time budget):");
+		}
+		System.out.print(settings);
+		System.out.println("Estimated page size: " + formatSize(estimate.size) + ", gain: " + formatDecrease(source.length(), estimate.size) + ", time: " + formatTime(estimate.time));
+		System.out.println();
+		System.out.println("Command line flags:");
+		System.out.println("  " + buildFlags(steps, selected));
+	}
+	
+	private String formatLine(String descr, int originalSize, int compressedSize, int prevSize, long time) {
 		Formatter fmt = new Formatter();
-		fmt.format("%-25s | %16s | %16s | %12s |", descr, formatDecrease(prevSize, compressedSize), formatDecrease(originalSize, compressedSize), formatSize(compressedSize));
+		fmt.format("%-25s | %16s | %16s | %12s | %11s |", descr, formatDecrease(prevSize, compressedSize), formatDecrease(originalSize, compressedSize), formatSize(compressedSize), formatTime(time));
 		return fmt.toString();
 	}
 	
 	private String formatEmptyLine(String descr) {
 		Formatter fmt = new Formatter();
-		fmt.format("%-25s | %16s | %16s | %12s |", descr, "-", "-", "-");
+		fmt.format("%-25s | %16s | %16s | %12s | %11s |", descr, "-", "-", "-", "-");
 		return fmt.toString();
 	}
 	
 	private void printHeader() {
 		System.out.println();
-		System.out.println("================================================================================");
-		System.out.format("%-25s | %-16s | %-16s | %-12s |", "         Setting", "Incremental Gain", "   Total Gain", " Page Size");
+		System.out.println("==============================================================================================");
+		System.out.format("%-25s | %-16s | %-16s | %-12s | %-11s |", "         Setting", "Incremental Gain", "   Total Gain", " Page Size", " Time Cost");
 		System.out.println();
-		System.out.println("================================================================================");
+		System.out.println("==============================================================================================");
 		
 	}
-
+	
 	private void printFooter() {
-		System.out.println("================================================================================");
+		System.out.println("==============================================================================================");
 		System.out.println();
 		System.out.println("Each consecutive compressor setting is applied on top of previous ones.");
 		System.out.println("In order to see JS and CSS compression results, YUI jar file must be present.");
 		System.out.println("All sizes are in bytes.");
+		System.out.println("Time cost is an incremental median CPU time of " + timedRuns + " runs after " + warmupRuns + " warm-up runs.");
 	}
 	
 	private String formatDecrease(int originalSize, int compressedSize) {
@@ -246,4 +623,216 @@ public class HtmlAnalyzer {
 		nf.setParseIntegerOnly(true);
 		return nf.format(size);
 	}
+	
+	private String formatTime(long nanos) {
+		NumberFormat nf = NumberFormat.getInstance();
+		nf.setGroupingUsed(true);
+		nf.setMinimumFractionDigits(2);
+		nf.setMaximumFractionDigits(2);
+		return nf.format(nanos / 1000000.0) + " ms";
+	}
+	
+	/**
+	 * Number of threads used for evaluating compression settings.
+	 * Default is the number of available processors.
+	 * 
+	 * @param threads number of threads to use
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+	
+	/**
+	 * Number of untimed compression runs performed before measuring time of each setting.
+	 * Default is <code>2</code>.
+	 * 
+	 * @param warmupRuns number of warm-up runs
+	 */
+	public void setWarmupRuns(int warmupRuns) {
+		this.warmupRuns = warmupRuns;
+	}
+	
+	/**
+	 * Number of timed compression runs for each setting, the median time is reported.
+	 * Default is <code>5</code>.
+	 * 
+	 * @param timedRuns number of timed runs
+	 */
+	public void setTimedRuns(int timedRuns) {
+		this.timedRuns = timedRuns;
+	}
+	
+	/**
+	 * CPU time in milliseconds per page that recommended settings should fit in.
+	 * Zero or negative value means no limit (default).
+	 * 
+	 * @param timeBudget time budget in milliseconds
+	 */
+	public void setTimeBudget(double timeBudget) {
+		this.timeBudget = timeBudget;
+	}
+	
+	/**
+	 * Single analyzer setting which is applied on top of all previous ones.
+	 */
+	static abstract class Step {
+		
+		private String description;
+		private String enabledFlag;
+		private String disabledFlag;
+		private Step parent;
+		
+		Step(String description, String enabledFlag, String disabledFlag, Step parent) {
+			this.description = description;
+			this.enabledFlag = enabledFlag;
+			this.disabledFlag = disabledFlag;
+			this.parent = parent;
+		}
+		
+		String getDescription() {
+			return description;
+		}
+		
+		/**
+		 * Command line flag that is needed when this setting is selected
+		 */
+		String getEnabledFlag() {
+			return enabledFlag;
+		}
+		
+		/**
+		 * Command line flag that is needed when this setting is not selected
+		 */
+		String getDisabledFlag() {
+			return disabledFlag;
+		}
+		
+		/**
+		 * Setting which this one extends and cannot be used without
+		 */
+		Step getParent() {
+			return parent;
+		}
+		
+		/**
+		 * Returns <code>true</code> if this setting compresses inline JavaScript or CSS blocks
+		 */
+		boolean isBlockCompression() {
+			return false;
+		}
+		
+		abstract void apply(HtmlCompressor compressor, AnalyzerCompressors compressors);
+	}
+	
+	/**
+	 * Compressed size of a single step together with its size gain and time cost in nanoseconds.
+	 */
+	static class StepResult {
+		int size;
+		int gain;
+		long time;
+	}
+	
+	/**
+	 * Compresses the source with its own compressor configured with the given steps.
+	 */
+	private class StepTask implements Callable<StepResult> {
+		
+		private String source;
+		private List<Step> steps;
+		private AnalyzerCompressors sharedCompressors;
+		
+		StepTask(String source, List<Step> steps, AnalyzerCompressors sharedCompressors) {
+			this.source = source;
+			this.steps = steps;
+			this.sharedCompressors = sharedCompressors;
+		}
+		
+		public StepResult call() throws Exception {
+			StepResult result = new StepResult();
+			result.size = getCompressor(steps, sharedCompressors).compress(source).length();
+			return result;
+		}
+	}
+	
+	/**
+	 * Lazily created JavaScript and CSS compressors. When shared between all steps they
+	 * remember their results, so the same inline block is never compressed twice.
+	 */
+	private class AnalyzerCompressors {
+		
+		private boolean memoize;
+		
+		private Compressor javaScriptCompressor;
+		private Compressor cssCompressor;
+		
+		AnalyzerCompressors(boolean memoize) {
+			this.memoize = memoize;
+		}
+		
+		synchronized Compressor getJavaScriptCompressor() {
+			if(javaScriptCompressor == null) {
+				javaScriptCompressor = createJavaScriptCompressor();
+				if(memoize) {
+					javaScriptCompressor = new MemoizingCompressor(javaScriptCompressor);
+				}
+			}
+			return javaScriptCompressor;
+		}
+		
+		synchronized Compressor getCssCompressor() {
+			if(cssCompressor == null) {
+				cssCompressor = createCssCompressor();
+				if(memoize) {
+					cssCompressor = new MemoizingCompressor(cssCompressor);
+				}
+			}
+			return cssCompressor;
+		}
+	}
+	
+	/**
+	 * Thread safe compressor wrapper that remembers compression results,
+	 * concurrent requests for the same source wait for a single compression.
+	 */
+	private static class MemoizingCompressor implements Compressor {
+		
+		private final Compressor compressor;
+		private final ConcurrentMap<String, FutureTask<String>> results = new ConcurrentHashMap<String, FutureTask<String>>();
+		
+		MemoizingCompressor(Compressor compressor) {
+			this.compressor = compressor;
+		}
+		
+		public String compress(final String source) {
+			FutureTask<String> result = results.get(source);
+			if(result == null) {
+				FutureTask<String> task = new FutureTask<String>(new Callable<String>() {
+					public String call() throws Exception {
+						return compressor.compress(source);
+					}
+				});
+				result = results.putIfAbsent(source, task);
+				if(result == null) {
+					result = task;
+					task.run();
+				}
+			}
+			
+			try {
+				return result.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				if(e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException)e.getCause();
+				} else if(e.getCause() instanceof Error) {
+					throw (Error)e.getCause();
+				}
+				throw new RuntimeException(e.getCause());
+			}
+		}
+	}
+	
 }
@@ -0,0 +1,333 @@
+package com.googlecode.htmlcompressor.analyzer;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.googlecode.htmlcompressor.analyzer.HtmlAnalyzer.Step;
+import com.googlecode.htmlcompressor.analyzer.HtmlAnalyzer.StepResult;
+import com.googlecode.htmlcompressor.compressor.HtmlCompressor;
+
+/**
+ * Class that runs {@link HtmlAnalyzer} settings over a set of files and
+ * reports distribution of size gains and time costs of each setting
+ * across all files (50th, 90th and 99th percentiles).
+ * 
+ * <p>Files are processed in parallel, the report can be written as a plain text table,
+ * CSV or JSON, so the numbers can be tracked between releases.
+ * 
+ * @author <a href="mailto:serg472@gmail.com">Sergiy Kovalchuk</a>
+ */
+public class HtmlCorpusAnalyzer {
+	
+	public static final String FORMAT_TEXT = "text";
+	public static final String FORMAT_CSV = "csv";
+	public static final String FORMAT_JSON = "json";
+	
+	private static final double[] PERCENTILES = {0.5, 0.9, 0.99};
+	
+	private HtmlAnalyzer analyzer;
+	
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private String charset = "UTF-8";
+	private String format = FORMAT_TEXT;
+	
+	public HtmlCorpusAnalyzer() {
+		this(HtmlCompressor.JS_COMPRESSOR_YUI);
+	}
+	
+	public HtmlCorpusAnalyzer(String jsCompressor) {
+		analyzer = new HtmlAnalyzer(jsCompressor);
+	}
+	
+	/**
+	 * Analyzes all files and writes aggregated report into the output. Output is not closed.
+	 * 
+	 * @param files files to analyze
+	 * @param output where the report is written to
+	 * @throws IOException if a file cannot be read or report cannot be written
+	 */
+	public void analyze(List<File> files, Writer output) throws IOException {
+		final List<Step> steps = analyzer.buildSteps();
+		
+		//gain in percent and time in milliseconds of each step for every file, sizes are in characters
+		List<List<Double>> gains = new ArrayList<List<Double>>();
+		List<List<Double>> times = new ArrayList<List<Double>>();
+		long[] totalGains = new long[steps.size()];
+		for(int i = 0; i < steps.size(); i++) {
+			gains.add(new ArrayList<Double>());
+			times.add(new ArrayList<Double>());
+		}
+		
+		long totalSize = 0;
+		
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+		try {
+			//keep a limited number of files in flight so the pool stays busy without reading the whole corpus into memory
+			LinkedList<PendingFile> pending = new LinkedList<PendingFile>();
+			for(File file : files) {
+				final String source = readFile(file);
+				totalSize += source.length();
+				
+				//all settings of a file are evaluated by a single task, so its timed runs don't compete with its other compressions
+				pending.add(new PendingFile(source.length(), executor.submit(new Callable<StepResult[]>() {
+					public StepResult[] call() throws Exception {
+						return analyzer.evaluate(source, steps, null);
+					}
+				})));
+				
+				if(pending.size() > threads * 2) {
+					addResults(pending.removeFirst(), gains, times, totalGains);
+				}
+			}
+			
+			while(!pending.isEmpty()) {
+				addResults(pending.removeFirst(), gains, times, totalGains);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		} finally {
+			executor.shutdownNow();
+		}
+		
+		PrintWriter writer = new PrintWriter(output);
+		if(FORMAT_CSV.equalsIgnoreCase(format)) {
+			printCsv(writer, steps, gains, times, totalGains);
+		} else if(FORMAT_JSON.equalsIgnoreCase(format)) {
+			printJson(writer, files.size(), totalSize, steps, gains, times, totalGains);
+		} else {
+			printText(writer, files.size(), totalSize, steps, gains, times);
+		}
+		writer.flush();
+		
+		if(writer.checkError()) {
+			throw new IOException("Unable to write analyzer report");
+		}
+	}
+	
+	private void addResults(PendingFile file, List<List<Double>> gains, List<List<Double>> times, long[] totalGains) throws InterruptedException {
+		StepResult[] results;
+		try {
+			results = file.results.get();
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException)e.getCause();
+			} else if(e.getCause() instanceof Error) {
+				throw (Error)e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		}
+		for(int i = 0; i < results.length; i++) {
+			if(results[i] != null) {
+				gains.get(i).add(file.size > 0 ? 100.0 * results[i].gain / file.size : 0);
+				times.get(i).add(results[i].time / 1000000.0);
+				totalGains[i] += results[i].gain;
+			}
+		}
+	}
+	
+	private void printText(PrintWriter writer, int fileCount, long totalSize, List<Step> steps, List<List<Double>> gains, List<List<Double>> times) {
+		writer.println();
+		writer.println("===================================================================================================");
+		writer.format("%-25s | %9s | %9s | %9s | %9s | %9s | %9s |", "         Setting", "Gain p50", "Gain p90", "Gain p99", "Time p50", "Time p90", "Time p99");
+		writer.println();
+		writer.println("===================================================================================================");
+		
+		for(int i = 0; i < steps.size(); i++) {
+			double[] gain = percentiles(gains.get(i));
+			double[] time = percentiles(times.get(i));
+			if(gain == null) {
+				writer.format("%-25s | %9s | %9s | %9s | %9s | %9s | %9s |", steps.get(i).getDescription(), "-", "-", "-", "-", "-", "-");
+			} else {
+				writer.format(Locale.US, "%-25s | %8.1f%% | %8.1f%% | %8.1f%% | %9.2f | %9.2f | %9.2f |", steps.get(i).getDescription(), gain[0], gain[1], gain[2], time[0], time[1], time[2]);
+			}
+			writer.println();
+		}
+		
+		writer.println("===================================================================================================");
+		writer.println();
+		writer.println("Files analyzed: " + fileCount + ", total size: " + totalSize + " characters.");
+		writer.println("Each consecutive compressor setting is applied on top of previous ones.");
+		writer.println("Gain is a page size decrease in percent, time is an incremental CPU time in milliseconds.");
+	}
+	
+	private void printCsv(PrintWriter writer, List<Step> steps, List<List<Double>> gains, List<List<Double>> times, long[] totalGains) {
+		writer.println("setting,files,total_gain_chars,gain_p50,gain_p90,gain_p99,time_ms_p50,time_ms_p90,time_ms_p99");
+		for(int i = 0; i < steps.size(); i++) {
+			double[] gain = percentiles(gains.get(i));
+			double[] time = percentiles(times.get(i));
+			
+			writer.print("\"" + steps.get(i).getDescription().replace("\"", "\"\"") + "\"," + gains.get(i).size() + "," + totalGains[i]);
+			for(int j = 0; j < PERCENTILES.length; j++) {
+				writer.print("," + (gain != null ? formatNumber(gain[j]) : ""));
+			}
+			for(int j = 0; j < PERCENTILES.length; j++) {
+				writer.print("," + (time != null ? formatNumber(time[j]) : ""));
+			}
+			writer.println();
+		}
+	}
+	
+	private void printJson(PrintWriter writer, int fileCount, long totalSize, List<Step> steps, List<List<Double>> gains, List<List<Double>> times, long[] totalGains) {
+		writer.println("{");
+		writer.println("  \"files\": " + fileCount + ",");
+		writer.println("  \"totalSize\": " + totalSize + ",");
+		writer.println("  \"settings\": [");
+		for(int i = 0; i < steps.size(); i++) {
+			writer.print("    {\"setting\": \"" + escapeJson(steps.get(i).getDescription()) + "\", \"files\": " + gains.get(i).size() + ", \"totalGainChars\": " + totalGains[i]);
+			writer.print(", \"gain\": " + formatJsonPercentiles(percentiles(gains.get(i))));
+			writer.print(", \"timeMs\": " + formatJsonPercentiles(percentiles(times.get(i))));
+			writer.println(i < steps.size() - 1 ? "}," : "}");
+		}
+		writer.println("  ]");
+		writer.println("}");
+	}
+	
+	private String formatJsonPercentiles(double[] values) {
+		if(values == null) {
+			return "null";
+		}
+		return "{\"p50\": " + formatNumber(values[0]) + ", \"p90\": " + formatNumber(values[1]) + ", \"p99\": " + formatNumber(values[2]) + "}";
+	}
+	
+	private String formatNumber(double value) {
+		return String.format(Locale.US, "%.3f", value);
+	}
+	
+	private String escapeJson(String str) {
+		StringBuilder result = new StringBuilder();
+		for(int i = 0; i < str.length(); i++) {
+			char c = str.charAt(i);
+			if(c == '"' || c == '\\') {
+				result.append('\\').append(c);
+			} else if(c < ' ') {
+				result.append(String.format("\\u%04x", (int) c));
+			} else {
+				result.append(c);
+			}
+		}
+		return result.toString();
+	}
+	
+	/**
+	 * Returns nearest-rank percentiles of the values, or <code>null</code> if there are no values.
+	 */
+	static double[] percentiles(List<Double> values) {
+		if(values.isEmpty()) {
+			return null;
+		}
+		
+		double[] sorted = new double[values.size()];
+		for(int i = 0; i < sorted.length; i++) {
+			sorted[i] = values.get(i);
+		}
+		Arrays.sort(sorted);
+		
+		double[] result = new double[PERCENTILES.length];
+		for(int i = 0; i < PERCENTILES.length; i++) {
+			int rank = (int) Math.ceil(PERCENTILES[i] * sorted.length);
+			result[i] = sorted[Math.max(0, rank - 1)];
+		}
+		return result;
+	}
+	
+	private String readFile(File file) throws IOException {
+		StringBuilder source = new StringBuilder();
+		Reader input = new InputStreamReader(new FileInputStream(file), charset);
+		try {
+			char[] buffer = new char[8192];
+			int len;
+			while((len = input.read(buffer)) != -1) {
+				source.append(buffer, 0, len);
+			}
+		} finally {
+			input.close();
+		}
+		return source.toString();
+	}
+	
+	/**
+	 * Number of threads used for analyzing files.
+	 * Default is the number of available processors.
+	 * 
+	 * @param threads number of threads to use
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+	
+	/**
+	 * Charset used for reading files, default is <code>UTF-8</code>.
+	 * 
+	 * @param charset charset name
+	 */
+	public void setCharset(String charset) {
+		this.charset = charset;
+	}
+	
+	/**
+	 * Report format: {@link #FORMAT_TEXT} (default), {@link #FORMAT_CSV} or {@link #FORMAT_JSON}.
+	 * 
+	 * @param format report format
+	 */
+	public void setFormat(String format) {
+		this.format = format;
+	}
+	
+	/**
+	 * @see HtmlAnalyzer#setWarmupRuns(int)
+	 */
+	public void setWarmupRuns(int warmupRuns) {
+		analyzer.setWarmupRuns(warmupRuns);
+	}
+	
+	/**
+	 * @see HtmlAnalyzer#setTimedRuns(int)
+	 */
+	public void setTimedRuns(int timedRuns) {
+		analyzer.setTimedRuns(timedRuns);
+	}
+	
+	/**
+	 * File which settings are still being evaluated
+	 */
+	private static class PendingFile {
+		private int size;
+		private Future<StepResult[]> results;
+		
+		PendingFile(int size, Future<StepResult[]> results) {
+			this.size = size;
+			this.results = results;
+		}
+	}
+	
+}
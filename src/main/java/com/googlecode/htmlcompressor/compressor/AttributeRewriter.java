@@ -0,0 +1,425 @@
+package com.googlecode.htmlcompressor.compressor;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rewrites attributes of start tags according to a table of {@link Rule rules}.
+ * Attributes of each tag are parsed once and all rules are applied during that visit,
+ * so the whole document is scanned only once no matter how many rules are used.
+ * 
+ * <p>Tag and attribute names and values are compared ignoring case, any whitespace
+ * inside a value matches any other whitespace. Quoted values may contain <code>&gt;</code>
+ * and <code>&lt;</code>. Tags that are not closed are left as they are.
+ * 
+ * @author <a href="mailto:serg472@gmail.com">Sergiy Kovalchuk</a>
+ */
+class AttributeRewriter {
+	
+	//rule actions
+	private static final int REMOVE_ATTRIBUTE = 0;
+	private static final int REMOVE_VALUE = 1;
+	private static final int REMOVE_PROTOCOL = 2;
+	
+	private Rule[] rules;
+	
+	AttributeRewriter(List<Rule> rules) {
+		this.rules = rules.toArray(new Rule[rules.size()]);
+	}
+	
+	/**
+	 * Creates a rule that removes an attribute of a given tag if it has one of the given values.
+	 */
+	static Rule removeAttribute(String tag, String attribute, String... values) {
+		return new Rule(REMOVE_ATTRIBUTE, tag, new String[] {attribute}, values);
+	}
+	
+	/**
+	 * Creates a rule that removes values of the given attributes from any tag,
+	 * <code>checked="checked"</code> becomes <code>checked</code>.
+	 */
+	static Rule removeValue(String... attributes) {
+		return new Rule(REMOVE_VALUE, null, attributes, null);
+	}
+	
+	/**
+	 * Creates a rule that removes a protocol from URLs in the given attributes of any tag,
+	 * <code>http://example.com</code> becomes <code>//example.com</code>.
+	 * 
+	 * @param protocol protocol with a colon, for example <code>http:</code>
+	 */
+	static Rule removeProtocol(String protocol, String... attributes) {
+		return new Rule(REMOVE_PROTOCOL, null, attributes, new String[] {protocol});
+	}
+	
+	/**
+	 * Rewrites attributes of all start tags in a document.
+	 * 
+	 * @return rewritten document, or the same instance if nothing was changed
+	 */
+	String rewrite(String html) {
+		return HtmlTagScanner.apply(this::rewrite, html);
+	}
+	
+	/**
+	 * Rewrites attributes of all start tags in a document and appends the result to a buffer.
+	 * 
+	 * @return <code>false</code> if nothing would be changed, in which case nothing is appended
+	 */
+	boolean rewrite(CharSequence html, StringBuilder out) {
+		StringBuilder sb = null;
+		int start = 0;
+		int length = html.length();
+		List<Attribute> attributes = new ArrayList<Attribute>();
+		
+		int pos = HtmlTagScanner.indexOf(html, '<', 0);
+		while(pos != -1 && pos < length - 1) {
+			if(!isLetter(html.charAt(pos + 1))) {
+				pos = HtmlTagScanner.indexOf(html, '<', pos + 1);
+				continue;
+			}
+			
+			int nameEnd = pos + 1;
+			while(nameEnd < length && !isNameEnd(html.charAt(nameEnd))) {
+				nameEnd++;
+			}
+			if(!hasRules(html, pos + 1, nameEnd)) {
+				pos = HtmlTagScanner.indexOf(html, '<', nameEnd);
+				continue;
+			}
+			
+			attributes.clear();
+			int end = parseAttributes(html, nameEnd, attributes);
+			if(end == length) {
+				//tag or quoted value is not closed
+				break;
+			} else if(html.charAt(end) == '<') {
+				//tag is not closed, continue from the next one
+				pos = end;
+				continue;
+			}
+			
+			for(Attribute attribute : attributes) {
+				for(Rule rule : rules) {
+					if(!rule.matches(html, pos + 1, nameEnd, attribute, attributes)) {
+						continue;
+					}
+					
+					if(sb == null) {
+						sb = out;
+					}
+					switch(rule.action) {
+						case REMOVE_ATTRIBUTE:
+							sb.append(html, start, attribute.spaceStart);
+							start = attribute.end;
+							break;
+						case REMOVE_VALUE:
+							sb.append(html, start, attribute.nameEnd);
+							start = attribute.end;
+							break;
+						case REMOVE_PROTOCOL:
+							sb.append(html, start, attribute.valueStart);
+							start = attribute.valueStart + rule.values[0].length();
+							break;
+					}
+					break;
+				}
+			}
+			
+			pos = HtmlTagScanner.indexOf(html, '<', end + 1);
+		}
+		
+		if(sb == null) {
+			return false;
+		}
+		sb.append(html, start, length);
+		return true;
+	}
+	
+	private boolean hasRules(CharSequence html, int nameStart, int nameEnd) {
+		for(Rule rule : rules) {
+			if(rule.matchesTag(html, nameStart, nameEnd)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Parses attributes of a tag starting at a given position.
+	 * 
+	 * @return position of the closing <code>&gt;</code>, position of <code>&lt;</code>
+	 * if the tag is not closed before the next one, or the document length
+	 */
+	private static int parseAttributes(CharSequence html, int pos, List<Attribute> attributes) {
+		int length = html.length();
+		while(pos < length) {
+			int spaceStart = pos;
+			while(pos < length && (isWhitespace(html.charAt(pos)) || (html.charAt(pos) == '/' && pos + 1 < length && html.charAt(pos + 1) != '>'))) {
+				pos++;
+			}
+			if(pos == length) {
+				break;
+			}
+			
+			char c = html.charAt(pos);
+			if(c == '>' || c == '<') {
+				return pos;
+			} else if(c == '/') {
+				//self-closing tag
+				return pos + 1;
+			}
+			
+			Attribute attribute = new Attribute();
+			attribute.spaceStart = spaceStart;
+			attribute.nameStart = pos;
+			//first character is a part of the name even if it is "="
+			pos++;
+			while(pos < length && !isAttributeNameEnd(html.charAt(pos))) {
+				pos++;
+			}
+			attribute.nameEnd = pos;
+			attribute.end = pos;
+			
+			int equals = pos;
+			while(equals < length && isWhitespace(html.charAt(equals))) {
+				equals++;
+			}
+			if(equals < length && html.charAt(equals) == '=') {
+				pos = equals + 1;
+				while(pos < length && isWhitespace(html.charAt(pos))) {
+					pos++;
+				}
+				if(pos == length) {
+					break;
+				}
+				
+				c = html.charAt(pos);
+				if(c == '"' || c == '\'') {
+					int quote = HtmlTagScanner.indexOf(html, c, pos + 1);
+					if(quote == -1) {
+						break;
+					}
+					attribute.valueStart = pos + 1;
+					attribute.valueEnd = quote;
+					pos = quote + 1;
+				} else {
+					attribute.valueStart = pos;
+					while(pos < length && !isWhitespace(html.charAt(pos)) && html.charAt(pos) != '>') {
+						pos++;
+					}
+					attribute.valueEnd = pos;
+				}
+				attribute.end = pos;
+			}
+			
+			attributes.add(attribute);
+		}
+		return length;
+	}
+	
+	private static boolean isLetter(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+	
+	private static boolean isNameEnd(char c) {
+		return isWhitespace(c) || c == '/' || c == '>' || c == '<';
+	}
+	
+	private static boolean isAttributeNameEnd(char c) {
+		return isNameEnd(c) || c == '=';
+	}
+	
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == '\u000B';
+	}
+	
+	/**
+	 * Same as {@link String#regionMatches(boolean, int, String, int, int)} ignoring case
+	 * for a whole string.
+	 */
+	private static boolean regionMatches(CharSequence html, int pos, String str) {
+		if(pos + str.length() > html.length()) {
+			return false;
+		}
+		for(int i = 0; i < str.length(); i++) {
+			if(!equalsIgnoreCase(html.charAt(pos + i), str.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	//same comparison as in String.regionMatches
+	private static boolean equalsIgnoreCase(char c1, char c2) {
+		if(c1 == c2) {
+			return true;
+		}
+		char u1 = Character.toUpperCase(c1);
+		char u2 = Character.toUpperCase(c2);
+		return u1 == u2 || Character.toLowerCase(u1) == Character.toLowerCase(u2);
+	}
+	
+	/**
+	 * Compares a region with a string ignoring case, any whitespace run in the region
+	 * matches a single space in the string.
+	 */
+	private static boolean regionEquals(CharSequence html, int start, int end, String str) {
+		int pos = start;
+		for(int i = 0; i < str.length(); i++) {
+			if(pos == end) {
+				return false;
+			}
+			char c = str.charAt(i);
+			if(c == ' ') {
+				if(!isWhitespace(html.charAt(pos))) {
+					return false;
+				}
+				while(pos < end && isWhitespace(html.charAt(pos))) {
+					pos++;
+				}
+			} else if(equalsIgnoreCase(html.charAt(pos), c)) {
+				pos++;
+			} else {
+				return false;
+			}
+		}
+		return pos == end;
+	}
+	
+	/**
+	 * Single row of the rewriting table: which attributes of which tags
+	 * are rewritten, and what should their values be.
+	 */
+	static class Rule {
+		
+		private int action;
+		private String tag;
+		private String[] attributes;
+		private String[] values;
+		
+		//attribute of the same tag that must (or must not) have one of the values
+		private String conditionAttribute;
+		private String[] conditionValues;
+		private boolean conditionRequired;
+		
+		private Rule(int action, String tag, String[] attributes, String[] values) {
+			this.action = action;
+			this.tag = tag;
+			this.attributes = attributes;
+			this.values = values;
+		}
+		
+		/**
+		 * Applies the rule only if a tag has an attribute with one of the given values.
+		 */
+		Rule when(String attribute, String... values) {
+			conditionAttribute = attribute;
+			conditionValues = values;
+			conditionRequired = true;
+			return this;
+		}
+		
+		/**
+		 * Skips tags that have an attribute with one of the given values.
+		 */
+		Rule unless(String attribute, String... values) {
+			conditionAttribute = attribute;
+			conditionValues = values;
+			conditionRequired = false;
+			return this;
+		}
+		
+		private boolean matchesTag(CharSequence html, int nameStart, int nameEnd) {
+			return tag == null || regionEquals(html, nameStart, nameEnd, tag);
+		}
+		
+		private boolean matches(CharSequence html, int nameStart, int nameEnd, Attribute attribute, List<Attribute> tagAttributes) {
+			if(attribute.valueStart == -1 || !matchesTag(html, nameStart, nameEnd) || indexOfName(html, attribute, attributes) == -1) {
+				return false;
+			}
+			
+			switch(action) {
+				case REMOVE_ATTRIBUTE:
+					if(!attribute.hasValue(html, values)) {
+						return false;
+					}
+					break;
+				case REMOVE_PROTOCOL:
+					//protocol has to be followed by "//" and something else
+					int slashes = attribute.valueStart + values[0].length();
+					if(slashes + 2 >= attribute.valueEnd || !regionMatches(html, attribute.valueStart, values[0]) || !HtmlTagScanner.startsWith(html, "//", slashes)) {
+						return false;
+					}
+					break;
+			}
+			
+			if(conditionAttribute != null) {
+				boolean found = false;
+				for(Attribute tagAttribute : tagAttributes) {
+					if(tagAttribute.valueStart != -1 && tagAttribute.hasName(html, conditionAttribute) && tagAttribute.hasValue(html, conditionValues)) {
+						found = true;
+						break;
+					}
+				}
+				return found == conditionRequired;
+			}
+			return true;
+		}
+		
+		private static int indexOfName(CharSequence html, Attribute attribute, String[] names) {
+			for(int i = 0; i < names.length; i++) {
+				if(attribute.hasName(html, names[i])) {
+					return i;
+				}
+			}
+			return -1;
+		}
+	}
+	
+	/**
+	 * Positions of a parsed attribute
+	 */
+	private static class Attribute {
+		
+		//start of whitespace before the name
+		private int spaceStart;
+		private int nameStart;
+		private int nameEnd;
+		
+		//value without quotes, -1 if there is no value
+		private int valueStart = -1;
+		private int valueEnd = -1;
+		
+		//end of the whole attribute including closing quote
+		private int end;
+		
+		private boolean hasName(CharSequence html, String name) {
+			return nameEnd - nameStart == name.length() && regionMatches(html, nameStart, name);
+		}
+		
+		private boolean hasValue(CharSequence html, String[] values) {
+			for(String value : values) {
+				if(regionEquals(html, valueStart, valueEnd, value)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+	
+}
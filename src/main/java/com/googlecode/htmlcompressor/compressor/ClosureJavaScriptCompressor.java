@@ -16,7 +16,6 @@ package com.googlecode.htmlcompressor.compressor;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
@@ -64,8 +63,21 @@ public class ClosureJavaScriptCompressor implements Compressor {
 
 	@Override
 	public String compress(String source) {
-		
-		StringWriter writer = new StringWriter();
+		return compile(source);
+	}
+	
+	/**
+	 * Compresses the given source and appends compiled code straight to the output. 
+	 * Closure compiler takes the source as a string, so it is converted to one.
+	 */
+	@Override
+	public void compress(CharSequence source, Appendable out) throws IOException {
+		if(source != null) {
+			out.append(compile(source.toString()));
+		}
+	}
+	
+	private String compile(String source) {
 		
 		//prepare source
 		List<JSSourceFile> input = new ArrayList<JSSourceFile>();
@@ -108,12 +120,11 @@ public class ClosureJavaScriptCompressor implements Compressor {
 		Result result = compiler.compile(externsList, input, compilerOptions);
 		
 		if (result.success) {
-			writer.write(compiler.toSource());
-		} else {
-			writer.write(source);
+			return compiler.toSource();
 		}
-
-		return writer.toString();
+		
+		CompressionTracker.fallback(CompressionListener.BlockType.JAVASCRIPT);
+		return source;
 
 	}
 	
@@ -0,0 +1,236 @@
+package com.googlecode.htmlcompressor.compressor;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writer that compresses content written into it with a given {@link Compressor}
+ * and passes the result to the target writer.
+ * 
+ * <p>Compressors need the whole document, so it is collected in a single buffer and
+ * compressed when {@link #finish()} is called.
+ * 
+ * <p>In progressive mode {@link HtmlCompressor} content is compressed in chunks that end after
+ * closed elements, so compressed output is written after <code>&lt;/head&gt;</code>,
+ * every few kilobytes and on each {@link #flush()}, instead of at the very end. This keeps
+ * early flushes of a page working, and the result is the same as in buffered mode.
+ * Documents are buffered as usual if the compressor has custom preservation rules
+ * or generates statistics.
+ * 
+ * <p>If compression fails the original content is written to the target writer
+ * and the exception is rethrown. A beginning of the content that can be used
+ * in error messages is available from {@link #getExcerpt()}.
+ * 
+ * @author <a href="mailto:serg472@gmail.com">Sergiy Kovalchuk</a>
+ */
+public class CompressingWriter extends Writer {
+	
+	/**
+	 * Default maximum number of characters returned by {@link #getExcerpt()}
+	 */
+	public static final int DEFAULT_EXCERPT_LENGTH = 256;
+	
+	private Writer out;
+	private Compressor compressor;
+	
+	//streaming compressor, null if content is buffered
+	private Writer streamCompressor;
+	
+	//content to compress on finish
+	private StringBuilder buffer;
+	
+	//beginning of the content for error messages
+	private StringBuilder excerpt = new StringBuilder();
+	private int excerptLength;
+	private long length = 0;
+	
+	private boolean finished = false;
+	
+	/**
+	 * Creates a writer that compresses content with the given compressor.
+	 * 
+	 * @param out where compressed content is written to
+	 * @param compressor compressor to use
+	 */
+	public CompressingWriter(Writer out, Compressor compressor) {
+		this(out, compressor, DEFAULT_EXCERPT_LENGTH);
+	}
+	
+	/**
+	 * Creates a writer that compresses content with the given compressor.
+	 * 
+	 * @param out where compressed content is written to
+	 * @param compressor compressor to use
+	 * @param excerptLength maximum number of characters returned by {@link #getExcerpt()}
+	 */
+	public CompressingWriter(Writer out, Compressor compressor, int excerptLength) {
+		this(out, compressor, excerptLength, false);
+	}
+	
+	/**
+	 * Creates a writer that compresses content with the given compressor.
+	 * 
+	 * @param out where compressed content is written to
+	 * @param compressor compressor to use
+	 * @param excerptLength maximum number of characters returned by {@link #getExcerpt()}
+	 * @param progressive if <code>true</code>, HTML is compressed and written in chunks
+	 * as soon as they are complete
+	 */
+	public CompressingWriter(Writer out, Compressor compressor, int excerptLength, boolean progressive) {
+		this.out = out;
+		this.compressor = compressor;
+		this.excerptLength = excerptLength;
+		
+		if(compressor instanceof XmlCompressor) {
+			if(!((XmlCompressor)compressor).isEnabled()) {
+				this.compressor = null;
+			}
+		} else if(compressor instanceof HtmlCompressor) {
+			HtmlCompressor htmlCompressor = (HtmlCompressor)compressor;
+			if(!htmlCompressor.isEnabled()) {
+				//nothing to compress, content is written directly
+				this.compressor = null;
+			} else if(progressive && htmlCompressor.getPreservePatterns() == null && !htmlCompressor.isGenerateStatistics()) {
+				streamCompressor = new HtmlStreamCompressor(out, htmlCompressor);
+			}
+		}
+		
+		if(this.compressor != null && streamCompressor == null) {
+			buffer = new StringBuilder();
+		}
+	}
+	
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		checkFinished();
+		collectExcerpt(cbuf, off, len);
+		if(streamCompressor != null) {
+			streamCompressor.write(cbuf, off, len);
+		} else if(buffer != null) {
+			buffer.append(cbuf, off, len);
+		} else {
+			out.write(cbuf, off, len);
+		}
+	}
+	
+	@Override
+	public void write(String str, int off, int len) throws IOException {
+		checkFinished();
+		collectExcerpt(str, off, len);
+		if(streamCompressor != null) {
+			streamCompressor.write(str, off, len);
+		} else if(buffer != null) {
+			buffer.append(str, off, off + len);
+		} else {
+			out.write(str, off, len);
+		}
+	}
+	
+	@Override
+	public void write(int c) throws IOException {
+		write(new char[] {(char) c}, 0, 1);
+	}
+	
+	/**
+	 * Compresses buffered content and writes the result to the target writer.
+	 * Target writer is not flushed or closed.
+	 * 
+	 * @throws IOException if writing fails
+	 * @throws RuntimeException if compression fails, original content
+	 * is written to the target writer in this case
+	 */
+	public void finish() throws IOException {
+		if(finished) {
+			return;
+		}
+		finished = true;
+		
+		if(streamCompressor instanceof HtmlStreamCompressor) {
+			((HtmlStreamCompressor)streamCompressor).finish();
+		} else if(buffer != null) {
+			String content = buffer.toString();
+			buffer = null;
+			
+			String result;
+			try {
+				result = compressor.compress(content);
+			} catch (RuntimeException e) {
+				out.write(content);
+				throw e;
+			}
+			out.write(result);
+		}
+	}
+	
+	/**
+	 * Flushes compressed output written so far. Content that is buffered
+	 * until {@link #finish()} is not written. In progressive mode all complete
+	 * chunks are compressed and written first.
+	 */
+	@Override
+	public void flush() throws IOException {
+		if(streamCompressor != null) {
+			streamCompressor.flush();
+		} else {
+			out.flush();
+		}
+	}
+	
+	/**
+	 * Finishes compression and closes the target writer.
+	 */
+	@Override
+	public void close() throws IOException {
+		finish();
+		out.close();
+	}
+	
+	/**
+	 * Returns the beginning of the content written so far, no longer than
+	 * the excerpt length passed to the constructor. If the content is longer,
+	 * the excerpt is followed by "..." and the total content length.
+	 * 
+	 * @return beginning of the content
+	 */
+	public String getExcerpt() {
+		if(length <= excerpt.length()) {
+			return excerpt.toString();
+		}
+		return excerpt + "... (" + length + " characters)";
+	}
+	
+	private void collectExcerpt(char[] cbuf, int off, int len) {
+		length += len;
+		if(excerpt.length() < excerptLength) {
+			excerpt.append(cbuf, off, Math.min(len, excerptLength - excerpt.length()));
+		}
+	}
+	
+	private void collectExcerpt(String str, int off, int len) {
+		length += len;
+		if(excerpt.length() < excerptLength) {
+			excerpt.append(str, off, off + Math.min(len, excerptLength - excerpt.length()));
+		}
+	}
+	
+	private void checkFinished() throws IOException {
+		if(finished) {
+			throw new IOException("Writer is already finished");
+		}
+	}
+	
+}
@@ -0,0 +1,134 @@
+package com.googlecode.htmlcompressor.compressor;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Callback interface that {@link HtmlCompressor} and {@link XmlCompressor} notify about
+ * the progress of each document, so compression could be bridged into any metrics or
+ * tracing system. All methods do nothing by default, implementations override only
+ * the ones they need.
+ * 
+ * <p>Methods are called synchronously on the thread that does the work, so they should
+ * return quickly, and must be thread safe if the compressor is shared by several threads
+ * or compresses asynchronously. Durations are in nanoseconds and sizes are in characters.
+ * Nothing is allocated for notifications if no listener is set.
+ * 
+ * @see HtmlCompressor#setCompressionListener(CompressionListener)
+ * @see XmlCompressor#setCompressionListener(CompressionListener)
+ * 
+ * @author <a href="mailto:serg472@gmail.com">Sergiy Kovalchuk</a>
+ */
+public interface CompressionListener {
+	
+	/**
+	 * Stages of document compression, in the order they run.
+	 */
+	enum Stage {
+		/** Finding blocks that are not processed as markup and replacing them with placeholders */
+		PRESERVE_BLOCKS,
+		/** Processing HTML markup outside preserved blocks */
+		PROCESS_HTML,
+		/** Processing XML markup outside preserved blocks */
+		PROCESS_XML,
+		/** Processing preserved HTML blocks, including inline script and style compression */
+		PROCESS_BLOCKS,
+		/** Putting preserved blocks back */
+		RETURN_BLOCKS
+	}
+	
+	/**
+	 * Types of blocks compressed by other compressors.
+	 */
+	enum BlockType {
+		/** Inline JavaScript */
+		JAVASCRIPT,
+		/** Inline CSS */
+		CSS
+	}
+	
+	/**
+	 * Called before a document is compressed.
+	 * 
+	 * @param compressor compressor of the document
+	 * @param size size of the document
+	 */
+	default void documentStarted(Compressor compressor, int size) {
+	}
+	
+	/**
+	 * Called after a document is compressed.
+	 * 
+	 * @param compressor compressor of the document
+	 * @param originalSize size of the document before compression
+	 * @param compressedSize size of the document after compression
+	 * @param time compression time
+	 */
+	default void documentCompressed(Compressor compressor, int originalSize, int compressedSize, long time) {
+	}
+	
+	/**
+	 * Called before a stage of document compression starts.
+	 * 
+	 * @param compressor compressor of the document
+	 * @param stage stage that starts
+	 */
+	default void stageStarted(Compressor compressor, Stage stage) {
+	}
+	
+	/**
+	 * Called after a stage of document compression is completed.
+	 * 
+	 * @param compressor compressor of the document
+	 * @param stage completed stage
+	 * @param time time the stage took
+	 */
+	default void stageCompleted(Compressor compressor, Stage stage, long time) {
+	}
+	
+	/**
+	 * Called after an inline block is compressed.
+	 * 
+	 * @param compressor compressor of the document the block belongs to
+	 * @param type type of the block
+	 * @param originalSize size of the block before compression
+	 * @param compressedSize size of the block after compression
+	 * @param time compression time
+	 */
+	default void blockCompressed(Compressor compressor, BlockType type, int originalSize, int compressedSize, long time) {
+	}
+	
+	/**
+	 * Called if a block compressor could not process an inline block and returned it unchanged.
+	 * {@link #blockCompressed(Compressor, BlockType, int, int, long)} is called after it as well.
+	 * 
+	 * @param compressor compressor of the document the block belongs to
+	 * @param type type of the block
+	 * @param size size of the block
+	 */
+	default void blockFallback(Compressor compressor, BlockType type, int size) {
+	}
+	
+	/**
+	 * Called if a block compressor failed with an exception, which is rethrown after this call.
+	 * 
+	 * @param compressor compressor of the document the block belongs to
+	 * @param type type of the block
+	 * @param size size of the block
+	 * @param error exception thrown by the block compressor
+	 */
+	default void blockFailed(Compressor compressor, BlockType type, int size, RuntimeException error) {
+	}
+	
+}
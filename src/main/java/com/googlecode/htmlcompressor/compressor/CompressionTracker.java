@@ -0,0 +1,177 @@
+package com.googlecode.htmlcompressor.compressor;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.List;
+
+import com.googlecode.htmlcompressor.compressor.CompressionListener.BlockType;
+import com.googlecode.htmlcompressor.compressor.CompressionListener.Stage;
+
+/**
+ * Reports compression of a single document to {@link CompressorMetrics},
+ * {@link HtmlCompressorHistograms} and a {@link CompressionListener}, whichever are set.
+ * 
+ * @author <a href="mailto:serg472@gmail.com">Sergiy Kovalchuk</a>
+ */
+final class CompressionTracker {
+	
+	//set when a block compressor returns its input unchanged because it could not process it
+	private static final ThreadLocal<Boolean> fallback = new ThreadLocal<Boolean>();
+	
+	private final Compressor compressor;
+	private final CompressorMetrics metrics;
+	private final HtmlCompressorHistograms histograms;
+	private final CompressionListener listener;
+	
+	private final int originalSize;
+	private final long start;
+	
+	private Stage stage = null;
+	private long stageStart;
+	
+	private CompressionTracker(Compressor compressor, int originalSize, CompressorMetrics metrics, HtmlCompressorHistograms histograms, CompressionListener listener) {
+		this.compressor = compressor;
+		this.originalSize = originalSize;
+		this.metrics = metrics;
+		this.histograms = histograms;
+		this.listener = listener;
+		
+		if(listener != null) {
+			listener.documentStarted(compressor, originalSize);
+		}
+		start = System.nanoTime();
+	}
+	
+	/**
+	 * Starts tracking a document.
+	 * 
+	 * @return tracker, or <code>null</code> if there is nothing to report to
+	 */
+	static CompressionTracker start(Compressor compressor, CharSequence source, CompressorMetrics metrics, HtmlCompressorHistograms histograms, CompressionListener listener) {
+		if(metrics == null && histograms == null && listener == null) {
+			return null;
+		}
+		return new CompressionTracker(compressor, source.length(), metrics, histograms, listener);
+	}
+	
+	/**
+	 * Completes the current stage, if any, and starts the next one.
+	 */
+	void nextStage(Stage next) {
+		completeStage(System.nanoTime());
+		stage = next;
+		if(listener != null) {
+			listener.stageStarted(compressor, next);
+		}
+		stageStart = System.nanoTime();
+	}
+	
+	private void completeStage(long now) {
+		if(stage != null) {
+			if(metrics != null) {
+				metrics.recordStage(stage, now - stageStart);
+			}
+			if(listener != null) {
+				listener.stageCompleted(compressor, stage, now - stageStart);
+			}
+			stage = null;
+		}
+	}
+	
+	void preservedBlocks(List<String> blocks) {
+		if(metrics != null) {
+			metrics.recordPreservedBlocks(blocks);
+		}
+	}
+	
+	/**
+	 * Completes the current stage and the document.
+	 * 
+	 * @param compressedSize size of the compressed document
+	 */
+	void finish(int compressedSize) {
+		long now = System.nanoTime();
+		completeStage(now);
+		if(metrics != null) {
+			if(compressor instanceof XmlCompressor) {
+				metrics.recordXmlDocument(originalSize, compressedSize, now - start);
+			} else {
+				metrics.recordHtmlDocument(originalSize, compressedSize, now - start);
+			}
+		}
+		if(histograms != null) {
+			histograms.recordDocument(originalSize, now - start);
+		}
+		if(listener != null) {
+			listener.documentCompressed(compressor, originalSize, compressedSize, now - start);
+		}
+	}
+	
+	/**
+	 * Compresses an inline block and reports it.
+	 * 
+	 * @param compressor compressor of the document the block belongs to
+	 * @param blockCompressor compressor of the block
+	 */
+	static String compressBlock(Compressor compressor, Compressor blockCompressor, BlockType type, String source, HtmlCompressorHistograms histograms, CompressionListener listener) {
+		CompressorMetrics metrics = CompressorMetrics.getActive();
+		if(metrics == null && histograms == null && listener == null) {
+			return blockCompressor.compress(source);
+		}
+		
+		fallback.remove();
+		long start = System.nanoTime();
+		String result;
+		try {
+			result = blockCompressor.compress(source);
+		} catch (RuntimeException e) {
+			if(metrics != null) {
+				metrics.recordBlockError(type);
+			}
+			if(listener != null) {
+				listener.blockFailed(compressor, type, source.length(), e);
+			}
+			throw e;
+		}
+		long time = System.nanoTime() - start;
+		
+		if(metrics != null) {
+			metrics.recordBlock(type, time);
+		}
+		if(histograms != null) {
+			(type == BlockType.JAVASCRIPT ? histograms.getJavaScriptTime() : histograms.getCssTime()).record(time);
+		}
+		if(listener != null) {
+			if(fallback.get() != null) {
+				fallback.remove();
+				listener.blockFallback(compressor, type, source.length());
+			}
+			listener.blockCompressed(compressor, type, source.length(), result.length(), time);
+		}
+		return result;
+	}
+	
+	/**
+	 * Called by block compressors that return their input unchanged because they could not process it.
+	 */
+	static void fallback(BlockType type) {
+		CompressorMetrics metrics = CompressorMetrics.getActive();
+		if(metrics != null) {
+			metrics.recordBlockFallback(type);
+		}
+		fallback.set(Boolean.TRUE);
+	}
+	
+}
@@ -14,6 +14,10 @@ package com.googlecode.htmlcompressor.compressor;
  * limitations under the License.
  */
 
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
 /**
  * Interface describing compressor classes.
  * 
@@ -27,4 +31,45 @@ public interface Compressor {
 	 * @return Compressed result.
 	 */
 	public abstract String compress(String source);
+	
+	/**
+	 * Compresses the given source and appends compressed result to the given output, 
+	 * like a <code>StringBuilder</code> or a response <code>Writer</code>. By default 
+	 * the source is converted to a string and compressed with {@link #compress(String)}, 
+	 * implementations could read the source and write the result without making 
+	 * whole copies of them. The output is not flushed or closed.
+	 * 
+	 * <p>If the source is <code>null</code>, nothing is appended, the same way as 
+	 * {@link HtmlCompressor} and {@link XmlCompressor} return <code>null</code> for it.
+	 * 
+	 * <p>If compression fails with a runtime exception, part of the result 
+	 * might be already appended to the output.
+	 * 
+	 * @param source The source to compress, could be <code>null</code>.
+	 * @param out Where compressed result is appended to.
+	 * @throws IOException if appending to the output fails
+	 */
+	public default void compress(CharSequence source, Appendable out) throws IOException {
+		if(source == null) {
+			return;
+		}
+		String result = compress(source.toString());
+		if(result != null) {
+			out.append(result);
+		}
+	}
+	
+	/**
+	 * Compresses the given source with a given executor, so the calling thread is never blocked.
+	 * By default the whole source is compressed by a single task, implementations could split 
+	 * the work into several tasks.
+	 * 
+	 * @param source The source to compress.
+	 * @param executor Executor that runs compression, for example the one returned by 
+	 * {@link CompressorExecutors#newVirtualThreadExecutor()}.
+	 * @return Future that completes with compressed result, or exceptionally if compression fails.
+	 */
+	public default CompletableFuture<String> compressAsync(String source, Executor executor) {
+		return CompletableFuture.supplyAsync(() -> compress(source), executor);
+	}
 }
\ No newline at end of file
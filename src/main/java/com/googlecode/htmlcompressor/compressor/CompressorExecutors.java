@@ -0,0 +1,76 @@
+package com.googlecode.htmlcompressor.compressor;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors for {@link Compressor#compressAsync(String, java.util.concurrent.Executor) asynchronous compression}.
+ * 
+ * @author <a href="mailto:serg472@gmail.com">Sergiy Kovalchuk</a>
+ */
+public final class CompressorExecutors {
+	
+	private CompressorExecutors() {
+	}
+	
+	/**
+	 * Checks if the running JVM supports virtual threads (Java 21 or newer).
+	 * 
+	 * @return <code>true</code> if virtual threads are available
+	 */
+	public static boolean isVirtualThreadSupported() {
+		return getVirtualThreadExecutorFactory() != null;
+	}
+	
+	/**
+	 * Creates an executor that runs each task on a new virtual thread, so any number of
+	 * documents could be compressed at the same time without tying up platform threads.
+	 * On Java versions without virtual threads a cached pool of daemon threads is returned instead.
+	 * 
+	 * <p>Executor should be shut down when it is no longer needed.
+	 * 
+	 * @return new executor
+	 */
+	public static ExecutorService newVirtualThreadExecutor() {
+		Method factory = getVirtualThreadExecutorFactory();
+		if(factory != null) {
+			try {
+				return (ExecutorService)factory.invoke(null);
+			} catch (Exception e) {
+				//fall back to platform threads
+			}
+		}
+		
+		final AtomicInteger count = new AtomicInteger();
+		return Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "htmlcompressor-async-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+	
+	private static Method getVirtualThreadExecutorFactory() {
+		try {
+			return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+	
+}
@@ -0,0 +1,141 @@
+package com.googlecode.htmlcompressor.compressor;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.CharBuffer;
+
+/**
+ * Adapters used by {@link Compressor#compress(CharSequence, Appendable)} implementations
+ * to read any <code>CharSequence</code> and write into any <code>Appendable</code>
+ * without copying whole content.
+ * 
+ * @author <a href="mailto:serg472@gmail.com">Sergiy Kovalchuk</a>
+ */
+final class CompressorIO {
+	
+	private CompressorIO() {
+	}
+	
+	/**
+	 * Returns a reader of a given source.
+	 */
+	static Reader reader(CharSequence source) {
+		if(source instanceof String) {
+			return new StringReader((String) source);
+		}
+		return new CharSequenceReader(source);
+	}
+	
+	/**
+	 * Returns a writer that appends to a given output, or the output itself if it is a writer.
+	 * Returned writer is never flushed or closed by compressors.
+	 */
+	static Writer writer(Appendable out) {
+		if(out instanceof Writer) {
+			return (Writer) out;
+		}
+		return new AppendableWriter(out);
+	}
+	
+	/**
+	 * Appends a region of a string. Unlike <code>Writer.append(CharSequence, int, int)</code>
+	 * writers don't copy the region into a new string.
+	 */
+	static void append(Appendable out, String str, int start, int end) throws IOException {
+		if(out instanceof Writer) {
+			((Writer) out).write(str, start, end - start);
+		} else {
+			out.append(str, start, end);
+		}
+	}
+	
+	private static final class CharSequenceReader extends Reader {
+		
+		private final CharSequence source;
+		private int position = 0;
+		
+		private CharSequenceReader(CharSequence source) {
+			this.source = source;
+		}
+		
+		@Override
+		public int read() {
+			return position < source.length() ? source.charAt(position++) : -1;
+		}
+		
+		@Override
+		public int read(char[] buffer, int offset, int length) {
+			if(length == 0) {
+				return 0;
+			}
+			if(position >= source.length()) {
+				return -1;
+			}
+			int end = Math.min(source.length(), position + length);
+			for(int i = position; i < end; i++) {
+				buffer[offset++] = source.charAt(i);
+			}
+			int read = end - position;
+			position = end;
+			return read;
+		}
+		
+		@Override
+		public void close() {
+		}
+	}
+	
+	private static final class AppendableWriter extends Writer {
+		
+		private final Appendable out;
+		
+		private AppendableWriter(Appendable out) {
+			this.out = out;
+		}
+		
+		@Override
+		public void write(char[] buffer, int offset, int length) throws IOException {
+			if(out instanceof StringBuilder) {
+				((StringBuilder) out).append(buffer, offset, length);
+			} else {
+				out.append(CharBuffer.wrap(buffer, offset, length));
+			}
+		}
+		
+		@Override
+		public void write(String str, int offset, int length) throws IOException {
+			out.append(str, offset, offset + length);
+		}
+		
+		@Override
+		public Writer append(CharSequence csq) throws IOException {
+			out.append(csq);
+			return this;
+		}
+		
+		@Override
+		public void flush() {
+		}
+		
+		@Override
+		public void close() {
+		}
+	}
+	
+}
@@ -0,0 +1,295 @@
+package com.googlecode.htmlcompressor.compressor;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.googlecode.htmlcompressor.compressor.CompressionListener.BlockType;
+import com.googlecode.htmlcompressor.compressor.CompressionListener.Stage;
+
+/**
+ * Aggregate metrics of all {@link HtmlCompressor}, {@link XmlCompressor}, JavaScript and CSS
+ * compressor instances in the JVM, exposed as a JMX MBean. Unlike {@link HtmlCompressorStatistics},
+ * which describe a single call, these counters keep growing for as long as metrics are enabled
+ * and could be read from any thread or a JMX console at any time.
+ * 
+ * <p>Metrics are disabled by default and compressors only check a single field then.
+ * Once enabled, counters are updated without locking, so compressors running in parallel
+ * don't slow each other down:
+ * 
+ * <pre>
+ * CompressorMetrics metrics = CompressorMetrics.enable();
+ * ...
+ * long documents = metrics.getHtmlDocuments();
+ * </pre>
+ * 
+ * <p>MBean is registered with the platform MBean server under {@link #OBJECT_NAME}.
+ * Documents compressed by {@link XmlCompressor#compress(java.io.Reader, java.io.Writer)}
+ * are not counted, and each chunk written by {@link CompressingWriter} in progressive mode
+ * is counted as a separate document.
+ * 
+ * @author <a href="mailto:serg472@gmail.com">Sergiy Kovalchuk</a>
+ */
+public final class CompressorMetrics implements CompressorMetricsMBean {
+	
+	/**
+	 * Name under which metrics are registered with the platform MBean server
+	 */
+	public static final String OBJECT_NAME = "com.googlecode.htmlcompressor:type=CompressorMetrics";
+	
+	//null while metrics are disabled
+	private static volatile CompressorMetrics active = null;
+	
+	private final LongAdder htmlDocuments = new LongAdder();
+	private final LongAdder xmlDocuments = new LongAdder();
+	private final LongAdder originalSize = new LongAdder();
+	private final LongAdder compressedSize = new LongAdder();
+	private final LongAdder preservedSize = new LongAdder();
+	private final LongAdder totalTime = new LongAdder();
+	private final LongAdder[] stageTimes = new LongAdder[Stage.values().length];
+	
+	private final LongAdder javaScriptBlocks = new LongAdder();
+	private final LongAdder javaScriptTime = new LongAdder();
+	private final LongAdder javaScriptErrors = new LongAdder();
+	private final LongAdder javaScriptFallbacks = new LongAdder();
+	
+	private final LongAdder cssBlocks = new LongAdder();
+	private final LongAdder cssTime = new LongAdder();
+	private final LongAdder cssErrors = new LongAdder();
+	private final LongAdder cssFallbacks = new LongAdder();
+	
+	private CompressorMetrics() {
+		for(int i = 0; i < stageTimes.length; i++) {
+			stageTimes[i] = new LongAdder();
+		}
+	}
+	
+	/**
+	 * Starts collecting metrics and registers the MBean. If metrics are already enabled
+	 * the same instance is returned.
+	 * 
+	 * @return active metrics
+	 * @throws IllegalStateException if the MBean could not be registered
+	 */
+	public static synchronized CompressorMetrics enable() {
+		if(active == null) {
+			CompressorMetrics metrics = new CompressorMetrics();
+			try {
+				MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+				ObjectName name = new ObjectName(OBJECT_NAME);
+				if(server.isRegistered(name)) {
+					//left by another class loader
+					server.unregisterMBean(name);
+				}
+				server.registerMBean(metrics, name);
+			} catch (JMException e) {
+				throw new IllegalStateException("Unable to register compressor metrics", e);
+			}
+			active = metrics;
+		}
+		return active;
+	}
+	
+	/**
+	 * Stops collecting metrics and unregisters the MBean. Counters of the instance
+	 * returned by {@link #enable()} keep their last values.
+	 */
+	public static synchronized void disable() {
+		if(active != null) {
+			active = null;
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+			} catch (JMException e) {
+				//already unregistered
+			}
+		}
+	}
+	
+	/**
+	 * Returns metrics that are being collected.
+	 * 
+	 * @return active metrics, or <code>null</code> if metrics are disabled
+	 */
+	public static CompressorMetrics getActive() {
+		return active;
+	}
+	
+	void recordHtmlDocument(int originalSize, int compressedSize, long time) {
+		htmlDocuments.increment();
+		recordDocument(originalSize, compressedSize, time);
+	}
+	
+	void recordXmlDocument(int originalSize, int compressedSize, long time) {
+		xmlDocuments.increment();
+		recordDocument(originalSize, compressedSize, time);
+	}
+	
+	private void recordDocument(int originalSize, int compressedSize, long time) {
+		this.originalSize.add(originalSize);
+		this.compressedSize.add(compressedSize);
+		totalTime.add(time);
+	}
+	
+	void recordStage(Stage stage, long time) {
+		stageTimes[stage.ordinal()].add(time);
+	}
+	
+	void recordPreservedBlocks(List<String> blocks) {
+		for(String block : blocks) {
+			preservedSize.add(block.length());
+		}
+	}
+	
+	void recordBlock(BlockType type, long time) {
+		if(type == BlockType.JAVASCRIPT) {
+			javaScriptBlocks.increment();
+			javaScriptTime.add(time);
+		} else {
+			cssBlocks.increment();
+			cssTime.add(time);
+		}
+	}
+	
+	void recordBlockError(BlockType type) {
+		(type == BlockType.JAVASCRIPT ? javaScriptErrors : cssErrors).increment();
+	}
+	
+	void recordBlockFallback(BlockType type) {
+		(type == BlockType.JAVASCRIPT ? javaScriptFallbacks : cssFallbacks).increment();
+	}
+	
+	@Override
+	public long getHtmlDocuments() {
+		return htmlDocuments.sum();
+	}
+	
+	@Override
+	public long getXmlDocuments() {
+		return xmlDocuments.sum();
+	}
+	
+	@Override
+	public long getOriginalSize() {
+		return originalSize.sum();
+	}
+	
+	@Override
+	public long getCompressedSize() {
+		return compressedSize.sum();
+	}
+	
+	@Override
+	public long getPreservedSize() {
+		return preservedSize.sum();
+	}
+	
+	@Override
+	public long getTotalTime() {
+		return toMillis(totalTime);
+	}
+	
+	@Override
+	public long getPreserveBlocksTime() {
+		return toMillis(stageTimes[Stage.PRESERVE_BLOCKS.ordinal()]);
+	}
+	
+	@Override
+	public long getProcessHtmlTime() {
+		return toMillis(stageTimes[Stage.PROCESS_HTML.ordinal()]);
+	}
+	
+	@Override
+	public long getProcessBlocksTime() {
+		return toMillis(stageTimes[Stage.PROCESS_BLOCKS.ordinal()]);
+	}
+	
+	@Override
+	public long getReturnBlocksTime() {
+		return toMillis(stageTimes[Stage.RETURN_BLOCKS.ordinal()]);
+	}
+	
+	@Override
+	public long getJavaScriptBlocks() {
+		return javaScriptBlocks.sum();
+	}
+	
+	@Override
+	public long getJavaScriptTime() {
+		return toMillis(javaScriptTime);
+	}
+	
+	@Override
+	public long getJavaScriptErrors() {
+		return javaScriptErrors.sum();
+	}
+	
+	@Override
+	public long getJavaScriptFallbacks() {
+		return javaScriptFallbacks.sum();
+	}
+	
+	@Override
+	public long getCssBlocks() {
+		return cssBlocks.sum();
+	}
+	
+	@Override
+	public long getCssTime() {
+		return toMillis(cssTime);
+	}
+	
+	@Override
+	public long getCssErrors() {
+		return cssErrors.sum();
+	}
+	
+	@Override
+	public long getCssFallbacks() {
+		return cssFallbacks.sum();
+	}
+	
+	@Override
+	public void reset() {
+		htmlDocuments.reset();
+		xmlDocuments.reset();
+		originalSize.reset();
+		compressedSize.reset();
+		preservedSize.reset();
+		totalTime.reset();
+		for(LongAdder stageTime : stageTimes) {
+			stageTime.reset();
+		}
+		javaScriptBlocks.reset();
+		javaScriptTime.reset();
+		javaScriptErrors.reset();
+		javaScriptFallbacks.reset();
+		cssBlocks.reset();
+		cssTime.reset();
+		cssErrors.reset();
+		cssFallbacks.reset();
+	}
+	
+	private static long toMillis(LongAdder nanos) {
+		return TimeUnit.NANOSECONDS.toMillis(nanos.sum());
+	}
+	
+}
@@ -0,0 +1,124 @@
+package com.googlecode.htmlcompressor.compressor;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * JMX management interface of {@link CompressorMetrics}.
+ * 
+ * <p>All sizes are in characters and all times are in milliseconds.
+ * 
+ * @author <a href="mailto:serg472@gmail.com">Sergiy Kovalchuk</a>
+ */
+public interface CompressorMetricsMBean {
+	
+	/**
+	 * Returns the number of HTML documents compressed.
+	 */
+	long getHtmlDocuments();
+	
+	/**
+	 * Returns the number of XML documents compressed.
+	 */
+	long getXmlDocuments();
+	
+	/**
+	 * Returns the total size of all documents before compression.
+	 */
+	long getOriginalSize();
+	
+	/**
+	 * Returns the total size of all documents after compression.
+	 */
+	long getCompressedSize();
+	
+	/**
+	 * Returns the total size of blocks that were preserved from HTML or XML processing,
+	 * including inline scripts and styles.
+	 */
+	long getPreservedSize();
+	
+	/**
+	 * Returns the total time spent compressing HTML and XML documents.
+	 */
+	long getTotalTime();
+	
+	/**
+	 * Returns the time spent finding and preserving blocks of HTML documents.
+	 */
+	long getPreserveBlocksTime();
+	
+	/**
+	 * Returns the time spent processing HTML markup outside preserved blocks.
+	 */
+	long getProcessHtmlTime();
+	
+	/**
+	 * Returns the time spent processing preserved HTML blocks,
+	 * including inline script and style compression.
+	 */
+	long getProcessBlocksTime();
+	
+	/**
+	 * Returns the time spent putting preserved blocks back into HTML documents.
+	 */
+	long getReturnBlocksTime();
+	
+	/**
+	 * Returns the number of inline JavaScript blocks compressed.
+	 */
+	long getJavaScriptBlocks();
+	
+	/**
+	 * Returns the time spent compressing inline JavaScript blocks.
+	 */
+	long getJavaScriptTime();
+	
+	/**
+	 * Returns the number of JavaScript blocks that failed to compress with an exception.
+	 */
+	long getJavaScriptErrors();
+	
+	/**
+	 * Returns the number of JavaScript blocks that JavaScript compressor could not
+	 * process and returned unchanged.
+	 */
+	long getJavaScriptFallbacks();
+	
+	/**
+	 * Returns the number of inline CSS blocks compressed.
+	 */
+	long getCssBlocks();
+	
+	/**
+	 * Returns the time spent compressing inline CSS blocks.
+	 */
+	long getCssTime();
+	
+	/**
+	 * Returns the number of CSS blocks that failed to compress with an exception.
+	 */
+	long getCssErrors();
+	
+	/**
+	 * Returns the number of CSS blocks that CSS compressor could not process and returned unchanged.
+	 */
+	long getCssFallbacks();
+	
+	/**
+	 * Sets all counters to zero.
+	 */
+	void reset();
+	
+}
@@ -0,0 +1,191 @@
+package com.googlecode.htmlcompressor.compressor;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Index of substrings that {@link HtmlCompressor} block patterns can't match without.
+ * A document is scanned once before compression, and preservation passes which
+ * patterns can't match anything in it are skipped.
+ * 
+ * <p>Scan only jumps between <code>&lt;</code> and <code>=</code> characters with 
+ * <code>indexOf</code>, so it takes a fraction of the time of a single regular
+ * expression pass. A feature can be reported for a document that has no matching blocks, 
+ * but never the other way around.
+ * 
+ * @author <a href="mailto:serg472@gmail.com">Sergiy Kovalchuk</a>
+ */
+final class DocumentFeatures {
+	
+	private static final int PRE = 1;
+	private static final int TEXTAREA = 1 << 1;
+	private static final int SCRIPT = 1 << 2;
+	private static final int STYLE = 1 << 3;
+	private static final int COND_COMMENT = 1 << 4;
+	private static final int SKIP_BLOCK = 1 << 5;
+	private static final int EVENT = 1 << 6;
+	private static final int LINE_BREAK = 1 << 7;
+	
+	//features found by a scan of tag starts
+	private static final int TAGS = PRE | TEXTAREA | SCRIPT | STYLE | COND_COMMENT;
+	
+	private int features = 0;
+	
+	private DocumentFeatures() {
+	}
+	
+	/**
+	 * Finds all features of a given document.
+	 */
+	static DocumentFeatures scan(CharSequence html) {
+		DocumentFeatures result = new DocumentFeatures();
+		
+		//skip blocks start with <!-- {{{ -->
+		if(HtmlTagScanner.indexOf(html, "{{{", 0) != -1) {
+			result.features |= SKIP_BLOCK;
+		}
+		
+		if(HtmlTagScanner.indexOf(html, '\n', 0) != -1) {
+			result.features |= LINE_BREAK;
+		}
+		
+		int pos = HtmlTagScanner.indexOf(html, '<', 0);
+		while(pos != -1 && (result.features & TAGS) != TAGS) {
+			result.features |= tagFeature(html, pos + 1);
+			pos = HtmlTagScanner.indexOf(html, '<', pos + 1);
+		}
+		
+		pos = HtmlTagScanner.indexOf(html, '=', 0);
+		while(pos != -1) {
+			if(isEventAttribute(html, pos)) {
+				result.features |= EVENT;
+				break;
+			}
+			pos = HtmlTagScanner.indexOf(html, '=', pos + 1);
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Same as <code>&lt;pre</code>, <code>&lt;textarea</code>, <code>&lt;script</code>, 
+	 * <code>&lt;style</code> start of {@link HtmlCompressor#prePattern} and other patterns,
+	 * or <code>&lt;![</code> and <code>&lt;!--[</code> start of {@link HtmlCompressor#condCommentPattern}.
+	 * 
+	 * @param pos position after <code>&lt;</code>
+	 */
+	private static int tagFeature(CharSequence html, int pos) {
+		if(pos >= html.length()) {
+			return 0;
+		}
+		switch(html.charAt(pos)) {
+			case '!':
+				return HtmlTagScanner.startsWith(html, "[", pos + 1) || HtmlTagScanner.startsWith(html, "--[", pos + 1) ? COND_COMMENT : 0;
+			case 'p':
+			case 'P':
+				return regionMatches(html, pos, "pre") ? PRE : 0;
+			case 't':
+			case 'T':
+				return regionMatches(html, pos, "textarea") ? TEXTAREA : 0;
+			case 's':
+			case 'S':
+				if(regionMatches(html, pos, "script")) {
+					return SCRIPT;
+				}
+				return regionMatches(html, pos, "style") ? STYLE : 0;
+			default:
+				return 0;
+		}
+	}
+	
+	/**
+	 * Checks if an equals sign at a given position follows <code>\son[a-z]+\s*</code>, 
+	 * same as the start of {@link HtmlCompressor#eventPattern1} and {@link HtmlCompressor#eventPattern2}.
+	 */
+	private static boolean isEventAttribute(CharSequence html, int equals) {
+		int nameEnd = equals;
+		while(nameEnd > 0 && isWhitespace(html.charAt(nameEnd - 1))) {
+			nameEnd--;
+		}
+		int nameStart = nameEnd;
+		while(nameStart > 0 && isLetter(html.charAt(nameStart - 1))) {
+			nameStart--;
+		}
+		return nameEnd - nameStart >= 3 && nameStart > 0 && isWhitespace(html.charAt(nameStart - 1))
+				&& regionMatches(html, nameStart, "on");
+	}
+	
+	/**
+	 * Same as <code>String.regionMatches</code> ignoring case for a whole given string.
+	 */
+	private static boolean regionMatches(CharSequence html, int pos, String str) {
+		if(html instanceof String) {
+			return ((String) html).regionMatches(true, pos, str, 0, str.length());
+		}
+		if(pos + str.length() > html.length()) {
+			return false;
+		}
+		for(int i = 0; i < str.length(); i++) {
+			char c1 = html.charAt(pos + i);
+			char c2 = str.charAt(i);
+			if(c1 != c2 && Character.toLowerCase(Character.toUpperCase(c1)) != Character.toLowerCase(Character.toUpperCase(c2))) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	boolean hasPreBlocks() {
+		return (features & PRE) != 0;
+	}
+	
+	boolean hasTextAreaBlocks() {
+		return (features & TEXTAREA) != 0;
+	}
+	
+	boolean hasScriptBlocks() {
+		return (features & SCRIPT) != 0;
+	}
+	
+	boolean hasStyleBlocks() {
+		return (features & STYLE) != 0;
+	}
+	
+	boolean hasCondComments() {
+		return (features & COND_COMMENT) != 0;
+	}
+	
+	boolean hasSkipBlocks() {
+		return (features & SKIP_BLOCK) != 0;
+	}
+	
+	boolean hasEvents() {
+		return (features & EVENT) != 0;
+	}
+	
+	boolean hasLineBreaks() {
+		return (features & LINE_BREAK) != 0;
+	}
+	
+	//same as \s
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == '\u000B';
+	}
+	
+	//same as [a-z] ignoring case
+	private static boolean isLetter(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+	
+}
@@ -0,0 +1,597 @@
+package com.googlecode.htmlcompressor.compressor;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * CSS compressor that doesn't need any external libraries and could be used by
+ * {@link HtmlCompressor} for inline CSS compression instead of {@link YuiCssCompressor}.
+ * 
+ * <p>Stylesheet is tokenized in a single pass without regular expressions, strings and
+ * <code>url()</code> values are copied as is. The compressor applies most of
+ * <a href="http://developer.yahoo.com/yui/compressor/">Yahoo YUI Compressor</a> optimizations:
+ * <ul>
+ * <li>removes comments except the ones starting with <code>/*!</code></li>
+ * <li>removes whitespace that is not needed, last semicolons in blocks and empty rules</li>
+ * <li>removes units from zero lengths (<code>0px</code> becomes <code>0</code>) and leading
+ * zeros from fractions (<code>0.5em</code> becomes <code>.5em</code>)</li>
+ * <li>shortens colors (<code>rgb(51,102,153)</code> and <code>#336699</code> become <code>#369</code>)
+ * and writes them in lower case</li>
+ * <li>shortens <code>margin:0 0 0 0</code>, <code>padding:0 0</code> and <code>border:none</code>
+ * to <code>margin:0</code>, <code>padding:0</code> and <code>border:0</code></li>
+ * </ul>
+ * 
+ * <p>This class is thread safe, one instance could be shared by any number of threads.
+ * 
+ * @see HtmlCompressor#setCssCompressor(Compressor)
+ * 
+ * @author <a href="mailto:serg472@gmail.com">Sergiy Kovalchuk</a>
+ */
+public class FastCssCompressor implements Compressor {
+	
+	private static final String[] LENGTH_UNITS = {"px", "em", "ex", "in", "cm", "mm", "pt", "pc"};
+	private static final String[] RULE_LIST_AT_RULES = {"media", "supports", "document", "-moz-document", "layer", "container"};
+	private static final String[] ZERO_SHORTHAND_PROPERTIES = {"margin", "padding"};
+	private static final String[] NONE_TO_ZERO_PROPERTIES = {"border", "border-top", "border-right", "border-bottom", "border-left", "outline", "background"};
+	
+	public FastCssCompressor() {
+	}
+	
+	@Override
+	public String compress(String source) {
+		return new Tokenizer(source).compress();
+	}
+	
+	/**
+	 * State of compression of a single stylesheet.
+	 */
+	private static class Tokenizer {
+		
+		private String css;
+		private int length;
+		private int pos = 0;
+		
+		private StringBuilder out;
+		
+		//whitespace or comment was skipped before the current token
+		private boolean pendingSpace = false;
+		
+		//semicolon that is written only if the block doesn't end right after it
+		private boolean pendingSemicolon = false;
+		
+		//block types: true for declaration blocks, false for rule lists
+		private boolean[] blocks = new boolean[16];
+		private int[] blockStarts = new int[16];
+		private int depth = 0;
+		
+		//position in the output where the current rule or declaration starts
+		private int statementStart = 0;
+		
+		//declaration value state
+		private boolean inValue = false;
+		private String property;
+		private int valueStart;
+		
+		private int parenDepth = 0;
+		
+		private Tokenizer(String css) {
+			this.css = css;
+			this.length = css.length();
+			this.out = new StringBuilder(length);
+		}
+		
+		private String compress() {
+			while(pos < length) {
+				char c = css.charAt(pos);
+				if(isWhitespace(c)) {
+					pendingSpace = true;
+					pos++;
+				} else if(c == '/' && pos + 1 < length && css.charAt(pos + 1) == '*') {
+					comment();
+				} else if(c == '"' || c == '\'') {
+					emitSpace(c);
+					string(c);
+				} else if(c == '{') {
+					openBlock();
+				} else if(c == '}') {
+					closeBlock();
+				} else if(c == ';') {
+					semicolon();
+				} else if(c == ':' && isDeclarationBlock() && !inValue && parenDepth == 0) {
+					emitSpace(c);
+					out.append(c);
+					pos++;
+					startValue();
+				} else if(c == '(') {
+					emitSpace(c);
+					openParen();
+				} else if(c == ')') {
+					emitSpace(c);
+					out.append(c);
+					parenDepth = Math.max(0, parenDepth - 1);
+					pos++;
+				} else if(inValue && c == '#') {
+					emitSpace(c);
+					color();
+				} else if(inValue && isNumberStart(c)) {
+					emitSpace(c);
+					number();
+				} else if(c == '\\' && pos + 1 < length) {
+					//escaped character
+					emitSpace(c);
+					out.append(c).append(css.charAt(pos + 1));
+					pos += 2;
+				} else {
+					emitSpace(c);
+					out.append(c);
+					pos++;
+				}
+			}
+			
+			if(inValue) {
+				finishValue();
+			}
+			return out.toString();
+		}
+		
+		/**
+		 * Writes pending semicolon and whitespace before a token that starts with a given character.
+		 */
+		private void emitSpace(char next) {
+			if(pendingSemicolon) {
+				out.append(';');
+				statementStart = out.length();
+				pendingSemicolon = false;
+				pendingSpace = false;
+				return;
+			}
+			if(pendingSpace && out.length() > statementStart && !isNoSpaceAfter(out.charAt(out.length() - 1)) && !isNoSpaceBefore(next)) {
+				out.append(' ');
+			}
+			pendingSpace = false;
+		}
+		
+		private boolean isNoSpaceAfter(char c) {
+			switch(c) {
+				case '{': case '}': case ';': case ',': case ':': case '(': case '!':
+					return true;
+				case '>': case '+': case '~':
+					return isSelector();
+				case '/':
+					return inValue;
+				default:
+					return false;
+			}
+		}
+		
+		private boolean isNoSpaceBefore(char c) {
+			switch(c) {
+				case '{': case '}': case ';': case ',': case ')': case '!':
+					return true;
+				case ':':
+					//space before a colon in a selector is a descendant combinator
+					return (isDeclarationBlock() && parenDepth == 0) || (isAtRulePrelude() && parenDepth > 0);
+				case '>': case '+': case '~':
+					return isSelector();
+				case '/':
+					return inValue;
+				default:
+					return false;
+			}
+		}
+		
+		private boolean isDeclarationBlock() {
+			return depth > 0 && blocks[depth - 1];
+		}
+		
+		private boolean isSelector() {
+			return !inValue && parenDepth == 0;
+		}
+		
+		private boolean isAtRulePrelude() {
+			return !inValue && out.length() > statementStart && out.charAt(statementStart) == '@';
+		}
+		
+		private void comment() {
+			int end = css.indexOf("*/", pos + 2);
+			end = end == -1 ? length : end + 2;
+			if(pos + 2 < length && css.charAt(pos + 2) == '!') {
+				//important comment is kept
+				emitSpace('/');
+				out.append(css, pos, end);
+				if(!inValue) {
+					statementStart = out.length();
+				}
+			} else {
+				pendingSpace = true;
+			}
+			pos = end;
+		}
+		
+		private void string(char quote) {
+			int end = pos + 1;
+			while(end < length) {
+				char c = css.charAt(end);
+				if(c == '\\') {
+					end += 2;
+				} else if(c == quote || c == '\n') {
+					end++;
+					break;
+				} else {
+					end++;
+				}
+			}
+			end = Math.min(end, length);
+			out.append(css, pos, end);
+			pos = end;
+		}
+		
+		private void openBlock() {
+			pendingSemicolon = false;
+			pendingSpace = false;
+			if(inValue) {
+				finishValue();
+			}
+			
+			boolean declarations = true;
+			if(out.length() > statementStart && out.charAt(statementStart) == '@') {
+				int nameEnd = statementStart + 1;
+				while(nameEnd < out.length() && isIdentifierChar(out.charAt(nameEnd))) {
+					nameEnd++;
+				}
+				String name = out.substring(statementStart + 1, nameEnd).toLowerCase();
+				declarations = !contains(RULE_LIST_AT_RULES, name) && !name.endsWith("keyframes");
+			}
+			
+			if(depth == blocks.length) {
+				boolean[] newBlocks = new boolean[depth * 2];
+				System.arraycopy(blocks, 0, newBlocks, 0, depth);
+				blocks = newBlocks;
+				int[] newStarts = new int[depth * 2];
+				System.arraycopy(blockStarts, 0, newStarts, 0, depth);
+				blockStarts = newStarts;
+			}
+			blocks[depth] = declarations;
+			blockStarts[depth] = statementStart;
+			depth++;
+			
+			out.append('{');
+			statementStart = out.length();
+			parenDepth = 0;
+			pos++;
+		}
+		
+		private void closeBlock() {
+			pendingSemicolon = false;
+			pendingSpace = false;
+			if(inValue) {
+				finishValue();
+			}
+			parenDepth = 0;
+			pos++;
+			
+			if(depth == 0) {
+				//unbalanced brace is kept as is
+				out.append('}');
+				statementStart = out.length();
+				return;
+			}
+			
+			depth--;
+			if(out.charAt(out.length() - 1) == '{') {
+				//remove empty rule
+				out.setLength(blockStarts[depth]);
+			} else {
+				out.append('}');
+			}
+			statementStart = out.length();
+		}
+		
+		private void semicolon() {
+			if(inValue) {
+				finishValue();
+			}
+			pos++;
+			if(parenDepth > 0) {
+				emitSpace(';');
+				out.append(';');
+				return;
+			}
+			if(out.length() == statementStart && !pendingSemicolon) {
+				//empty statement
+				pendingSpace = false;
+				return;
+			}
+			pendingSpace = false;
+			pendingSemicolon = true;
+		}
+		
+		private void openParen() {
+			int nameStart = out.length();
+			while(nameStart > 0 && isIdentifierChar(out.charAt(nameStart - 1))) {
+				nameStart--;
+			}
+			String function = out.substring(nameStart).toLowerCase();
+			
+			if(function.equals("url")) {
+				url();
+				return;
+			} else if(inValue && function.equals("rgb") && rgb(nameStart)) {
+				return;
+			}
+			
+			out.append('(');
+			parenDepth++;
+			pos++;
+		}
+		
+		/**
+		 * Copies <code>url(...)</code> value removing only whitespace around it.
+		 */
+		private void url() {
+			out.append('(');
+			pos++;
+			while(pos < length && isWhitespace(css.charAt(pos))) {
+				pos++;
+			}
+			if(pos < length && (css.charAt(pos) == '"' || css.charAt(pos) == '\'')) {
+				string(css.charAt(pos));
+				while(pos < length && isWhitespace(css.charAt(pos))) {
+					pos++;
+				}
+				if(pos < length && css.charAt(pos) == ')') {
+					out.append(')');
+					pos++;
+				}
+				return;
+			}
+			
+			int end = css.indexOf(')', pos);
+			end = end == -1 ? length : end;
+			int valueEnd = end;
+			while(valueEnd > pos && isWhitespace(css.charAt(valueEnd - 1))) {
+				valueEnd--;
+			}
+			out.append(css, pos, valueEnd);
+			if(end < length) {
+				out.append(')');
+				end++;
+			}
+			pos = end;
+		}
+		
+		/**
+		 * Replaces <code>rgb(r,g,b)</code> with a hex color if all components are integers.
+		 * 
+		 * @return <code>true</code> if the color was replaced
+		 */
+		private boolean rgb(int nameStart) {
+			int[] components = new int[3];
+			int p = pos + 1;
+			for(int i = 0; i < 3; i++) {
+				while(p < length && isWhitespace(css.charAt(p))) {
+					p++;
+				}
+				int start = p;
+				while(p < length && p - start < 3 && isDigit(css.charAt(p))) {
+					p++;
+				}
+				if(p == start || (p < length && isDigit(css.charAt(p)))) {
+					return false;
+				}
+				components[i] = Integer.parseInt(css.substring(start, p));
+				if(components[i] > 255) {
+					return false;
+				}
+				while(p < length && isWhitespace(css.charAt(p))) {
+					p++;
+				}
+				if(p == length || css.charAt(p) != (i < 2 ? ',' : ')')) {
+					return false;
+				}
+				p++;
+			}
+			
+			out.setLength(nameStart);
+			out.append('#');
+			for(int component : components) {
+				out.append(Character.forDigit(component >> 4, 16)).append(Character.forDigit(component & 15, 16));
+			}
+			shortenColor(nameStart);
+			pos = p;
+			return true;
+		}
+		
+		private void color() {
+			int start = out.length();
+			out.append('#');
+			pos++;
+			while(pos < length && isIdentifierChar(css.charAt(pos))) {
+				out.append(css.charAt(pos));
+				pos++;
+			}
+			shortenColor(start);
+		}
+		
+		/**
+		 * Shortens <code>#AABBCC</code> starting at a given output position to <code>#abc</code>.
+		 */
+		private void shortenColor(int start) {
+			int end = out.length();
+			if(end - start != 4 && end - start != 7) {
+				return;
+			}
+			for(int i = start + 1; i < end; i++) {
+				char c = out.charAt(i);
+				if(Character.digit(c, 16) == -1) {
+					return;
+				}
+				out.setCharAt(i, Character.toLowerCase(c));
+			}
+			if(end - start == 4) {
+				return;
+			}
+			for(int i = start + 1; i < end; i += 2) {
+				if(out.charAt(i) != out.charAt(i + 1)) {
+					return;
+				}
+			}
+			out.setCharAt(start + 2, out.charAt(start + 3));
+			out.setCharAt(start + 3, out.charAt(start + 5));
+			out.setLength(start + 4);
+		}
+		
+		private boolean isNumberStart(char c) {
+			if(!pendingSpace && out.length() > 0 && isIdentifierChar(out.charAt(out.length() - 1))) {
+				//part of an identifier like h1
+				return false;
+			}
+			if(property != null && property.equals("unicode-range")) {
+				return false;
+			}
+			int p = pos;
+			if((c == '-' || c == '+') && p + 1 < length) {
+				p++;
+				c = css.charAt(p);
+			}
+			return isDigit(c) || (c == '.' && p + 1 < length && isDigit(css.charAt(p + 1)));
+		}
+		
+		/**
+		 * Writes a number without leading and trailing zeros and a unit, which is removed from zero lengths.
+		 */
+		private void number() {
+			char sign = 0;
+			char c = css.charAt(pos);
+			if(c == '-' || c == '+') {
+				sign = c;
+				pos++;
+			}
+			
+			int intStart = pos;
+			while(pos < length && isDigit(css.charAt(pos))) {
+				pos++;
+			}
+			int intEnd = pos;
+			
+			int fractionStart = pos;
+			int fractionEnd = pos;
+			if(pos + 1 < length && css.charAt(pos) == '.' && isDigit(css.charAt(pos + 1))) {
+				pos++;
+				fractionStart = pos;
+				while(pos < length && isDigit(css.charAt(pos))) {
+					pos++;
+				}
+				fractionEnd = pos;
+			}
+			
+			int unitStart = pos;
+			if(pos < length && css.charAt(pos) == '%') {
+				pos++;
+			} else {
+				while(pos < length && isIdentifierChar(css.charAt(pos))) {
+					pos++;
+				}
+			}
+			int unitEnd = pos;
+			
+			//strip zeros
+			while(intStart < intEnd && css.charAt(intStart) == '0') {
+				intStart++;
+			}
+			while(fractionEnd > fractionStart && css.charAt(fractionEnd - 1) == '0') {
+				fractionEnd--;
+			}
+			
+			if(intStart == intEnd && fractionStart == fractionEnd) {
+				out.append('0');
+				//unitless zero in flex shorthand is a flex factor, not a length
+				if(parenDepth > 0 || !isLengthUnit(unitStart, unitEnd) || "flex".equals(property)) {
+					out.append(css, unitStart, unitEnd);
+				}
+				return;
+			}
+			
+			if(sign != 0) {
+				out.append(sign);
+			}
+			out.append(css, intStart, intEnd);
+			if(fractionStart < fractionEnd) {
+				out.append('.').append(css, fractionStart, fractionEnd);
+			}
+			out.append(css, unitStart, unitEnd);
+		}
+		
+		private boolean isLengthUnit(int start, int end) {
+			for(String unit : LENGTH_UNITS) {
+				if(end - start == unit.length() && css.regionMatches(true, start, unit, 0, unit.length())) {
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		private void startValue() {
+			int nameStart = statementStart;
+			while(nameStart < out.length() && isWhitespace(out.charAt(nameStart))) {
+				nameStart++;
+			}
+			property = out.substring(nameStart, out.length() - 1).toLowerCase();
+			valueStart = out.length();
+			inValue = true;
+		}
+		
+		/**
+		 * Shortens a whole declaration value once it is written.
+		 */
+		private void finishValue() {
+			if(contains(ZERO_SHORTHAND_PROPERTIES, property)) {
+				String value = out.substring(valueStart);
+				if(value.equals("0 0 0 0") || value.equals("0 0 0") || value.equals("0 0")) {
+					out.setLength(valueStart + 1);
+				}
+			} else if(contains(NONE_TO_ZERO_PROPERTIES, property)) {
+				if(out.length() - valueStart == 4 && out.substring(valueStart).equalsIgnoreCase("none")) {
+					out.setLength(valueStart);
+					out.append('0');
+				}
+			}
+			inValue = false;
+			property = null;
+			parenDepth = 0;
+		}
+	}
+	
+	private static boolean contains(String[] array, String value) {
+		for(String item : array) {
+			if(item.equals(value)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+	}
+	
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+	
+	private static boolean isIdentifierChar(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-' || c == '_' || c >= 0x80;
+	}
+	
+}
@@ -0,0 +1,373 @@
+package com.googlecode.htmlcompressor.compressor;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * JavaScript compressor that doesn't need any external libraries and could be used by
+ * {@link HtmlCompressor} for inline JavaScript compression instead of {@link YuiJavaScriptCompressor}
+ * or {@link ClosureJavaScriptCompressor}.
+ * 
+ * <p>Script is tokenized in a single pass and only comments and whitespace are removed,
+ * names and code are never changed, so results are bigger than the ones of other compressors,
+ * but compression takes microseconds. Strings, template literals and regular expression
+ * literals are copied as is. Line breaks are kept wherever automatic semicolon insertion
+ * could depend on them. Comments starting with <code>/*!</code> and conditional compilation
+ * comments are kept.
+ * 
+ * <p>This class is thread safe, one instance could be shared by any number of threads.
+ * 
+ * @see HtmlCompressor#setJavaScriptCompressor(Compressor)
+ * 
+ * @author <a href="mailto:serg472@gmail.com">Sergiy Kovalchuk</a>
+ */
+public class FastJavaScriptCompressor implements Compressor {
+	
+	//keywords after which a slash starts a regular expression
+	private static final Set<String> REGEX_KEYWORDS = new HashSet<String>(Arrays.asList(
+			"return", "typeof", "instanceof", "in", "of", "new", "delete", "void", "throw", "case", "do", "else", "yield", "await"));
+	
+	//keywords with a condition in parentheses that is followed by a statement
+	private static final Set<String> CONDITION_KEYWORDS = new HashSet<String>(Arrays.asList("if", "while", "for", "with"));
+	
+	public FastJavaScriptCompressor() {
+	}
+	
+	@Override
+	public String compress(String source) {
+		return new Tokenizer(source).compress();
+	}
+	
+	/**
+	 * State of compression of a single script.
+	 */
+	private static class Tokenizer {
+		
+		private String js;
+		private int length;
+		private int pos = 0;
+		
+		private StringBuilder out;
+		
+		//whitespace or comment was skipped before the current token
+		private boolean pendingSpace = false;
+		private boolean pendingLineBreak = false;
+		
+		//slash at the current position starts a regular expression, not a division
+		private boolean regexAllowed = true;
+		
+		//for each open parenthesis: it closes a condition of if, while, for or with
+		private boolean[] conditions = new boolean[16];
+		private int parenDepth = 0;
+		
+		private Tokenizer(String js) {
+			this.js = js;
+			this.length = js.length();
+			this.out = new StringBuilder(length);
+		}
+		
+		private String compress() {
+			while(pos < length) {
+				char c = js.charAt(pos);
+				if(isLineTerminator(c)) {
+					pendingLineBreak = true;
+					pos++;
+				} else if(isWhitespace(c)) {
+					pendingSpace = true;
+					pos++;
+				} else if(c == '/' && pos + 1 < length && js.charAt(pos + 1) == '/') {
+					lineComment();
+				} else if(c == '/' && pos + 1 < length && js.charAt(pos + 1) == '*') {
+					blockComment();
+				} else if(c == '"' || c == '\'') {
+					emitSpace(c);
+					copy(stringEnd(pos));
+					regexAllowed = false;
+				} else if(c == '`') {
+					emitSpace(c);
+					copy(templateEnd(pos));
+					regexAllowed = false;
+				} else if(c == '/' && regexAllowed) {
+					emitSpace(c);
+					copy(regexEnd(pos));
+					regexAllowed = false;
+				} else if(isIdentifierChar(c)) {
+					emitSpace(c);
+					word();
+				} else if(c == '.' && pos + 1 < length && isDigit(js.charAt(pos + 1))) {
+					//number like .5 starts a statement, unlike a property access
+					emitSpace('0');
+					word();
+				} else {
+					emitSpace(c);
+					punctuator(c);
+				}
+			}
+			return out.toString();
+		}
+		
+		/**
+		 * Writes whitespace that was skipped before a token starting with a given character
+		 * if the token would be read differently without it.
+		 */
+		private void emitSpace(char next) {
+			if(out.length() > 0 && (pendingSpace || pendingLineBreak)) {
+				char last = out.charAt(out.length() - 1);
+				if(pendingLineBreak && canEndStatement(last) && canStartStatement(next)) {
+					//line break might be needed for automatic semicolon insertion
+					out.append('\n');
+				} else if(isSpaceNeeded(last, next)) {
+					out.append(' ');
+				}
+			}
+			pendingSpace = false;
+			pendingLineBreak = false;
+		}
+		
+		private boolean isSpaceNeeded(char last, char next) {
+			if(isIdentifierChar(last) && (isIdentifierChar(next) || next == '.')) {
+				//keeps "1 .toString()" apart too
+				return true;
+			}
+			return (last == '+' && next == '+') || (last == '-' && next == '-')
+					|| (last == '/' && (next == '/' || next == '*'))
+					|| (last == '<' && next == '!') || (last == '-' && next == '>');
+		}
+		
+		private boolean canEndStatement(char c) {
+			return isIdentifierChar(c) || c == ')' || c == ']' || c == '}' || c == '"' || c == '\'' || c == '`'
+					|| c == '/' || c == '+' || c == '-';
+		}
+		
+		private boolean canStartStatement(char c) {
+			return isIdentifierChar(c) || c == '(' || c == '[' || c == '{' || c == '"' || c == '\'' || c == '`'
+					|| c == '/' || c == '+' || c == '-' || c == '!' || c == '~' || c == '@';
+		}
+		
+		private void lineComment() {
+			int end = pos + 2;
+			while(end < length && !isLineTerminator(js.charAt(end))) {
+				end++;
+			}
+			pos = end;
+			pendingSpace = true;
+		}
+		
+		private void blockComment() {
+			int end = js.indexOf("*/", pos + 2);
+			end = end == -1 ? length : end + 2;
+			char type = pos + 2 < length ? js.charAt(pos + 2) : 0;
+			if(type == '!' || type == '@') {
+				//important and conditional compilation comments are kept
+				emitSpace('/');
+				copy(end);
+				return;
+			}
+			for(int i = pos + 2; i < end; i++) {
+				if(isLineTerminator(js.charAt(i))) {
+					//comment with a line break is a line break
+					pendingLineBreak = true;
+					break;
+				}
+			}
+			pendingSpace = true;
+			pos = end;
+		}
+		
+		/**
+		 * Copies source up to a given position to the output.
+		 */
+		private void copy(int end) {
+			out.append(js, pos, end);
+			pos = end;
+		}
+		
+		private int stringEnd(int start) {
+			char quote = js.charAt(start);
+			int end = start + 1;
+			while(end < length) {
+				char c = js.charAt(end);
+				if(c == '\\') {
+					//line continuation could be a CRLF pair
+					end += js.startsWith("\r\n", end + 1) ? 3 : 2;
+				} else if(c == quote || c == '\n') {
+					return end + 1;
+				} else {
+					end++;
+				}
+			}
+			return length;
+		}
+		
+		/**
+		 * Returns the end of a template literal, substitutions are copied without changes.
+		 */
+		private int templateEnd(int start) {
+			int end = start + 1;
+			while(end < length) {
+				char c = js.charAt(end);
+				if(c == '\\') {
+					end += 2;
+				} else if(c == '`') {
+					return end + 1;
+				} else if(c == '$' && end + 1 < length && js.charAt(end + 1) == '{') {
+					end = substitutionEnd(end + 1);
+				} else {
+					end++;
+				}
+			}
+			return length;
+		}
+		
+		private int substitutionEnd(int start) {
+			int depth = 0;
+			int end = start;
+			while(end < length) {
+				char c = js.charAt(end);
+				if(c == '"' || c == '\'') {
+					end = stringEnd(end);
+					continue;
+				} else if(c == '`') {
+					end = templateEnd(end);
+					continue;
+				} else if(c == '{') {
+					depth++;
+				} else if(c == '}') {
+					depth--;
+					if(depth == 0) {
+						return end + 1;
+					}
+				}
+				end++;
+			}
+			return length;
+		}
+		
+		/**
+		 * Returns the end of a regular expression literal including its flags.
+		 */
+		private int regexEnd(int start) {
+			boolean inClass = false;
+			int end = start + 1;
+			while(end < length) {
+				char c = js.charAt(end);
+				if(c == '\\') {
+					end += 2;
+					continue;
+				} else if(isLineTerminator(c)) {
+					//not a regular expression, copy the rest of the line as is
+					return end;
+				} else if(c == '[') {
+					inClass = true;
+				} else if(c == ']') {
+					inClass = false;
+				} else if(c == '/' && !inClass) {
+					end++;
+					break;
+				}
+				end++;
+			}
+			while(end < length && isIdentifierChar(js.charAt(end))) {
+				end++;
+			}
+			return Math.min(end, length);
+		}
+		
+		/**
+		 * Copies an identifier, a keyword or a number.
+		 */
+		private void word() {
+			int start = pos;
+			boolean number = isDigit(js.charAt(pos)) || js.charAt(pos) == '.';
+			int end = pos + 1;
+			while(end < length) {
+				char c = js.charAt(end);
+				if(isIdentifierChar(c) || (number && c == '.')) {
+					end++;
+				} else if(number && (c == '+' || c == '-') && (js.charAt(end - 1) == 'e' || js.charAt(end - 1) == 'E')) {
+					//exponent sign
+					end++;
+				} else {
+					break;
+				}
+			}
+			copy(end);
+			regexAllowed = !number && end - start <= 10 && REGEX_KEYWORDS.contains(js.substring(start, end));
+		}
+		
+		private void punctuator(char c) {
+			if(c == '(') {
+				openParen();
+			} else if(c == ')' && parenDepth > 0) {
+				//statement after a condition could start with a regular expression
+				parenDepth--;
+				regexAllowed = conditions[parenDepth];
+				out.append(c);
+				pos++;
+				return;
+			}
+			
+			out.append(c);
+			pos++;
+			if(c == ')' || c == ']') {
+				regexAllowed = false;
+			} else if((c == '+' || c == '-') && pos < length && js.charAt(pos) == c) {
+				//increment and decrement are followed by an operator
+				out.append(c);
+				pos++;
+				regexAllowed = false;
+			} else {
+				regexAllowed = true;
+			}
+		}
+		
+		private void openParen() {
+			int wordStart = out.length();
+			while(wordStart > 0 && isIdentifierChar(out.charAt(wordStart - 1))) {
+				wordStart--;
+			}
+			boolean condition = out.length() - wordStart <= 5 && (wordStart == 0 || out.charAt(wordStart - 1) != '.')
+					&& CONDITION_KEYWORDS.contains(out.substring(wordStart));
+			
+			if(parenDepth == conditions.length) {
+				boolean[] newConditions = new boolean[parenDepth * 2];
+				System.arraycopy(conditions, 0, newConditions, 0, parenDepth);
+				conditions = newConditions;
+			}
+			conditions[parenDepth++] = condition;
+		}
+	}
+	
+	private static boolean isLineTerminator(char c) {
+		return c == '\n' || c == '\r' || c == '\u2028' || c == '\u2029';
+	}
+	
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\u000B' || c == '\f' || c == '\u00A0' || c == '\uFEFF';
+	}
+	
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+	
+	private static boolean isIdentifierChar(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+				|| c == '$' || c == '_' || c == '\\' || c == '#' || (c >= 0x80 && !isLineTerminator(c) && !isWhitespace(c));
+	}
+	
+}
@@ -14,15 +14,23 @@ package com.googlecode.htmlcompressor.compressor;
  * limitations under the License.
  */
 
+import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.UnaryOperator;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.mozilla.javascript.ErrorReporter;
 
+import com.googlecode.htmlcompressor.compressor.CompressionListener.BlockType;
+import com.googlecode.htmlcompressor.compressor.CompressionListener.Stage;
+
 /**
  * Class that compresses given HTML source by removing comments, extra spaces and 
  * line breaks while preserving content within &lt;pre>, &lt;textarea>, &lt;script> 
@@ -34,7 +42,8 @@ import org.mozilla.javascript.ErrorReporter;
  * <br>or any number of user defined patterns. 
  * <p>Content inside &lt;script> or &lt;style> tags could be optionally compressed using 
  * <a href="http://developer.yahoo.com/yui/compressor/">Yahoo YUI Compressor</a> or <a href="http://code.google.com/closure/compiler/">Google Closure Compiler</a>
- * libraries.
+ * libraries. CSS and JavaScript could also be compressed with built-in {@link FastCssCompressor} and 
+ * {@link FastJavaScriptCompressor} that have no dependencies.
  * 
  * @author <a href="mailto:serg472@gmail.com">Sergiy Kovalchuk</a>
  */
@@ -42,6 +51,11 @@ public class HtmlCompressor implements Compressor {
 	
 	public static final String JS_COMPRESSOR_YUI = "yui"; 
 	public static final String JS_COMPRESSOR_CLOSURE = "closure"; 
+	public static final String JS_COMPRESSOR_FAST = "fast"; 
+	public static final String JS_COMPRESSOR_TIERED = "tiered"; 
+	
+	public static final String CSS_COMPRESSOR_YUI = "yui"; 
+	public static final String CSS_COMPRESSOR_FAST = "fast"; 
 	
 	/**
 	 * Predefined pattern that matches <code>&lt;?php ... ?></code> tags. 
@@ -110,9 +124,14 @@ public class HtmlCompressor implements Compressor {
 	
 	private List<Pattern> preservePatterns = null;
 	
+	//html processing stages enabled by current settings, created on first use
+	private volatile PipelinePlan pipelinePlan = null;
+	
 	//statistics
 	private boolean generateStatistics = false;
 	private HtmlCompressorStatistics statistics = null;
+	private HtmlCompressorHistograms histograms = null;
+	private CompressionListener compressionListener = null;
 	
 	//YUICompressor settings
 	private boolean yuiJsNoMunge = false;
@@ -175,6 +194,43 @@ public class HtmlCompressor implements Compressor {
 	protected static final Pattern surroundingSpacesMaxPattern = Pattern.compile("\\s*(</?(?:" + BLOCK_TAGS_MAX.replaceAll(",", "|") + ")(?:>|[\\s/][^>]*>))\\s*", Pattern.DOTALL | Pattern.CASE_INSENSITIVE);
 	protected static final Pattern surroundingSpacesAllPattern = Pattern.compile("\\s*(<[^>]+>)\\s*", Pattern.DOTALL | Pattern.CASE_INSENSITIVE);
 	
+	//attribute rewriting rules of each setting
+	private static final AttributeRewriter.Rule[] scriptAttributeRules = {
+		AttributeRewriter.removeAttribute("script", "type", "text/javascript", "application/javascript"),
+		AttributeRewriter.removeAttribute("script", "language", "javascript")
+	};
+	private static final AttributeRewriter.Rule[] styleAttributeRules = {
+		AttributeRewriter.removeAttribute("style", "type", "text/style")
+	};
+	private static final AttributeRewriter.Rule[] linkAttributeRules = {
+		AttributeRewriter.removeAttribute("link", "type", "text/css", "text/plain").when("rel", "stylesheet", "alternate stylesheet")
+	};
+	private static final AttributeRewriter.Rule[] formAttributeRules = {
+		AttributeRewriter.removeAttribute("form", "method", "get")
+	};
+	private static final AttributeRewriter.Rule[] inputAttributeRules = {
+		AttributeRewriter.removeAttribute("input", "type", "text")
+	};
+	private static final AttributeRewriter.Rule[] booleanAttributeRules = {
+		AttributeRewriter.removeValue("checked", "selected", "disabled", "readonly")
+	};
+	private static final AttributeRewriter.Rule[] httpProtocolRules = {
+		AttributeRewriter.removeProtocol("http:", "href", "src", "cite", "action").unless("rel", "external", "alternate external")
+	};
+	private static final AttributeRewriter.Rule[] httpsProtocolRules = {
+		AttributeRewriter.removeProtocol("https:", "href", "src", "cite", "action").unless("rel", "external", "alternate external")
+	};
+
+	//rewriters of each setting, used by methods of single settings
+	private static final AttributeRewriter scriptAttributeRewriter = new AttributeRewriter(Arrays.asList(scriptAttributeRules));
+	private static final AttributeRewriter styleAttributeRewriter = new AttributeRewriter(Arrays.asList(styleAttributeRules));
+	private static final AttributeRewriter linkAttributeRewriter = new AttributeRewriter(Arrays.asList(linkAttributeRules));
+	private static final AttributeRewriter formAttributeRewriter = new AttributeRewriter(Arrays.asList(formAttributeRules));
+	private static final AttributeRewriter inputAttributeRewriter = new AttributeRewriter(Arrays.asList(inputAttributeRules));
+	private static final AttributeRewriter booleanAttributeRewriter = new AttributeRewriter(Arrays.asList(booleanAttributeRules));
+	private static final AttributeRewriter httpProtocolRewriter = new AttributeRewriter(Arrays.asList(httpProtocolRules));
+	private static final AttributeRewriter httpsProtocolRewriter = new AttributeRewriter(Arrays.asList(httpsProtocolRules));
+	
 	//patterns for searching for temporary replacements
 	protected static final Pattern tempCondCommentPattern = Pattern.compile("%%%~COMPRESS~COND~(\\d+?)~%%%");
 	protected static final Pattern tempPrePattern = Pattern.compile("%%%~COMPRESS~PRE~(\\d+?)~%%%");
@@ -185,6 +241,12 @@ public class HtmlCompressor implements Compressor {
 	protected static final Pattern tempSkipPattern = Pattern.compile("%%%~COMPRESS~SKIP~(\\d+?)~%%%");
 	protected static final Pattern tempLineBreakPattern = Pattern.compile("%%%~COMPRESS~LT~(\\d+?)~%%%");
 	
+	//methods of single attribute settings, in the order they are applied
+	private static final String[] attributeMethods = {"removeScriptAttributes", "removeStyleAttributes", "removeLinkAttributes", "removeFormAttributes", "removeInputAttributes", "simpleBooleanAttributes", "removeHttpProtocol", "removeHttpsProtocol"};
+	
+	//parameter types of methods that preserve blocks and put them back
+	private static final Class<?>[] blockHookParameters = {String.class, List.class, List.class, List.class, List.class, List.class, List.class, List.class, List.class, List.class};
+	
 	/**
 	 * The main method that compresses given HTML source and returns compressed
 	 * result.
@@ -193,10 +255,22 @@ public class HtmlCompressor implements Compressor {
 	 * @return compressed content.
 	 */
 	public String compress(String html) {
+		return compress(html, true);
+	}
+	
+	/**
+	 * Compresses given HTML source.
+	 * 
+	 * @param recordMetrics <code>false</code> if compression is a part of another one
+	 * and should not be counted by {@link CompressorMetrics} or reported to a listener
+	 */
+	String compress(String html, boolean recordMetrics) {
 		if(!enabled || html == null || html.length() == 0) {
 			return html;
 		}
 		
+		CompressionTracker tracker = recordMetrics ? CompressionTracker.start(this, html, CompressorMetrics.getActive(), histograms, compressionListener) : null;
+		
 		//calculate uncompressed statistics
 		initStatistics(html);
 
@@ -212,13 +286,26 @@ public class HtmlCompressor implements Compressor {
 		List<List<String>> userBlocks = new ArrayList<List<String>>();
 		
 		//preserve blocks
+		if(tracker != null) {
+			tracker.nextStage(Stage.PRESERVE_BLOCKS);
+		}
 		html = preserveBlocks(html, preBlocks, taBlocks, scriptBlocks, styleBlocks, eventBlocks, condCommentBlocks, skipBlocks, lineBreakBlocks, userBlocks);
+		if(tracker != null) {
+			trackPreservedBlocks(tracker, preBlocks, taBlocks, scriptBlocks, styleBlocks, eventBlocks, condCommentBlocks, skipBlocks, lineBreakBlocks, userBlocks);
+			tracker.nextStage(Stage.PROCESS_HTML);
+		}
 		
 		//process pure html
 		html = processHtml(html);
+		if(tracker != null) {
+			tracker.nextStage(Stage.PROCESS_BLOCKS);
+		}
 		
 		//process preserved blocks
 		processPreservedBlocks(preBlocks, taBlocks, scriptBlocks, styleBlocks, eventBlocks, condCommentBlocks, skipBlocks, lineBreakBlocks, userBlocks);
+		if(tracker != null) {
+			tracker.nextStage(Stage.RETURN_BLOCKS);
+		}
 		
 		//put preserved blocks back
 		html = returnBlocks(html, preBlocks, taBlocks, scriptBlocks, styleBlocks, eventBlocks, condCommentBlocks, skipBlocks, lineBreakBlocks, userBlocks);
@@ -226,8 +313,131 @@ public class HtmlCompressor implements Compressor {
 		//calculate compressed statistics
 		endStatistics(html);
 		
+		if(tracker != null) {
+			tracker.finish(html.length());
+		}
+		
 		return html;
 	}
+	
+	/**
+	 * Compresses given HTML source and appends compressed result to the given output. 
+	 * The source is read in place by the first preservation pass and the result is 
+	 * written by the last pass that puts blocks back, so neither of them is copied whole.
+	 * 
+	 * <p>If statistics generation is turned on, or a subclass overrides methods that take 
+	 * whole documents as strings, the source is converted to a string and compressed 
+	 * with {@link #compress(String)}.
+	 * 
+	 * @param html HTML content to compress, nothing is appended if it is <code>null</code>
+	 * @param out where compressed content is appended to
+	 * @throws IOException if appending to the output fails
+	 */
+	@Override
+	public void compress(CharSequence html, Appendable out) throws IOException {
+		if(html == null) {
+			return;
+		}
+		if(html.length() == 0 || !enabled) {
+			out.append(html);
+			return;
+		}
+		
+		PipelinePlan plan = getPipelinePlan();
+		if(generateStatistics || plan.documentHooksOverridden) {
+			out.append(compress(html.toString(), true));
+			return;
+		}
+		statistics = null;
+		
+		CompressionTracker tracker = CompressionTracker.start(this, html, CompressorMetrics.getActive(), histograms, compressionListener);
+		
+		//preserved block containers
+		List<String> condCommentBlocks = new ArrayList<String>();
+		List<String> preBlocks = new ArrayList<String>();
+		List<String> taBlocks = new ArrayList<String>();
+		List<String> scriptBlocks = new ArrayList<String>();
+		List<String> styleBlocks = new ArrayList<String>();
+		List<String> eventBlocks = new ArrayList<String>();
+		List<String> skipBlocks = new ArrayList<String>();
+		List<String> lineBreakBlocks = new ArrayList<String>();
+		List<List<String>> userBlocks = new ArrayList<List<String>>();
+		
+		//preserve blocks, the source is not copied if there are none
+		if(tracker != null) {
+			tracker.nextStage(Stage.PRESERVE_BLOCKS);
+		}
+		CharSequence preserved = preserveBlocks(html, preBlocks, taBlocks, scriptBlocks, styleBlocks, eventBlocks, condCommentBlocks, skipBlocks, lineBreakBlocks, userBlocks);
+		if(tracker != null) {
+			trackPreservedBlocks(tracker, preBlocks, taBlocks, scriptBlocks, styleBlocks, eventBlocks, condCommentBlocks, skipBlocks, lineBreakBlocks, userBlocks);
+			tracker.nextStage(Stage.PROCESS_HTML);
+		}
+		
+		//process pure html
+		String processed = plan.processHtmlOverridden ? processHtml(preserved.toString()) : plan.process(preserved);
+		if(tracker != null) {
+			tracker.nextStage(Stage.PROCESS_BLOCKS);
+		}
+		
+		//process preserved blocks
+		processPreservedBlocks(preBlocks, taBlocks, scriptBlocks, styleBlocks, eventBlocks, condCommentBlocks, skipBlocks, lineBreakBlocks, userBlocks);
+		if(tracker != null) {
+			tracker.nextStage(Stage.RETURN_BLOCKS);
+		}
+		
+		//put preserved blocks back straight into the output
+		int length = returnBlocks(processed, preBlocks, taBlocks, scriptBlocks, styleBlocks, eventBlocks, condCommentBlocks, skipBlocks, lineBreakBlocks, userBlocks, out);
+		
+		if(tracker != null) {
+			tracker.finish(length);
+		}
+	}
+	
+	private void trackPreservedBlocks(CompressionTracker tracker, List<String> preBlocks, List<String> taBlocks, List<String> scriptBlocks, List<String> styleBlocks, List<String> eventBlocks, List<String> condCommentBlocks, List<String> skipBlocks, List<String> lineBreakBlocks, List<List<String>> userBlocks) {
+		tracker.preservedBlocks(preBlocks);
+		tracker.preservedBlocks(taBlocks);
+		tracker.preservedBlocks(scriptBlocks);
+		tracker.preservedBlocks(styleBlocks);
+		tracker.preservedBlocks(eventBlocks);
+		tracker.preservedBlocks(condCommentBlocks);
+		tracker.preservedBlocks(skipBlocks);
+		tracker.preservedBlocks(lineBreakBlocks);
+		for(List<String> userBlock : userBlocks) {
+			tracker.preservedBlocks(userBlock);
+		}
+	}
+	
+	/**
+	 * Compresses given HTML source with a given executor. HTML is processed by one task, 
+	 * then each inline script and style block is compressed by a separate task, 
+	 * and the result is put together by one more task. No task waits for another one, 
+	 * so the calling thread is never blocked and any executor, including a single thread one, 
+	 * could be used. With {@link CompressorExecutors#newVirtualThreadExecutor()} each task 
+	 * runs on its own virtual thread on Java 21 and newer. 
+	 * 
+	 * <p>If statistics generation is turned on, or a subclass overrides {@link #processPreservedBlocks}, 
+	 * {@link #processScriptBlocks(List)} or {@link #processStyleBlocks(List)}, the whole document 
+	 * is compressed by a single task.
+	 * 
+	 * @param html HTML content to compress
+	 * @param executor executor that runs compression
+	 * @return future that completes with compressed content
+	 */
+	@Override
+	public CompletableFuture<String> compressAsync(String html, Executor executor) {
+		if(!enabled || html == null || html.length() == 0) {
+			return CompletableFuture.completedFuture(html);
+		}
+		
+		if(generateStatistics || getPipelinePlan().blockHooksOverridden) {
+			//statistics are collected by a single pass, and overridden methods expect all blocks
+			return CompletableFuture.supplyAsync(() -> compress(html), executor);
+		}
+		
+		return CompletableFuture.supplyAsync(() -> new AsyncCompression(html), executor)
+				.thenCompose(compression -> compression.compressBlocks(executor))
+				.thenApplyAsync(AsyncCompression::returnBlocks, executor);
+	}
 
 	protected void initStatistics(String html) {
 		//create stats
@@ -261,6 +471,18 @@ public class HtmlCompressor implements Compressor {
 	}
 	
 	protected String preserveBlocks(String html, List<String> preBlocks, List<String> taBlocks, List<String> scriptBlocks, List<String> styleBlocks, List<String> eventBlocks, List<String> condCommentBlocks, List<String> skipBlocks, List<String> lineBreakBlocks, List<List<String>> userBlocks) {
+		return preserveBlocks((CharSequence) html, preBlocks, taBlocks, scriptBlocks, styleBlocks, eventBlocks, condCommentBlocks, skipBlocks, lineBreakBlocks, userBlocks).toString();
+	}
+	
+	/**
+	 * Preserves blocks of a document that could be any <code>CharSequence</code>. 
+	 * 
+	 * @return the same document if nothing was preserved, or a new string
+	 */
+	private CharSequence preserveBlocks(CharSequence html, List<String> preBlocks, List<String> taBlocks, List<String> scriptBlocks, List<String> styleBlocks, List<String> eventBlocks, List<String> condCommentBlocks, List<String> skipBlocks, List<String> lineBreakBlocks, List<List<String>> userBlocks) {
+		
+		//passes that can't match anything in this document are skipped
+		DocumentFeatures features = DocumentFeatures.scan(html);
 		
 		//preserve user blocks
 		if(preservePatterns != null) {
@@ -269,349 +491,351 @@ public class HtmlCompressor implements Compressor {
 			
 				Matcher matcher = preservePatterns.get(p).matcher(html);
 				int index = 0;
-				StringBuffer sb = new StringBuffer();
+				BlockWriter writer = new BlockWriter(html, html.length());
 				while(matcher.find()) {
-					if(matcher.group(0).trim().length() > 0) {
+					if(!isBlank(html, matcher.start(), matcher.end())) {
 						userBlock.add(matcher.group(0));
-						matcher.appendReplacement(sb, MessageFormat.format(tempUserBlock, p, index++));
+						writer.placeholder(matcher.start(), matcher.end(), tempUserBlock, p, index++);
 					}
 				}
-				matcher.appendTail(sb);
-				html = sb.toString();
+				html = writer.finish();
 				userBlocks.add(userBlock);
 			}
 		}
 		
-		//preserve <!-- {{{ ---><!-- }}} ---> skip blocks
-		Matcher matcher = skipPattern.matcher(html);
+		Matcher matcher;
+		HtmlTagScanner.BlockMatcher blockMatcher;
+		BlockWriter writer;
+		int index;
 		int skipBlockIndex = 0;
-		StringBuffer sb = new StringBuffer();
-		while(matcher.find()) {
-			if(matcher.group(1).trim().length() > 0) {
-				skipBlocks.add(matcher.group(1));
-				matcher.appendReplacement(sb, MessageFormat.format(tempSkipBlock, skipBlockIndex++));
+		
+		//preserve <!-- {{{ ---><!-- }}} ---> skip blocks
+		if(features.hasSkipBlocks()) {
+			matcher = skipPattern.matcher(html);
+			writer = new BlockWriter(html, html.length());
+			while(matcher.find()) {
+				if(!isBlank(html, matcher.start(1), matcher.end(1))) {
+					skipBlocks.add(matcher.group(1));
+					writer.placeholder(matcher.start(), matcher.end(), tempSkipBlock, skipBlockIndex++);
+				}
 			}
+			html = writer.finish();
 		}
-		matcher.appendTail(sb);
-		html = sb.toString();
 		
 		//preserve conditional comments
-		HtmlCompressor condCommentCompressor = createCompressorClone(); 
-		matcher = condCommentPattern.matcher(html);
-		int index = 0;
-		sb = new StringBuffer();
-		while(matcher.find()) {
-			if(matcher.group(2).trim().length() > 0) {
-				condCommentBlocks.add(matcher.group(1) + condCommentCompressor.compress(matcher.group(2)) + matcher.group(3));
-				matcher.appendReplacement(sb, MessageFormat.format(tempCondCommentBlock, index++));
+		if(features.hasCondComments()) {
+			HtmlCompressor condCommentCompressor = null;
+			blockMatcher = HtmlTagScanner.BlockMatcher.condComments(html);
+			index = 0;
+			writer = new BlockWriter(html, html.length());
+			while(blockMatcher.find()) {
+				if(!isBlank(html, blockMatcher.contentStart(), blockMatcher.contentEnd())) {
+					if(condCommentCompressor == null) {
+						condCommentCompressor = createCompressorClone();
+					}
+					condCommentBlocks.add(blockMatcher.openingTag() + condCommentCompressor.compress(blockMatcher.content(), false) + blockMatcher.closingTag());
+					writer.placeholder(blockMatcher.start(), blockMatcher.end(), tempCondCommentBlock, index++);
+				}
 			}
+			html = writer.finish();
 		}
-		matcher.appendTail(sb);
-		html = sb.toString();
 		
 		//preserve inline events
-		matcher = eventPattern1.matcher(html);
-		index = 0;
-		sb = new StringBuffer();
-		while(matcher.find()) {
-			if(matcher.group(2).trim().length() > 0) {
-				eventBlocks.add(matcher.group(2));
-				matcher.appendReplacement(sb, "$1"+MessageFormat.format(tempEventBlock, index++)+"$3");
-			}
+		if(features.hasEvents()) {
+			html = preserveBlocks(html, eventPattern1, eventBlocks, tempEventBlock, 0);
+			//numbering continues after the first pattern
+			html = preserveBlocks(html, eventPattern2, eventBlocks, tempEventBlock, eventBlocks.size());
 		}
-		matcher.appendTail(sb);
-		html = sb.toString();
-		
-		matcher = eventPattern2.matcher(html);
-		sb = new StringBuffer();
-		while(matcher.find()) {
-			if(matcher.group(2).trim().length() > 0) {
-				eventBlocks.add(matcher.group(2));
-				matcher.appendReplacement(sb, "$1"+MessageFormat.format(tempEventBlock, index++)+"$3");
-			}
-		}
-		matcher.appendTail(sb);
-		html = sb.toString();
 		
 		//preserve PRE tags
-		matcher = prePattern.matcher(html);
-		index = 0;
-		sb = new StringBuffer();
-		while(matcher.find()) {
-			if(matcher.group(2).trim().length() > 0) {
-				preBlocks.add(matcher.group(2));
-				matcher.appendReplacement(sb, "$1"+MessageFormat.format(tempPreBlock, index++)+"$3");
-			}
+		if(features.hasPreBlocks()) {
+			html = preserveBlocks(html, "pre", preBlocks, tempPreBlock);
 		}
-		matcher.appendTail(sb);
-		html = sb.toString();
 		
 		//preserve SCRIPT tags
-		matcher = scriptPattern.matcher(html);
-		index = 0;
-		sb = new StringBuffer();
-		while(matcher.find()) {
-			//ignore empty scripts
-			if(matcher.group(2).trim().length() > 0) {
+		if(features.hasScriptBlocks()) {
+			blockMatcher = HtmlTagScanner.BlockMatcher.elements(html, "script");
+			index = 0;
+			writer = new BlockWriter(html, html.length());
+			while(blockMatcher.find()) {
+				//ignore empty scripts
+				if(!isBlank(html, blockMatcher.contentStart(), blockMatcher.contentEnd())) {
 				
-				//check type
-				String type = "";
-				Matcher typeMatcher = typeAttrPattern.matcher(matcher.group(1));
-				if(typeMatcher.find()) {
-					type = typeMatcher.group(2).toLowerCase();
-				}
+					//check type
+					String type = "";
+					Matcher typeMatcher = typeAttrPattern.matcher(blockMatcher.openingTag());
+					if(typeMatcher.find()) {
+						type = typeMatcher.group(2).toLowerCase();
+					}
+					
+					if(type.length() == 0 || type.equals("text/javascript") || type.equals("application/javascript")) {
+						//javascript block, preserve and compress with js compressor
+						scriptBlocks.add(blockMatcher.content());
+						writer.placeholder(blockMatcher.contentStart(), blockMatcher.contentEnd(), tempScriptBlock, index++);
+					} else if(type.equals("text/x-jquery-tmpl")) {
+						//jquery template, ignore so it gets compressed with the rest of html
+					} else {
+						//some custom script, preserve it inside "skip blocks" so it won't be compressed with js compressor 
+						skipBlocks.add(blockMatcher.content());
+						writer.placeholder(blockMatcher.contentStart(), blockMatcher.contentEnd(), tempSkipBlock, skipBlockIndex++);
+					}
 				
-				if(type.length() == 0 || type.equals("text/javascript") || type.equals("application/javascript")) {
-					//javascript block, preserve and compress with js compressor
-					scriptBlocks.add(matcher.group(2));
-					matcher.appendReplacement(sb, "$1"+MessageFormat.format(tempScriptBlock, index++)+"$3");
-				} else if(type.equals("text/x-jquery-tmpl")) {
-					//jquery template, ignore so it gets compressed with the rest of html
-				} else {
-					//some custom script, preserve it inside "skip blocks" so it won't be compressed with js compressor 
-					skipBlocks.add(matcher.group(2));
-					matcher.appendReplacement(sb, "$1"+MessageFormat.format(tempSkipBlock, skipBlockIndex++)+"$3");
 				}
-				
 			}
+			html = writer.finish();
 		}
-		matcher.appendTail(sb);
-		html = sb.toString();
 
 		//preserve STYLE tags
-		matcher = stylePattern.matcher(html);
-		index = 0;
-		sb = new StringBuffer();
-		while(matcher.find()) {
-			if(matcher.group(2).trim().length() > 0) {
-				styleBlocks.add(matcher.group(2));
-				matcher.appendReplacement(sb, "$1"+MessageFormat.format(tempStyleBlock, index++)+"$3");
-			}
+		if(features.hasStyleBlocks()) {
+			html = preserveBlocks(html, "style", styleBlocks, tempStyleBlock);
 		}
-		matcher.appendTail(sb);
-		html = sb.toString();
 		
 		//preserve TEXTAREA tags
-		matcher = taPattern.matcher(html);
-		index = 0;
-		sb = new StringBuffer();
-		while(matcher.find()) {
-			if(matcher.group(2).trim().length() > 0) {
-				taBlocks.add(matcher.group(2));
-				matcher.appendReplacement(sb, "$1"+MessageFormat.format(tempTextAreaBlock, index++)+"$3");
-			}
+		if(features.hasTextAreaBlocks()) {
+			html = preserveBlocks(html, "textarea", taBlocks, tempTextAreaBlock);
 		}
-		matcher.appendTail(sb);
-		html = sb.toString();
 
 		//preserve line breaks
-		if(preserveLineBreaks) {
+		if(preserveLineBreaks && features.hasLineBreaks()) {
 			matcher = lineBreakPattern.matcher(html);
 			index = 0;
-			sb = new StringBuffer();
+			writer = new BlockWriter(html, html.length());
 			while(matcher.find()) {
 				lineBreakBlocks.add(matcher.group(1));
-				matcher.appendReplacement(sb, MessageFormat.format(tempLineBreakBlock, index++));
+				writer.placeholder(matcher.start(), matcher.end(), tempLineBreakBlock, index++);
 			}
-			matcher.appendTail(sb);
-			html = sb.toString();
+			html = writer.finish();
 		}
 
 		return html;
 	}
 	
+	/**
+	 * Replaces non-blank second groups of a pattern with placeholders, 
+	 * first and third groups are left in place.
+	 * 
+	 * @param index index of the first placeholder
+	 */
+	private static CharSequence preserveBlocks(CharSequence html, Pattern pattern, List<String> blocks, String tempBlock, int index) {
+		Matcher matcher = pattern.matcher(html);
+		BlockWriter writer = new BlockWriter(html, html.length());
+		while(matcher.find()) {
+			if(!isBlank(html, matcher.start(2), matcher.end(2))) {
+				blocks.add(matcher.group(2));
+				writer.placeholder(matcher.start(2), matcher.end(2), tempBlock, index++);
+			}
+		}
+		return writer.finish();
+	}
+	
+	/**
+	 * Replaces non-blank contents of element blocks with placeholders, 
+	 * same as {@link #preserveBlocks(CharSequence, Pattern, List, String, int)} with 
+	 * {@link #prePattern} and other element patterns, but in linear time.
+	 * 
+	 * @param name lower case element name
+	 */
+	private static CharSequence preserveBlocks(CharSequence html, String name, List<String> blocks, String tempBlock) {
+		HtmlTagScanner.BlockMatcher matcher = HtmlTagScanner.BlockMatcher.elements(html, name);
+		BlockWriter writer = new BlockWriter(html, html.length());
+		int index = 0;
+		while(matcher.find()) {
+			if(!isBlank(html, matcher.contentStart(), matcher.contentEnd())) {
+				blocks.add(matcher.content());
+				writer.placeholder(matcher.contentStart(), matcher.contentEnd(), tempBlock, index++);
+			}
+		}
+		return writer.finish();
+	}
+	
+	/**
+	 * Same as <code>html.substring(start, end).trim().isEmpty()</code> without copying.
+	 */
+	private static boolean isBlank(CharSequence html, int start, int end) {
+		for(int i = start; i < end; i++) {
+			if(html.charAt(i) > ' ') {
+				return false;
+			}
+		}
+		return true;
+	}
+	
 	protected String returnBlocks(String html, List<String> preBlocks, List<String> taBlocks, List<String> scriptBlocks, List<String> styleBlocks, List<String> eventBlocks, List<String> condCommentBlocks, List<String> skipBlocks, List<String> lineBreakBlocks, List<List<String>> userBlocks) {
-
+		List<Pattern> patterns = new ArrayList<Pattern>();
+		List<List<String>> blocks = new ArrayList<List<String>>();
+		returnPasses(preBlocks, taBlocks, scriptBlocks, styleBlocks, eventBlocks, condCommentBlocks, skipBlocks, lineBreakBlocks, userBlocks, patterns, blocks);
+		
+		for(int i = 0; i < patterns.size(); i++) {
+			html = returnBlocks(html, patterns.get(i), blocks.get(i));
+		}
+		
+		return html;
+	}
+	
+	/**
+	 * Puts preserved blocks back, the last pass writes into the output.
+	 * 
+	 * @return the number of characters appended to the output
+	 */
+	private int returnBlocks(String html, List<String> preBlocks, List<String> taBlocks, List<String> scriptBlocks, List<String> styleBlocks, List<String> eventBlocks, List<String> condCommentBlocks, List<String> skipBlocks, List<String> lineBreakBlocks, List<List<String>> userBlocks, Appendable out) throws IOException {
+		List<Pattern> patterns = new ArrayList<Pattern>();
+		List<List<String>> blocks = new ArrayList<List<String>>();
+		returnPasses(preBlocks, taBlocks, scriptBlocks, styleBlocks, eventBlocks, condCommentBlocks, skipBlocks, lineBreakBlocks, userBlocks, patterns, blocks);
+		
+		int last = patterns.size() - 1;
+		for(int i = 0; i < last; i++) {
+			html = returnBlocks(html, patterns.get(i), blocks.get(i));
+		}
+		
+		if(last < 0) {
+			CompressorIO.append(out, html, 0, html.length());
+			return html.length();
+		}
+		return returnBlocks(html, patterns.get(last), blocks.get(last), out);
+	}
+	
+	/**
+	 * Collects placeholder patterns and blocks of each pass that puts blocks back, in order.
+	 */
+	private void returnPasses(List<String> preBlocks, List<String> taBlocks, List<String> scriptBlocks, List<String> styleBlocks, List<String> eventBlocks, List<String> condCommentBlocks, List<String> skipBlocks, List<String> lineBreakBlocks, List<List<String>> userBlocks, List<Pattern> patterns, List<List<String>> blocks) {
+		
+		//passes of block types that were not found are skipped
+		
 		//put line breaks back
-		if(preserveLineBreaks) {
-			Matcher matcher = tempLineBreakPattern.matcher(html);
-			StringBuffer sb = new StringBuffer();
-			while(matcher.find()) {
-				int i = Integer.parseInt(matcher.group(1));
-				if(lineBreakBlocks.size() > i) {
-					matcher.appendReplacement(sb, lineBreakBlocks.get(i));
-				}
-			}
-			matcher.appendTail(sb);
-			html = sb.toString();
+		if(preserveLineBreaks && !lineBreakBlocks.isEmpty()) {
+			patterns.add(tempLineBreakPattern);
+			blocks.add(lineBreakBlocks);
 		}
 		
 		//put TEXTAREA blocks back
-		Matcher matcher = tempTextAreaPattern.matcher(html);
-		StringBuffer sb = new StringBuffer();
-		while(matcher.find()) {
-			int i = Integer.parseInt(matcher.group(1));
-			if(taBlocks.size() > i) {
-				matcher.appendReplacement(sb, Matcher.quoteReplacement(taBlocks.get(i)));
-			}
+		if(!taBlocks.isEmpty()) {
+			patterns.add(tempTextAreaPattern);
+			blocks.add(taBlocks);
 		}
-		matcher.appendTail(sb);
-		html = sb.toString();
 		
 		//put STYLE blocks back
-		matcher = tempStylePattern.matcher(html);
-		sb = new StringBuffer();
-		while(matcher.find()) {
-			int i = Integer.parseInt(matcher.group(1));
-			if(styleBlocks.size() > i) {
-				matcher.appendReplacement(sb, Matcher.quoteReplacement(styleBlocks.get(i)));
-			}
+		if(!styleBlocks.isEmpty()) {
+			patterns.add(tempStylePattern);
+			blocks.add(styleBlocks);
 		}
-		matcher.appendTail(sb);
-		html = sb.toString();
 		
 		//put SCRIPT blocks back
-		matcher = tempScriptPattern.matcher(html);
-		sb = new StringBuffer();
-		while(matcher.find()) {
-			int i = Integer.parseInt(matcher.group(1));
-			if(scriptBlocks.size() > i) {
-				matcher.appendReplacement(sb, Matcher.quoteReplacement(scriptBlocks.get(i)));
-			}
+		if(!scriptBlocks.isEmpty()) {
+			patterns.add(tempScriptPattern);
+			blocks.add(scriptBlocks);
 		}
-		matcher.appendTail(sb);
-		html = sb.toString();
 
 		//put PRE blocks back
-		matcher = tempPrePattern.matcher(html);
-		sb = new StringBuffer();
-		while(matcher.find()) {
-			int i = Integer.parseInt(matcher.group(1));
-			if(preBlocks.size() > i) {
-				matcher.appendReplacement(sb, Matcher.quoteReplacement(preBlocks.get(i)));
-			}
+		if(!preBlocks.isEmpty()) {
+			patterns.add(tempPrePattern);
+			blocks.add(preBlocks);
 		}
-		matcher.appendTail(sb);
-		html = sb.toString();
 		
 		//put event blocks back
-		matcher = tempEventPattern.matcher(html);
-		sb = new StringBuffer();
-		while(matcher.find()) {
-			int i = Integer.parseInt(matcher.group(1));
-			if(eventBlocks.size() > i) {
-				matcher.appendReplacement(sb, Matcher.quoteReplacement(eventBlocks.get(i)));
-			}
+		if(!eventBlocks.isEmpty()) {
+			patterns.add(tempEventPattern);
+			blocks.add(eventBlocks);
 		}
-		matcher.appendTail(sb);
-		html = sb.toString();
 		
 		//put conditional comments back
-		matcher = tempCondCommentPattern.matcher(html);
-		sb = new StringBuffer();
-		while(matcher.find()) {
-			int i = Integer.parseInt(matcher.group(1));
-			if(condCommentBlocks.size() > i) {
-				matcher.appendReplacement(sb, Matcher.quoteReplacement(condCommentBlocks.get(i)));
-			}
+		if(!condCommentBlocks.isEmpty()) {
+			patterns.add(tempCondCommentPattern);
+			blocks.add(condCommentBlocks);
 		}
-		matcher.appendTail(sb);
-		html = sb.toString();
 		
 		//put skip blocks back
-		matcher = tempSkipPattern.matcher(html);
-		sb = new StringBuffer();
-		while(matcher.find()) {
-			int i = Integer.parseInt(matcher.group(1));
-			if(skipBlocks.size() > i) {
-				matcher.appendReplacement(sb, Matcher.quoteReplacement(skipBlocks.get(i)));
-			}
+		if(!skipBlocks.isEmpty()) {
+			patterns.add(tempSkipPattern);
+			blocks.add(skipBlocks);
 		}
-		matcher.appendTail(sb);
-		html = sb.toString();
 		
 		//put user blocks back
 		if(preservePatterns != null) {
 			for(int p = preservePatterns.size() - 1; p >= 0; p--) {
-				Pattern tempUserPattern = Pattern.compile("%%%~COMPRESS~USER" + p + "~(\\d+?)~%%%");
-				matcher = tempUserPattern.matcher(html);
-				sb = new StringBuffer();
-				while(matcher.find()) {
-					int i = Integer.parseInt(matcher.group(1));
-					if(userBlocks.size() > p && userBlocks.get(p).size() > i) {
-						matcher.appendReplacement(sb, Matcher.quoteReplacement(userBlocks.get(p).get(i)));
-					}
+				if(userBlocks.size() <= p || userBlocks.get(p).isEmpty()) {
+					continue;
 				}
-				matcher.appendTail(sb);
-				html = sb.toString();
+				patterns.add(Pattern.compile("%%%~COMPRESS~USER" + p + "~(\\d+?)~%%%"));
+				blocks.add(userBlocks.get(p));
 			}
 		}
+	}
+	
+	/**
+	 * Replaces placeholders found by a pattern with blocks they refer to. 
+	 * Blocks are appended as they are, without parsing them as regex replacements.
+	 */
+	private static String returnBlocks(String html, Pattern tempPattern, List<String> blocks) {
+		int capacity = html.length();
+		for(String block : blocks) {
+			capacity += block.length();
+		}
 		
-		return html;
+		Matcher matcher = tempPattern.matcher(html);
+		BlockWriter writer = new BlockWriter(html, capacity);
+		while(matcher.find()) {
+			int i = Integer.parseInt(matcher.group(1));
+			if(blocks.size() > i) {
+				writer.block(matcher.start(), matcher.end(), blocks.get(i));
+			}
+		}
+		return writer.finish().toString();
+	}
+	
+	/**
+	 * Same as {@link #returnBlocks(String, Pattern, List)}, but writes the result into the output.
+	 * 
+	 * @return the number of characters appended to the output
+	 */
+	private static int returnBlocks(String html, Pattern tempPattern, List<String> blocks, Appendable out) throws IOException {
+		int length = 0;
+		int start = 0;
+		Matcher matcher = tempPattern.matcher(html);
+		while(matcher.find()) {
+			int i = Integer.parseInt(matcher.group(1));
+			if(blocks.size() > i) {
+				String block = blocks.get(i);
+				CompressorIO.append(out, html, start, matcher.start());
+				CompressorIO.append(out, block, 0, block.length());
+				length += matcher.start() - start + block.length();
+				start = matcher.end();
+			}
+		}
+		CompressorIO.append(out, html, start, html.length());
+		return length + html.length() - start;
 	}
 	
+	/**
+	 * Runs all html processing stages enabled by current settings. 
+	 * Stages are selected once and reused until settings change, 
+	 * so disabled stages are not called at all.
+	 */
 	protected String processHtml(String html) {
 		
-		//remove comments
-		html = removeComments(html);
-		
-		//simplify doctype
-		html = simpleDoctype(html);
-		
-		//remove script attributes
-		html = removeScriptAttributes(html);
-		
-		//remove style attributes
-		html = removeStyleAttributes(html);
-		
-		//remove link attributes
-		html = removeLinkAttributes(html);
-		
-		//remove form attributes
-		html = removeFormAttributes(html);
-		
-		//remove input attributes
-		html = removeInputAttributes(html);
-		
-		//simplify boolean attributes
-		html = simpleBooleanAttributes(html);
-
-		//remove http from attributes
-		html = removeHttpProtocol(html);
-
-		//remove https from attributes
-		html = removeHttpsProtocol(html);
-		
-		//remove inter-tag spaces
-		html = removeIntertagSpaces(html);
-		
-		//remove multi whitespace characters
-		html = removeMultiSpaces(html);
-		
-		//remove spaces around equals sign and ending spaces
-		html = removeSpacesInsideTags(html);
-		
-		//remove quotes from tag attributes
-		html = removeQuotesInsideTags(html);
-		
-		//remove surrounding spaces
-		html = removeSurroundingSpaces(html);
+		html = getPipelinePlan().process(html);
 		
-		return html.trim();
+		return html;
+	}
+	
+	private PipelinePlan getPipelinePlan() {
+		PipelinePlan plan = pipelinePlan;
+		if(plan == null) {
+			//concurrent calls might create equal plans, either one could be used
+			plan = new PipelinePlan();
+			pipelinePlan = plan;
+		}
+		return plan;
 	}
 	
 	protected String removeSurroundingSpaces(String html) {
 		//remove spaces around provided tags
 		if(removeSurroundingSpaces != null) {
-			Pattern pattern;
-			if(removeSurroundingSpaces.equalsIgnoreCase(BLOCK_TAGS_MIN)) {
-				pattern = surroundingSpacesMinPattern;
-			} else if(removeSurroundingSpaces.equalsIgnoreCase(BLOCK_TAGS_MAX)) {
-				pattern = surroundingSpacesMaxPattern;
-			} if(removeSurroundingSpaces.equalsIgnoreCase(ALL_TAGS)) {
-				pattern = surroundingSpacesAllPattern;
+			if(removeSurroundingSpaces.equalsIgnoreCase(ALL_TAGS)) {
+				html = HtmlTagScanner.apply(HtmlTagScanner::removeSurroundingSpaces, html);
 			} else {
-				pattern = Pattern.compile("\\s*(</?(?:" + removeSurroundingSpaces.replaceAll(",", "|") + ")(?:>|[\\s/][^>]*>))\\s*", Pattern.DOTALL | Pattern.CASE_INSENSITIVE);
-			}
-			
-			Matcher matcher = pattern.matcher(html);
-			StringBuffer sb = new StringBuffer();
-			while(matcher.find()) {
-				matcher.appendReplacement(sb, "$1");
+				String[] tags = removeSurroundingSpaces.split(",", -1);
+				html = HtmlTagScanner.apply((source, out) -> HtmlTagScanner.removeSurroundingSpaces(source, tags, out), html);
 			}
-			matcher.appendTail(sb);
-			html = sb.toString();
-			
 		}
 		return html;
 	}
@@ -619,41 +843,17 @@ public class HtmlCompressor implements Compressor {
 	protected String removeQuotesInsideTags(String html) {
 		//remove quotes from tag attributes
 		if(removeQuotes) {
-			Matcher matcher = tagQuotePattern.matcher(html);
-			StringBuffer sb = new StringBuffer();
-			while(matcher.find()) {
-				//if quoted attribute is followed by "/" add extra space
-				if(matcher.group(3).trim().length() == 0) {
-					matcher.appendReplacement(sb, "=$2");
-				} else {
-					matcher.appendReplacement(sb, "=$2 $3");
-				}
-			}
-			matcher.appendTail(sb);
-			html = sb.toString();
-			
+			html = HtmlTagScanner.apply(HtmlTagScanner::removeQuotes, html);
 		}
 		return html;
 	}
 
 	protected String removeSpacesInsideTags(String html) {
 		//remove spaces around equals sign inside tags
-		html = tagPropertyPattern.matcher(html).replaceAll("$1=");
+		html = HtmlTagScanner.apply(HtmlTagScanner::removeSpacesAroundEquals, html);
 		
 		//remove ending spaces inside tags
-		//html = tagEndSpacePattern.matcher(html).replaceAll("$1$2");
-		Matcher matcher = tagEndSpacePattern.matcher(html);
-		StringBuffer sb = new StringBuffer();
-		while(matcher.find()) {
-			//keep space if attribute value is unquoted before trailing slash
-			if(matcher.group(2).startsWith("/") && tagLastUnquotedValuePattern.matcher(matcher.group(1)).find()) {
-				matcher.appendReplacement(sb, "$1 $2");
-			} else {
-				matcher.appendReplacement(sb, "$1$2");
-			}
-		}
-		matcher.appendTail(sb);
-		html = sb.toString();
+		html = HtmlTagScanner.apply(HtmlTagScanner::removeTagEndSpaces, html);
 		
 		return html;
 	}
@@ -661,7 +861,7 @@ public class HtmlCompressor implements Compressor {
 	protected String removeMultiSpaces(String html) {
 		//collapse multiple spaces
 		if(removeMultiSpaces) {
-			html = multispacePattern.matcher(html).replaceAll(" ");
+			html = HtmlTagScanner.apply(HtmlCompressor::collapseMultiSpaces, html);
 		}
 		return html;
 	}
@@ -669,10 +869,7 @@ public class HtmlCompressor implements Compressor {
 	protected String removeIntertagSpaces(String html) {
 		//remove inter-tag spaces
 		if(removeIntertagSpaces) {
-			html = intertagPattern_TagTag.matcher(html).replaceAll("><");
-			html = intertagPattern_TagCustom.matcher(html).replaceAll(">%%%~");
-			html = intertagPattern_CustomTag.matcher(html).replaceAll("~%%%<");
-			html = intertagPattern_CustomCustom.matcher(html).replaceAll("~%%%%%%~");
+			html = HtmlTagScanner.apply(HtmlTagScanner::removeIntertagSpaces, html);
 		}
 		return html;
 	}
@@ -680,7 +877,7 @@ public class HtmlCompressor implements Compressor {
 	protected String removeComments(String html) {
 		//remove comments
 		if(removeComments) {
-			html = commentPattern.matcher(html).replaceAll("");
+			html = HtmlTagScanner.apply(HtmlTagScanner::removeComments, html);
 		}
 		return html;
 	}
@@ -688,19 +885,24 @@ public class HtmlCompressor implements Compressor {
 	protected String simpleDoctype(String html) {
 		//simplify doctype
 		if(simpleDoctype) {
-			html = doctypePattern.matcher(html).replaceAll("<!DOCTYPE html>");
+			html = HtmlTagScanner.apply(HtmlCompressor::replaceDoctype, html);
+		}
+		return html;
+	}
+
+	protected String rewriteAttributes(String html) {
+		//remove default attributes, simplify boolean attributes and remove http(s) protocol in a single pass
+		AttributeRewriter attributeRewriter = getPipelinePlan().attributeRewriter;
+		if(attributeRewriter != null) {
+			html = attributeRewriter.rewrite(html);
 		}
 		return html;
 	}
 
 	protected String removeScriptAttributes(String html) {
-		
+		//remove type and language from script tags
 		if(removeScriptAttributes) {
-			//remove type from script tags
-			html = jsTypeAttrPattern.matcher(html).replaceAll("$1$3");
-
-			//remove language from script tags
-			html = jsLangAttrPattern.matcher(html).replaceAll("$1$3");
+			html = scriptAttributeRewriter.rewrite(html);
 		}
 		return html;
 	}
@@ -708,7 +910,7 @@ public class HtmlCompressor implements Compressor {
 	protected String removeStyleAttributes(String html) {
 		//remove type from style tags
 		if(removeStyleAttributes) {
-			html = styleTypeAttrPattern.matcher(html).replaceAll("$1$3");
+			html = styleAttributeRewriter.rewrite(html);
 		}
 		return html;
 	}
@@ -716,18 +918,7 @@ public class HtmlCompressor implements Compressor {
 	protected String removeLinkAttributes(String html) {
 		//remove type from link tags with rel=stylesheet
 		if(removeLinkAttributes) {
-			Matcher matcher = linkTypeAttrPattern.matcher(html);
-			StringBuffer sb = new StringBuffer();
-			while(matcher.find()) {
-				//if rel=stylesheet
-				if(linkRelAttrPattern.matcher(matcher.group(0)).matches()) {
-					matcher.appendReplacement(sb, "$1$3");
-				} else {
-					matcher.appendReplacement(sb, "$0");
-				}
-			}
-			matcher.appendTail(sb);
-			html = sb.toString();
+			html = linkAttributeRewriter.rewrite(html);
 		}
 		return html;
 	}
@@ -735,7 +926,7 @@ public class HtmlCompressor implements Compressor {
 	protected String removeFormAttributes(String html) {
 		//remove method from form tags
 		if(removeFormAttributes) {
-			html = formMethodAttrPattern.matcher(html).replaceAll("$1$3");
+			html = formAttributeRewriter.rewrite(html);
 		}
 		return html;
 	}
@@ -743,7 +934,7 @@ public class HtmlCompressor implements Compressor {
 	protected String removeInputAttributes(String html) {
 		//remove type from input tags
 		if(removeInputAttributes) {
-			html = inputTypeAttrPattern.matcher(html).replaceAll("$1$3");
+			html = inputAttributeRewriter.rewrite(html);
 		}
 		return html;
 	}
@@ -751,7 +942,7 @@ public class HtmlCompressor implements Compressor {
 	protected String simpleBooleanAttributes(String html) {
 		//simplify boolean attributes
 		if(simpleBooleanAttributes) {
-			html = booleanAttrPattern.matcher(html).replaceAll("$1$2$4");
+			html = booleanAttributeRewriter.rewrite(html);
 		}
 		return html;
 	}
@@ -759,18 +950,7 @@ public class HtmlCompressor implements Compressor {
 	protected String removeHttpProtocol(String html) {
 		//remove http protocol from tag attributes
 		if(removeHttpProtocol) {
-			Matcher matcher = httpProtocolPattern.matcher(html);
-			StringBuffer sb = new StringBuffer();
-			while(matcher.find()) {
-				//if rel!=external
-				if(!relExternalPattern.matcher(matcher.group(0)).matches()) {
-					matcher.appendReplacement(sb, "$1$2");
-				} else {
-					matcher.appendReplacement(sb, "$0");
-				}
-			}
-			matcher.appendTail(sb);
-			html = sb.toString();
+			html = httpProtocolRewriter.rewrite(html);
 		}
 		return html;
 	}
@@ -778,22 +958,39 @@ public class HtmlCompressor implements Compressor {
 	protected String removeHttpsProtocol(String html) {
 		//remove https protocol from tag attributes
 		if(removeHttpsProtocol) {
-			Matcher matcher = httpsProtocolPattern.matcher(html);
-			StringBuffer sb = new StringBuffer();
-			while(matcher.find()) {
-				//if rel!=external
-				if(!relExternalPattern.matcher(matcher.group(0)).matches()) {
-					matcher.appendReplacement(sb, "$1$2");
-				} else {
-					matcher.appendReplacement(sb, "$0");
-				}
-			}
-			matcher.appendTail(sb);
-			html = sb.toString();
+			html = httpsProtocolRewriter.rewrite(html);
 		}
 		return html;
 	}
 	
+	private static boolean collapseMultiSpaces(CharSequence html, StringBuilder out) {
+		return replaceAll(multispacePattern, " ", html, out);
+	}
+	
+	private static boolean replaceDoctype(CharSequence html, StringBuilder out) {
+		return replaceAll(doctypePattern, "<!DOCTYPE html>", html, out);
+	}
+	
+	/**
+	 * Same as {@link Matcher#replaceAll(String)} with a literal replacement, 
+	 * but appends the result to a buffer.
+	 * 
+	 * @return <code>false</code> if nothing is found, in which case nothing is appended
+	 */
+	private static boolean replaceAll(Pattern pattern, String replacement, CharSequence html, StringBuilder out) {
+		Matcher matcher = pattern.matcher(html);
+		if(!matcher.find()) {
+			return false;
+		}
+		int start = 0;
+		do {
+			out.append(html, start, matcher.start()).append(replacement);
+			start = matcher.end();
+		} while(matcher.find());
+		out.append(html, start, html.length());
+		return true;
+	}
+	
 	protected void processPreservedBlocks(List<String> preBlocks, List<String> taBlocks, List<String> scriptBlocks, List<String> styleBlocks, List<String> eventBlocks, List<String> condCommentBlocks, List<String> skipBlocks, List<String> lineBreakBlocks, List<List<String>> userBlocks) {
 		processPreBlocks(preBlocks);
 		processTextAreaBlocks(taBlocks);
@@ -949,20 +1146,7 @@ public class HtmlCompressor implements Compressor {
 	
 	protected String compressJavaScript(String source) {
 		
-		//set default javascript compressor
-		if(javaScriptCompressor == null) {
-			YuiJavaScriptCompressor yuiJsCompressor = new YuiJavaScriptCompressor();
-			yuiJsCompressor.setNoMunge(yuiJsNoMunge);
-			yuiJsCompressor.setPreserveAllSemiColons(yuiJsPreserveAllSemiColons);
-			yuiJsCompressor.setDisableOptimizations(yuiJsDisableOptimizations);
-			yuiJsCompressor.setLineBreak(yuiJsLineBreak);
-			
-			if(yuiErrorReporter != null) {
-				yuiJsCompressor.setErrorReporter(yuiErrorReporter);
-			}
-			
-			javaScriptCompressor = yuiJsCompressor;
-		}
+		initJavaScriptCompressor();
 		
 		//detect CDATA wrapper
 		boolean cdataWrapper = false;
@@ -972,7 +1156,7 @@ public class HtmlCompressor implements Compressor {
 			source = matcher.group(1);
 		}
 		
-		String result = javaScriptCompressor.compress(source);
+		String result = CompressionTracker.compressBlock(this, javaScriptCompressor, BlockType.JAVASCRIPT, source, histograms, compressionListener);
 		
 		if(cdataWrapper) {
 			result = "<![CDATA[" + result + "]]>";
@@ -982,15 +1166,30 @@ public class HtmlCompressor implements Compressor {
 		
 	}
 	
+	private void initJavaScriptCompressor() {
+		//set default javascript compressor
+		if(javaScriptCompressor == null) {
+			if(isYuiCompressorAvailable()) {
+				YuiJavaScriptCompressor yuiJsCompressor = new YuiJavaScriptCompressor();
+				yuiJsCompressor.setNoMunge(yuiJsNoMunge);
+				yuiJsCompressor.setPreserveAllSemiColons(yuiJsPreserveAllSemiColons);
+				yuiJsCompressor.setDisableOptimizations(yuiJsDisableOptimizations);
+				yuiJsCompressor.setLineBreak(yuiJsLineBreak);
+				
+				if(yuiErrorReporter != null) {
+					yuiJsCompressor.setErrorReporter(yuiErrorReporter);
+				}
+				
+				javaScriptCompressor = yuiJsCompressor;
+			} else {
+				javaScriptCompressor = new FastJavaScriptCompressor();
+			}
+		}
+	}
+	
 	protected String compressCssStyles(String source) {
 		
-		//set default css compressor
-		if(cssCompressor == null) {
-			YuiCssCompressor yuiCssCompressor = new YuiCssCompressor();
-			yuiCssCompressor.setLineBreak(yuiCssLineBreak);
-			
-			cssCompressor = yuiCssCompressor;
-		}
+		initCssCompressor();
 		
 		//detect CDATA wrapper
 		boolean cdataWrapper = false;
@@ -1000,7 +1199,7 @@ public class HtmlCompressor implements Compressor {
 			source = matcher.group(1);
 		}
 		
-		String result = cssCompressor.compress(source);
+		String result = CompressionTracker.compressBlock(this, cssCompressor, BlockType.CSS, source, histograms, compressionListener);
 		
 		if(cdataWrapper) {
 			result = "<![CDATA[" + result + "]]>";
@@ -1010,10 +1209,40 @@ public class HtmlCompressor implements Compressor {
 		
 	}
 	
+	private void initCssCompressor() {
+		//set default css compressor
+		if(cssCompressor == null) {
+			if(isYuiCompressorAvailable()) {
+				YuiCssCompressor yuiCssCompressor = new YuiCssCompressor();
+				yuiCssCompressor.setLineBreak(yuiCssLineBreak);
+				
+				cssCompressor = yuiCssCompressor;
+			} else {
+				cssCompressor = new FastCssCompressor();
+			}
+		}
+	}
+	
+	/**
+	 * Checks if YUI Compressor library is on the classpath.
+	 */
+	protected boolean isYuiCompressorAvailable() {
+		try {
+			Class.forName("com.yahoo.platform.yui.compressor.CssCompressor", false, HtmlCompressor.class.getClassLoader());
+			return true;
+		} catch (ClassNotFoundException e) {
+			return false;
+		} catch (LinkageError e) {
+			return false;
+		}
+	}
+	
 	protected HtmlCompressor createCompressorClone() {
 		HtmlCompressor clone = new HtmlCompressor();
 		clone.setJavaScriptCompressor(javaScriptCompressor);
 		clone.setCssCompressor(cssCompressor);
+		clone.setHistograms(histograms);
+		clone.setCompressionListener(compressionListener);
 		clone.setRemoveComments(removeComments);
 		clone.setRemoveMultiSpaces(removeMultiSpaces);
 		clone.setRemoveIntertagSpaces(removeIntertagSpaces);
@@ -1262,6 +1491,7 @@ public class HtmlCompressor implements Compressor {
 	 */
 	public void setRemoveQuotes(boolean removeQuotes) {
 		this.removeQuotes = removeQuotes;
+		pipelinePlan = null;
 	}
 
 	/**
@@ -1300,6 +1530,7 @@ public class HtmlCompressor implements Compressor {
 	 */
 	public void setRemoveComments(boolean removeComments) {
 		this.removeComments = removeComments;
+		pipelinePlan = null;
 	}
 
 	/**
@@ -1320,6 +1551,7 @@ public class HtmlCompressor implements Compressor {
 	 */
 	public void setRemoveMultiSpaces(boolean removeMultiSpaces) {
 		this.removeMultiSpaces = removeMultiSpaces;
+		pipelinePlan = null;
 	}
 
 	/**
@@ -1343,6 +1575,7 @@ public class HtmlCompressor implements Compressor {
 	 */
 	public void setRemoveIntertagSpaces(boolean removeIntertagSpaces) {
 		this.removeIntertagSpaces = removeIntertagSpaces;
+		pipelinePlan = null;
 	}
 
 	/**
@@ -1427,14 +1660,18 @@ public class HtmlCompressor implements Compressor {
 	 * <p>HtmlCompressor currently 
 	 * comes with basic implementations for <a href="http://developer.yahoo.com/yui/compressor/">Yahoo YUI Compressor</a> (called {@link YuiJavaScriptCompressor})
 	 * and <a href="http://code.google.com/closure/compiler/">Google Closure Compiler</a> (called {@link ClosureJavaScriptCompressor}) that should be enough for most cases, 
-	 * but users can also create their own JavaScript compressors for custom needs.
+	 * as well as built-in {@link FastJavaScriptCompressor} that only removes comments and whitespace but is many times faster, 
+	 * but users can also create their own JavaScript compressors for custom needs. {@link TieredCompressor} combines 
+	 * a fast compressor on the request path with a slow one that runs in the background.
 	 * 
-	 * <p>If no compressor is set {@link YuiJavaScriptCompressor} will be used by default.  
+	 * <p>If no compressor is set {@link YuiJavaScriptCompressor} will be used by default, 
+	 * or {@link FastJavaScriptCompressor} if YUI Compressor library is not on the classpath.  
 	 * 
 	 * @param javaScriptCompressor {@link Compressor} implementation that will be used for inline JavaScript compression
 	 * 
  	 * @see YuiJavaScriptCompressor
  	 * @see ClosureJavaScriptCompressor
+ 	 * @see FastJavaScriptCompressor
 	 * @see <a href="http://developer.yahoo.com/yui/compressor/">Yahoo YUI Compressor</a>
 	 * @see <a href="http://code.google.com/closure/compiler/">Google Closure Compiler</a>
 	 */
@@ -1461,14 +1698,17 @@ public class HtmlCompressor implements Compressor {
 	 * to compress inline CSS in HTML. 
 	 * 
 	 * <p>HtmlCompressor currently 
-	 * comes with basic implementation for <a href="http://developer.yahoo.com/yui/compressor/">Yahoo YUI Compressor</a> (called {@link YuiCssCompressor}), 
+	 * comes with basic implementation for <a href="http://developer.yahoo.com/yui/compressor/">Yahoo YUI Compressor</a> (called {@link YuiCssCompressor}) 
+	 * and built-in {@link FastCssCompressor} that needs no external libraries and is several times faster, 
 	 * but users can also create their own CSS compressors for custom needs. 
 	 * 
-	 * <p>If no compressor is set {@link YuiCssCompressor} will be used by default.  
+	 * <p>If no compressor is set {@link YuiCssCompressor} will be used by default, 
+	 * or {@link FastCssCompressor} if YUI Compressor library is not on the classpath.  
 	 * 
 	 * @param cssCompressor {@link Compressor} implementation that will be used for inline CSS compression
 	 * 
  	 * @see YuiCssCompressor
+ 	 * @see FastCssCompressor
 	 * @see <a href="http://developer.yahoo.com/yui/compressor/">Yahoo YUI Compressor</a>
 	 */
 	public void setCssCompressor(Compressor cssCompressor) {
@@ -1492,6 +1732,7 @@ public class HtmlCompressor implements Compressor {
 	 */
 	public void setSimpleDoctype(boolean simpleDoctype) {
 		this.simpleDoctype = simpleDoctype;
+		pipelinePlan = null;
 	}
 
 	/**
@@ -1517,6 +1758,7 @@ public class HtmlCompressor implements Compressor {
 	 */
 	public void setRemoveScriptAttributes(boolean removeScriptAttributes) {
 		this.removeScriptAttributes = removeScriptAttributes;
+		pipelinePlan = null;
 	}
 
 	/**
@@ -1535,6 +1777,7 @@ public class HtmlCompressor implements Compressor {
 	 */
 	public void setRemoveStyleAttributes(boolean removeStyleAttributes) {
 		this.removeStyleAttributes = removeStyleAttributes;
+		pipelinePlan = null;
 	}
 
 	/**
@@ -1559,6 +1802,7 @@ public class HtmlCompressor implements Compressor {
 	 */
 	public void setRemoveLinkAttributes(boolean removeLinkAttributes) {
 		this.removeLinkAttributes = removeLinkAttributes;
+		pipelinePlan = null;
 	}
 
 	/**
@@ -1577,6 +1821,7 @@ public class HtmlCompressor implements Compressor {
 	 */
 	public void setRemoveFormAttributes(boolean removeFormAttributes) {
 		this.removeFormAttributes = removeFormAttributes;
+		pipelinePlan = null;
 	}
 
 	/**
@@ -1594,6 +1839,7 @@ public class HtmlCompressor implements Compressor {
 	 */
 	public void setRemoveInputAttributes(boolean removeInputAttributes) {
 		this.removeInputAttributes = removeInputAttributes;
+		pipelinePlan = null;
 	}
 
 	/**
@@ -1622,6 +1868,7 @@ public class HtmlCompressor implements Compressor {
 	 */
 	public void setSimpleBooleanAttributes(boolean simpleBooleanAttributes) {
 		this.simpleBooleanAttributes = simpleBooleanAttributes;
+		pipelinePlan = null;
 	}
 
 	/**
@@ -1672,6 +1919,7 @@ public class HtmlCompressor implements Compressor {
 	 */
 	public void setRemoveHttpProtocol(boolean removeHttpProtocol) {
 		this.removeHttpProtocol = removeHttpProtocol;
+		pipelinePlan = null;
 	}
 
 	/**
@@ -1700,6 +1948,7 @@ public class HtmlCompressor implements Compressor {
 	 */
 	public void setRemoveHttpsProtocol(boolean removeHttpsProtocol) {
 		this.removeHttpsProtocol = removeHttpsProtocol;
+		pipelinePlan = null;
 	}
 
 	/**
@@ -1738,6 +1987,59 @@ public class HtmlCompressor implements Compressor {
 	public HtmlCompressorStatistics getStatistics() {
 		return statistics;
 	}
+	
+	/**
+	 * Returns histograms that compression time and document size are recorded into.
+	 * 
+	 * @return histograms, or <code>null</code> if nothing is recorded
+	 * 
+	 * @see #setHistograms(HtmlCompressorHistograms)
+	 */
+	public HtmlCompressorHistograms getHistograms() {
+		return histograms;
+	}
+	
+	/**
+	 * Sets histograms that compression time of each document, each inline script and style block,
+	 * and size of each document are recorded into. Unlike statistics, histograms are thread safe 
+	 * and could be shared by any number of compressors.
+	 * 
+	 * <p>Default is <code>null</code>, nothing is recorded.
+	 * 
+	 * @param histograms histograms to record into, or <code>null</code> to stop recording
+	 * 
+	 * @see HtmlCompressorHistograms
+	 */
+	public void setHistograms(HtmlCompressorHistograms histograms) {
+		this.histograms = histograms;
+	}
+	
+	/**
+	 * Returns listener that is notified about progress of compression.
+	 * 
+	 * @return listener, or <code>null</code> if nothing is notified
+	 * 
+	 * @see #setCompressionListener(CompressionListener)
+	 */
+	public CompressionListener getCompressionListener() {
+		return compressionListener;
+	}
+	
+	/**
+	 * Sets listener that is notified when each document, each stage of its compression 
+	 * and each inline script and style block starts or completes. Listener is called 
+	 * on the thread that does the work, so it should be thread safe if this compressor 
+	 * is shared by several threads or compresses asynchronously.
+	 * 
+	 * <p>Default is <code>null</code>, nothing is notified.
+	 * 
+	 * @param compressionListener listener to notify, or <code>null</code> to stop notifying
+	 * 
+	 * @see CompressionListener
+	 */
+	public void setCompressionListener(CompressionListener compressionListener) {
+		this.compressionListener = compressionListener;
+	}
 
 	/**
 	 * Returns <code>true</code> if line breaks will be preserved.
@@ -1783,6 +2085,335 @@ public class HtmlCompressor implements Compressor {
 			tagList = null;
 		}
 		this.removeSurroundingSpaces = tagList;
+		pipelinePlan = null;
+	}
+	
+	/**
+	 * Copies a document replacing some of its regions with placeholders or preserved blocks. 
+	 * Unchanged text is copied once, and nothing is copied if no region is replaced.
+	 */
+	private static class BlockWriter {
+		
+		private CharSequence html;
+		private int capacity;
+		
+		private StringBuilder sb = null;
+		private int start = 0;
+		
+		private BlockWriter(CharSequence html, int capacity) {
+			this.html = html;
+			this.capacity = capacity;
+		}
+		
+		/**
+		 * Replaces a region with a placeholder made from a template with 
+		 * <code>{0,number,#}</code> style arguments, same as {@link MessageFormat} would.
+		 */
+		private void placeholder(int from, int to, String template, int... args) {
+			copyTo(from);
+			int pos = 0;
+			int open = template.indexOf('{');
+			while(open != -1) {
+				sb.append(template, pos, open).append(args[template.charAt(open + 1) - '0']);
+				pos = template.indexOf('}', open) + 1;
+				open = template.indexOf('{', pos);
+			}
+			sb.append(template, pos, template.length());
+			start = to;
+		}
+		
+		/**
+		 * Replaces a region with a block.
+		 */
+		private void block(int from, int to, String block) {
+			copyTo(from);
+			sb.append(block);
+			start = to;
+		}
+		
+		private void copyTo(int end) {
+			if(sb == null) {
+				sb = new StringBuilder(capacity);
+			}
+			sb.append(html, start, end);
+		}
+		
+		/**
+		 * Returns the same document if nothing was replaced, or a new string.
+		 */
+		private CharSequence finish() {
+			if(sb == null) {
+				return html;
+			}
+			sb.append(html, start, html.length());
+			return sb.toString();
+		}
+	}
+	
+	/**
+	 * Html processing stages enabled by current settings, in the order they run.
+	 * 
+	 * <p>Stages read the document from one buffer and write into another, which are 
+	 * swapped after each stage, so a document is copied into a string only once at the end 
+	 * instead of after every stage. Stages overridden by a subclass are called with 
+	 * strings as before.
+	 */
+	private class PipelinePlan {
+		
+		private List<HtmlTagScanner.Pass> stages = new ArrayList<HtmlTagScanner.Pass>();
+		
+		//all enabled attribute rules, or null if there are none
+		private AttributeRewriter attributeRewriter;
+		
+		//documents are read from any CharSequence and written to any Appendable 
+		//only if methods that take them as strings are not overridden
+		private boolean documentHooksOverridden;
+		private boolean processHtmlOverridden;
+		
+		//script and style blocks are compressed by separate asynchronous tasks 
+		//only if methods that process them are not overridden
+		private boolean blockHooksOverridden;
+		
+		private PipelinePlan() {
+			documentHooksOverridden = isOverridden("preserveBlocks", blockHookParameters) || isOverridden("returnBlocks", blockHookParameters)
+					|| isOverridden("initStatistics", String.class) || isOverridden("endStatistics", String.class);
+			processHtmlOverridden = isOverridden("processHtml", String.class);
+			blockHooksOverridden = isOverridden("processPreservedBlocks", List.class, List.class, List.class, List.class, List.class, List.class, List.class, List.class, List.class)
+					|| isOverridden("processScriptBlocks", List.class) || isOverridden("processStyleBlocks", List.class);
+			
+			//remove comments
+			addStage(removeComments, "removeComments", HtmlCompressor.this::removeComments, HtmlTagScanner::removeComments);
+			
+			//simplify doctype
+			addStage(simpleDoctype, "simpleDoctype", HtmlCompressor.this::simpleDoctype, HtmlCompressor::replaceDoctype);
+			
+			//remove default attributes, simplify boolean attributes and remove http(s) protocol, 
+			//in a single pass unless a subclass overrides methods of single settings
+			if(isAnyOverridden(attributeMethods)) {
+				addStage(removeScriptAttributes, "removeScriptAttributes", HtmlCompressor.this::removeScriptAttributes, scriptAttributeRewriter::rewrite);
+				addStage(removeStyleAttributes, "removeStyleAttributes", HtmlCompressor.this::removeStyleAttributes, styleAttributeRewriter::rewrite);
+				addStage(removeLinkAttributes, "removeLinkAttributes", HtmlCompressor.this::removeLinkAttributes, linkAttributeRewriter::rewrite);
+				addStage(removeFormAttributes, "removeFormAttributes", HtmlCompressor.this::removeFormAttributes, formAttributeRewriter::rewrite);
+				addStage(removeInputAttributes, "removeInputAttributes", HtmlCompressor.this::removeInputAttributes, inputAttributeRewriter::rewrite);
+				addStage(simpleBooleanAttributes, "simpleBooleanAttributes", HtmlCompressor.this::simpleBooleanAttributes, booleanAttributeRewriter::rewrite);
+				addStage(removeHttpProtocol, "removeHttpProtocol", HtmlCompressor.this::removeHttpProtocol, httpProtocolRewriter::rewrite);
+				addStage(removeHttpsProtocol, "removeHttpsProtocol", HtmlCompressor.this::removeHttpsProtocol, httpsProtocolRewriter::rewrite);
+			} else {
+				//collect rules of all enabled attribute settings
+				List<AttributeRewriter.Rule> rules = new ArrayList<AttributeRewriter.Rule>();
+				if(removeScriptAttributes) {
+					rules.addAll(Arrays.asList(scriptAttributeRules));
+				}
+				if(removeStyleAttributes) {
+					rules.addAll(Arrays.asList(styleAttributeRules));
+				}
+				if(removeLinkAttributes) {
+					rules.addAll(Arrays.asList(linkAttributeRules));
+				}
+				if(removeFormAttributes) {
+					rules.addAll(Arrays.asList(formAttributeRules));
+				}
+				if(removeInputAttributes) {
+					rules.addAll(Arrays.asList(inputAttributeRules));
+				}
+				if(simpleBooleanAttributes) {
+					rules.addAll(Arrays.asList(booleanAttributeRules));
+				}
+				if(removeHttpProtocol) {
+					rules.addAll(Arrays.asList(httpProtocolRules));
+				}
+				if(removeHttpsProtocol) {
+					rules.addAll(Arrays.asList(httpsProtocolRules));
+				}
+				if(!rules.isEmpty()) {
+					attributeRewriter = new AttributeRewriter(rules);
+				}
+				
+				addStage(attributeRewriter != null, "rewriteAttributes", HtmlCompressor.this::rewriteAttributes, attributeRewriter != null ? attributeRewriter::rewrite : null);
+			}
+			
+			//remove inter-tag spaces
+			addStage(removeIntertagSpaces, "removeIntertagSpaces", HtmlCompressor.this::removeIntertagSpaces, HtmlTagScanner::removeIntertagSpaces);
+			
+			//remove multi whitespace characters
+			addStage(removeMultiSpaces, "removeMultiSpaces", HtmlCompressor.this::removeMultiSpaces, HtmlCompressor::collapseMultiSpaces);
+			
+			//remove spaces around equals sign and ending spaces
+			if(isOverridden("removeSpacesInsideTags", String.class)) {
+				addStage(HtmlCompressor.this::removeSpacesInsideTags);
+			} else {
+				stages.add(HtmlTagScanner::removeSpacesAroundEquals);
+				stages.add(HtmlTagScanner::removeTagEndSpaces);
+			}
+			
+			//remove quotes from tag attributes
+			addStage(removeQuotes, "removeQuotesInsideTags", HtmlCompressor.this::removeQuotesInsideTags, HtmlTagScanner::removeQuotes);
+			
+			//remove surrounding spaces
+			if(removeSurroundingSpaces == null || removeSurroundingSpaces.equalsIgnoreCase(ALL_TAGS)) {
+				addStage(removeSurroundingSpaces != null, "removeSurroundingSpaces", HtmlCompressor.this::removeSurroundingSpaces, HtmlTagScanner::removeSurroundingSpaces);
+			} else {
+				String[] tags = removeSurroundingSpaces.split(",", -1);
+				addStage(true, "removeSurroundingSpaces", HtmlCompressor.this::removeSurroundingSpaces, (html, out) -> HtmlTagScanner.removeSurroundingSpaces(html, tags, out));
+			}
+		}
+		
+		/**
+		 * Adds a given method if a subclass overrides it, as it is called no matter 
+		 * what the settings are, otherwise adds a buffer stage if it is enabled.
+		 */
+		private void addStage(boolean enabled, String method, UnaryOperator<String> stage, HtmlTagScanner.Pass pass) {
+			if(isOverridden(method, String.class)) {
+				addStage(stage);
+			} else if(enabled) {
+				stages.add(pass);
+			}
+		}
+		
+		private void addStage(UnaryOperator<String> stage) {
+			stages.add((html, out) -> {
+				String source = html.toString();
+				String result = stage.apply(source);
+				if(result == source) {
+					return false;
+				}
+				out.append(result);
+				return true;
+			});
+		}
+		
+		private boolean isAnyOverridden(String[] methods) {
+			for(String method : methods) {
+				if(isOverridden(method, String.class)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		private boolean isOverridden(String method, Class<?>... parameterTypes) {
+			for(Class<?> c = HtmlCompressor.this.getClass(); c != HtmlCompressor.class; c = c.getSuperclass()) {
+				try {
+					c.getDeclaredMethod(method, parameterTypes);
+					return true;
+				} catch (NoSuchMethodException e) {
+					//not declared by this class
+				}
+			}
+			return false;
+		}
+		
+		/**
+		 * Runs all stages and returns trimmed result.
+		 */
+		private String process(CharSequence html) {
+			CharSequence current = html;
+			StringBuilder spare = null;
+			for(HtmlTagScanner.Pass stage : stages) {
+				if(spare == null) {
+					spare = new StringBuilder(current.length());
+				} else {
+					spare.setLength(0);
+				}
+				if(stage.apply(current, spare)) {
+					//result becomes the input of the next stage and the old input is reused, 
+					//unless it is the source document
+					StringBuilder result = spare;
+					spare = current != html && current instanceof StringBuilder ? (StringBuilder) current : null;
+					current = result;
+				}
+			}
+			
+			//same as trim(), but copies only once
+			int start = 0;
+			int end = current.length();
+			while(start < end && current.charAt(start) <= ' ') {
+				start++;
+			}
+			while(end > start && current.charAt(end - 1) <= ' ') {
+				end--;
+			}
+			return current.subSequence(start, end).toString();
+		}
+	}
+	
+	/**
+	 * State of asynchronous compression of a single document.
+	 */
+	private class AsyncCompression {
+		
+		private String html;
+		
+		private List<String> condCommentBlocks = new ArrayList<String>();
+		private List<String> preBlocks = new ArrayList<String>();
+		private List<String> taBlocks = new ArrayList<String>();
+		private List<String> scriptBlocks = new ArrayList<String>();
+		private List<String> styleBlocks = new ArrayList<String>();
+		private List<String> eventBlocks = new ArrayList<String>();
+		private List<String> skipBlocks = new ArrayList<String>();
+		private List<String> lineBreakBlocks = new ArrayList<String>();
+		private List<List<String>> userBlocks = new ArrayList<List<String>>();
+		
+		private CompressionTracker tracker;
+		
+		private AsyncCompression(String html) {
+			tracker = CompressionTracker.start(HtmlCompressor.this, html, CompressorMetrics.getActive(), histograms, compressionListener);
+			
+			if(tracker != null) {
+				tracker.nextStage(Stage.PRESERVE_BLOCKS);
+			}
+			html = preserveBlocks(html, preBlocks, taBlocks, scriptBlocks, styleBlocks, eventBlocks, condCommentBlocks, skipBlocks, lineBreakBlocks, userBlocks);
+			if(tracker != null) {
+				trackPreservedBlocks(tracker, preBlocks, taBlocks, scriptBlocks, styleBlocks, eventBlocks, condCommentBlocks, skipBlocks, lineBreakBlocks, userBlocks);
+				tracker.nextStage(Stage.PROCESS_HTML);
+			}
+			
+			this.html = processHtml(html);
+			if(tracker != null) {
+				//lasts until all block tasks are done
+				tracker.nextStage(Stage.PROCESS_BLOCKS);
+			}
+			
+			//script and style blocks are compressed by separate tasks
+			processPreservedBlocks(preBlocks, taBlocks, new ArrayList<String>(), new ArrayList<String>(), eventBlocks, condCommentBlocks, skipBlocks, lineBreakBlocks, userBlocks);
+			
+			//default compressors are created before tasks could race for them
+			if(compressJavaScript && !scriptBlocks.isEmpty()) {
+				initJavaScriptCompressor();
+			}
+			if(compressCss && !styleBlocks.isEmpty()) {
+				initCssCompressor();
+			}
+		}
+		
+		private CompletableFuture<AsyncCompression> compressBlocks(Executor executor) {
+			List<CompletableFuture<Void>> tasks = new ArrayList<CompletableFuture<Void>>();
+			if(compressJavaScript) {
+				for(int i = 0; i < scriptBlocks.size(); i++) {
+					final int index = i;
+					tasks.add(CompletableFuture.runAsync(() -> scriptBlocks.set(index, compressJavaScript(scriptBlocks.get(index))), executor));
+				}
+			}
+			if(compressCss) {
+				for(int i = 0; i < styleBlocks.size(); i++) {
+					final int index = i;
+					tasks.add(CompletableFuture.runAsync(() -> styleBlocks.set(index, compressCssStyles(styleBlocks.get(index))), executor));
+				}
+			}
+			return CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[tasks.size()])).thenApply(done -> this);
+		}
+		
+		private String returnBlocks() {
+			if(tracker != null) {
+				tracker.nextStage(Stage.RETURN_BLOCKS);
+			}
+			String result = HtmlCompressor.this.returnBlocks(html, preBlocks, taBlocks, scriptBlocks, styleBlocks, eventBlocks, condCommentBlocks, skipBlocks, lineBreakBlocks, userBlocks);
+			if(tracker != null) {
+				//time of a document includes waiting for its tasks to run
+				tracker.finish(result.length());
+			}
+			return result;
+		}
 	}
 	
 }
\ No newline at end of file
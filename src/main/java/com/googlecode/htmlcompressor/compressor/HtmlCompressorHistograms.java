@@ -0,0 +1,100 @@
+package com.googlecode.htmlcompressor.compressor;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Latency and size distributions of documents compressed by {@link HtmlCompressor}.
+ * Unlike averages, percentiles show how long the slowest documents take and which
+ * part of compression is responsible for it.
+ * 
+ * <p>Histograms are thread safe, one instance could be shared by compressors
+ * running in parallel and read while they are running:
+ * 
+ * <pre>
+ * HtmlCompressorHistograms histograms = new HtmlCompressorHistograms();
+ * compressor.setHistograms(histograms);
+ * ...
+ * long p99 = histograms.getCompressTime().snapshot().getP99();
+ * </pre>
+ * 
+ * @see HtmlCompressor#setHistograms(HtmlCompressorHistograms)
+ * 
+ * @author <a href="mailto:serg472@gmail.com">Sergiy Kovalchuk</a>
+ */
+public class HtmlCompressorHistograms {
+	
+	private final LatencyHistogram compressTime = new LatencyHistogram();
+	private final LatencyHistogram javaScriptTime = new LatencyHistogram();
+	private final LatencyHistogram cssTime = new LatencyHistogram();
+	private final LatencyHistogram documentSize = new LatencyHistogram();
+	
+	/**
+	 * Returns time of compression of whole documents in nanoseconds.
+	 * 
+	 * @return histogram of document compression time
+	 */
+	public LatencyHistogram getCompressTime() {
+		return compressTime;
+	}
+	
+	/**
+	 * Returns time of compression of each inline JavaScript block in nanoseconds.
+	 * 
+	 * @return histogram of JavaScript block compression time
+	 */
+	public LatencyHistogram getJavaScriptTime() {
+		return javaScriptTime;
+	}
+	
+	/**
+	 * Returns time of compression of each inline CSS block in nanoseconds.
+	 * 
+	 * @return histogram of CSS block compression time
+	 */
+	public LatencyHistogram getCssTime() {
+		return cssTime;
+	}
+	
+	/**
+	 * Returns size of uncompressed documents in characters.
+	 * 
+	 * @return histogram of document size
+	 */
+	public LatencyHistogram getDocumentSize() {
+		return documentSize;
+	}
+	
+	/**
+	 * Removes all recorded values from all histograms.
+	 */
+	public void reset() {
+		compressTime.reset();
+		javaScriptTime.reset();
+		cssTime.reset();
+		documentSize.reset();
+	}
+	
+	void recordDocument(int size, long time) {
+		documentSize.record(size);
+		compressTime.record(time);
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("CompressTime={%s}, JavaScriptTime={%s}, CssTime={%s}, DocumentSize={%s}",
+				compressTime.snapshot(), javaScriptTime.snapshot(), cssTime.snapshot(), documentSize.snapshot());
+	}
+	
+}
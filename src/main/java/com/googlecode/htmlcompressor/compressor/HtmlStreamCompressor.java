@@ -0,0 +1,628 @@
+package com.googlecode.htmlcompressor.compressor;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writer that compresses HTML written into it with {@link HtmlCompressor} in chunks
+ * and passes the result to the target writer as soon as a chunk is complete.
+ * 
+ * <p>Chunks end right after a closing tag that is followed by another tag, never inside
+ * comments, conditional comments, skip blocks, <code>&lt;pre&gt;</code>, <code>&lt;textarea&gt;</code>,
+ * <code>&lt;script&gt;</code> or <code>&lt;style&gt;</code> blocks. Whitespace between
+ * the two tags is compressed separately, so the result is the same as if the whole
+ * document was compressed at once. A chunk is compressed after <code>&lt;/head&gt;</code>,
+ * once it is longer than a few kilobytes, and on {@link #flush()}. Only content after
+ * the last chunk and the state of an unfinished block are kept in memory.
+ * 
+ * <p>Blocks are found in the same order as {@link HtmlCompressor} preserves them. If a block
+ * starts inside another block, tag or comment that is preserved or removed after it,
+ * for example <code>&lt;pre&gt;</code> inside a comment, the rest of the document is
+ * compressed as a single chunk.
+ * 
+ * <p>Compressor should not have custom preservation rules, as their blocks could span
+ * any tags, and should not generate statistics.
+ * 
+ * <p>{@link #finish()} must be called after the whole document is written.
+ * 
+ * @author <a href="mailto:serg472@gmail.com">Sergiy Kovalchuk</a>
+ */
+class HtmlStreamCompressor extends Writer {
+	
+	//content is compressed once a chunk of at least this length could be cut off
+	private static final int CHUNK_LENGTH = 8 * 1024;
+	
+	private static final String COMMENT_START = "<!--";
+	private static final String COMMENT_END = "-->";
+	private static final String EMPTY_COMMENT = "<!---->";
+	private static final String COND_COMMENT_END = "]-->";
+	
+	//order in which blocks are preserved or removed
+	private static final int SKIP_BLOCK = 1;
+	private static final int COND_COMMENT = 2;
+	private static final int PRE = 3;
+	private static final int SCRIPT = 4;
+	private static final int STYLE = 5;
+	private static final int TEXTAREA = 6;
+	private static final int COMMENT = 7;
+	private static final int TAG = 8;
+	private static final int CLOSING_TAG = 9;
+	
+	//longest start of a conditional comment the scan waits for
+	private static final int MAX_COND_COMMENT_START = 256;
+	
+	private Writer out;
+	private HtmlCompressor compressor;
+	
+	//content that is not compressed yet
+	private StringBuilder buffer = new StringBuilder();
+	
+	//position up to which the buffer was scanned for chunk ends
+	private int scanned = 0;
+	
+	//tag, comment or block the scan is inside of, 0 if none
+	private int region = 0;
+	private int regionStart;
+	
+	//position up to which the current region was searched for its end
+	private int regionEnd;
+	
+	//closing tag of a preserved block
+	private String blockEnd;
+	
+	//quote inside a tag
+	private char quote;
+	
+	//closing tag that could end a chunk if it is followed by another tag, -1 if none
+	private int candidateStart = -1;
+	private int candidateEnd = -1;
+	
+	//end of the last complete chunk, -1 if none
+	private int chunkEnd = -1;
+	private int chunkTagStart;
+	private int nextTagStart;
+	
+	//chunk ends with </head> and should be written right away
+	private boolean headEnd = false;
+	
+	//no more chunks can be cut off from this document
+	private boolean single = false;
+	
+	private boolean finished = false;
+	
+	HtmlStreamCompressor(Writer out, HtmlCompressor compressor) {
+		this.out = out;
+		this.compressor = compressor;
+	}
+	
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		checkFinished();
+		buffer.append(cbuf, off, len);
+		process();
+	}
+	
+	@Override
+	public void write(String str, int off, int len) throws IOException {
+		checkFinished();
+		buffer.append(str, off, off + len);
+		process();
+	}
+	
+	/**
+	 * Compresses content up to the end of the last complete chunk,
+	 * writes it and flushes the target writer.
+	 */
+	@Override
+	public void flush() throws IOException {
+		if(!finished && chunkEnd != -1) {
+			writeChunk();
+		}
+		out.flush();
+	}
+	
+	/**
+	 * Compresses the rest of the content and writes it to the target writer.
+	 * Target writer is not flushed or closed.
+	 */
+	void finish() throws IOException {
+		if(finished) {
+			return;
+		}
+		finished = true;
+		
+		String content = buffer.toString();
+		buffer = null;
+		out.write(compress(content, content));
+	}
+	
+	@Override
+	public void close() throws IOException {
+		finish();
+		out.close();
+	}
+	
+	private void process() throws IOException {
+		scan();
+		if(chunkEnd != -1 && (headEnd || chunkEnd >= CHUNK_LENGTH)) {
+			writeChunk();
+		}
+	}
+	
+	/**
+	 * Compresses the last complete chunk and whitespace after it, and removes them from the buffer.
+	 */
+	private void writeChunk() throws IOException {
+		String chunk = buffer.substring(0, chunkEnd);
+		String spaces = buffer.substring(chunkEnd, nextTagStart);
+		String separator = "";
+		if(spaces.length() > 0) {
+			separator = compressSpaces(buffer.substring(chunkTagStart, chunkEnd), spaces, nextTagStart);
+		}
+		
+		int removed = nextTagStart;
+		buffer.delete(0, removed);
+		scanned -= removed;
+		regionStart -= removed;
+		regionEnd -= removed;
+		if(candidateStart != -1) {
+			candidateStart -= removed;
+			candidateEnd -= removed;
+		}
+		chunkEnd = -1;
+		headEnd = false;
+		
+		out.write(compress(chunk, chunk + spaces) + separator);
+	}
+	
+	/**
+	 * Compresses whitespace between two tags the same way as it is compressed inside a document.
+	 * 
+	 * @param closingTag tag before whitespace
+	 * @param tagStart position of the tag after whitespace in the buffer
+	 */
+	private String compressSpaces(String closingTag, String spaces, int tagStart) throws IOException {
+		//tag name is enough to tell if surrounding spaces are removed
+		String result = compress(closingTag + spaces + buffer.substring(tagStart, nameEnd(tagStart)) + ">", null);
+		
+		int start = result.indexOf('>') + 1;
+		int end = result.indexOf('<', start);
+		return start > 0 && end != -1 ? result.substring(start, end) : "";
+	}
+	
+	/**
+	 * Compresses content, if compression fails the original content is written
+	 * and the exception is rethrown.
+	 */
+	private String compress(String content, String original) throws IOException {
+		try {
+			//whitespace probes are not counted as documents
+			return original != null ? compressor.compress(content) : compressor.compress(content, false);
+		} catch (RuntimeException e) {
+			if(original != null) {
+				out.write(original);
+			}
+			throw e;
+		}
+	}
+	
+	/**
+	 * Scans new content for chunk ends.
+	 */
+	private void scan() {
+		int length = buffer.length();
+		int pos = scanned;
+		while(pos < length && !single) {
+			if(region != 0) {
+				int end = findRegionEnd();
+				if(end == -1) {
+					pos = length;
+					break;
+				}
+				pos = endRegion(end);
+				continue;
+			}
+			
+			int start = buffer.indexOf("<", pos);
+			if(candidateStart != -1 && !isWhitespace(candidateEnd, start == -1 ? length : start)) {
+				//closing tag is followed by text
+				candidateStart = -1;
+			}
+			if(start == -1) {
+				pos = length;
+				break;
+			}
+			if(start + 1 >= length) {
+				pos = start;
+				break;
+			}
+			
+			char c = buffer.charAt(start + 1);
+			if(candidateStart != -1) {
+				if(isLetter(c) || c == '/') {
+					if(nameEnd(start) == length) {
+						//tag name is needed to compress whitespace before it
+						pos = start;
+						break;
+					}
+					chunkEnd = candidateEnd;
+					chunkTagStart = candidateStart;
+					nextTagStart = start;
+					headEnd |= regionMatches(candidateStart, "</head>");
+				}
+				candidateStart = -1;
+			}
+			
+			int next;
+			if(c == '!') {
+				next = scanDeclaration(start);
+			} else if(c == '/') {
+				next = startRegion(start, CLOSING_TAG, start + 2);
+			} else if(isLetter(c)) {
+				next = startRegion(start, TAG, start + 1);
+			} else {
+				next = start + 1;
+			}
+			
+			if(next == -1) {
+				//markup is not complete yet
+				pos = start;
+				break;
+			}
+			pos = next;
+		}
+		scanned = pos;
+	}
+	
+	/**
+	 * Scans a comment, a conditional comment or a declaration.
+	 * 
+	 * @return position to continue from, or <code>-1</code> if more content is needed
+	 */
+	private int scanDeclaration(int start) {
+		if(buffer.length() < start + EMPTY_COMMENT.length()) {
+			return -1;
+		}
+		
+		if(regionMatches(start, COMMENT_START)) {
+			if(buffer.charAt(start + COMMENT_START.length()) == '[') {
+				return scanCondComment(start, start + COMMENT_START.length());
+			}
+			if(regionMatches(start, EMPTY_COMMENT)) {
+				return start + EMPTY_COMMENT.length();
+			}
+			return startRegion(start, COMMENT, start + COMMENT_START.length() + 1);
+		}
+		
+		if(buffer.charAt(start + 2) == '[') {
+			return scanCondComment(start, start + 2);
+		}
+		
+		//doctype
+		return startRegion(start, TAG, start + 1);
+	}
+	
+	/**
+	 * Scans a start of a conditional comment, same as {@link HtmlCompressor#condCommentPattern} does.
+	 * 
+	 * @param bracket position of a bracket after <code>&lt;!</code> or <code>&lt;!--</code>
+	 * @return position to continue from, or <code>-1</code> if more content is needed
+	 */
+	private int scanCondComment(int start, int bracket) {
+		int end = buffer.indexOf("]", bracket + 1);
+		if(end == -1 || end + 1 == buffer.length()) {
+			if(buffer.length() - start > MAX_COND_COMMENT_START) {
+				//not worth waiting for, keep the rest in one chunk
+				single = true;
+			}
+			return -1;
+		}
+		
+		//brackets inside skip blocks are not seen by the pattern
+		checkInnerBlocks(start + 1, end, COND_COMMENT);
+		if(end > bracket + 1 && buffer.charAt(end + 1) == '>') {
+			return startRegion(start, COND_COMMENT, end + 2);
+		} else if(bracket == start + 2) {
+			//declaration
+			return startRegion(start, TAG, start + 1);
+		}
+		//neither a comment nor a conditional comment, content is compressed as usual
+		return bracket;
+	}
+	
+	private int startRegion(int start, int type, int from) {
+		region = type;
+		regionStart = start;
+		regionEnd = from;
+		quote = 0;
+		return from;
+	}
+	
+	/**
+	 * Continues search for the end of the current region.
+	 * 
+	 * @return position after the region, or <code>-1</code> if it is not complete yet
+	 */
+	private int findRegionEnd() {
+		int length = buffer.length();
+		if(region == TAG || region == CLOSING_TAG) {
+			//ignore > inside quoted attribute values
+			while(regionEnd < length) {
+				char c = buffer.charAt(regionEnd++);
+				if(quote != 0) {
+					if(c == quote) {
+						quote = 0;
+					}
+				} else if(c == '>') {
+					return regionEnd;
+				} else if((c == '"' || c == '\'') && region == TAG) {
+					quote = c;
+				}
+			}
+			return -1;
+		} else if(region == SKIP_BLOCK) {
+			//content is not seen by other patterns, so only the end marker matters
+			int pos = buffer.indexOf(COMMENT_START, regionEnd);
+			while(pos != -1) {
+				int end = markerEnd(pos, '}');
+				if(end == -1) {
+					regionEnd = pos;
+					return -1;
+				} else if(end > 0) {
+					return end;
+				}
+				pos = buffer.indexOf(COMMENT_START, pos + 1);
+			}
+			regionEnd = Math.max(regionEnd, length - COMMENT_START.length() + 1);
+			return -1;
+		}
+		
+		String end = region == COMMENT ? COMMENT_END : region == COND_COMMENT ? COND_COMMENT_END : blockEnd;
+		int pos = indexOfIgnoreCase(end, regionEnd);
+		while(pos != -1 && region == COND_COMMENT && !isCondCommentEnd(pos)) {
+			pos = buffer.indexOf(end, pos + 1);
+		}
+		if(pos == -1) {
+			//end might be split between writes
+			regionEnd = Math.max(regionEnd, length - end.length() + 1);
+			return -1;
+		}
+		return pos + end.length();
+	}
+	
+	/**
+	 * Checks if <code>]--&gt;</code> at a given position ends a conditional comment,
+	 * that is there is <code>&lt;![</code> before it with no other brackets in between.
+	 */
+	private boolean isCondCommentEnd(int end) {
+		for(int i = end - 1; i >= regionStart + 2; i--) {
+			char c = buffer.charAt(i);
+			if(c == ']') {
+				return false;
+			} else if(c == '[' && i < end - 1 && buffer.charAt(i - 1) == '!' && buffer.charAt(i - 2) == '<') {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Checks if a conditional comment ending at a given position has only whitespace inside.
+	 */
+	private boolean isEmptyCondComment(int end) {
+		int bracket = end - COND_COMMENT_END.length();
+		int pos = buffer.indexOf("]", regionStart + 3) + 2;
+		while(isWhitespace(buffer.charAt(pos))) {
+			pos++;
+		}
+		return regionMatches(pos, "<![") && bracket > pos + 3 && buffer.indexOf("]", pos) == bracket;
+	}
+	
+	/**
+	 * Handles a complete region.
+	 * 
+	 * @return position to continue from
+	 */
+	private int endRegion(int end) {
+		int type = region;
+		region = 0;
+		
+		if(type == SKIP_BLOCK) {
+			return end;
+		} else if(type == COMMENT) {
+			//skip blocks start with <!-- {{{ --> and end with <!-- }}} -->
+			if(markerEnd(regionStart, '{') == end) {
+				startRegion(regionStart, SKIP_BLOCK, end);
+			} else {
+				checkInnerBlocks(regionStart + 1, end - COMMENT_END.length(), COMMENT);
+			}
+			return end;
+		} else if(type == COND_COMMENT && isEmptyCondComment(end)) {
+			//empty conditional comments are not preserved, blocks could start anywhere inside
+			checkInnerBlocks(regionStart + 1, end, TAG);
+			return end;
+		}
+		
+		checkInnerBlocks(regionStart + 1, end, Math.min(type, TAG));
+		if(type == CLOSING_TAG && isLetter(buffer.charAt(regionStart + 2))) {
+			candidateStart = regionStart;
+			candidateEnd = end;
+		} else if(type == TAG) {
+			int order = blockOrder(regionStart);
+			if(order == PRE) {
+				blockEnd = "</pre>";
+			} else if(order == SCRIPT) {
+				blockEnd = "</script>";
+			} else if(order == STYLE) {
+				blockEnd = "</style>";
+			} else if(order == TEXTAREA) {
+				blockEnd = "</textarea>";
+			} else {
+				return end;
+			}
+			//content of preserved blocks is skipped until their closing tags
+			startRegion(regionStart, order, end);
+		}
+		return end;
+	}
+	
+	/**
+	 * Checks if a block, tag or comment between given positions contains a start of a block 
+	 * that is preserved before it. Such block could end anywhere after the enclosing one, 
+	 * so the rest of the document is compressed as a single chunk.
+	 */
+	private void checkInnerBlocks(int start, int end, int order) {
+		int pos = buffer.indexOf("<", start);
+		while(pos != -1 && pos < end) {
+			if(blockOrder(pos) < order) {
+				single = true;
+				return;
+			}
+			pos = buffer.indexOf("<", pos + 1);
+		}
+	}
+	
+	/**
+	 * Returns the order of a block that starts at a given position,
+	 * or {@link #TAG} if it is not a start of a block.
+	 */
+	private int blockOrder(int pos) {
+		if(regionMatches(pos, COMMENT_START)) {
+			int i = pos + COMMENT_START.length();
+			if(i < buffer.length() && buffer.charAt(i) == '[') {
+				return COND_COMMENT;
+			}
+			while(i < buffer.length() && isWhitespace(buffer.charAt(i))) {
+				i++;
+			}
+			return regionMatches(i, "{{{") ? SKIP_BLOCK : COMMENT;
+		} else if(regionMatches(pos, "<![")) {
+			return COND_COMMENT;
+		} else if(regionMatches(pos, "<pre")) {
+			return PRE;
+		} else if(regionMatches(pos, "<script")) {
+			return SCRIPT;
+		} else if(regionMatches(pos, "<style")) {
+			return STYLE;
+		} else if(regionMatches(pos, "<textarea")) {
+			return TEXTAREA;
+		}
+		return TAG;
+	}
+	
+	/**
+	 * Checks if a comment at a given position is a skip block marker made of three given characters
+	 * surrounded by whitespace, same as in {@link HtmlCompressor#skipPattern}.
+	 * 
+	 * @return position after the marker, <code>0</code> if it is not a marker,
+	 * or <code>-1</code> if more content is needed
+	 */
+	private int markerEnd(int start, char c) {
+		int length = buffer.length();
+		int pos = start + COMMENT_START.length();
+		while(pos < length && isWhitespace(buffer.charAt(pos))) {
+			pos++;
+		}
+		for(int i = 0; i < 3; i++, pos++) {
+			if(pos == length) {
+				return -1;
+			} else if(buffer.charAt(pos) != c) {
+				return 0;
+			}
+		}
+		while(pos < length && isWhitespace(buffer.charAt(pos))) {
+			pos++;
+		}
+		if(pos + COMMENT_END.length() > length) {
+			return -1;
+		}
+		return regionMatches(pos, COMMENT_END) ? pos + COMMENT_END.length() : 0;
+	}
+	
+	/**
+	 * Returns the end of a tag name, including a slash of a closing tag.
+	 */
+	private int nameEnd(int tagStart) {
+		int pos = tagStart + 2;
+		while(pos < buffer.length() && isNameChar(buffer.charAt(pos))) {
+			pos++;
+		}
+		return pos;
+	}
+	
+	private int indexOfIgnoreCase(String str, int from) {
+		int pos = buffer.indexOf(str.substring(0, 1), from);
+		while(pos != -1) {
+			if(regionMatches(pos, str)) {
+				return pos;
+			}
+			pos = buffer.indexOf(str.substring(0, 1), pos + 1);
+		}
+		return -1;
+	}
+	
+	/**
+	 * Case insensitive comparison limited to US-ASCII, like patterns compiled
+	 * with <code>CASE_INSENSITIVE</code> flag only.
+	 */
+	private boolean regionMatches(int pos, String str) {
+		if(pos + str.length() > buffer.length()) {
+			return false;
+		}
+		for(int i = 0; i < str.length(); i++) {
+			char c1 = buffer.charAt(pos + i);
+			char c2 = str.charAt(i);
+			if(c1 != c2 && toLowerCase(c1) != toLowerCase(c2)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private boolean isWhitespace(int start, int end) {
+		for(int i = start; i < end; i++) {
+			if(!isWhitespace(buffer.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private void checkFinished() throws IOException {
+		if(finished) {
+			throw new IOException("Compressor is already finished");
+		}
+	}
+	
+	private static char toLowerCase(char c) {
+		return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+	}
+	
+	//same as \s
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == '\u000B';
+	}
+	
+	private static boolean isLetter(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+	
+	private static boolean isNameChar(char c) {
+		return isLetter(c) || (c >= '0' && c <= '9') || c == '-' || c == ':';
+	}
+	
+}
@@ -0,0 +1,765 @@
+package com.googlecode.htmlcompressor.compressor;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Linear time replacements for the {@link HtmlCompressor} regular expressions that
+ * operate on tags and comments.
+ * 
+ * <p>Each method produces the same result as the corresponding pattern,
+ * but does not backtrack, so compression time stays proportional to the input size
+ * for unclosed tags, very long attributes or whitespace runs and other adversarial input.
+ * 
+ * <p>Just like the patterns they replace, methods are not aware of quotes,
+ * a tag is everything from <code>&lt;</code> to the nearest <code>&gt;</code>.
+ * 
+ * <p>Each method reads a document from any character sequence and appends the result
+ * to a given buffer, so {@link HtmlCompressor} could run all of them one after another
+ * over two reused buffers instead of creating a new string after each one.
+ * 
+ * @author <a href="mailto:serg472@gmail.com">Sergiy Kovalchuk</a>
+ */
+final class HtmlTagScanner {
+	
+	private static final String COMMENT_START = "<!--";
+	private static final String COMMENT_END = "-->";
+	private static final String EMPTY_COMMENT = "<!---->";
+	
+	//ends of temporary replacements of preserved blocks
+	private static final String BLOCK_START = "%%%~";
+	private static final String BLOCK_END = "~%%%";
+	
+	//single character strings to search for in buffers
+	private static final String[] ASCII = new String[128];
+	
+	static {
+		for(char c = 0; c < ASCII.length; c++) {
+			ASCII[c] = String.valueOf(c);
+		}
+	}
+	
+	private HtmlTagScanner() {
+	}
+	
+	/**
+	 * Pass over a document that appends the result to a buffer.
+	 */
+	interface Pass {
+		
+		/**
+		 * Appends processed document to a buffer.
+		 * 
+		 * @return <code>false</code> if nothing would be changed, in which case nothing is appended
+		 */
+		boolean apply(CharSequence html, StringBuilder out);
+	}
+	
+	/**
+	 * Applies a pass to a string.
+	 * 
+	 * @return processed document, or the same instance if nothing was changed
+	 */
+	static String apply(Pass pass, String html) {
+		StringBuilder sb = new StringBuilder(html.length());
+		return pass.apply(html, sb) ? sb.toString() : html;
+	}
+	
+	/**
+	 * Removes comments, same as {@link HtmlCompressor#commentPattern}.
+	 */
+	static boolean removeComments(CharSequence html, StringBuilder out) {
+		StringBuilder sb = null;
+		int start = 0;
+		
+		int i = indexOf(html, COMMENT_START, 0);
+		while(i != -1) {
+			int end;
+			if(startsWith(html, EMPTY_COMMENT, i)) {
+				end = i + EMPTY_COMMENT.length();
+			} else if(i + COMMENT_START.length() < html.length() && html.charAt(i + COMMENT_START.length()) != '[') {
+				int close = indexOf(html, COMMENT_END, i + COMMENT_START.length() + 1);
+				if(close == -1) {
+					//no comment after this one can be closed either
+					break;
+				}
+				end = close + COMMENT_END.length();
+			} else {
+				//conditional comment
+				i = indexOf(html, COMMENT_START, i + 1);
+				continue;
+			}
+			
+			if(sb == null) {
+				sb = out;
+			}
+			sb.append(html, start, i);
+			start = end;
+			i = indexOf(html, COMMENT_START, end);
+		}
+		
+		return finish(html, sb, start);
+	}
+	
+	/**
+	 * Removes spaces around equals sign of tag attributes, same as {@link HtmlCompressor#tagPropertyPattern}.
+	 */
+	static boolean removeSpacesAroundEquals(CharSequence html, StringBuilder out) {
+		StringBuilder sb = null;
+		int start = 0;
+		int length = html.length();
+		TagEnd tagEnd = new TagEnd(html);
+		
+		int i = 0;
+		while(i < length - 1) {
+			if(!isWhitespace(html.charAt(i)) || !isWordChar(html.charAt(i + 1))) {
+				i++;
+				continue;
+			}
+			
+			int nameEnd = skipWordChars(html, i + 1);
+			int equals = skipWhitespace(html, nameEnd);
+			if(equals < length && html.charAt(equals) == '=') {
+				int valueStart = skipWhitespace(html, equals + 1);
+				if(tagEnd.isInsideTag(valueStart)) {
+					if(sb == null) {
+						sb = out;
+					}
+					sb.append(html, start, nameEnd).append('=');
+					start = valueStart;
+					i = valueStart;
+					continue;
+				}
+			}
+			i++;
+		}
+		
+		return finish(html, sb, start);
+	}
+	
+	/**
+	 * Removes spaces before the end of tags, same as {@link HtmlCompressor#tagEndSpacePattern}.
+	 * A space is kept before <code>/&gt;</code> if the last attribute value is unquoted.
+	 */
+	static boolean removeTagEndSpaces(CharSequence html, StringBuilder out) {
+		StringBuilder sb = null;
+		int start = 0;
+		
+		int pos = 0;
+		while(true) {
+			int tagStart = indexOf(html, '<', pos);
+			if(tagStart == -1) {
+				break;
+			}
+			int tagEnd = indexOf(html, '>', tagStart);
+			if(tagEnd == -1) {
+				break;
+			}
+			pos = tagEnd + 1;
+			
+			boolean slash = tagEnd - 1 > tagStart && html.charAt(tagEnd - 1) == '/';
+			int spacesEnd = slash ? tagEnd - 1 : tagEnd;
+			int spacesStart = spacesEnd;
+			while(spacesStart > tagStart && isWhitespace(html.charAt(spacesStart - 1))) {
+				spacesStart--;
+			}
+			
+			//at least one character has to stay after the opening bracket
+			spacesStart = Math.max(spacesStart, tagStart + 2);
+			if(spacesStart >= spacesEnd) {
+				continue;
+			}
+			
+			if(sb == null) {
+				sb = out;
+			}
+			sb.append(html, start, spacesStart);
+			if(slash && endsWithUnquotedValue(html, tagStart, spacesStart)) {
+				sb.append(' ');
+			}
+			start = spacesEnd;
+		}
+		
+		return finish(html, sb, start);
+	}
+	
+	/**
+	 * Removes quotes around simple attribute values, same as {@link HtmlCompressor#tagQuotePattern}.
+	 */
+	static boolean removeQuotes(CharSequence html, StringBuilder out) {
+		StringBuilder sb = null;
+		int start = 0;
+		int length = html.length();
+		TagEnd tagEnd = new TagEnd(html);
+		
+		int equals = indexOf(html, '=', 0);
+		while(equals != -1) {
+			int quoteStart = skipWhitespace(html, equals + 1);
+			if(quoteStart < length && isQuote(html.charAt(quoteStart))) {
+				char quote = html.charAt(quoteStart);
+				int valueEnd = quoteStart + 1;
+				while(valueEnd < length && isValueChar(html.charAt(valueEnd))) {
+					valueEnd++;
+				}
+				if(valueEnd > quoteStart + 1 && valueEnd < length && html.charAt(valueEnd) == quote) {
+					int end = valueEnd + 1;
+					boolean slash = end < length && html.charAt(end) == '/';
+					if(slash) {
+						end++;
+					}
+					if(tagEnd.isInsideTag(end)) {
+						int spacesStart = equals;
+						while(spacesStart > start && isWhitespace(html.charAt(spacesStart - 1))) {
+							spacesStart--;
+						}
+						
+						if(sb == null) {
+							sb = out;
+						}
+						sb.append(html, start, spacesStart).append('=').append(html, quoteStart + 1, valueEnd);
+						//if quoted attribute is followed by "/" add extra space
+						if(slash) {
+							sb.append(" /");
+						}
+						start = end;
+						equals = indexOf(html, '=', end);
+						continue;
+					}
+				}
+			}
+			equals = indexOf(html, '=', equals + 1);
+		}
+		
+		return finish(html, sb, start);
+	}
+	
+	/**
+	 * Removes spaces between tags and preserved blocks in a single pass, same as
+	 * {@link HtmlCompressor#intertagPattern_TagTag}, {@link HtmlCompressor#intertagPattern_TagCustom},
+	 * {@link HtmlCompressor#intertagPattern_CustomTag} and {@link HtmlCompressor#intertagPattern_CustomCustom}
+	 * applied one after another.
+	 */
+	static boolean removeIntertagSpaces(CharSequence html, StringBuilder out) {
+		StringBuilder sb = null;
+		int start = 0;
+		int length = html.length();
+		
+		//end of the last match between two blocks, its tilde can't start the next one
+		int blocksEnd = -1;
+		
+		int pos = 0;
+		while(pos < length) {
+			if(!isWhitespace(html.charAt(pos))) {
+				pos++;
+				continue;
+			}
+			int spacesEnd = skipWhitespace(html, pos);
+			
+			boolean tagBefore = pos > 0 && html.charAt(pos - 1) == '>';
+			boolean blockBefore = pos >= BLOCK_END.length() && startsWith(html, BLOCK_END, pos - BLOCK_END.length());
+			boolean tagAfter = spacesEnd < length && html.charAt(spacesEnd) == '<';
+			boolean blockAfter = startsWith(html, BLOCK_START, spacesEnd);
+			
+			boolean remove;
+			if(tagBefore) {
+				remove = tagAfter || blockAfter;
+			} else if(blockBefore && blockAfter) {
+				remove = pos - BLOCK_END.length() >= blocksEnd;
+				if(remove) {
+					blocksEnd = spacesEnd + BLOCK_START.length();
+				}
+			} else {
+				remove = blockBefore && tagAfter;
+			}
+			
+			if(remove) {
+				if(sb == null) {
+					sb = out;
+				}
+				sb.append(html, start, pos);
+				start = spacesEnd;
+			}
+			pos = spacesEnd;
+		}
+		
+		return finish(html, sb, start);
+	}
+	
+	/**
+	 * Removes spaces around tags, same as {@link HtmlCompressor#surroundingSpacesAllPattern}.
+	 */
+	static boolean removeSurroundingSpaces(CharSequence html, StringBuilder out) {
+		return removeSurroundingSpaces(html, null, out);
+	}
+	
+	/**
+	 * Removes spaces around given tags, same as {@link HtmlCompressor#surroundingSpacesMinPattern}
+	 * and {@link HtmlCompressor#surroundingSpacesMaxPattern} built for a given list.
+	 * 
+	 * @param tags tag names, or <code>null</code> for all tags
+	 */
+	static boolean removeSurroundingSpaces(CharSequence html, String[] tags, StringBuilder out) {
+		StringBuilder sb = null;
+		int start = 0;
+		int length = html.length();
+		TagEnd tagEnd = new TagEnd(html);
+		
+		int pos = 0;
+		while(true) {
+			int tagStart = indexOf(html, '<', pos);
+			if(tagStart == -1) {
+				break;
+			}
+			pos = tagStart + 1;
+			
+			//nearest closing bracket after at least one character
+			int close = tagEnd.next(tagStart + 1);
+			if(close == length) {
+				break;
+			}
+			
+			int end;
+			if(tags == null) {
+				end = close > tagStart + 1 ? close : -1;
+			} else {
+				end = -1;
+				if(tagStart + 1 < length && html.charAt(tagStart + 1) == '/') {
+					end = namedTagEnd(html, tagStart + 2, tags, close);
+				}
+				if(end == -1) {
+					end = namedTagEnd(html, tagStart + 1, tags, close);
+				}
+			}
+			if(end == -1) {
+				continue;
+			}
+			
+			int spacesStart = tagStart;
+			while(spacesStart > start && isWhitespace(html.charAt(spacesStart - 1))) {
+				spacesStart--;
+			}
+			
+			if(sb == null) {
+				sb = out;
+			}
+			sb.append(html, start, spacesStart).append(html, tagStart, end + 1);
+			start = skipWhitespace(html, end + 1);
+			pos = start;
+		}
+		
+		return finish(html, sb, start);
+	}
+	
+	/**
+	 * Returns position of the closing bracket of a tag which name starts at a given position,
+	 * <code>-1</code> if the name is not one of the given tags or the tag is not closed.
+	 * 
+	 * @param close position of the nearest closing bracket after the tag start
+	 */
+	private static int namedTagEnd(CharSequence html, int nameStart, String[] tags, int close) {
+		for(String tag : tags) {
+			int nameEnd = nameStart + tag.length();
+			if(nameEnd >= html.length() || !regionMatches(html, nameStart, tag)) {
+				continue;
+			}
+			char c = html.charAt(nameEnd);
+			if(c == '>') {
+				return nameEnd;
+			} else if(c == '/' || isWhitespace(c)) {
+				if(close > nameEnd) {
+					return close;
+				}
+				//tag name itself contains a bracket
+				int end = indexOf(html, '>', nameEnd + 1);
+				if(end != -1) {
+					return end;
+				}
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Checks if the last attribute value before a given position is unquoted,
+	 * same as {@link HtmlCompressor#tagLastUnquotedValuePattern}.
+	 */
+	private static boolean endsWithUnquotedValue(CharSequence html, int tagStart, int end) {
+		int pos = end;
+		while(pos > tagStart && isValueChar(html.charAt(pos - 1))) {
+			pos--;
+		}
+		if(pos == end) {
+			return false;
+		}
+		while(pos > tagStart && isWhitespace(html.charAt(pos - 1))) {
+			pos--;
+		}
+		return pos > tagStart && html.charAt(pos - 1) == '=';
+	}
+	
+	private static boolean finish(CharSequence html, StringBuilder sb, int start) {
+		if(sb == null) {
+			return false;
+		}
+		sb.append(html, start, html.length());
+		return true;
+	}
+	
+	/**
+	 * Case insensitive comparison limited to US-ASCII, like patterns compiled
+	 * with <code>CASE_INSENSITIVE</code> flag only.
+	 */
+	private static boolean regionMatches(CharSequence html, int pos, String str) {
+		if(pos + str.length() > html.length()) {
+			return false;
+		}
+		for(int i = 0; i < str.length(); i++) {
+			char c1 = html.charAt(pos + i);
+			char c2 = str.charAt(i);
+			if(c1 != c2 && toLowerCase(c1) != toLowerCase(c2)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private static char toLowerCase(char c) {
+		return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+	}
+	
+	/**
+	 * Same as {@link String#indexOf(int, int)} for any character sequence.
+	 */
+	static int indexOf(CharSequence html, char c, int pos) {
+		if(html instanceof String) {
+			return ((String) html).indexOf(c, pos);
+		} else if(html instanceof StringBuilder && c < ASCII.length) {
+			//string search is vectorized unlike a loop over characters
+			return ((StringBuilder) html).indexOf(ASCII[c], pos);
+		}
+		for(int i = Math.max(pos, 0); i < html.length(); i++) {
+			if(html.charAt(i) == c) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Same as {@link String#indexOf(String, int)} for any character sequence.
+	 */
+	static int indexOf(CharSequence html, String str, int pos) {
+		if(html instanceof String) {
+			return ((String) html).indexOf(str, pos);
+		} else if(html instanceof StringBuilder) {
+			return ((StringBuilder) html).indexOf(str, pos);
+		}
+		for(int i = Math.max(pos, 0); i <= html.length() - str.length(); i++) {
+			if(startsWith(html, str, i)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Same as {@link #indexOf(CharSequence, String, int)} ignoring case like {@link #regionMatches(CharSequence, int, String)}.
+	 */
+	private static int indexOfIgnoreCase(CharSequence html, String str, int pos) {
+		int i = indexOf(html, str.charAt(0), pos);
+		while(i != -1 && !regionMatches(html, i, str)) {
+			i = indexOf(html, str.charAt(0), i + 1);
+		}
+		return i;
+	}
+	
+	/**
+	 * Same as {@link String#startsWith(String, int)} for any character sequence.
+	 */
+	static boolean startsWith(CharSequence html, String str, int pos) {
+		if(pos < 0 || pos + str.length() > html.length()) {
+			return false;
+		}
+		for(int i = 0; i < str.length(); i++) {
+			if(html.charAt(pos + i) != str.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private static int skipWhitespace(CharSequence html, int pos) {
+		while(pos < html.length() && isWhitespace(html.charAt(pos))) {
+			pos++;
+		}
+		return pos;
+	}
+	
+	private static int skipWordChars(CharSequence html, int pos) {
+		while(pos < html.length() && isWordChar(html.charAt(pos))) {
+			pos++;
+		}
+		return pos;
+	}
+	
+	//same as \s
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == '\u000B';
+	}
+	
+	//same as \w
+	private static boolean isWordChar(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+	}
+	
+	//same as [a-z0-9-_] ignoring case
+	private static boolean isValueChar(char c) {
+		return isWordChar(c) || c == '-';
+	}
+	
+	private static boolean isQuote(char c) {
+		return c == '"' || c == '\'';
+	}
+	
+	/**
+	 * Finds blocks that {@link HtmlCompressor} preserves, same as {@link HtmlCompressor#prePattern}, 
+	 * {@link HtmlCompressor#taPattern}, {@link HtmlCompressor#scriptPattern}, {@link HtmlCompressor#stylePattern}
+	 * and {@link HtmlCompressor#condCommentPattern} do with {@link java.util.regex.Matcher#find()}.
+	 * 
+	 * <p>Patterns look for the end of a block from every opening tag to the end of the document,
+	 * so a document with many unclosed blocks takes quadratic time. Here the end of a block 
+	 * is searched for once. If it is not found, a later block can't be closed either,
+	 * and the search stops.
+	 */
+	static class BlockMatcher {
+		
+		private static final String COND_COMMENT_START = "<!";
+		private static final String COND_COMMENT_END_START = "<![";
+		private static final String COND_COMMENT_END = "]-->";
+		
+		private CharSequence html;
+		
+		//start and end of element tags, null for conditional comments
+		private String openingTag;
+		private String closingTag;
+		
+		//position to continue from, -1 if nothing can be found anymore
+		private int pos = 0;
+		
+		private int start;
+		private int contentStart;
+		private int contentEnd;
+		private int end;
+		
+		//next ] after a position of the last lookup
+		private int bracketFrom = -1;
+		private int bracket = -1;
+		
+		private BlockMatcher(CharSequence html, String openingTag, String closingTag) {
+			this.html = html;
+			this.openingTag = openingTag;
+			this.closingTag = closingTag;
+		}
+		
+		/**
+		 * Creates a matcher of element blocks, for example <code>&lt;pre&gt;...&lt;/pre&gt;</code>.
+		 * 
+		 * @param name lower case element name
+		 */
+		static BlockMatcher elements(CharSequence html, String name) {
+			return new BlockMatcher(html, "<" + name, "</" + name + ">");
+		}
+		
+		/**
+		 * Creates a matcher of conditional comments, for example 
+		 * <code>&lt;!--[if IE]&gt;...&lt;![endif]--&gt;</code>.
+		 */
+		static BlockMatcher condComments(CharSequence html) {
+			return new BlockMatcher(html, null, null);
+		}
+		
+		/**
+		 * Finds the next block after the end of the previous one.
+		 */
+		boolean find() {
+			if(pos != -1 && (openingTag != null ? findElement() : findCondComment())) {
+				pos = end;
+				return true;
+			}
+			pos = -1;
+			return false;
+		}
+		
+		private boolean findElement() {
+			start = indexOfIgnoreCase(html, openingTag, pos);
+			if(start == -1) {
+				return false;
+			}
+			int tagEnd = indexOf(html, '>', start + openingTag.length());
+			if(tagEnd == -1) {
+				return false;
+			}
+			contentStart = tagEnd + 1;
+			contentEnd = indexOfIgnoreCase(html, closingTag, contentStart);
+			if(contentEnd == -1) {
+				return false;
+			}
+			end = contentEnd + closingTag.length();
+			return true;
+		}
+		
+		private boolean findCondComment() {
+			start = indexOf(html, COND_COMMENT_START, pos);
+			while(start != -1) {
+				//<!--[ or <![
+				int openingBracket = startsWith(html, "--[", start + 2) ? start + 4 : start + 2;
+				if(openingBracket < html.length() && html.charAt(openingBracket) == '[') {
+					int closingBracket = nextBracket(openingBracket + 1);
+					if(closingBracket == html.length()) {
+						return false;
+					}
+					if(closingBracket > openingBracket + 1 && startsWith(html, "]>", closingBracket)) {
+						contentStart = closingBracket + 2;
+						return findCondCommentEnd();
+					}
+				}
+				start = indexOf(html, COND_COMMENT_START, start + 1);
+			}
+			return false;
+		}
+		
+		/**
+		 * Finds the nearest <code>&lt;![...]--&gt;</code> after the content start.
+		 */
+		private boolean findCondCommentEnd() {
+			contentEnd = indexOf(html, COND_COMMENT_END_START, contentStart);
+			while(contentEnd != -1) {
+				int closingBracket = nextBracket(contentEnd + COND_COMMENT_END_START.length());
+				if(closingBracket == html.length()) {
+					return false;
+				}
+				if(closingBracket > contentEnd + COND_COMMENT_END_START.length() && startsWith(html, COND_COMMENT_END, closingBracket)) {
+					end = closingBracket + COND_COMMENT_END.length();
+					return true;
+				}
+				contentEnd = indexOf(html, COND_COMMENT_END_START, contentEnd + 1);
+			}
+			return false;
+		}
+		
+		/**
+		 * Returns position of the next <code>]</code> or the length of the text if there is none.
+		 * Positions should not decrease between calls, so all lookups take linear time in total.
+		 */
+		private int nextBracket(int from) {
+			if(from < bracketFrom || bracket < from) {
+				int index = indexOf(html, ']', from);
+				bracket = index == -1 ? html.length() : index;
+			}
+			bracketFrom = from;
+			return bracket;
+		}
+		
+		int start() {
+			return start;
+		}
+		
+		int end() {
+			return end;
+		}
+		
+		int contentStart() {
+			return contentStart;
+		}
+		
+		int contentEnd() {
+			return contentEnd;
+		}
+		
+		/**
+		 * Returns opening tag of the block, the first group of the pattern.
+		 */
+		String openingTag() {
+			return html.subSequence(start, contentStart).toString();
+		}
+		
+		/**
+		 * Returns content of the block, the second group of the pattern.
+		 */
+		String content() {
+			return html.subSequence(contentStart, contentEnd).toString();
+		}
+		
+		/**
+		 * Returns closing tag of the block, the third group of the pattern.
+		 */
+		String closingTag() {
+			return html.subSequence(contentEnd, end).toString();
+		}
+	}
+	
+	/**
+	 * Finds closing brackets of tags. Positions should not decrease between calls,
+	 * so all lookups take linear time in total.
+	 */
+	private static class TagEnd {
+		
+		private CharSequence html;
+		
+		private int from = -1;
+		private int nextOpen = -1;
+		private int nextClose = -1;
+		
+		TagEnd(CharSequence html) {
+			this.html = html;
+		}
+		
+		/**
+		 * Returns position of the next <code>&gt;</code> or the length of the text if there is none.
+		 */
+		int next(int pos) {
+			update(pos);
+			return nextClose;
+		}
+		
+		/**
+		 * Checks if <code>&gt;</code> follows a given position before any <code>&lt;</code>,
+		 * same as <code>(?=[^&lt;]*?&gt;)</code>.
+		 */
+		boolean isInsideTag(int pos) {
+			update(pos);
+			return nextClose < nextOpen;
+		}
+		
+		private void update(int pos) {
+			if(pos < from) {
+				nextOpen = -1;
+				nextClose = -1;
+			}
+			from = pos;
+			if(nextOpen < pos) {
+				nextOpen = indexOf(html, '<', pos);
+			}
+			if(nextClose < pos) {
+				nextClose = indexOf(html, '>', pos);
+			}
+		}
+		
+		private static int indexOf(CharSequence html, char c, int pos) {
+			int index = HtmlTagScanner.indexOf(html, c, pos);
+			return index == -1 ? html.length() : index;
+		}
+	}
+	
+}
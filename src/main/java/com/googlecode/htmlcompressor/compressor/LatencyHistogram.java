@@ -0,0 +1,207 @@
+package com.googlecode.htmlcompressor.compressor;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Histogram of non-negative values, like durations in nanoseconds or sizes in characters,
+ * that takes the same small amount of memory no matter how many values are recorded.
+ * 
+ * <p>Values below 64 are counted exactly. Larger values are counted in buckets, every power
+ * of two range is split into 32 buckets of equal width, so any percentile is reported
+ * within about 3% of the real value. Values are recorded without locking, so one histogram
+ * could be shared by any number of threads.
+ * 
+ * @see HtmlCompressorHistograms
+ * 
+ * @author <a href="mailto:serg472@gmail.com">Sergiy Kovalchuk</a>
+ */
+public final class LatencyHistogram {
+	
+	//values below this one have their own buckets
+	private static final int EXACT_BUCKETS = 64;
+	private static final int EXACT_BITS = 6;
+	
+	//buckets per power of two above exact values
+	private static final int SUB_BUCKETS = EXACT_BUCKETS / 2;
+	
+	private static final int BUCKETS = EXACT_BUCKETS + (63 - EXACT_BITS) * SUB_BUCKETS;
+	
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+	
+	/**
+	 * Records a value, negative values are recorded as zero.
+	 * 
+	 * @param value value to record
+	 */
+	public void record(long value) {
+		if(value < 0) {
+			value = 0;
+		}
+		counts.incrementAndGet(bucketOf(value));
+		max.accumulate(value);
+	}
+	
+	/**
+	 * Returns a copy of recorded values that doesn't change when new values are recorded.
+	 * 
+	 * @return snapshot of this histogram
+	 */
+	public Snapshot snapshot() {
+		long[] copy = new long[BUCKETS];
+		for(int i = 0; i < BUCKETS; i++) {
+			copy[i] = counts.get(i);
+		}
+		return new Snapshot(copy, max.get());
+	}
+	
+	/**
+	 * Removes all recorded values. Values recorded by other threads at the same time
+	 * might be partially kept.
+	 */
+	public void reset() {
+		for(int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		max.reset();
+	}
+	
+	private static int bucketOf(long value) {
+		if(value < EXACT_BUCKETS) {
+			return (int)value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - EXACT_BITS + 1;
+		return EXACT_BUCKETS + (shift - 1) * SUB_BUCKETS + (int)(value >>> shift) - SUB_BUCKETS;
+	}
+	
+	/**
+	 * Returns the highest value that is counted in a given bucket.
+	 */
+	private static long highestValueOf(int bucket) {
+		if(bucket < EXACT_BUCKETS) {
+			return bucket;
+		}
+		int shift = (bucket - EXACT_BUCKETS) / SUB_BUCKETS + 1;
+		long lowest = (long)(SUB_BUCKETS + (bucket - EXACT_BUCKETS) % SUB_BUCKETS) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+	
+	/**
+	 * Values of a histogram at the moment a snapshot was taken.
+	 */
+	public static final class Snapshot {
+		
+		private final long[] counts;
+		private final long count;
+		private final long max;
+		
+		private Snapshot(long[] counts, long max) {
+			this.counts = counts;
+			this.max = max;
+			
+			long total = 0;
+			for(long bucketCount : counts) {
+				total += bucketCount;
+			}
+			this.count = total;
+		}
+		
+		/**
+		 * Returns a value that a given percentage of recorded values are less than or equal to.
+		 * 
+		 * @param percentile percentage between <code>0</code> and <code>100</code>
+		 * @return value at the percentile, never greater than the maximum recorded value,
+		 * or <code>0</code> if no values are recorded
+		 */
+		public long getValueAtPercentile(double percentile) {
+			if(count == 0) {
+				return 0;
+			}
+			long rank = (long)Math.ceil(Math.min(Math.max(percentile, 0), 100) / 100 * count);
+			long seen = 0;
+			for(int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if(seen >= Math.max(rank, 1)) {
+					return Math.min(highestValueOf(i), max);
+				}
+			}
+			return max;
+		}
+		
+		/**
+		 * Returns the number of recorded values.
+		 * 
+		 * @return the number of recorded values
+		 */
+		public long getCount() {
+			return count;
+		}
+		
+		/**
+		 * Returns the highest recorded value.
+		 * 
+		 * @return the highest recorded value, or <code>0</code> if no values are recorded
+		 */
+		public long getMax() {
+			return max;
+		}
+		
+		/**
+		 * Returns the median.
+		 * 
+		 * @return value at 50th percentile
+		 */
+		public long getP50() {
+			return getValueAtPercentile(50);
+		}
+		
+		/**
+		 * Returns value at 90th percentile.
+		 * 
+		 * @return value at 90th percentile
+		 */
+		public long getP90() {
+			return getValueAtPercentile(90);
+		}
+		
+		/**
+		 * Returns value at 99th percentile.
+		 * 
+		 * @return value at 99th percentile
+		 */
+		public long getP99() {
+			return getValueAtPercentile(99);
+		}
+		
+		/**
+		 * Returns value at 99.9th percentile.
+		 * 
+		 * @return value at 99.9th percentile
+		 */
+		public long getP999() {
+			return getValueAtPercentile(99.9);
+		}
+		
+		@Override
+		public String toString() {
+			return String.format("Count=%d, P50=%d, P90=%d, P99=%d, P999=%d, Max=%d", count, getP50(), getP90(), getP99(), getP999(), max);
+		}
+	}
+	
+}
@@ -0,0 +1,214 @@
+package com.googlecode.htmlcompressor.compressor;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.google.javascript.jscomp.CompilationLevel;
+
+/**
+ * Compressor that returns results of a fast compressor right away and recompresses
+ * the same content with a slow compressor in the background. Once the slow compressor
+ * is done, its result is returned for the same content from a shared cache, so
+ * repeated blocks, like inline scripts of page templates, get the best compression
+ * without adding latency to any request.
+ * 
+ * <p>By default inline JavaScript is compressed by {@link FastJavaScriptCompressor} and
+ * then by {@link ClosureJavaScriptCompressor} on a single low priority daemon thread,
+ * which needs Closure Compiler jar on the classpath:
+ * 
+ * <pre>
+ * htmlCompressor.setJavaScriptCompressor(new TieredCompressor());
+ * </pre>
+ * 
+ * <p>Cache keeps a limited number of the most recently used blocks, so content that changes
+ * on every request doesn't fill up memory. If the slow compressor fails or its result
+ * is not shorter, the result of the fast one is cached instead.
+ * 
+ * <p>This class is thread safe, one instance should be shared by all compressors
+ * that process the same kind of pages.
+ * 
+ * @see HtmlCompressor#setJavaScriptCompressor(Compressor)
+ * 
+ * @author <a href="mailto:serg472@gmail.com">Sergiy Kovalchuk</a>
+ */
+public class TieredCompressor implements Compressor {
+	
+	/**
+	 * Default maximum number of compressed blocks kept in the cache
+	 */
+	public static final int DEFAULT_CACHE_SIZE = 1000;
+	
+	private Compressor fastCompressor;
+	private Compressor slowCompressor;
+	private Executor executor;
+	
+	//executor created by this compressor that should be shut down with it
+	private ExecutorService ownExecutor;
+	
+	private Map<String, String> cache;
+	
+	//blocks that are being compressed in the background
+	private ConcurrentMap<String, Boolean> pending = new ConcurrentHashMap<String, Boolean>();
+	
+	/**
+	 * Creates a compressor that uses {@link FastJavaScriptCompressor} right away and
+	 * {@link ClosureJavaScriptCompressor} with simple optimizations in the background.
+	 */
+	public TieredCompressor() {
+		this(new FastJavaScriptCompressor(), new ClosureJavaScriptCompressor(CompilationLevel.SIMPLE_OPTIMIZATIONS));
+	}
+	
+	/**
+	 * Creates a compressor that runs a slow compressor on its own single daemon thread.
+	 * 
+	 * @param fastCompressor compressor which results are returned until the slow one is done
+	 * @param slowCompressor compressor that runs in the background
+	 */
+	public TieredCompressor(Compressor fastCompressor, Compressor slowCompressor) {
+		this(fastCompressor, slowCompressor, null, DEFAULT_CACHE_SIZE);
+	}
+	
+	/**
+	 * Creates a compressor that runs a slow compressor with a given executor.
+	 * 
+	 * @param fastCompressor compressor which results are returned until the slow one is done
+	 * @param slowCompressor compressor that runs in the background
+	 * @param executor executor for background compression, if <code>null</code> a single daemon thread
+	 * is created that is stopped by {@link #shutdown()}
+	 * @param cacheSize maximum number of compressed blocks kept in the cache
+	 */
+	public TieredCompressor(Compressor fastCompressor, Compressor slowCompressor, Executor executor, final int cacheSize) {
+		this.fastCompressor = fastCompressor;
+		this.slowCompressor = slowCompressor;
+		
+		if(executor == null) {
+			//queue is bounded, blocks that don't fit are compressed only by the fast compressor until they do
+			ownExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(cacheSize), new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "htmlcompressor-tiered");
+					thread.setDaemon(true);
+					thread.setPriority(Thread.MIN_PRIORITY);
+					return thread;
+				}
+			});
+			executor = ownExecutor;
+		}
+		this.executor = executor;
+		
+		//least recently used blocks are removed first
+		cache = Collections.synchronizedMap(new LinkedHashMap<String, String>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+				return size() > cacheSize;
+			}
+		});
+	}
+	
+	@Override
+	public String compress(String source) {
+		String result = cache.get(source);
+		if(result != null) {
+			return result;
+		}
+		
+		if(pending.putIfAbsent(source, Boolean.TRUE) == null) {
+			try {
+				executor.execute(new Recompression(source));
+			} catch (RejectedExecutionException e) {
+				//executor is shut down or overloaded, try again next time
+				pending.remove(source);
+			}
+		}
+		
+		return fastCompressor.compress(source);
+	}
+	
+	/**
+	 * Stops the background thread if it was created by this compressor.
+	 * Blocks that are already queued are not compressed.
+	 */
+	public void shutdown() {
+		if(ownExecutor != null) {
+			ownExecutor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Returns the number of blocks compressed by the slow compressor that are kept in the cache.
+	 * 
+	 * @return the number of cached blocks
+	 */
+	public int getCacheSize() {
+		return cache.size();
+	}
+	
+	/**
+	 * Removes all cached results.
+	 */
+	public void clearCache() {
+		cache.clear();
+	}
+	
+	public Compressor getFastCompressor() {
+		return fastCompressor;
+	}
+	
+	public Compressor getSlowCompressor() {
+		return slowCompressor;
+	}
+	
+	private class Recompression implements Runnable {
+		
+		private String source;
+		
+		private Recompression(String source) {
+			this.source = source;
+		}
+		
+		@Override
+		public void run() {
+			try {
+				String result = fastCompressor.compress(source);
+				try {
+					String slowResult = slowCompressor.compress(source);
+					if(slowResult.length() < result.length()) {
+						result = slowResult;
+					}
+				} catch (RuntimeException e) {
+					//fast result is cached, so content the slow compressor can't handle is not queued again
+				}
+				cache.put(source, result);
+			} finally {
+				pending.remove(source);
+			}
+		}
+	}
+	
+}
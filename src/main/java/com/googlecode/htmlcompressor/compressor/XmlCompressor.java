@@ -14,16 +14,32 @@ package com.googlecode.htmlcompressor.compressor;
  * limitations under the License.
  */
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import com.googlecode.htmlcompressor.compressor.CompressionListener.Stage;
+
 /**
  * Class that compresses given XML source by removing comments, extra spaces and 
  * line breaks while preserving content within CDATA blocks.
  * 
+ * <p>Large documents can be compressed in parallel (see {@link #setParallel(boolean)}), 
+ * in which case the document is split into chunks between top level elements, chunks 
+ * are compressed on a fork-join pool and joined together in order. The result is 
+ * identical to the one produced by a sequential compression.
+ * 
  * @author <a href="mailto:serg472@gmail.com">Sergiy Kovalchuk</a>
  */
 public class XmlCompressor implements Compressor {
@@ -34,6 +50,13 @@ public class XmlCompressor implements Compressor {
 	private boolean removeComments = true;
 	private boolean removeIntertagSpaces = true;
 	
+	//parallel compression settings
+	private boolean parallel = false;
+	private int parallelChunkSize = 1024 * 1024;
+	private ForkJoinPool forkJoinPool = null;
+	
+	private CompressionListener compressionListener = null;
+	
 	//temp replacements for preserved blocks 
 	protected static final String tempCdataBlock = "%%%COMPRESS~CDATA~{0,number,#}%%%";
 	
@@ -59,22 +82,380 @@ public class XmlCompressor implements Compressor {
 			return xml;
 		}
 		
-		//preserved block containers
-		List<String> cdataBlocks = new ArrayList<String>();
+		CompressionTracker tracker = CompressionTracker.start(this, xml, CompressorMetrics.getActive(), null, compressionListener);
+		
+		String result = null;
+		if(parallel && xml.length() > parallelChunkSize) {
+			List<Integer> chunkEnds = findChunkEnds(xml);
+			if(chunkEnds.size() > 1) {
+				String[] chunks = compressChunks(xml, chunkEnds, tracker);
+				StringBuilder sb = new StringBuilder(xml.length());
+				for(String chunk : chunks) {
+					sb.append(chunk);
+				}
+				result = sb.toString().trim();
+			}
+		}
+		if(result == null) {
+			result = compressChunk(xml, new ArrayList<String>(), tracker).trim();
+		}
+		
+		if(tracker != null) {
+			tracker.finish(result.length());
+		}
+		return result;
+	}
+	
+	/**
+	 * Compresses given XML source and appends compressed result to the given output. 
+	 * In sequential mode the source is read in place by the pass that preserves 
+	 * CDATA blocks and the result is written by the pass that puts them back, 
+	 * in parallel mode compressed chunks are written one by one without joining them.
+	 * 
+	 * <p>If a subclass overrides {@link #preserveBlocks(String, List)} or 
+	 * {@link #returnBlocks(String, List)}, the source is converted to a string 
+	 * and compressed with {@link #compress(String)}.
+	 * 
+	 * @param xml XML content to compress, nothing is appended if it is <code>null</code>
+	 * @param out where compressed content is appended to
+	 * @throws IOException if appending to the output fails
+	 */
+	@Override
+	public void compress(CharSequence xml, Appendable out) throws IOException {
+		if(xml == null) {
+			return;
+		}
+		if(xml.length() == 0 || !enabled) {
+			out.append(xml);
+			return;
+		}
+		
+		if(isOverridden("preserveBlocks") || isOverridden("returnBlocks")) {
+			out.append(compress(xml.toString()));
+			return;
+		}
+		
+		CompressionTracker tracker = CompressionTracker.start(this, xml, CompressorMetrics.getActive(), null, compressionListener);
+		
+		int length = -1;
+		if(parallel && xml.length() > parallelChunkSize) {
+			//chunks are found in a string
+			String source = xml.toString();
+			List<Integer> chunkEnds = findChunkEnds(source);
+			if(chunkEnds.size() > 1) {
+				length = appendTrimmed(compressChunks(source, chunkEnds, tracker), out);
+			}
+			xml = source;
+		}
+		if(length == -1) {
+			length = compressChunk(xml, tracker, out);
+		}
 		
+		if(tracker != null) {
+			tracker.finish(length);
+		}
+	}
+	
+	private boolean isOverridden(String method) {
+		for(Class<?> c = getClass(); c != XmlCompressor.class; c = c.getSuperclass()) {
+			try {
+				c.getDeclaredMethod(method, String.class, List.class);
+				return true;
+			} catch (NoSuchMethodException e) {
+				//not declared by this class
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Compresses a whole document or a chunk of it.
+	 * 
+	 * @param cdataBlocks where preserved blocks of the chunk are added to
+	 * @param tracker tracker to report stages and preserved blocks to, <code>null</code> 
+	 * if chunks are compressed in parallel and are reported after all of them are done
+	 */
+	private String compressChunk(String xml, List<String> cdataBlocks, CompressionTracker tracker) {
 		//preserve blocks
+		if(tracker != null) {
+			tracker.nextStage(Stage.PRESERVE_BLOCKS);
+		}
 		xml = preserveBlocks(xml, cdataBlocks);
+		if(tracker != null) {
+			tracker.preservedBlocks(cdataBlocks);
+		}
 		
 		//process pure xml
+		if(tracker != null) {
+			tracker.nextStage(Stage.PROCESS_XML);
+		}
 		xml = processXml(xml);
 		
 		//return preserved blocks
+		if(tracker != null) {
+			tracker.nextStage(Stage.RETURN_BLOCKS);
+		}
 		xml = returnBlocks(xml, cdataBlocks);
 		
-		return xml.trim();
+		return xml;
+	}
+	
+	/**
+	 * Compresses a whole document and writes trimmed result into the output.
+	 * 
+	 * @return the number of characters appended to the output
+	 */
+	private int compressChunk(CharSequence xml, CompressionTracker tracker, Appendable out) throws IOException {
+		//preserved block containers
+		List<String> cdataBlocks = new ArrayList<String>();
+		
+		//preserve blocks
+		if(tracker != null) {
+			tracker.nextStage(Stage.PRESERVE_BLOCKS);
+		}
+		String preserved = preserveBlocks(xml, cdataBlocks);
+		if(tracker != null) {
+			tracker.preservedBlocks(cdataBlocks);
+		}
+		
+		//process pure xml
+		if(tracker != null) {
+			tracker.nextStage(Stage.PROCESS_XML);
+		}
+		String processed = processXml(preserved);
+		
+		//return preserved blocks
+		if(tracker != null) {
+			tracker.nextStage(Stage.RETURN_BLOCKS);
+		}
+		return returnBlocks(processed, cdataBlocks, out);
+	}
+	
+	private String[] compressChunks(String xml, List<Integer> chunkEnds, CompressionTracker tracker) {
+		String[] results = new String[chunkEnds.size()];
+		
+		ForkJoinPool pool = forkJoinPool != null ? forkJoinPool : DefaultPoolHolder.pool;
+		List<String> cdataBlocks = pool.invoke(new ChunkTask(xml, chunkEnds, results, 0, chunkEnds.size()));
+		
+		//blocks of all chunks are reported from the calling thread
+		if(tracker != null) {
+			tracker.preservedBlocks(cdataBlocks);
+		}
+		
+		return results;
+	}
+	
+	/**
+	 * Writes chunks into the output, same as joining and trimming them.
+	 * 
+	 * @return the number of characters appended to the output
+	 */
+	private static int appendTrimmed(String[] chunks, Appendable out) throws IOException {
+		int first = 0;
+		int start = 0;
+		for(; first < chunks.length; first++) {
+			start = 0;
+			while(start < chunks[first].length() && chunks[first].charAt(start) <= ' ') {
+				start++;
+			}
+			if(start < chunks[first].length()) {
+				break;
+			}
+		}
+		if(first == chunks.length) {
+			return 0;
+		}
+		
+		int last = chunks.length - 1;
+		int end = 0;
+		for(; last >= first; last--) {
+			end = chunks[last].length();
+			while(end > 0 && chunks[last].charAt(end - 1) <= ' ') {
+				end--;
+			}
+			if(end > 0) {
+				break;
+			}
+		}
+		
+		if(first == last) {
+			CompressorIO.append(out, chunks[first], start, end);
+			return end - start;
+		}
+		int length = chunks[first].length() - start + end;
+		CompressorIO.append(out, chunks[first], start, chunks[first].length());
+		for(int i = first + 1; i < last; i++) {
+			CompressorIO.append(out, chunks[i], 0, chunks[i].length());
+			length += chunks[i].length();
+		}
+		CompressorIO.append(out, chunks[last], 0, end);
+		return length;
+	}
+	
+	/**
+	 * Returns end positions of chunks the document could be split into. Chunks end 
+	 * right after a tag on the top level of the document or inside the root element 
+	 * and are at least <code>parallelChunkSize</code> long. Last position is always 
+	 * the end of the document.
+	 */
+	private List<Integer> findChunkEnds(String xml) {
+		List<Integer> chunkEnds = new ArrayList<Integer>();
+		
+		int length = xml.length();
+		
+		//CDATA blocks are found first, the same way as they are preserved in sequential mode, 
+		//even inside comments and tags, followed by the end of the document
+		List<Integer> cdataBounds = new ArrayList<Integer>();
+		Matcher matcher = cdataPattern.matcher(xml);
+		while(matcher.find()) {
+			cdataBounds.add(matcher.start());
+			cdataBounds.add(matcher.end());
+		}
+		cdataBounds.add(length);
+		int cdata = 0;
+		
+		int depth = 0;
+		int chunkStart = 0;
+		int index = 0;
+		while(index < length) {
+			int start = xml.indexOf('<', index);
+			if(start == -1 || start == length - 1) {
+				break;
+			}
+			
+			int end;
+			boolean tag = false;
+			if(start == cdataBounds.get(cdata)) {
+				//skip cdata
+				end = cdataBounds.get(cdata + 1) - 1;
+				cdata += 2;
+			} else if(xml.startsWith("<!--", start)) {
+				//skip comment, its end could not be inside cdata
+				end = xml.indexOf("-->", start + 4);
+				while(end != -1 && cdataBounds.get(cdata) < end) {
+					end = xml.indexOf("-->", cdataBounds.get(cdata + 1));
+					cdata += 2;
+				}
+				end = end != -1 ? end + 2 : -1;
+			} else {
+				end = findTagEnd(xml, start);
+				tag = end != -1 && cdataBounds.get(cdata) > end;
+				if(end != -1 && !tag) {
+					//cdata inside tag, chunks could only end after it
+					end = cdataBounds.get(cdata + 1) - 1;
+					cdata += 2;
+				}
+				if(tag) {
+					char c = xml.charAt(start + 1);
+					if(c == '/') {
+						depth--;
+					} else if(c != '?' && c != '!' && xml.charAt(end - 1) != '/') {
+						depth++;
+					}
+				}
+			}
+			
+			if(end == -1) {
+				//unterminated markup, the rest goes into the last chunk
+				break;
+			}
+			
+			//chunks can only end with a tag, as removed comments might leave whitespace at the end
+			index = end + 1;
+			if(tag && depth <= 1 && index - chunkStart >= parallelChunkSize && index < length) {
+				chunkEnds.add(index);
+				chunkStart = index;
+			}
+		}
+		
+		chunkEnds.add(length);
+		return chunkEnds;
+	}
+	
+	/**
+	 * Returns position of <code>&gt;</code> that closes a tag, processing instruction 
+	 * or declaration starting at the given position, ignoring ones inside quotes 
+	 * and inside declaration brackets.
+	 */
+	private int findTagEnd(String xml, int start) {
+		boolean declaration = start + 1 < xml.length() && xml.charAt(start + 1) == '!';
+		char quote = 0;
+		int brackets = 0;
+		for(int i = start + 1; i < xml.length(); i++) {
+			char c = xml.charAt(i);
+			if(quote != 0) {
+				if(c == quote) {
+					quote = 0;
+				}
+			} else if(c == '"' || c == '\'') {
+				quote = c;
+			} else if(c == '[' && declaration) {
+				brackets++;
+			} else if(c == ']' && declaration) {
+				brackets = Math.max(0, brackets - 1);
+			} else if(c == '>' && brackets == 0) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Compresses XML read from the reader and writes compressed result into the writer. 
+	 * Unlike {@link #compress(String)} the document is processed in a single forward pass 
+	 * without loading it into memory, so it is suitable for documents of any size.
+	 * 
+	 * <p>Protected processing methods are not used in this mode. Attribute values 
+	 * and comments that are not removed are copied without changes, so unlike 
+	 * {@link #compress(String)} multiple spaces inside quoted attribute values are kept 
+	 * and the result can differ. Reader and writer are not closed.
+	 * 
+	 * @param reader XML content to compress
+	 * @param writer where compressed content is written to
+	 * @throws IOException if reading or writing fails
+	 */
+	public void compress(Reader reader, Writer writer) throws IOException {
+		Writer output = writer;
+		if(enabled) {
+			output = new XmlStreamCompressor(writer, removeComments, removeIntertagSpaces);
+		}
+		
+		char[] buffer = new char[8192];
+		int read;
+		while((read = reader.read(buffer)) != -1) {
+			output.write(buffer, 0, read);
+		}
+		
+		if(enabled) {
+			((XmlStreamCompressor)output).finish();
+		} else {
+			output.flush();
+		}
+	}
+	
+	/**
+	 * Compresses XML read from the input stream and writes compressed result 
+	 * into the output stream using the same charset. 
+	 * Streams are not closed.
+	 * 
+	 * @param input XML content to compress
+	 * @param output where compressed content is written to
+	 * @param charset charset of the input and output content
+	 * @throws IOException if reading or writing fails
+	 * 
+	 * @see #compress(Reader, Writer)
+	 */
+	public void compress(InputStream input, OutputStream output, String charset) throws IOException {
+		Writer writer = new OutputStreamWriter(output, charset);
+		compress(new InputStreamReader(input, charset), writer);
+		writer.flush();
 	}
 
 	protected String preserveBlocks(String xml, List<String> cdataBlocks) {
+		return preserveBlocks((CharSequence) xml, cdataBlocks);
+	}
+	
+	private static String preserveBlocks(CharSequence xml, List<String> cdataBlocks) {
 		//preserve CDATA blocks
 		Matcher matcher = cdataPattern.matcher(xml);
 		int index = 0;
@@ -84,9 +465,8 @@ public class XmlCompressor implements Compressor {
 			matcher.appendReplacement(sb, MessageFormat.format(tempCdataBlock, index++));
 		}
 		matcher.appendTail(sb);
-		xml = sb.toString();
 		
-		return xml;
+		return sb.toString();
 	}
 	
 	protected String returnBlocks(String xml, List<String> cdataBlocks) {
@@ -102,6 +482,35 @@ public class XmlCompressor implements Compressor {
 		return xml;
 	}
 	
+	/**
+	 * Puts CDATA blocks back and writes trimmed result into the output. 
+	 * Blocks never start or end with whitespace, so the document is trimmed first.
+	 * 
+	 * @return the number of characters appended to the output
+	 */
+	private static int returnBlocks(String xml, List<String> cdataBlocks, Appendable out) throws IOException {
+		int start = 0;
+		int end = xml.length();
+		while(start < end && xml.charAt(start) <= ' ') {
+			start++;
+		}
+		while(end > start && xml.charAt(end - 1) <= ' ') {
+			end--;
+		}
+		
+		int length = 0;
+		Matcher matcher = tempCdataPattern.matcher(xml).region(start, end);
+		while(matcher.find()) {
+			String block = cdataBlocks.get(Integer.parseInt(matcher.group(1)));
+			CompressorIO.append(out, xml, start, matcher.start());
+			CompressorIO.append(out, block, 0, block.length());
+			length += matcher.start() - start + block.length();
+			start = matcher.end();
+		}
+		CompressorIO.append(out, xml, start, end);
+		return length + end - start;
+	}
+	
 	protected String processXml(String xml) {
 		//remove comments
 		xml = removeComments(xml);
@@ -116,15 +525,116 @@ public class XmlCompressor implements Compressor {
 	}
 
 	protected String removeSpacesInsideTags(String xml) {
-		//replace miltiple spaces inside tags with single spaces
-		xml = multispacePattern.matcher(xml).replaceAll(" ");
+		//single pass over text between angle brackets, text that is followed by '>' 
+		//gets the same changes as with multispacePattern, tagPropertyPattern and 
+		//tagEndSpacePattern applied one after another
+		StringBuilder sb = new StringBuilder(xml.length());
 		
-		//remove spaces around equal sign inside tags
-		xml = tagPropertyPattern.matcher(xml).replaceAll("$1=");
+		//position of the first '<' after the last '>' in the result
+		int tagStart = -1;
 		
-		//remove ending spaces inside tags
-		xml = tagEndSpacePattern.matcher(xml).replaceAll("$1$2");
-		return xml;
+		int length = xml.length();
+		int index = 0;
+		while(index < length) {
+			int end = index;
+			while(end < length && xml.charAt(end) != '<' && xml.charAt(end) != '>') {
+				end++;
+			}
+			if(end == length) {
+				sb.append(xml, index, length);
+				break;
+			}
+			
+			if(xml.charAt(end) == '<') {
+				sb.append(xml, index, end + 1);
+				if(tagStart == -1) {
+					tagStart = sb.length() - 1;
+				}
+			} else {
+				int start = sb.length();
+				appendMultispaces(xml, index, end, sb);
+				removeTagPropertySpaces(sb, start);
+				if(tagStart != -1) {
+					//at least one character should be left after '<'
+					removeTagEndSpace(sb, Math.max(start, tagStart + 2));
+					tagStart = -1;
+				}
+				sb.append('>');
+			}
+			index = end + 1;
+		}
+		
+		return sb.toString();
+	}
+	
+	/**
+	 * Appends text replacing multiple spaces with single spaces.
+	 */
+	private static void appendMultispaces(String xml, int start, int end, StringBuilder sb) {
+		boolean space = false;
+		for(int i = start; i < end; i++) {
+			char c = xml.charAt(i);
+			if(c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == '\u000B') {
+				space = true;
+			} else {
+				if(space) {
+					sb.append(' ');
+					space = false;
+				}
+				sb.append(c);
+			}
+		}
+		if(space) {
+			sb.append(' ');
+		}
+	}
+	
+	/**
+	 * Removes spaces around equal signs that follow a space and a word 
+	 * in the result starting at the given position.
+	 */
+	private static void removeTagPropertySpaces(StringBuilder sb, int start) {
+		int length = sb.length();
+		int write = start;
+		int read = start;
+		while(read < length) {
+			char c = sb.charAt(read);
+			if(c == ' ') {
+				int wordEnd = read + 1;
+				while(wordEnd < length && isWordChar(sb.charAt(wordEnd))) {
+					wordEnd++;
+				}
+				int equals = wordEnd < length && sb.charAt(wordEnd) == ' ' ? wordEnd + 1 : wordEnd;
+				if(wordEnd > read + 1 && equals < length && sb.charAt(equals) == '=') {
+					for(int i = read; i < wordEnd; i++) {
+						sb.setCharAt(write++, sb.charAt(i));
+					}
+					sb.setCharAt(write++, '=');
+					read = equals + 1 < length && sb.charAt(equals + 1) == ' ' ? equals + 2 : equals + 1;
+					continue;
+				}
+			}
+			sb.setCharAt(write++, c);
+			read++;
+		}
+		sb.setLength(write);
+	}
+	
+	private static boolean isWordChar(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+	}
+	
+	/**
+	 * Removes a space before the end of the result or before a trailing slash, 
+	 * if it is not before the given position.
+	 */
+	private static void removeTagEndSpace(StringBuilder sb, int start) {
+		int last = sb.length() - 1;
+		if(last >= start && sb.charAt(last) == ' ') {
+			sb.setLength(last);
+		} else if(last - 1 >= start && sb.charAt(last) == '/' && sb.charAt(last - 1) == ' ') {
+			sb.deleteCharAt(last - 1);
+		}
 	}
 
 	protected String removeIntertagSpaces(String xml) {
@@ -143,6 +653,60 @@ public class XmlCompressor implements Compressor {
 		return xml;
 	}
 	
+	/**
+	 * Compresses a range of chunks, splitting it in halves until a single chunk is left, 
+	 * and returns CDATA blocks preserved in them. 
+	 * All chunks except the first one are compressed with a <code>&gt;</code> prepended, 
+	 * as they follow a tag, so removal of inter-tag spaces at their start works 
+	 * the same way as in the whole document. 
+	 */
+	private class ChunkTask extends RecursiveTask<List<String>> {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private String xml;
+		private List<Integer> chunkEnds;
+		private String[] results;
+		private int from;
+		private int to;
+		
+		ChunkTask(String xml, List<Integer> chunkEnds, String[] results, int from, int to) {
+			this.xml = xml;
+			this.chunkEnds = chunkEnds;
+			this.results = results;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected List<String> compute() {
+			if(to - from == 1) {
+				List<String> cdataBlocks = new ArrayList<String>();
+				if(from == 0) {
+					results[from] = compressChunk(xml.substring(0, chunkEnds.get(0)), cdataBlocks, null);
+				} else {
+					results[from] = compressChunk(">" + xml.substring(chunkEnds.get(from - 1), chunkEnds.get(from)), cdataBlocks, null).substring(1);
+				}
+				return cdataBlocks;
+			} else {
+				int middle = (from + to) >>> 1;
+				ChunkTask second = new ChunkTask(xml, chunkEnds, results, middle, to);
+				second.fork();
+				List<String> cdataBlocks = new ChunkTask(xml, chunkEnds, results, from, middle).compute();
+				cdataBlocks.addAll(second.join());
+				return cdataBlocks;
+			}
+		}
+	}
+	
+	/**
+	 * Fork-join pool shared by all compressors that do not have their own pool set, 
+	 * created on first use.
+	 */
+	private static class DefaultPoolHolder {
+		private static final ForkJoinPool pool = new ForkJoinPool();
+	}
+	
 	/**
 	 * Returns <code>true</code> if compression is enabled.  
 	 * 
@@ -200,4 +764,90 @@ public class XmlCompressor implements Compressor {
 		this.removeIntertagSpaces = removeIntertagSpaces;
 	}
 	
+	/**
+	 * Returns <code>true</code> if large documents are compressed in parallel.
+	 * 
+	 * @return <code>true</code> if large documents are compressed in parallel
+	 */
+	public boolean isParallel() {
+		return parallel;
+	}
+
+	/**
+	 * If set to <code>true</code> documents larger than <code>parallelChunkSize</code> 
+	 * passed to {@link #compress(String)} are split into chunks between top level elements 
+	 * that are compressed in parallel. Output is the same as in sequential mode. 
+	 * Default is <code>false</code>.
+	 * 
+	 * @param parallel set <code>true</code> to compress large documents in parallel
+	 * 
+	 * @see #setParallelChunkSize(int)
+	 * @see #setForkJoinPool(ForkJoinPool)
+	 */
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+
+	/**
+	 * Returns minimum size of a chunk in characters for parallel compression.
+	 * 
+	 * @return minimum size of a chunk in characters
+	 */
+	public int getParallelChunkSize() {
+		return parallelChunkSize;
+	}
+
+	/**
+	 * Sets minimum size of a chunk in characters for parallel compression. 
+	 * Default is 1M characters.
+	 * 
+	 * @param parallelChunkSize minimum size of a chunk in characters
+	 */
+	public void setParallelChunkSize(int parallelChunkSize) {
+		this.parallelChunkSize = parallelChunkSize;
+	}
+
+	/**
+	 * Returns fork-join pool used for parallel compression, 
+	 * or <code>null</code> if a shared default pool is used.
+	 * 
+	 * @return fork-join pool used for parallel compression
+	 */
+	public ForkJoinPool getForkJoinPool() {
+		return forkJoinPool;
+	}
+
+	/**
+	 * Sets fork-join pool used for parallel compression. 
+	 * If not set, a pool shared by all compressors is used.
+	 * 
+	 * @param forkJoinPool fork-join pool for parallel compression
+	 */
+	public void setForkJoinPool(ForkJoinPool forkJoinPool) {
+		this.forkJoinPool = forkJoinPool;
+	}
+	
+	/**
+	 * Returns listener that is notified about progress of compression.
+	 * 
+	 * @return listener, or <code>null</code> if nothing is notified
+	 */
+	public CompressionListener getCompressionListener() {
+		return compressionListener;
+	}
+	
+	/**
+	 * Sets listener that is notified when each document passed to {@link #compress(String)} 
+	 * and each stage of its compression starts or completes. Stages are not reported 
+	 * for documents compressed in parallel. 
+	 * Default is <code>null</code>, nothing is notified.
+	 * 
+	 * @param compressionListener listener to notify, or <code>null</code> to stop notifying
+	 * 
+	 * @see CompressionListener
+	 */
+	public void setCompressionListener(CompressionListener compressionListener) {
+		this.compressionListener = compressionListener;
+	}
+	
 }
\ No newline at end of file
@@ -0,0 +1,400 @@
+package com.googlecode.htmlcompressor.compressor;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writer that compresses XML written into it in a single forward pass and passes
+ * the result to the target writer. Memory use does not depend on the document size,
+ * only a single run of whitespace between two tags is held back until it is known
+ * whether it can be removed.
+ * 
+ * <p>Comments are removed or copied as is, CDATA blocks, DOCTYPE declarations and
+ * quoted attribute values are copied as is, whitespace inside tags and processing
+ * instructions is collapsed and removed around <code>=</code> and before closing
+ * <code>&gt;</code> or <code>/&gt;</code>. Whitespace between tags is removed,
+ * whitespace around text and CDATA blocks is kept. Leading and trailing whitespace
+ * of the document is removed.
+ * 
+ * <p>{@link #finish()} must be called after the whole document is written.
+ * 
+ * @author <a href="mailto:serg472@gmail.com">Sergiy Kovalchuk</a>
+ */
+class XmlStreamCompressor extends Writer {
+	
+	private static final String COMMENT_START = "<!--";
+	private static final String CDATA_START = "<![CDATA[";
+	
+	//parser states
+	private static final int TEXT = 0;
+	private static final int MARKUP_START = 1;
+	private static final int TAG = 2;
+	private static final int TAG_QUOTE = 3;
+	private static final int COMMENT = 4;
+	private static final int CDATA = 5;
+	private static final int DECLARATION = 6;
+	private static final int DECLARATION_QUOTE = 7;
+	
+	private Writer out;
+	private boolean removeComments;
+	private boolean removeIntertagSpaces;
+	
+	private int state = TEXT;
+	
+	//output buffer
+	private char[] buffer = new char[8192];
+	private int bufferLength = 0;
+	
+	//whitespace in text that is not yet known to be intertag
+	private StringBuilder pendingSpaces = new StringBuilder();
+	
+	//nothing except whitespace was written yet
+	private boolean started = false;
+	
+	//last written character was a closing bracket of a markup
+	private boolean afterMarkup = false;
+	
+	//characters of a markup start until its type is known
+	private StringBuilder markupStart = new StringBuilder();
+	private boolean maybeComment = false;
+	private boolean maybeCdata = false;
+	
+	//tag state
+	private boolean tagSpace = false;
+	private boolean tagEquals = false;
+	private boolean tagSlash = false;
+	private char quote = 0;
+	
+	//comment, cdata and declaration state
+	private boolean keepComment = false;
+	private int endMatch = 0;
+	private int bracketDepth = 0;
+	
+	private boolean finished = false;
+	
+	XmlStreamCompressor(Writer out, boolean removeComments, boolean removeIntertagSpaces) {
+		this.out = out;
+		this.removeComments = removeComments;
+		this.removeIntertagSpaces = removeIntertagSpaces;
+	}
+	
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		if(finished) {
+			throw new IOException("Compressor is already finished");
+		}
+		for(int i = off; i < off + len; i++) {
+			process(cbuf[i]);
+		}
+	}
+	
+	@Override
+	public void write(int c) throws IOException {
+		if(finished) {
+			throw new IOException("Compressor is already finished");
+		}
+		process((char) c);
+	}
+	
+	@Override
+	public void write(String str, int off, int len) throws IOException {
+		if(finished) {
+			throw new IOException("Compressor is already finished");
+		}
+		for(int i = off; i < off + len; i++) {
+			process(str.charAt(i));
+		}
+	}
+	
+	/**
+	 * Writes out everything that is held back except trailing whitespace
+	 * and flushes the target writer. Target writer is not closed.
+	 */
+	public void finish() throws IOException {
+		if(finished) {
+			return;
+		}
+		finished = true;
+		
+		//unfinished constructs are written as they are
+		if(state == MARKUP_START) {
+			emitPendingSpaces();
+			emit(markupStart);
+		} else if(state == TAG && tagSlash) {
+			if(tagSpace) {
+				emit(' ');
+			}
+			emit('/');
+		}
+		
+		flushBuffer();
+		out.flush();
+	}
+	
+	/**
+	 * Flushes compressed output written so far. Whitespace that might
+	 * be removed later is still held back.
+	 */
+	@Override
+	public void flush() throws IOException {
+		flushBuffer();
+		out.flush();
+	}
+	
+	/**
+	 * Finishes compression and closes the target writer.
+	 */
+	@Override
+	public void close() throws IOException {
+		finish();
+		out.close();
+	}
+	
+	private void process(char c) throws IOException {
+		switch(state) {
+			case TEXT:
+				processText(c);
+				break;
+			case MARKUP_START:
+				processMarkupStart(c);
+				break;
+			case TAG:
+				processTag(c);
+				break;
+			case TAG_QUOTE:
+				emit(c);
+				if(c == quote) {
+					state = TAG;
+				}
+				break;
+			case COMMENT:
+				processComment(c);
+				break;
+			case CDATA:
+				processCdata(c);
+				break;
+			case DECLARATION:
+				processDeclaration(c);
+				break;
+			case DECLARATION_QUOTE:
+				emit(c);
+				if(c == quote) {
+					state = DECLARATION;
+				}
+				break;
+		}
+	}
+	
+	private void processText(char c) throws IOException {
+		if(isWhitespace(c)) {
+			if(started) {
+				pendingSpaces.append(c);
+			}
+		} else if(c == '<') {
+			markupStart.setLength(0);
+			markupStart.append(c);
+			maybeComment = true;
+			maybeCdata = true;
+			state = MARKUP_START;
+		} else {
+			emitPendingSpaces();
+			emit(c);
+			afterMarkup = (c == '>');
+		}
+	}
+	
+	private void processMarkupStart(char c) throws IOException {
+		markupStart.append(c);
+		int length = markupStart.length();
+		
+		maybeComment = maybeComment && length <= COMMENT_START.length() && COMMENT_START.charAt(length - 1) == c;
+		maybeCdata = maybeCdata && length <= CDATA_START.length() && CDATA_START.charAt(length - 1) == c;
+		
+		if(maybeComment && length == COMMENT_START.length()) {
+			//comment
+			keepComment = !removeComments;
+			if(keepComment) {
+				startMarkup();
+				emit(markupStart);
+			}
+			endMatch = 0;
+			state = COMMENT;
+		} else if(maybeCdata && length == CDATA_START.length()) {
+			//cdata is treated as text
+			emitPendingSpaces();
+			emit(markupStart);
+			endMatch = 0;
+			state = CDATA;
+		} else if(!maybeComment && !maybeCdata) {
+			startMarkup();
+			if(length > 2 && markupStart.charAt(1) == '!') {
+				//doctype or other declaration
+				emit(markupStart, 0, length - 1);
+				bracketDepth = 0;
+				state = DECLARATION;
+				processDeclaration(c);
+			} else {
+				//tag or processing instruction
+				emit(markupStart, 0, length - 1);
+				tagSpace = false;
+				tagEquals = false;
+				tagSlash = false;
+				state = TAG;
+				processTag(c);
+			}
+		}
+	}
+	
+	private void processTag(char c) throws IOException {
+		if(tagSlash) {
+			tagSlash = false;
+			if(c == '>') {
+				emit('/');
+				emit('>');
+				endMarkup();
+				return;
+			}
+			emitTagSpace();
+			emit('/');
+			tagEquals = false;
+		}
+		
+		if(isWhitespace(c)) {
+			tagSpace = !tagEquals;
+		} else if(c == '=') {
+			tagSpace = false;
+			emit(c);
+			tagEquals = true;
+		} else if(c == '>') {
+			tagSpace = false;
+			emit(c);
+			endMarkup();
+		} else if(c == '/') {
+			tagSlash = true;
+		} else {
+			emitTagSpace();
+			emit(c);
+			tagEquals = false;
+			if(c == '"' || c == '\'') {
+				quote = c;
+				state = TAG_QUOTE;
+			}
+		}
+	}
+	
+	private void processComment(char c) throws IOException {
+		if(keepComment) {
+			emit(c);
+		}
+		if(c == '-') {
+			endMatch = Math.min(endMatch + 1, 2);
+		} else if(c == '>' && endMatch == 2) {
+			if(keepComment) {
+				endMarkup();
+			} else {
+				//removed comment does not affect surrounding whitespace
+				state = TEXT;
+			}
+		} else {
+			endMatch = 0;
+		}
+	}
+	
+	private void processCdata(char c) throws IOException {
+		emit(c);
+		if(c == ']') {
+			endMatch = Math.min(endMatch + 1, 2);
+		} else if(c == '>' && endMatch == 2) {
+			afterMarkup = false;
+			state = TEXT;
+		} else {
+			endMatch = 0;
+		}
+	}
+	
+	private void processDeclaration(char c) throws IOException {
+		emit(c);
+		if(c == '"' || c == '\'') {
+			quote = c;
+			state = DECLARATION_QUOTE;
+		} else if(c == '[') {
+			bracketDepth++;
+		} else if(c == ']') {
+			bracketDepth = Math.max(0, bracketDepth - 1);
+		} else if(c == '>' && bracketDepth == 0) {
+			endMarkup();
+		}
+	}
+	
+	private void startMarkup() throws IOException {
+		if(removeIntertagSpaces && afterMarkup) {
+			pendingSpaces.setLength(0);
+		} else {
+			emitPendingSpaces();
+		}
+		started = true;
+	}
+	
+	private void endMarkup() {
+		afterMarkup = true;
+		state = TEXT;
+	}
+	
+	private void emitTagSpace() throws IOException {
+		if(tagSpace) {
+			emit(' ');
+			tagSpace = false;
+		}
+	}
+	
+	private void emitPendingSpaces() throws IOException {
+		if(pendingSpaces.length() > 0) {
+			emit(pendingSpaces);
+			pendingSpaces.setLength(0);
+		}
+		started = true;
+	}
+	
+	private void emit(CharSequence str) throws IOException {
+		emit(str, 0, str.length());
+	}
+	
+	private void emit(CharSequence str, int start, int end) throws IOException {
+		for(int i = start; i < end; i++) {
+			emit(str.charAt(i));
+		}
+	}
+	
+	private void emit(char c) throws IOException {
+		if(bufferLength == buffer.length) {
+			flushBuffer();
+		}
+		buffer[bufferLength++] = c;
+	}
+	
+	private void flushBuffer() throws IOException {
+		if(bufferLength > 0) {
+			out.write(buffer, 0, bufferLength);
+			bufferLength = 0;
+		}
+	}
+	
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == '\u000B';
+	}
+	
+}
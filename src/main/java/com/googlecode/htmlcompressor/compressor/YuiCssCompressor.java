@@ -46,10 +46,34 @@ public class YuiCssCompressor implements Compressor {
 		} catch (IOException e) {
 			result.write(source);
 			e.printStackTrace();
+			CompressionTracker.fallback(CompressionListener.BlockType.CSS);
 		}
 		
 		return result.toString();
 	}
+	
+	/**
+	 * Compresses the given source reading it in place and writes compressed result 
+	 * straight into the output. 
+	 */
+	@Override
+	public void compress(CharSequence source, Appendable out) throws IOException {
+		if(source == null) {
+			return;
+		}
+		
+		CssCompressor compressor;
+		try {
+			compressor = new CssCompressor(CompressorIO.reader(source));
+		} catch (IOException e) {
+			out.append(source);
+			e.printStackTrace();
+			CompressionTracker.fallback(CompressionListener.BlockType.CSS);
+			return;
+		}
+		//exceptions of the output are not caught, as the result might be partially written
+		compressor.compress(CompressorIO.writer(out), lineBreak);
+	}
 
     /**
 	 * Returns number of symbols per line Yahoo YUI Compressor
@@ -55,11 +55,35 @@ public class YuiJavaScriptCompressor implements Compressor {
 		} catch (IOException e) {
 			result.write(source);
 			e.printStackTrace();
+			CompressionTracker.fallback(CompressionListener.BlockType.JAVASCRIPT);
 		}
 		return result.toString();
 		
 	}
 	
+	/**
+	 * Compresses the given source reading it in place and writes compressed result 
+	 * straight into the output. 
+	 */
+	@Override
+	public void compress(CharSequence source, Appendable out) throws IOException {
+		if(source == null) {
+			return;
+		}
+		
+		JavaScriptCompressor compressor;
+		try {
+			compressor = new JavaScriptCompressor(CompressorIO.reader(source), errorReporter);
+		} catch (IOException e) {
+			out.append(source);
+			e.printStackTrace();
+			CompressionTracker.fallback(CompressionListener.BlockType.JAVASCRIPT);
+			return;
+		}
+		//exceptions of the output are not caught, as the result might be partially written
+		compressor.compress(CompressorIO.writer(out), lineBreak, !noMunge, false, preserveAllSemiColons, disableOptimizations);
+	}
+	
 	/**
 	 * Default <code>ErrorReporter</code> implementation that uses <code>System.err</code> 
 	 * stream for error reporting. Used by YUI Compressor to log errors during JavaScript compression.
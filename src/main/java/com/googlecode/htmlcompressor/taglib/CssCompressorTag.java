@@ -20,6 +20,8 @@ import javax.servlet.jsp.JspException;
 import javax.servlet.jsp.tagext.BodyContent;
 import javax.servlet.jsp.tagext.BodyTagSupport;
 
+import com.googlecode.htmlcompressor.compressor.Compressor;
+import com.googlecode.htmlcompressor.compressor.FastCssCompressor;
 import com.googlecode.htmlcompressor.compressor.HtmlCompressor;
 import com.googlecode.htmlcompressor.compressor.YuiCssCompressor;
 
@@ -37,6 +39,8 @@ public class CssCompressorTag extends BodyTagSupport {
 	
 	private boolean enabled = true;
 	
+	private String cssCompressor = HtmlCompressor.CSS_COMPRESSOR_YUI;
+	
 	//YUICompressor settings
 	private int yuiCssLineBreak = -1;
 
@@ -48,9 +52,15 @@ public class CssCompressorTag extends BodyTagSupport {
 	
 		try {
 			if(enabled) {
-				//call YUICompressor
-				YuiCssCompressor compressor = new YuiCssCompressor();
-				compressor.setLineBreak(yuiCssLineBreak);
+				Compressor compressor;
+				if(cssCompressor.equalsIgnoreCase(HtmlCompressor.CSS_COMPRESSOR_FAST)) {
+					compressor = new FastCssCompressor();
+				} else {
+					//call YUICompressor
+					YuiCssCompressor yuiCssCompressor = new YuiCssCompressor();
+					yuiCssCompressor.setLineBreak(yuiCssLineBreak);
+					compressor = yuiCssCompressor;
+				}
 				String result = compressor.compress(content);
 
 				bodyContent.clear();
@@ -68,6 +78,18 @@ public class CssCompressorTag extends BodyTagSupport {
 		return super.doEndTag();
 	}
 	
+	/**
+	 * Sets CSS compressor implementation. 
+	 * 
+	 * @param cssCompressor Could be either <code>"yui"</code> for using {@link YuiCssCompressor} (used by default if none provided) or
+	 * <code>"fast"</code> for using {@link FastCssCompressor}
+	 * 
+	 * @see HtmlCompressor#setCssCompressor(Compressor)
+	 */
+	public void setCssCompressor(String cssCompressor) {
+		this.cssCompressor = cssCompressor;
+	}
+	
 	/**
 	 * @see HtmlCompressor#setYuiCssLineBreak(int)
 	 */
@@ -22,6 +22,8 @@ import javax.servlet.jsp.tagext.BodyTagSupport;
 
 import com.google.javascript.jscomp.CompilationLevel;
 import com.googlecode.htmlcompressor.compressor.ClosureJavaScriptCompressor;
+import com.googlecode.htmlcompressor.compressor.FastCssCompressor;
+import com.googlecode.htmlcompressor.compressor.FastJavaScriptCompressor;
 import com.googlecode.htmlcompressor.compressor.HtmlCompressor;
 import com.googlecode.htmlcompressor.compressor.YuiJavaScriptCompressor;
 
@@ -60,6 +62,7 @@ public class HtmlCompressorTag extends BodyTagSupport {
 	private boolean compressCss = false;
 	
 	private String jsCompressor = HtmlCompressor.JS_COMPRESSOR_YUI;
+	private String cssCompressor = HtmlCompressor.CSS_COMPRESSOR_YUI;
 	
 	//YUICompressor settings
 	private boolean yuiJsNoMunge = false;
@@ -113,6 +116,12 @@ public class HtmlCompressorTag extends BodyTagSupport {
 				closureCompressor.setCompilationLevel(CompilationLevel.SIMPLE_OPTIMIZATIONS);
 			}
 			htmlCompressor.setJavaScriptCompressor(closureCompressor);
+		} else if(compressJavaScript && jsCompressor.equalsIgnoreCase(HtmlCompressor.JS_COMPRESSOR_FAST)) {
+			htmlCompressor.setJavaScriptCompressor(new FastJavaScriptCompressor());
+		}
+		
+		if(compressCss && cssCompressor.equalsIgnoreCase(HtmlCompressor.CSS_COMPRESSOR_FAST)) {
+			htmlCompressor.setCssCompressor(new FastCssCompressor());
 		}
 		
 		try {
@@ -221,11 +230,12 @@ public class HtmlCompressorTag extends BodyTagSupport {
 	 * Sets JavaScript compressor implementation that will be used 
 	 * to compress inline JavaScript in HTML. 
 	 * 
-	 * @param jsCompressor Could be either <code>"yui"</code> for using {@link YuiJavaScriptCompressor} (used by default if none provided) or
-	 * <code>"closure"</code> for using {@link ClosureJavaScriptCompressor}
+	 * @param jsCompressor Could be either <code>"yui"</code> for using {@link YuiJavaScriptCompressor} (used by default if none provided), 
+	 * <code>"closure"</code> for using {@link ClosureJavaScriptCompressor} or <code>"fast"</code> for using {@link FastJavaScriptCompressor}
 	 * 
 	 * @see YuiJavaScriptCompressor
  	 * @see ClosureJavaScriptCompressor
+ 	 * @see FastJavaScriptCompressor
 	 * @see <a href="http://developer.yahoo.com/yui/compressor/">Yahoo YUI Compressor</a>
 	 * @see <a href="http://code.google.com/closure/compiler/">Google Closure Compiler</a>
 
@@ -234,6 +244,19 @@ public class HtmlCompressorTag extends BodyTagSupport {
 		this.jsCompressor = jsCompressor;
 	}
 	
+	/**
+	 * Sets CSS compressor implementation that will be used 
+	 * to compress inline CSS in HTML. 
+	 * 
+	 * @param cssCompressor Could be either <code>"yui"</code> for using YUI Compressor (used by default if none provided) or
+	 * <code>"fast"</code> for using {@link FastCssCompressor}
+	 * 
+	 * @see HtmlCompressor#setCssCompressor(com.googlecode.htmlcompressor.compressor.Compressor)
+	 */
+	public void setCssCompressor(String cssCompressor) {
+		this.cssCompressor = cssCompressor;
+	}
+	
 	/**
 	 * Sets level of optimization if <a href="http://code.google.com/closure/compiler/">Google Closure Compiler</a> is used 
 	 * for compressing inline JavaScript.
@@ -22,6 +22,7 @@ import javax.servlet.jsp.tagext.BodyTagSupport;
 
 import com.google.javascript.jscomp.CompilationLevel;
 import com.googlecode.htmlcompressor.compressor.ClosureJavaScriptCompressor;
+import com.googlecode.htmlcompressor.compressor.FastJavaScriptCompressor;
 import com.googlecode.htmlcompressor.compressor.HtmlCompressor;
 import com.googlecode.htmlcompressor.compressor.YuiJavaScriptCompressor;
 
@@ -75,6 +76,9 @@ public class JavaScriptCompressorTag extends BodyTagSupport {
 					
 					result = closureCompressor.compress(content);
 					
+				} else if(jsCompressor.equalsIgnoreCase(HtmlCompressor.JS_COMPRESSOR_FAST)) {
+					result = new FastJavaScriptCompressor().compress(content);
+					
 				} else {
 					//call YUICompressor
 					YuiJavaScriptCompressor yuiCompressor = new YuiJavaScriptCompressor();
@@ -141,11 +145,12 @@ public class JavaScriptCompressorTag extends BodyTagSupport {
 	 * Sets JavaScript compressor implementation that will be used 
 	 * to compress inline JavaScript in HTML. 
 	 * 
-	 * @param jsCompressor Could be either <code>"yui"</code> for using {@link YuiJavaScriptCompressor} (used by default if none provided) or
-	 * <code>"closure"</code> for using {@link ClosureJavaScriptCompressor}
+	 * @param jsCompressor Could be either <code>"yui"</code> for using {@link YuiJavaScriptCompressor} (used by default if none provided), 
+	 * <code>"closure"</code> for using {@link ClosureJavaScriptCompressor} or <code>"fast"</code> for using {@link FastJavaScriptCompressor}
 	 * 
 	 * @see YuiJavaScriptCompressor
  	 * @see ClosureJavaScriptCompressor
+ 	 * @see FastJavaScriptCompressor
 	 * @see <a href="http://developer.yahoo.com/yui/compressor/">Yahoo YUI Compressor</a>
 	 * @see <a href="http://code.google.com/closure/compiler/">Google Closure Compiler</a>
 
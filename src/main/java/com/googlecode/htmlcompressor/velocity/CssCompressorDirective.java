@@ -15,7 +15,6 @@ package com.googlecode.htmlcompressor.velocity;
  */
 
 import java.io.IOException;
-import java.io.StringWriter;
 import java.io.Writer;
 
 import org.apache.velocity.context.InternalContextAdapter;
@@ -28,6 +27,9 @@ import org.apache.velocity.runtime.directive.Directive;
 import org.apache.velocity.runtime.log.Log;
 import org.apache.velocity.runtime.parser.node.Node;
 
+import com.googlecode.htmlcompressor.compressor.CompressingWriter;
+import com.googlecode.htmlcompressor.compressor.Compressor;
+import com.googlecode.htmlcompressor.compressor.FastCssCompressor;
 import com.googlecode.htmlcompressor.compressor.HtmlCompressor;
 import com.googlecode.htmlcompressor.compressor.YuiCssCompressor;
 
@@ -46,8 +48,10 @@ public class CssCompressorDirective extends Directive {
 	
 	private boolean enabled = true;
 	
-	//YUICompressor settings
-	private int yuiCssLineBreak = -1;
+	private Compressor compressor;
+	
+	//compressed content of a block without references and directives
+	private String staticContent;
 
 	public String getName() {
 		return "compressCss";
@@ -62,36 +66,56 @@ public class CssCompressorDirective extends Directive {
 		super.init(rs, context, node);
 		log = rs.getLog();
 		
-		//set compressor properties
 		enabled = rs.getBoolean("userdirective.compressCss.enabled", true);
-		yuiCssLineBreak = rs.getInt("userdirective.compressCss.yuiCssLineBreak", -1);
+		
+		//compressor is configured once per runtime and shared by all blocks
+		if(enabled) {
+			compressor = DirectiveCompressors.get(rs, getClass());
+			if(compressor == null) {
+				compressor = DirectiveCompressors.putIfAbsent(rs, getClass(), createCompressor(rs));
+			}
+			
+			staticContent = DirectiveCompressors.compressStaticBlock(node.jjtGetChild(0), context, compressor);
+		}
+	}
+	
+	/**
+	 * Creates a compressor configured with <code>userdirective.compressCss.*</code> 
+	 * properties of the runtime. Called once per runtime, the returned compressor 
+	 * is shared by all threads and must not be modified.
+	 */
+	protected Compressor createCompressor(RuntimeServices rs) {
+		if(HtmlCompressor.CSS_COMPRESSOR_FAST.equalsIgnoreCase(rs.getString("userdirective.compressCss.cssCompressor", HtmlCompressor.CSS_COMPRESSOR_YUI))) {
+			return new FastCssCompressor();
+		}
+		
+		//set compressor properties
+		YuiCssCompressor compressor = new YuiCssCompressor();
+		compressor.setLineBreak(rs.getInt("userdirective.compressCss.yuiCssLineBreak", -1));
+		
+		return compressor;
 	}
 
     public boolean render(InternalContextAdapter context, Writer writer, Node node) 
     		throws IOException, ResourceNotFoundException, ParseErrorException, MethodInvocationException {
     	
-    	//render content
-    	StringWriter content = new StringWriter();
-		node.jjtGetChild(0).render(context, content);
-		
-		//compress
-		if(enabled) {
+    	if(staticContent != null) {
+    		writer.write(staticContent);
+    	} else if(enabled) {
+			//render and compress content
+			CompressingWriter content = new CompressingWriter(writer, compressor);
+			node.jjtGetChild(0).render(context, content);
+			
 			try {
-				
-				YuiCssCompressor compressor = new YuiCssCompressor();
-				compressor.setLineBreak(yuiCssLineBreak);
-				String result = compressor.compress(content.toString());
-				
-				writer.write(result);
-			} catch (Exception e) {
-				writer.write(content.toString());
-				String msg = "Failed to compress content: "+content.toString();
+				content.finish();
+			} catch (RuntimeException e) {
+				String msg = "Failed to compress content: "+content.getExcerpt();
 	            log.error(msg, e);
 	            throw new RuntimeException(msg, e);
 	            
 			}
 		} else {
-			writer.write(content.toString());
+			node.jjtGetChild(0).render(context, writer);
 		}
 		
 		return true;
@@ -0,0 +1,97 @@
+package com.googlecode.htmlcompressor.velocity;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.StringWriter;
+
+import org.apache.velocity.context.InternalContextAdapter;
+import org.apache.velocity.runtime.RuntimeServices;
+import org.apache.velocity.runtime.parser.node.ASTComment;
+import org.apache.velocity.runtime.parser.node.ASTText;
+import org.apache.velocity.runtime.parser.node.Node;
+
+import com.googlecode.htmlcompressor.compressor.Compressor;
+
+/**
+ * Compressors shared by all directives of the same class within one Velocity runtime.
+ * Compressors are stored as runtime application attributes, so each runtime
+ * configuration gets its own instances. A shared compressor is fully configured
+ * before it is published and is never modified afterwards, so directives can use it
+ * from any number of threads without locking.
+ * 
+ * @author <a href="mailto:serg472@gmail.com">Sergiy Kovalchuk</a>
+ */
+final class DirectiveCompressors {
+	
+	private DirectiveCompressors() {
+	}
+	
+	/**
+	 * Returns a compressor shared by directives of the given class,
+	 * or <code>null</code> if it was not created yet.
+	 */
+	static Compressor get(RuntimeServices rs, Class<?> directive) {
+		synchronized(rs) {
+			return (Compressor)rs.getApplicationAttribute(getKey(directive));
+		}
+	}
+	
+	/**
+	 * Shares a configured compressor between directives of the given class
+	 * unless another one is already shared.
+	 * 
+	 * @return shared compressor, which is not necessarily the one that was passed
+	 */
+	static Compressor putIfAbsent(RuntimeServices rs, Class<?> directive, Compressor compressor) {
+		synchronized(rs) {
+			Compressor existing = (Compressor)rs.getApplicationAttribute(getKey(directive));
+			if(existing != null) {
+				return existing;
+			}
+			rs.setApplicationAttribute(getKey(directive), compressor);
+			return compressor;
+		}
+	}
+	
+	/**
+	 * Compresses a block that contains only static text and comments, so its content 
+	 * is the same on every render and can be compressed once.
+	 * 
+	 * @return compressed content of the block, or <code>null</code> if the block contains 
+	 * references or directives, or if it can't be compressed
+	 */
+	static String compressStaticBlock(Node block, InternalContextAdapter context, Compressor compressor) {
+		for(int i = 0; i < block.jjtGetNumChildren(); i++) {
+			Node child = block.jjtGetChild(i);
+			if(!(child instanceof ASTText) && !(child instanceof ASTComment)) {
+				return null;
+			}
+		}
+		
+		try {
+			StringWriter content = new StringWriter();
+			block.render(context, content);
+			return compressor.compress(content.toString());
+		} catch (Exception e) {
+			//block is compressed on every render and errors are reported there
+			return null;
+		}
+	}
+	
+	private static String getKey(Class<?> directive) {
+		return directive.getName() + ".compressor";
+	}
+	
+}
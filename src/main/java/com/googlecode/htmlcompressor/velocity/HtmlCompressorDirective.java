@@ -15,7 +15,6 @@ package com.googlecode.htmlcompressor.velocity;
  */
 
 import java.io.IOException;
-import java.io.StringWriter;
 import java.io.Writer;
 
 import org.apache.velocity.context.InternalContextAdapter;
@@ -29,8 +28,12 @@ import org.apache.velocity.runtime.parser.node.Node;
 import org.apache.velocity.runtime.log.Log;
 
 import com.google.javascript.jscomp.CompilationLevel;
+import com.googlecode.htmlcompressor.compressor.CompressingWriter;
 import com.googlecode.htmlcompressor.compressor.ClosureJavaScriptCompressor;
+import com.googlecode.htmlcompressor.compressor.FastCssCompressor;
+import com.googlecode.htmlcompressor.compressor.FastJavaScriptCompressor;
 import com.googlecode.htmlcompressor.compressor.HtmlCompressor;
+import com.googlecode.htmlcompressor.compressor.TieredCompressor;
 
 /**
  * Velocity directive that compresses an HTML content within #compressHtml ... #end block.
@@ -42,7 +45,10 @@ import com.googlecode.htmlcompressor.compressor.HtmlCompressor;
  */
 public class HtmlCompressorDirective extends Directive {
 	
-	private static final HtmlCompressor htmlCompressor = new HtmlCompressor();
+	private HtmlCompressor htmlCompressor;
+	
+	//compressed content of a block without references and directives
+	private String staticContent;
 	
 	private Log log;
 
@@ -59,34 +65,52 @@ public class HtmlCompressorDirective extends Directive {
 		super.init(rs, context, node);
 		log = rs.getLog();
 		
+		//compressor is configured once per runtime and shared by all blocks
+		htmlCompressor = (HtmlCompressor)DirectiveCompressors.get(rs, getClass());
+		if(htmlCompressor == null) {
+			htmlCompressor = (HtmlCompressor)DirectiveCompressors.putIfAbsent(rs, getClass(), createCompressor(rs));
+		}
+		
+		staticContent = DirectiveCompressors.compressStaticBlock(node.jjtGetChild(0), context, htmlCompressor);
+	}
+	
+	/**
+	 * Creates a compressor configured with <code>userdirective.compressHtml.*</code> 
+	 * properties of the runtime. Called once per runtime, the returned compressor 
+	 * is shared by all threads and must not be modified.
+	 */
+	protected HtmlCompressor createCompressor(RuntimeServices rs) {
 		boolean compressJavaScript = rs.getBoolean("userdirective.compressHtml.compressJavaScript", false);
 		
 		//set compressor properties
-		htmlCompressor.setEnabled(rs.getBoolean("userdirective.compressHtml.enabled", true));
-		htmlCompressor.setRemoveComments(rs.getBoolean("userdirective.compressHtml.removeComments", true));
-		htmlCompressor.setRemoveMultiSpaces(rs.getBoolean("userdirective.compressHtml.removeMultiSpaces", true));
-		htmlCompressor.setRemoveIntertagSpaces(rs.getBoolean("userdirective.compressHtml.removeIntertagSpaces", false));
-		htmlCompressor.setRemoveQuotes(rs.getBoolean("userdirective.compressHtml.removeQuotes", false));
-		htmlCompressor.setPreserveLineBreaks(rs.getBoolean("userdirective.compressHtml.preserveLineBreaks", false));
-		htmlCompressor.setCompressJavaScript(compressJavaScript);
-		htmlCompressor.setCompressCss(rs.getBoolean("userdirective.compressHtml.compressCss", false));
-		htmlCompressor.setYuiJsNoMunge(rs.getBoolean("userdirective.compressHtml.yuiJsNoMunge", false));
-		htmlCompressor.setYuiJsPreserveAllSemiColons(rs.getBoolean("userdirective.compressHtml.yuiJsPreserveAllSemiColons", false));
-		htmlCompressor.setYuiJsLineBreak(rs.getInt("userdirective.compressHtml.yuiJsLineBreak", -1));
-		htmlCompressor.setYuiCssLineBreak(rs.getInt("userdirective.compressHtml.yuiCssLineBreak", -1));
-		htmlCompressor.setSimpleDoctype(rs.getBoolean("userdirective.compressHtml.simpleDoctype", false));
-		htmlCompressor.setRemoveScriptAttributes(rs.getBoolean("userdirective.compressHtml.removeScriptAttributes", false));
-		htmlCompressor.setRemoveStyleAttributes(rs.getBoolean("userdirective.compressHtml.removeStyleAttributes", false));
-		htmlCompressor.setRemoveLinkAttributes(rs.getBoolean("userdirective.compressHtml.removeLinkAttributes", false));
-		htmlCompressor.setRemoveFormAttributes(rs.getBoolean("userdirective.compressHtml.removeFormAttributes", false));
-		htmlCompressor.setRemoveInputAttributes(rs.getBoolean("userdirective.compressHtml.removeInputAttributes", false));
-		htmlCompressor.setSimpleBooleanAttributes(rs.getBoolean("userdirective.compressHtml.simpleBooleanAttributes", false));
-		htmlCompressor.setRemoveJavaScriptProtocol(rs.getBoolean("userdirective.compressHtml.removeJavaScriptProtocol", false));
-		htmlCompressor.setRemoveHttpProtocol(rs.getBoolean("userdirective.compressHtml.removeHttpProtocol", false));
-		htmlCompressor.setRemoveHttpsProtocol(rs.getBoolean("userdirective.compressHtml.removeHttpsProtocol", false));
+		HtmlCompressor compressor = new HtmlCompressor();
+		compressor.setEnabled(rs.getBoolean("userdirective.compressHtml.enabled", true));
+		compressor.setRemoveComments(rs.getBoolean("userdirective.compressHtml.removeComments", true));
+		compressor.setRemoveMultiSpaces(rs.getBoolean("userdirective.compressHtml.removeMultiSpaces", true));
+		compressor.setRemoveIntertagSpaces(rs.getBoolean("userdirective.compressHtml.removeIntertagSpaces", false));
+		compressor.setRemoveQuotes(rs.getBoolean("userdirective.compressHtml.removeQuotes", false));
+		compressor.setPreserveLineBreaks(rs.getBoolean("userdirective.compressHtml.preserveLineBreaks", false));
+		compressor.setCompressJavaScript(compressJavaScript);
+		compressor.setCompressCss(rs.getBoolean("userdirective.compressHtml.compressCss", false));
+		compressor.setYuiJsNoMunge(rs.getBoolean("userdirective.compressHtml.yuiJsNoMunge", false));
+		compressor.setYuiJsPreserveAllSemiColons(rs.getBoolean("userdirective.compressHtml.yuiJsPreserveAllSemiColons", false));
+		compressor.setYuiJsLineBreak(rs.getInt("userdirective.compressHtml.yuiJsLineBreak", -1));
+		compressor.setYuiCssLineBreak(rs.getInt("userdirective.compressHtml.yuiCssLineBreak", -1));
+		compressor.setSimpleDoctype(rs.getBoolean("userdirective.compressHtml.simpleDoctype", false));
+		compressor.setRemoveScriptAttributes(rs.getBoolean("userdirective.compressHtml.removeScriptAttributes", false));
+		compressor.setRemoveStyleAttributes(rs.getBoolean("userdirective.compressHtml.removeStyleAttributes", false));
+		compressor.setRemoveLinkAttributes(rs.getBoolean("userdirective.compressHtml.removeLinkAttributes", false));
+		compressor.setRemoveFormAttributes(rs.getBoolean("userdirective.compressHtml.removeFormAttributes", false));
+		compressor.setRemoveInputAttributes(rs.getBoolean("userdirective.compressHtml.removeInputAttributes", false));
+		compressor.setSimpleBooleanAttributes(rs.getBoolean("userdirective.compressHtml.simpleBooleanAttributes", false));
+		compressor.setRemoveJavaScriptProtocol(rs.getBoolean("userdirective.compressHtml.removeJavaScriptProtocol", false));
+		compressor.setRemoveHttpProtocol(rs.getBoolean("userdirective.compressHtml.removeHttpProtocol", false));
+		compressor.setRemoveHttpsProtocol(rs.getBoolean("userdirective.compressHtml.removeHttpsProtocol", false));
 		
+		String jsCompressor = rs.getString("userdirective.compressHtml.jsCompressor", HtmlCompressor.JS_COMPRESSOR_YUI);
+		boolean tiered = jsCompressor.equalsIgnoreCase(HtmlCompressor.JS_COMPRESSOR_TIERED);
 		
-		if(compressJavaScript && rs.getString("userdirective.compressHtml.jsCompressor", HtmlCompressor.JS_COMPRESSOR_YUI).equalsIgnoreCase(HtmlCompressor.JS_COMPRESSOR_CLOSURE)) {
+		if(compressJavaScript && (tiered || jsCompressor.equalsIgnoreCase(HtmlCompressor.JS_COMPRESSOR_CLOSURE))) {
 			String closureOptLevel = rs.getString("userdirective.compressHtml.closureOptLevel", ClosureJavaScriptCompressor.COMPILATION_LEVEL_SIMPLE);
 			
 			ClosureJavaScriptCompressor closureCompressor = new ClosureJavaScriptCompressor();
@@ -98,23 +122,39 @@ public class HtmlCompressorDirective extends Directive {
 				closureCompressor.setCompilationLevel(CompilationLevel.SIMPLE_OPTIMIZATIONS);
 			}
 			
-			htmlCompressor.setJavaScriptCompressor(closureCompressor);
+			if(tiered) {
+				//closure results are cached and shared by all templates of the runtime
+				compressor.setJavaScriptCompressor(new TieredCompressor(new FastJavaScriptCompressor(), closureCompressor));
+			} else {
+				compressor.setJavaScriptCompressor(closureCompressor);
+			}
+		} else if(compressJavaScript && jsCompressor.equalsIgnoreCase(HtmlCompressor.JS_COMPRESSOR_FAST)) {
+			compressor.setJavaScriptCompressor(new FastJavaScriptCompressor());
+		}
+		
+		if(rs.getString("userdirective.compressHtml.cssCompressor", HtmlCompressor.CSS_COMPRESSOR_YUI).equalsIgnoreCase(HtmlCompressor.CSS_COMPRESSOR_FAST)) {
+			compressor.setCssCompressor(new FastCssCompressor());
 		}
+		
+		return compressor;
 	}
 
     public boolean render(InternalContextAdapter context, Writer writer, Node node) 
     		throws IOException, ResourceNotFoundException, ParseErrorException, MethodInvocationException {
     	
-    	//render content
-    	StringWriter content = new StringWriter();
+    	if(staticContent != null) {
+    		writer.write(staticContent);
+    		return true;
+    	}
+    	
+    	//render and compress content
+    	CompressingWriter content = new CompressingWriter(writer, htmlCompressor);
 		node.jjtGetChild(0).render(context, content);
 		
-		//compress
 		try {
-			writer.write(htmlCompressor.compress(content.toString()));
-		} catch (Exception e) {
-			writer.write(content.toString());
-			String msg = "Failed to compress content: "+content.toString();
+			content.finish();
+		} catch (RuntimeException e) {
+			String msg = "Failed to compress content: "+content.getExcerpt();
             log.error(msg, e);
             throw new RuntimeException(msg, e);
             
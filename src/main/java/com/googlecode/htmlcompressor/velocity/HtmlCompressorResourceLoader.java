@@ -0,0 +1,218 @@
+package com.googlecode.htmlcompressor.velocity;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.collections.ExtendedProperties;
+import org.apache.velocity.exception.ResourceNotFoundException;
+import org.apache.velocity.exception.VelocityException;
+import org.apache.velocity.runtime.RuntimeConstants;
+import org.apache.velocity.runtime.RuntimeServices;
+import org.apache.velocity.runtime.resource.Resource;
+import org.apache.velocity.runtime.resource.loader.ResourceLoader;
+import org.apache.velocity.runtime.resource.loader.ResourceLoaderFactory;
+
+import com.googlecode.htmlcompressor.compressor.HtmlCompressor;
+
+/**
+ * Velocity resource loader that compresses static HTML of templates loaded by another loader.
+ * Templates are compressed once when they are loaded or reloaded, so with resource caching
+ * turned on static markup costs nothing on each request. Velocity directives, references,
+ * comments, <code>#[[ ]]#</code> literals and escapes are left as they are.
+ * 
+ * <p>The wrapped loader is set by <code>loader.class</code> property and receives all properties
+ * of this loader, for example:
+ * 
+ * <pre>
+ * resource.loader = file
+ * file.resource.loader.class = com.googlecode.htmlcompressor.velocity.HtmlCompressorResourceLoader
+ * file.resource.loader.loader.class = org.apache.velocity.runtime.resource.loader.FileResourceLoader
+ * file.resource.loader.path = /templates
+ * file.resource.loader.cache = true
+ * file.resource.loader.compressor.removeIntertagSpaces = true
+ * </pre>
+ * 
+ * <p>Compressor is configured with <code>compressor.*</code> properties that have the same names
+ * and defaults as <code>userdirective.compressHtml.*</code> properties of {@link HtmlCompressorDirective}.
+ * Inline JavaScript and CSS are never compressed as they might contain references.
+ * Templates are decoded with <code>compressor.encoding</code>, by default <code>input.encoding</code>
+ * of the runtime.
+ * 
+ * <p>If compression could change the meaning of a template, for example if a removed
+ * HTML comment contained a reference, the template is loaded uncompressed.
+ * 
+ * @see HtmlCompressor
+ * 
+ * @author <a href="mailto:serg472@gmail.com">Sergiy Kovalchuk</a>
+ */
+public class HtmlCompressorResourceLoader extends ResourceLoader {
+	
+	//directives are replaced like tags, so spaces around them are removed as intertag spaces
+	protected static final String tempVelocityDirectiveBlock = "%%%~VTL~{0,number,#}~%%%";
+	protected static final String tempVelocityReferenceBlock = "%%%VTL{0,number,#}%%%";
+	protected static final Pattern tempVelocityPattern = Pattern.compile("%%%~?VTL~?(\\d+?)~?%%%");
+	
+	private ResourceLoader loader;
+	private HtmlCompressor htmlCompressor;
+	private String encoding;
+	
+	@Override
+	public void commonInit(RuntimeServices rs, ExtendedProperties configuration) {
+		super.commonInit(rs, configuration);
+		
+		//create wrapped loader
+		String loaderClass = configuration.getString("loader.class");
+		if(loaderClass == null) {
+			throw new VelocityException("Resource loader to wrap is not set, loader.class property is missing");
+		}
+		try {
+			loader = ResourceLoaderFactory.getLoader(rs, loaderClass);
+		} catch (Exception e) {
+			throw new VelocityException("Failed to create resource loader " + loaderClass, e);
+		}
+		loader.commonInit(rs, configuration);
+	}
+	
+	@Override
+	public void init(ExtendedProperties configuration) {
+		loader.init(configuration);
+		
+		htmlCompressor = createCompressor(configuration);
+		encoding = configuration.getString("compressor.encoding", rsvc.getString(RuntimeConstants.INPUT_ENCODING, RuntimeConstants.ENCODING_DEFAULT));
+	}
+	
+	/**
+	 * Creates a compressor configured with <code>compressor.*</code> properties of the loader.
+	 * The compressor is shared by all threads and must not be modified after it is returned.
+	 */
+	protected HtmlCompressor createCompressor(ExtendedProperties configuration) {
+		HtmlCompressor compressor = new HtmlCompressor();
+		compressor.setEnabled(configuration.getBoolean("compressor.enabled", true));
+		compressor.setRemoveComments(configuration.getBoolean("compressor.removeComments", true));
+		compressor.setRemoveMultiSpaces(configuration.getBoolean("compressor.removeMultiSpaces", true));
+		compressor.setRemoveIntertagSpaces(configuration.getBoolean("compressor.removeIntertagSpaces", false));
+		compressor.setRemoveQuotes(configuration.getBoolean("compressor.removeQuotes", false));
+		compressor.setPreserveLineBreaks(configuration.getBoolean("compressor.preserveLineBreaks", false));
+		compressor.setSimpleDoctype(configuration.getBoolean("compressor.simpleDoctype", false));
+		compressor.setRemoveScriptAttributes(configuration.getBoolean("compressor.removeScriptAttributes", false));
+		compressor.setRemoveStyleAttributes(configuration.getBoolean("compressor.removeStyleAttributes", false));
+		compressor.setRemoveLinkAttributes(configuration.getBoolean("compressor.removeLinkAttributes", false));
+		compressor.setRemoveFormAttributes(configuration.getBoolean("compressor.removeFormAttributes", false));
+		compressor.setRemoveInputAttributes(configuration.getBoolean("compressor.removeInputAttributes", false));
+		compressor.setSimpleBooleanAttributes(configuration.getBoolean("compressor.simpleBooleanAttributes", false));
+		compressor.setRemoveJavaScriptProtocol(configuration.getBoolean("compressor.removeJavaScriptProtocol", false));
+		compressor.setRemoveHttpProtocol(configuration.getBoolean("compressor.removeHttpProtocol", false));
+		compressor.setRemoveHttpsProtocol(configuration.getBoolean("compressor.removeHttpsProtocol", false));
+		return compressor;
+	}
+	
+	@Override
+	public InputStream getResourceStream(String source) throws ResourceNotFoundException {
+		InputStream input = loader.getResourceStream(source);
+		if(input == null || !htmlCompressor.isEnabled()) {
+			return input;
+		}
+		
+		try {
+			String template;
+			try {
+				template = read(input);
+			} finally {
+				input.close();
+			}
+			return new ByteArrayInputStream(compressTemplate(source, template).getBytes(encoding));
+		} catch (IOException e) {
+			throw new ResourceNotFoundException("Failed to read resource " + source + ": " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Compresses static HTML of a template leaving all VTL as it is.
+	 * 
+	 * @param name name of the template
+	 * @param template template source
+	 * @return compressed template, or the original one if it can't be compressed safely
+	 */
+	protected String compressTemplate(String name, String template) {
+		if(tempVelocityPattern.matcher(template).find()) {
+			log.debug("Template " + name + " contains compressor placeholders and is not compressed");
+			return template;
+		}
+		
+		//replace VTL with placeholders
+		List<String> velocityBlocks = new ArrayList<String>();
+		String html = VelocityTemplateScanner.replaceBlocks(template, velocityBlocks, tempVelocityDirectiveBlock, tempVelocityReferenceBlock);
+		
+		try {
+			html = htmlCompressor.compress(html);
+		} catch (Exception e) {
+			log.warn("Failed to compress template " + name, e);
+			return template;
+		}
+		
+		//put VTL back
+		Matcher matcher = tempVelocityPattern.matcher(html);
+		StringBuffer sb = new StringBuffer();
+		while(matcher.find()) {
+			matcher.appendReplacement(sb, Matcher.quoteReplacement(velocityBlocks.get(Integer.parseInt(matcher.group(1)))));
+		}
+		matcher.appendTail(sb);
+		String result = sb.toString();
+		
+		//compressed static text must not form or change any VTL
+		if(!VelocityTemplateScanner.findBlocks(result).equals(velocityBlocks)) {
+			log.debug("Compression changes VTL of template " + name + ", it is not compressed");
+			return template;
+		}
+		
+		return result;
+	}
+	
+	@Override
+	public boolean isSourceModified(Resource resource) {
+		return loader.isSourceModified(resource);
+	}
+	
+	@Override
+	public long getLastModified(Resource resource) {
+		return loader.getLastModified(resource);
+	}
+	
+	@Override
+	public boolean resourceExists(String name) {
+		return loader.resourceExists(name);
+	}
+	
+	private String read(InputStream input) throws IOException {
+		StringBuilder builder = new StringBuilder();
+		Reader reader = new InputStreamReader(input, encoding);
+		char[] buffer = new char[8192];
+		int read;
+		while((read = reader.read(buffer)) != -1) {
+			builder.append(buffer, 0, read);
+		}
+		return builder.toString();
+	}
+	
+}
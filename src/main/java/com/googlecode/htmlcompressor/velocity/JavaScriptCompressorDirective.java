@@ -15,7 +15,6 @@ package com.googlecode.htmlcompressor.velocity;
  */
 
 import java.io.IOException;
-import java.io.StringWriter;
 import java.io.Writer;
 
 import org.apache.velocity.context.InternalContextAdapter;
@@ -30,7 +29,11 @@ import org.apache.velocity.runtime.parser.node.Node;
 
 import com.google.javascript.jscomp.CompilationLevel;
 import com.googlecode.htmlcompressor.compressor.ClosureJavaScriptCompressor;
+import com.googlecode.htmlcompressor.compressor.CompressingWriter;
+import com.googlecode.htmlcompressor.compressor.Compressor;
+import com.googlecode.htmlcompressor.compressor.FastJavaScriptCompressor;
 import com.googlecode.htmlcompressor.compressor.HtmlCompressor;
+import com.googlecode.htmlcompressor.compressor.TieredCompressor;
 import com.googlecode.htmlcompressor.compressor.YuiJavaScriptCompressor;
 
 /**
@@ -49,16 +52,10 @@ public class JavaScriptCompressorDirective extends Directive {
 	
 	private boolean enabled = true;
 	
-	private String jsCompressor = HtmlCompressor.JS_COMPRESSOR_YUI;
+	private Compressor compressor;
 	
-	//YUICompressor settings
-	private boolean yuiJsNoMunge = false;
-	private boolean yuiJsPreserveAllSemiColons = false;
-	private boolean yuiJsDisableOptimizations = false;
-	private int yuiJsLineBreak = -1;
-	
-	//Closure compressor settings
-	private String closureOptLevel = ClosureJavaScriptCompressor.COMPILATION_LEVEL_SIMPLE;
+	//compressed content of a block without references and directives
+	private String staticContent;
 
 	public String getName() {
 		return "compressJs";
@@ -73,61 +70,81 @@ public class JavaScriptCompressorDirective extends Directive {
 		super.init(rs, context, node);
 		log = rs.getLog();
 		
-		//set compressor properties
 		enabled = rs.getBoolean("userdirective.compressJs.enabled", true);
-		jsCompressor = rs.getString("userdirective.compressHtml.jsCompressor", HtmlCompressor.JS_COMPRESSOR_YUI);
-		yuiJsNoMunge = rs.getBoolean("userdirective.compressJs.yuiJsNoMunge", false);
-		yuiJsPreserveAllSemiColons = rs.getBoolean("userdirective.compressJs.yuiJsPreserveAllSemiColons", false);
-		yuiJsLineBreak = rs.getInt("userdirective.compressJs.yuiJsLineBreak", -1);
-		closureOptLevel = rs.getString("userdirective.compressHtml.closureOptLevel", ClosureJavaScriptCompressor.COMPILATION_LEVEL_SIMPLE);
+		
+		//compressor is configured once per runtime and shared by all blocks
+		if(enabled) {
+			compressor = DirectiveCompressors.get(rs, getClass());
+			if(compressor == null) {
+				compressor = DirectiveCompressors.putIfAbsent(rs, getClass(), createCompressor(rs));
+			}
+			
+			staticContent = DirectiveCompressors.compressStaticBlock(node.jjtGetChild(0), context, compressor);
+		}
+	}
+	
+	/**
+	 * Creates a compressor configured with <code>userdirective.compressJs.*</code> 
+	 * properties of the runtime. Called once per runtime, the returned compressor 
+	 * is shared by all threads and must not be modified.
+	 */
+	protected Compressor createCompressor(RuntimeServices rs) {
+		String jsCompressor = rs.getString("userdirective.compressHtml.jsCompressor", HtmlCompressor.JS_COMPRESSOR_YUI);
+		
+		boolean tiered = jsCompressor.equalsIgnoreCase(HtmlCompressor.JS_COMPRESSOR_TIERED);
+		
+		if(tiered || jsCompressor.equalsIgnoreCase(HtmlCompressor.JS_COMPRESSOR_CLOSURE)) {
+			//use Closure compressor
+			String closureOptLevel = rs.getString("userdirective.compressHtml.closureOptLevel", ClosureJavaScriptCompressor.COMPILATION_LEVEL_SIMPLE);
+			
+			ClosureJavaScriptCompressor closureCompressor = new ClosureJavaScriptCompressor();
+			if(closureOptLevel.equalsIgnoreCase(ClosureJavaScriptCompressor.COMPILATION_LEVEL_ADVANCED)) {
+				closureCompressor.setCompilationLevel(CompilationLevel.ADVANCED_OPTIMIZATIONS);
+			} else if(closureOptLevel.equalsIgnoreCase(ClosureJavaScriptCompressor.COMPILATION_LEVEL_WHITESPACE)) {
+				closureCompressor.setCompilationLevel(CompilationLevel.WHITESPACE_ONLY);
+			} else {
+				closureCompressor.setCompilationLevel(CompilationLevel.SIMPLE_OPTIMIZATIONS);
+			}
+			
+			if(tiered) {
+				//closure results are cached and shared by all templates of the runtime
+				return new TieredCompressor(new FastJavaScriptCompressor(), closureCompressor);
+			}
+			return closureCompressor;
+			
+		} else if(jsCompressor.equalsIgnoreCase(HtmlCompressor.JS_COMPRESSOR_FAST)) {
+			return new FastJavaScriptCompressor();
+			
+		} else {
+			//use YUICompressor
+			YuiJavaScriptCompressor yuiCompressor = new YuiJavaScriptCompressor();
+			yuiCompressor.setLineBreak(rs.getInt("userdirective.compressJs.yuiJsLineBreak", -1));
+			yuiCompressor.setNoMunge(rs.getBoolean("userdirective.compressJs.yuiJsNoMunge", false));
+			yuiCompressor.setPreserveAllSemiColons(rs.getBoolean("userdirective.compressJs.yuiJsPreserveAllSemiColons", false));
+			return yuiCompressor;
+		}
 	}
 
     public boolean render(InternalContextAdapter context, Writer writer, Node node) 
     		throws IOException, ResourceNotFoundException, ParseErrorException, MethodInvocationException {
     	
-    	//render content
-    	StringWriter content = new StringWriter();
-		node.jjtGetChild(0).render(context, content);
-		
-		//compress
-		if(enabled) {
+    	if(staticContent != null) {
+    		writer.write(staticContent);
+    	} else if(enabled) {
+			//render and compress content
+			CompressingWriter content = new CompressingWriter(writer, compressor);
+			node.jjtGetChild(0).render(context, content);
+			
 			try {
-				String result = content.toString();
-				
-				if(jsCompressor.equalsIgnoreCase(HtmlCompressor.JS_COMPRESSOR_CLOSURE)) {
-					//call Closure compressor
-					ClosureJavaScriptCompressor closureCompressor = new ClosureJavaScriptCompressor();
-					if(closureOptLevel.equalsIgnoreCase(ClosureJavaScriptCompressor.COMPILATION_LEVEL_ADVANCED)) {
-						closureCompressor.setCompilationLevel(CompilationLevel.ADVANCED_OPTIMIZATIONS);
-					} else if(closureOptLevel.equalsIgnoreCase(ClosureJavaScriptCompressor.COMPILATION_LEVEL_WHITESPACE)) {
-						closureCompressor.setCompilationLevel(CompilationLevel.WHITESPACE_ONLY);
-					} else {
-						closureCompressor.setCompilationLevel(CompilationLevel.SIMPLE_OPTIMIZATIONS);
-					}
-					
-					result = closureCompressor.compress(result);
-					
-				} else {
-					//call YUICompressor
-					YuiJavaScriptCompressor yuiCompressor = new YuiJavaScriptCompressor();
-					yuiCompressor.setDisableOptimizations(yuiJsDisableOptimizations);
-					yuiCompressor.setLineBreak(yuiJsLineBreak);
-					yuiCompressor.setNoMunge(yuiJsNoMunge);
-					yuiCompressor.setPreserveAllSemiColons(yuiJsPreserveAllSemiColons);
-					
-					result = yuiCompressor.compress(result);
-				}
-				
-				writer.write(result);
-			} catch (Exception e) {
-				writer.write(content.toString());
-				String msg = "Failed to compress content: "+content.toString();
+				content.finish();
+			} catch (RuntimeException e) {
+				String msg = "Failed to compress content: "+content.getExcerpt();
 	            log.error(msg, e);
 	            throw new RuntimeException(msg, e);
 	            
 			}
 		} else {
-			writer.write(content.toString());
+			node.jjtGetChild(0).render(context, writer);
 		}
 		
 		return true;
@@ -0,0 +1,272 @@
+package com.googlecode.htmlcompressor.velocity;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Finds Velocity Template Language constructs in a template source: directives with
+ * their arguments, references, comments, <code>#[[ ]]#</code> literals and escapes.
+ * Everything else is static text.
+ * 
+ * <p>The scanner errs on the side of treating text as VTL, for example <code>#top</code>
+ * in <code>href="#top"</code> is a block, so static text can be changed without
+ * changing the meaning of a template.
+ * 
+ * @author <a href="mailto:serg472@gmail.com">Sergiy Kovalchuk</a>
+ */
+final class VelocityTemplateScanner {
+	
+	private static final Set<String> noArgumentDirectives = new HashSet<String>(Arrays.asList("else", "end", "break", "stop"));
+	
+	private VelocityTemplateScanner() {
+	}
+	
+	/**
+	 * Returns all VTL blocks of a template in order.
+	 */
+	static List<String> findBlocks(String template) {
+		List<String> blocks = new ArrayList<String>();
+		replaceBlocks(template, blocks, null, null);
+		return blocks;
+	}
+	
+	/**
+	 * Replaces all VTL blocks of a template with placeholders.
+	 * 
+	 * @param blocks list where replaced blocks are added to
+	 * @param directivePlaceholder <code>MessageFormat</code> pattern of a placeholder
+	 * for directives and comments, <code>{0}</code> is the index of a block in the list
+	 * @param referencePlaceholder <code>MessageFormat</code> pattern of a placeholder
+	 * for references and escapes, which are a part of the text
+	 * @return template with placeholders
+	 */
+	static String replaceBlocks(String template, List<String> blocks, String directivePlaceholder, String referencePlaceholder) {
+		StringBuilder sb = new StringBuilder(template.length());
+		int length = template.length();
+		int start = 0;
+		int pos = 0;
+		while(pos < length) {
+			char c = template.charAt(pos);
+			int end = (c == '#' || c == '$' || c == '\\') ? blockEnd(template, pos) : -1;
+			if(end == -1) {
+				//skip a whole run of backslashes that do not escape anything
+				do {
+					pos++;
+				} while(c == '\\' && pos < length && template.charAt(pos) == '\\');
+				continue;
+			}
+			
+			sb.append(template, start, pos);
+			if(isDirective(template, pos, end)) {
+				if(directivePlaceholder != null) {
+					sb.append(MessageFormat.format(directivePlaceholder, blocks.size()));
+				}
+			} else if(referencePlaceholder != null) {
+				sb.append(MessageFormat.format(referencePlaceholder, blocks.size()));
+			}
+			blocks.add(template.substring(pos, end));
+			start = pos = end;
+		}
+		sb.append(template, start, length);
+		return sb.toString();
+	}
+	
+	/**
+	 * Returns the end of a VTL block starting at a given position,
+	 * or -1 if there is no block there.
+	 */
+	static int blockEnd(String template, int pos) {
+		int length = template.length();
+		char c = template.charAt(pos);
+		if(c == '\\') {
+			//escaped directive or reference
+			int end = pos;
+			while(end < length && template.charAt(end) == '\\') {
+				end++;
+			}
+			if(end < length && (template.charAt(end) == '#' || template.charAt(end) == '$')) {
+				return blockEnd(template, end);
+			}
+			return -1;
+		} else if(c == '#') {
+			return directiveEnd(template, pos);
+		} else if(c == '$') {
+			return referenceEnd(template, pos);
+		}
+		return -1;
+	}
+	
+	/**
+	 * Checks if a block is a directive or a comment that does not render as text by itself,
+	 * unlike a reference, an escape or a word like <code>#top</code>.
+	 */
+	private static boolean isDirective(String template, int pos, int end) {
+		if(template.charAt(pos) != '#') {
+			return false;
+		}
+		char c = template.charAt(pos + 1);
+		if(c == '#' || c == '*' || c == '[' || c == '{' || c == '@') {
+			return true;
+		}
+		int nameEnd = identifierEnd(template, pos + 1);
+		return nameEnd < end || noArgumentDirectives.contains(template.substring(pos + 1, nameEnd));
+	}
+	
+	private static int directiveEnd(String template, int pos) {
+		int length = template.length();
+		if(pos + 1 == length) {
+			return -1;
+		}
+		
+		char c = template.charAt(pos + 1);
+		if(c == '#') {
+			//line comment including line break
+			int end = template.indexOf('\n', pos + 2);
+			return end == -1 ? length : end + 1;
+		} else if(c == '*') {
+			//block comment
+			int end = template.indexOf("*#", pos + 2);
+			return end == -1 ? length : end + 2;
+		} else if(template.startsWith("[[", pos + 1)) {
+			//unparsed content
+			int end = template.indexOf("]]#", pos + 3);
+			return end == -1 ? length : end + 3;
+		}
+		
+		int end = pos + 1;
+		if(c == '{') {
+			end = identifierEnd(template, end + 1);
+			if(end == -1 || end == length || template.charAt(end) != '}') {
+				return -1;
+			}
+			end++;
+		} else {
+			if(c == '@') {
+				//block macro call
+				end++;
+			}
+			end = identifierEnd(template, end);
+			if(end == -1) {
+				return -1;
+			}
+		}
+		
+		//arguments can be separated from the name by whitespace
+		int args = end;
+		while(args < length && isWhitespace(template.charAt(args))) {
+			args++;
+		}
+		if(args < length && template.charAt(args) == '(') {
+			return bracketsEnd(template, args);
+		}
+		return end;
+	}
+	
+	private static int referenceEnd(String template, int pos) {
+		int length = template.length();
+		int end = pos + 1;
+		if(end < length && template.charAt(end) == '!') {
+			end++;
+		}
+		if(end == length) {
+			return -1;
+		}
+		
+		if(template.charAt(end) == '{') {
+			//formal reference
+			int close = bracketsEnd(template, end);
+			return close == end + 1 ? -1 : close;
+		}
+		
+		end = identifierEnd(template, end);
+		if(end == -1) {
+			return -1;
+		}
+		
+		//properties, method calls and indexes
+		while(end < length) {
+			char c = template.charAt(end);
+			if(c == '(' || c == '[') {
+				end = bracketsEnd(template, end);
+			} else if(c == '.' && identifierEnd(template, end + 1) != -1) {
+				end = identifierEnd(template, end + 1);
+			} else {
+				break;
+			}
+		}
+		return end;
+	}
+	
+	/**
+	 * Returns the end of an identifier, or -1 if there is no identifier at a given position.
+	 */
+	private static int identifierEnd(String template, int pos) {
+		int length = template.length();
+		if(pos == length || !isIdentifierStart(template.charAt(pos))) {
+			return -1;
+		}
+		int end = pos + 1;
+		while(end < length && isIdentifierPart(template.charAt(end))) {
+			end++;
+		}
+		return end;
+	}
+	
+	/**
+	 * Returns the position after the bracket that closes the one at a given position,
+	 * string literals are skipped. Returns the template length if it is not closed.
+	 */
+	private static int bracketsEnd(String template, int pos) {
+		int length = template.length();
+		int depth = 0;
+		for(int i = pos; i < length; i++) {
+			char c = template.charAt(i);
+			if(c == '"' || c == '\'') {
+				int quote = template.indexOf(c, i + 1);
+				if(quote == -1) {
+					return length;
+				}
+				i = quote;
+			} else if(c == '(' || c == '[' || c == '{') {
+				depth++;
+			} else if(c == ')' || c == ']' || c == '}') {
+				depth--;
+				if(depth == 0) {
+					return i + 1;
+				}
+			}
+		}
+		return length;
+	}
+	
+	private static boolean isIdentifierStart(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+	}
+	
+	private static boolean isIdentifierPart(char c) {
+		return isIdentifierStart(c) || (c >= '0' && c <= '9') || c == '-';
+	}
+	
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+	}
+	
+}
@@ -15,7 +15,6 @@ package com.googlecode.htmlcompressor.velocity;
  */
 
 import java.io.IOException;
-import java.io.StringWriter;
 import java.io.Writer;
 
 import org.apache.velocity.context.InternalContextAdapter;
@@ -28,6 +27,7 @@ import org.apache.velocity.runtime.directive.Directive;
 import org.apache.velocity.runtime.log.Log;
 import org.apache.velocity.runtime.parser.node.Node;
 
+import com.googlecode.htmlcompressor.compressor.CompressingWriter;
 import com.googlecode.htmlcompressor.compressor.XmlCompressor;
 
 /**
@@ -40,7 +40,7 @@ import com.googlecode.htmlcompressor.compressor.XmlCompressor;
  */
 public class XmlCompressorDirective extends Directive {
 	
-	private static final XmlCompressor xmlCompressor = new XmlCompressor();
+	private XmlCompressor xmlCompressor;
 	
 	private Log log;
 
@@ -57,25 +57,39 @@ public class XmlCompressorDirective extends Directive {
 		super.init(rs, context, node);
 		log = rs.getLog();
 		
+		//compressor is configured once per runtime and shared by all blocks
+		xmlCompressor = (XmlCompressor)DirectiveCompressors.get(rs, getClass());
+		if(xmlCompressor == null) {
+			xmlCompressor = (XmlCompressor)DirectiveCompressors.putIfAbsent(rs, getClass(), createCompressor(rs));
+		}
+	}
+	
+	/**
+	 * Creates a compressor configured with <code>userdirective.compressXml.*</code> 
+	 * properties of the runtime. Called once per runtime, the returned compressor 
+	 * is shared by all threads and must not be modified.
+	 */
+	protected XmlCompressor createCompressor(RuntimeServices rs) {
 		//set compressor properties
-		xmlCompressor.setEnabled(rs.getBoolean("userdirective.compressXml.enabled", true));
-		xmlCompressor.setRemoveComments(rs.getBoolean("userdirective.compressXml.removeComments", true));
-		xmlCompressor.setRemoveIntertagSpaces(rs.getBoolean("userdirective.compressXml.removeIntertagSpaces", true));
+		XmlCompressor compressor = new XmlCompressor();
+		compressor.setEnabled(rs.getBoolean("userdirective.compressXml.enabled", true));
+		compressor.setRemoveComments(rs.getBoolean("userdirective.compressXml.removeComments", true));
+		compressor.setRemoveIntertagSpaces(rs.getBoolean("userdirective.compressXml.removeIntertagSpaces", true));
+		
+		return compressor;
 	}
 
     public boolean render(InternalContextAdapter context, Writer writer, Node node) 
     		throws IOException, ResourceNotFoundException, ParseErrorException, MethodInvocationException {
     	
-    	//render content
-    	StringWriter content = new StringWriter();
+    	//render and compress content
+    	CompressingWriter content = new CompressingWriter(writer, xmlCompressor);
 		node.jjtGetChild(0).render(context, content);
 		
-		//compress
 		try {
-			writer.write(xmlCompressor.compress(content.toString()));
-		} catch (Exception e) {
-			writer.write(content.toString());
-			String msg = "Failed to compress content: "+content.toString();
+			content.finish();
+		} catch (RuntimeException e) {
+			String msg = "Failed to compress content: "+content.getExcerpt();
             log.error(msg, e);
             throw new RuntimeException(msg, e);
             
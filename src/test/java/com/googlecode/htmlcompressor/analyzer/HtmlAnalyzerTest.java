@@ -0,0 +1,186 @@
+package com.googlecode.htmlcompressor.analyzer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.util.Formatter;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import com.googlecode.htmlcompressor.analyzer.HtmlAnalyzer.Step;
+import com.googlecode.htmlcompressor.analyzer.HtmlAnalyzer.StepResult;
+import com.googlecode.htmlcompressor.compressor.Compressor;
+
+public class HtmlAnalyzerTest {
+	
+	private static final String resPath = "./src/test/resources/html/";
+	
+	@Test
+	public void testEvaluate() throws Exception {
+		String source = readResource("testCompressJavaScript.html") + readResource("testCompressCss.html") + readResource("testCompress.html");
+		
+		HtmlAnalyzer analyzer = new HtmlAnalyzer();
+		analyzer.setWarmupRuns(0);
+		analyzer.setTimedRuns(1);
+		List<Step> steps = analyzer.buildSteps();
+		
+		StepResult[] results;
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			results = analyzer.evaluate(source, steps, executor);
+		} finally {
+			executor.shutdownNow();
+		}
+		StepResult[] sequentialResults = analyzer.evaluate(source, steps, null);
+		
+		//sizes with shared js and css compressors are the same as with separate ones
+		int prevSize = source.length();
+		for(int i = 0; i < steps.size(); i++) {
+			int size = analyzer.getCompressor(steps.subList(0, i + 1)).compress(source).length();
+			assertEquals(steps.get(i).getDescription(), size, results[i].size);
+			assertEquals(steps.get(i).getDescription(), prevSize - size, results[i].gain);
+			assertEquals(steps.get(i).getDescription(), size, sequentialResults[i].size);
+			prevSize = size;
+		}
+	}
+	
+	@Test
+	public void testMissingCompressor() throws Exception {
+		String source = readResource("testCompressCss.html");
+		
+		//css compressor fails the same way as with no yui jar on the classpath
+		HtmlAnalyzer analyzer = new HtmlAnalyzer() {
+			@Override
+			Compressor createCssCompressor() {
+				return new Compressor() {
+					public String compress(String source) {
+						throw new NoClassDefFoundError("com/yahoo/platform/yui/compressor/CssCompressor");
+					}
+				};
+			}
+		};
+		analyzer.setWarmupRuns(0);
+		analyzer.setTimedRuns(1);
+		List<Step> steps = analyzer.buildSteps();
+		
+		StepResult[] results = analyzer.evaluate(source, steps, null);
+		assertTrue(results[steps.size() - 3] != null);
+		assertNull(results[steps.size() - 2]);
+		assertNull(results[steps.size() - 1]);
+		
+		PrintStream out = System.out;
+		ByteArrayOutputStream report = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(report, true));
+		try {
+			analyzer.analyze(source);
+		} finally {
+			System.setOut(out);
+		}
+		
+		assertTrue(report.toString().contains(emptyLine("Compress inline CSS (YUI)")));
+		assertTrue(report.toString().contains(emptyLine("Compress inline JS (YUI)")));
+		assertFalse(report.toString().contains("--compress-css"));
+	}
+	
+	@Test
+	public void testRecommend() throws Exception {
+		HtmlAnalyzer analyzer = new HtmlAnalyzer();
+		List<Step> steps = analyzer.buildSteps();
+		
+		//base, comments, multiple spaces, intertag spaces, min and max surrounding spaces
+		StepResult[] results = results(steps.size(), new int[] {0, 100, 1000, 10, 50, 500}, new long[] {1, 1, 1, 5, 1, 1});
+		
+		boolean[] expected = new boolean[steps.size()];
+		expected[0] = expected[1] = expected[2] = expected[4] = true;
+		
+		//max surrounding spaces and intertag spaces do not fit into the budget
+		analyzer.setTimeBudget(4);
+		assertArrayEquals(expected, analyzer.recommend(steps, results));
+		
+		expected[3] = expected[5] = true;
+		analyzer.setTimeBudget(0);
+		assertArrayEquals(expected, analyzer.recommend(steps, results));
+		
+		//max surrounding spaces can not be selected without min
+		results[4].gain = 0;
+		expected[4] = expected[5] = false;
+		assertArrayEquals(expected, analyzer.recommend(steps, results));
+	}
+	
+	@Test
+	public void testBuildFlags() throws Exception {
+		HtmlAnalyzer analyzer = new HtmlAnalyzer();
+		List<Step> steps = analyzer.buildSteps();
+		
+		boolean[] selected = new boolean[steps.size()];
+		selected[0] = selected[2] = selected[3] = selected[4] = selected[5] = true;
+		assertEquals("--preserve-comments --remove-intertag-spaces --remove-surrounding-spaces max", analyzer.buildFlags(steps, selected));
+		
+		selected[1] = true;
+		selected[5] = false;
+		assertEquals("--remove-intertag-spaces --remove-surrounding-spaces min", analyzer.buildFlags(steps, selected));
+		
+		selected = new boolean[steps.size()];
+		assertEquals("--preserve-comments --preserve-multi-spaces", analyzer.buildFlags(steps, selected));
+	}
+	
+	private String emptyLine(String descr) {
+		return new Formatter().format("%-25s | %16s | %16s | %12s | %11s |", descr, "-", "-", "-", "-").toString();
+	}
+	
+	/**
+	 * Returns results with given gains and times in milliseconds of the first steps and no gain for the rest.
+	 */
+	private StepResult[] results(int count, int[] gains, long[] times) {
+		StepResult[] results = new StepResult[count];
+		for(int i = 0; i < count; i++) {
+			results[i] = new StepResult();
+			if(i < gains.length) {
+				results[i].gain = gains[i];
+				results[i].time = times[i] * 1000000;
+			}
+		}
+		return results;
+	}
+	
+	private String readResource(String filename) {
+		
+		StringBuilder builder = new StringBuilder();
+		try {
+			FileInputStream stream = new FileInputStream(new File(resPath + filename));
+			try {
+				Reader reader = new BufferedReader(new InputStreamReader(stream));
+				
+				char[] buffer = new char[8192];
+				int read;
+				while ((read = reader.read(buffer, 0, buffer.length)) > 0) {
+					builder.append(buffer, 0, read);
+				}
+				
+			} finally {
+				stream.close();
+			}
+
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		
+		return builder.toString();
+		
+	}
+	
+}
@@ -0,0 +1,117 @@
+package com.googlecode.htmlcompressor.analyzer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HtmlCorpusAnalyzerTest {
+	
+	private File dir;
+	private List<File> files;
+	
+	@Before
+	public void createFiles() throws Exception {
+		dir = Files.createTempDirectory("corpus").toFile();
+		
+		//comments take 8, 10 and 0 characters out of 20, 22 and 12
+		files = new ArrayList<File>();
+		files.add(writeFile("a.html", "<div>a</div><!--1-->"));
+		files.add(writeFile("b.html", "<div>b</div><!--123-->"));
+		files.add(writeFile("c.html", "<div>c</div>"));
+	}
+	
+	@After
+	public void deleteFiles() {
+		for(File file : files) {
+			file.delete();
+		}
+		dir.delete();
+	}
+	
+	@Test
+	public void testCsv() throws Exception {
+		String[] lines = analyze(HtmlCorpusAnalyzer.FORMAT_CSV).split("\r?\n");
+		
+		assertEquals("setting,files,total_gain_chars,gain_p50,gain_p90,gain_p99,time_ms_p50,time_ms_p90,time_ms_p99", lines[0]);
+		assertEquals(new HtmlAnalyzer().buildSteps().size() + 1, lines.length);
+		assertTrue(lines[1], lines[1].startsWith("\"All settings disabled\",3,0,0.000,0.000,0.000,"));
+		assertTrue(lines[2], lines[2].startsWith("\"Comments removed\",3,18,40.000,45.455,45.455,"));
+		assertTrue(lines[3], lines[3].startsWith("\"Multiple spaces removed\",3,0,0.000,0.000,0.000,"));
+	}
+	
+	@Test
+	public void testJson() throws Exception {
+		String report = analyze(HtmlCorpusAnalyzer.FORMAT_JSON);
+		
+		assertTrue(report, report.startsWith("{"));
+		assertTrue(report, report.contains("\"files\": 3,"));
+		assertTrue(report, report.contains("\"totalSize\": 54,"));
+		assertTrue(report, report.contains("{\"setting\": \"Comments removed\", \"files\": 3, \"totalGainChars\": 18, \"gain\": {\"p50\": 40.000, \"p90\": 45.455, \"p99\": 45.455}, \"timeMs\": {"));
+		assertTrue(report, report.contains("{\"setting\": \"<link> attr. removed\", \"files\": 3, \"totalGainChars\": 0,"));
+	}
+	
+	@Test
+	public void testText() throws Exception {
+		String report = analyze(HtmlCorpusAnalyzer.FORMAT_TEXT);
+		
+		assertTrue(report, report.contains("Comments removed          |     40.0% |     45.5% |     45.5% |"));
+		assertTrue(report, report.contains("Files analyzed: 3, total size: 54 characters."));
+	}
+	
+	@Test
+	public void testPercentiles() throws Exception {
+		assertNull(HtmlCorpusAnalyzer.percentiles(Collections.<Double>emptyList()));
+		assertArrayEquals(new double[] {7, 7, 7}, HtmlCorpusAnalyzer.percentiles(Arrays.asList(7.0)), 0);
+		
+		//nearest rank percentile p is the value at position ceil(p * n) of n sorted values
+		List<Double> values = new ArrayList<Double>();
+		for(int i = 100; i >= 1; i--) {
+			values.add((double) i);
+		}
+		assertArrayEquals(new double[] {50, 90, 99}, HtmlCorpusAnalyzer.percentiles(values), 0);
+		
+		assertArrayEquals(new double[] {5, 9, 10}, HtmlCorpusAnalyzer.percentiles(values.subList(90, 100)), 0);
+		assertArrayEquals(new double[] {1, 2, 2}, HtmlCorpusAnalyzer.percentiles(Arrays.asList(2.0, 1.0)), 0);
+	}
+	
+	private String analyze(String format) throws IOException {
+		HtmlCorpusAnalyzer analyzer = new HtmlCorpusAnalyzer();
+		analyzer.setFormat(format);
+		analyzer.setThreads(2);
+		analyzer.setWarmupRuns(0);
+		analyzer.setTimedRuns(1);
+		
+		StringWriter output = new StringWriter();
+		analyzer.analyze(files, output);
+		return output.toString();
+	}
+	
+	private File writeFile(String name, String content) throws IOException {
+		File file = new File(dir, name);
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			writer.write(content);
+		} finally {
+			writer.close();
+		}
+		return file;
+	}
+	
+}
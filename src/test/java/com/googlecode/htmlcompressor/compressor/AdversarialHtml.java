@@ -0,0 +1,128 @@
+package com.googlecode.htmlcompressor.compressor;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Generators of HTML that makes backtracking regular expressions take quadratic time:
+ * unclosed tags, comments and preserved blocks, huge attributes, thousands of equal signs 
+ * and long whitespace runs.
+ * 
+ * @author <a href="mailto:serg472@gmail.com">Sergiy Kovalchuk</a>
+ */
+class AdversarialHtml {
+	
+	static final String[] NAMES = {
+		"unclosed brackets",
+		"unclosed tags",
+		"unclosed comments",
+		"unclosed url attributes",
+		"huge quoted attribute",
+		"huge unquoted attribute",
+		"huge space inside tag",
+		"equal signs inside tag",
+		"equal signs in text",
+		"run of equal signs",
+		"huge space in text",
+		"run of quotes",
+		"unclosed input tags",
+		"unclosed quoted values",
+		"unclosed pre blocks",
+		"unclosed script blocks",
+		"unclosed style blocks",
+		"unclosed textarea blocks",
+		"unclosed cond. comments"
+	};
+	
+	/**
+	 * Generates document number <code>index</code> from {@link #NAMES} of about given size.
+	 */
+	static String generate(int index, int size) {
+		switch(index) {
+			case 0:
+				return repeat("", "<", "", size);
+			case 1:
+				return repeat("", "<a href=x ", "", size);
+			case 2:
+				return repeat("", "<!--x", "", size);
+			case 3:
+				return repeat("", "<a href='http:", "", size);
+			case 4:
+				return repeat("<a title=\"", "a-", "\">", size);
+			case 5:
+				return repeat("<input value=", "a", " />", size);
+			case 6:
+				return repeat("<a", " ", "/>", size);
+			case 7:
+				return repeat("<a ", "x = ", ">", size);
+			case 8:
+				return repeat("", "x = ", "", size);
+			case 9:
+				return repeat("<a x=", "=", ">", size);
+			case 10:
+				return repeat("", " ", "x", size);
+			case 11:
+				return repeat("<input checked=", "\"", ">", size);
+			case 12:
+				return repeat("", "<input type=text checked=checked ", "", size);
+			case 13:
+				return repeat("<a href=\"http://", "<input type='text", "", size);
+			case 14:
+				return repeat("", "<pre> x  ", "", size);
+			case 15:
+				return repeat("", "<script> x  ", "", size);
+			case 16:
+				return repeat("", "<style> x  ", "", size);
+			case 17:
+				return repeat("", "<textarea> x  ", "", size);
+			case 18:
+				return repeat("", "<!--[if IE]> x  ", "", size);
+			default:
+				throw new IllegalArgumentException("Unknown generator: " + index);
+		}
+	}
+	
+	/**
+	 * Compressor with all options that work on tags enabled.
+	 */
+	static HtmlCompressor createCompressor(boolean removeMultiSpaces) {
+		HtmlCompressor compressor = new HtmlCompressor();
+		compressor.setRemoveMultiSpaces(removeMultiSpaces);
+		compressor.setRemoveIntertagSpaces(true);
+		compressor.setRemoveQuotes(true);
+		compressor.setSimpleDoctype(true);
+		compressor.setRemoveScriptAttributes(true);
+		compressor.setRemoveStyleAttributes(true);
+		compressor.setRemoveLinkAttributes(true);
+		compressor.setRemoveFormAttributes(true);
+		compressor.setRemoveInputAttributes(true);
+		compressor.setSimpleBooleanAttributes(true);
+		compressor.setRemoveJavaScriptProtocol(true);
+		compressor.setRemoveHttpProtocol(true);
+		compressor.setRemoveHttpsProtocol(true);
+		compressor.setRemoveSurroundingSpaces(HtmlCompressor.ALL_TAGS);
+		return compressor;
+	}
+	
+	private static String repeat(String prefix, String str, String suffix, int size) {
+		StringBuilder sb = new StringBuilder(size + prefix.length() + str.length() + suffix.length());
+		sb.append(prefix);
+		while(sb.length() < size) {
+			sb.append(str);
+		}
+		sb.append(suffix);
+		return sb.toString();
+	}
+	
+}
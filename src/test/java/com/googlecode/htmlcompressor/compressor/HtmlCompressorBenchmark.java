@@ -0,0 +1,57 @@
+package com.googlecode.htmlcompressor.compressor;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Scaling benchmark for HTML compression of adversarial input. Compresses documents
+ * from {@link AdversarialHtml} of growing size and prints time per byte,
+ * which should stay flat for every document if all stages are linear.
+ * 
+ * <p>Usage: <code>java ... HtmlCompressorBenchmark [max size in bytes]</code>,
+ * default max size is 10MB.
+ * 
+ * @author <a href="mailto:serg472@gmail.com">Sergiy Kovalchuk</a>
+ */
+public class HtmlCompressorBenchmark {
+	
+	public static void main(String[] args) {
+		int maxSize = args.length > 0 ? Integer.parseInt(args[0]) : 10 * 1024 * 1024;
+		
+		HtmlCompressor compressor = AdversarialHtml.createCompressor(false);
+		
+		//warm up
+		for(int i = 0; i < AdversarialHtml.NAMES.length; i++) {
+			compressor.compress(AdversarialHtml.generate(i, 64 * 1024));
+		}
+		
+		System.out.format("%-25s | %14s | %14s |%n", "Document", "Size, bytes", "compress, ns/B");
+		for(int i = 0; i < AdversarialHtml.NAMES.length; i++) {
+			for(int size = 10 * 1024; size <= maxSize; size *= 10) {
+				String html = AdversarialHtml.generate(i, size);
+				
+				long start = System.nanoTime();
+				compressor.compress(html);
+				long time = System.nanoTime() - start;
+				
+				System.out.format("%-25s | %,14d | %14.2f |%n", AdversarialHtml.NAMES[i], html.length(), (double) time / html.length());
+				
+				if(size * 10 > maxSize && size < maxSize) {
+					size = maxSize / 10;
+				}
+			}
+		}
+	}
+	
+}
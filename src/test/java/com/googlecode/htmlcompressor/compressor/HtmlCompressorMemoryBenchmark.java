@@ -0,0 +1,142 @@
+package com.googlecode.htmlcompressor.compressor;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+/**
+ * Memory benchmark for HTML compression of large documents. Compresses a markup page
+ * and a page with many preserved script, style and pre blocks of a given size with
+ * all tag options enabled, and prints bytes allocated per document and peak heap usage,
+ * both per character of the document.
+ * 
+ * <p>Each page is held in a <code>StringBuilder</code> and compressed into another one,
+ * either through {@link HtmlCompressor#compress(String)} or through
+ * {@link HtmlCompressor#compress(CharSequence, Appendable)}.
+ * 
+ * <p>Usage: <code>java -XX:+UseSerialGC ... HtmlCompressorMemoryBenchmark [size in characters]</code>,
+ * default size is 5M characters. A single heap without concurrent collection makes peak usage
+ * reproducible, allocation is measured with any collector.
+ * 
+ * @author <a href="mailto:serg472@gmail.com">Sergiy Kovalchuk</a>
+ */
+public class HtmlCompressorMemoryBenchmark {
+	
+	private static final String[] NAMES = {"markup", "scripts"};
+	
+	private static final String MARKUP_FRAGMENT =
+		"<!-- item -->\n" +
+		"<div class=\"item\" id=\"item\">\n" +
+		"    <a href=\"http://example.com/item\" title=\"item\" >Item   title</a>\n" +
+		"    <form method=\"get\" action=\"https://example.com/search\">\n" +
+		"        <input type=\"text\" name=\"q\" value=\"\" disabled=\"disabled\" />\n" +
+		"    </form>\n" +
+		"    <p>Some    text   with   spaces</p>\n" +
+		"</div>\n";
+	
+	private static final String SCRIPTS_FRAGMENT =
+		"<div class=\"item\" onclick=\"javascript: select(this)\">\n" +
+		"    <script type=\"text/javascript\">\n" +
+		"        var item = $(\"#item\");\n" +
+		"        if(item.length > 0) { item.show(); }\n" +
+		"    </script>\n" +
+		"    <style> .item { color: red; } </style>\n" +
+		"    <pre>  preformatted   text  </pre>\n" +
+		"</div>\n";
+	
+	public static void main(String[] args) throws IOException {
+		int size = args.length > 0 ? Integer.parseInt(args[0]) : 5 * 1024 * 1024;
+		
+		HtmlCompressor compressor = AdversarialHtml.createCompressor(true);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		
+		System.out.format("%-10s | %-10s | %14s | %14s | %14s |%n", "Document", "API", "Size, chars", "allocated, B/c", "peak heap, B/c");
+		for(int i = 0; i < NAMES.length; i++) {
+			StringBuilder html = new StringBuilder(generate(i == 0 ? MARKUP_FRAGMENT : SCRIPTS_FRAGMENT, size));
+			StringBuilder result = new StringBuilder(html.length());
+			
+			for(boolean appendable : new boolean[] {false, true}) {
+				//warm up
+				for(int j = 0; j < 5; j++) {
+					compress(compressor, html, result, appendable);
+				}
+				
+				for(int run = 1; run <= 3; run++) {
+					System.gc();
+					long baseline = resetPeakHeap();
+					
+					long allocated = threads.getThreadAllocatedBytes(threadId);
+					compress(compressor, html, result, appendable);
+					allocated = threads.getThreadAllocatedBytes(threadId) - allocated;
+					
+					long peak = peakHeap() - baseline;
+					System.out.format("%-10s | %-10s | %,14d | %14.2f | %14.2f |%n", NAMES[i], appendable ? "Appendable" : "String", html.length(), (double) allocated / html.length(), (double) peak / html.length());
+					
+					if(result.length() == 0) {
+						throw new IllegalStateException();
+					}
+				}
+			}
+		}
+	}
+	
+	private static void compress(HtmlCompressor compressor, StringBuilder html, StringBuilder result, boolean appendable) throws IOException {
+		result.setLength(0);
+		if(appendable) {
+			compressor.compress(html, result);
+		} else {
+			result.append(compressor.compress(html.toString()));
+		}
+	}
+	
+	private static String generate(String fragment, int size) {
+		StringBuilder sb = new StringBuilder(size + fragment.length());
+		sb.append("<!DOCTYPE html PUBLIC \"-//W3C//DTD XHTML 1.0 Strict//EN\">\n<html><body>\n");
+		while(sb.length() < size) {
+			sb.append(fragment);
+		}
+		sb.append("</body></html>\n");
+		return sb.toString();
+	}
+	
+	/**
+	 * Resets peak usage of all heap pools and returns current heap usage.
+	 */
+	private static long resetPeakHeap() {
+		long used = 0;
+		for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if(pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+				used += pool.getUsage().getUsed();
+			}
+		}
+		return used;
+	}
+	
+	private static long peakHeap() {
+		long peak = 0;
+		for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if(pool.getType() == MemoryType.HEAP) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+	
+}
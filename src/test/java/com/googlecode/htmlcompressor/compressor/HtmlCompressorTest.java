@@ -1,6 +1,10 @@
 package com.googlecode.htmlcompressor.compressor;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
@@ -10,11 +14,22 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.io.StringWriter;
 import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.CharBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -79,6 +94,22 @@ public class HtmlCompressorTest {
 		assertEquals(result, compressor.compress(source));
 	}
 	
+	@Test
+	public void testPipelinePlanReset() throws Exception {
+		String source = readResource("testRemoveQuotes.html");
+		String result = readResource("testRemoveQuotesResult.html");
+		
+		HtmlCompressor compressor = new HtmlCompressor();
+		compressor.setRemoveQuotes(true);
+		assertEquals(result, compressor.compress(source));
+		
+		//settings changed after compression are used by the next call
+		compressor.setRemoveQuotes(false);
+		assertEquals(new HtmlCompressor().compress(source), compressor.compress(source));
+		compressor.setRemoveQuotes(true);
+		assertEquals(result, compressor.compress(source));
+	}
+	
 	@Test
 	public void testRemoveMultiSpaces() throws Exception {
 		String source = readResource("testRemoveMultiSpaces.html");
@@ -120,6 +151,18 @@ public class HtmlCompressorTest {
 		assertEquals(result, compressor.compress(source));
 	}
 	
+	@Test
+	public void testUppercaseBlocks() throws Exception {
+		String source = "<PRE> a  b </PRE>   <P ONCLICK = \"x  y\"  Title='a  b'>\n<TextArea>  1  </TextArea> <SCRIPT> var  a = 1; </SCRIPT>";
+		String result = "<PRE> a  b </PRE> <P ONCLICK=\"x  y\" Title='a b'> <TextArea>  1  </TextArea> <SCRIPT>var a=1;</SCRIPT>";
+		
+		//blocks are found ignoring case
+		HtmlCompressor compressor = new HtmlCompressor();
+		compressor.setCompressJavaScript(true);
+		
+		assertEquals(result, compressor.compress(source));
+	}
+	
 	@Test
 	public void testCompressJavaScriptYui() throws Exception {
 		String source = readResource("testCompressJavaScript.html");
@@ -144,6 +187,50 @@ public class HtmlCompressorTest {
 		assertEquals(result, compressor.compress(source));
 	}
 	
+	@Test
+	public void testCompressJavaScriptFast() throws Exception {
+		String source = readResource("testCompressJavaScriptFast.html");
+		String result = readResource("testCompressJavaScriptFastResult.html");
+		
+		HtmlCompressor compressor = new HtmlCompressor();
+		compressor.setCompressJavaScript(true);
+		compressor.setJavaScriptCompressor(new FastJavaScriptCompressor());
+		compressor.setRemoveIntertagSpaces(true);
+		
+		assertEquals(result, compressor.compress(source));
+	}
+	
+	@Test
+	public void testCompressJavaScriptTiered() throws Exception {
+		String source = readResource("testCompressJavaScript.html");
+		String result = readResource("testCompressJavaScriptClosureResult.html");
+		
+		//background compression runs right away in the calling thread
+		Executor executor = new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				command.run();
+			}
+		};
+		TieredCompressor jsCompressor = new TieredCompressor(new FastJavaScriptCompressor(), 
+				new ClosureJavaScriptCompressor(CompilationLevel.ADVANCED_OPTIMIZATIONS), executor, 10);
+		
+		HtmlCompressor compressor = new HtmlCompressor();
+		compressor.setCompressJavaScript(true);
+		compressor.setJavaScriptCompressor(jsCompressor);
+		compressor.setRemoveIntertagSpaces(true);
+		
+		HtmlCompressor fastCompressor = new HtmlCompressor();
+		fastCompressor.setCompressJavaScript(true);
+		fastCompressor.setJavaScriptCompressor(new FastJavaScriptCompressor());
+		fastCompressor.setRemoveIntertagSpaces(true);
+		
+		//first time only fast compressor result is available
+		assertEquals(fastCompressor.compress(source), compressor.compress(source));
+		assertEquals(result, compressor.compress(source));
+		assertEquals(2, jsCompressor.getCacheSize());
+	}
+	
 	@Test
 	public void testCompressCss() throws Exception {
 		String source = readResource("testCompressCss.html");
@@ -156,6 +243,19 @@ public class HtmlCompressorTest {
 		assertEquals(result, compressor.compress(source));
 	}
 	
+	@Test
+	public void testFastCssCompressor() throws Exception {
+		String source = readResource("testFastCssCompressor.html");
+		String result = readResource("testFastCssCompressorResult.html");
+		
+		HtmlCompressor compressor = new HtmlCompressor();
+		compressor.setCompressCss(true);
+		compressor.setCssCompressor(new FastCssCompressor());
+		compressor.setRemoveIntertagSpaces(true);
+		
+		assertEquals(result, compressor.compress(source));
+	}
+	
 	@Test
 	public void testCompress() throws Exception {
 		String source = readResource("testCompress.html");
@@ -166,6 +266,203 @@ public class HtmlCompressorTest {
 		assertEquals(result, compressor.compress(source));
 	}
 	
+	@Test
+	public void testCompressAsync() throws Exception {
+		String source = readResource("testCompress.html");
+		
+		HtmlCompressor compressor = new HtmlCompressor();
+		compressor.setCompressJavaScript(true);
+		compressor.setCompressCss(true);
+		String result = compressor.compress(source);
+		
+		//tasks never wait for each other, so a single thread is enough
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			assertEquals(result, compressor.compressAsync(source, executor).get(10, TimeUnit.SECONDS));
+		} finally {
+			executor.shutdown();
+		}
+		
+		//default compressors are created by the first asynchronous call
+		HtmlCompressor asyncCompressor = new HtmlCompressor();
+		asyncCompressor.setCompressJavaScript(true);
+		asyncCompressor.setCompressCss(true);
+		
+		executor = CompressorExecutors.newVirtualThreadExecutor();
+		try {
+			assertEquals(result, asyncCompressor.compressAsync(source, executor).get(10, TimeUnit.SECONDS));
+			assertEquals(result, asyncCompressor.compressAsync(source, executor).get(10, TimeUnit.SECONDS));
+			
+			//overridden block methods are called as well
+			HtmlCompressor subclassCompressor = new HtmlCompressor() {
+				@Override
+				protected void processScriptBlocks(List<String> scriptBlocks) {
+					for(int i = 0; i < scriptBlocks.size(); i++) {
+						scriptBlocks.set(i, "b();");
+					}
+				}
+			};
+			assertEquals("<script>b();</script>", subclassCompressor.compressAsync("<script> a(); </script>", executor).get(10, TimeUnit.SECONDS));
+		} finally {
+			executor.shutdown();
+		}
+	}
+	
+	@Test
+	public void testCompressAppendable() throws Exception {
+		String source = readResource("testCompress.html") + readResource("testPreservePatterns.html") + readResource("testPreserveLineBreaks.html");
+		
+		HtmlCompressor compressor = new HtmlCompressor();
+		compressor.setCompressJavaScript(true);
+		compressor.setCompressCss(true);
+		compressor.setPreserveLineBreaks(true);
+		compressor.setPreservePatterns(Arrays.asList(HtmlCompressor.PHP_TAG_PATTERN, HtmlCompressor.SERVER_SCRIPT_TAG_PATTERN));
+		String result = compressor.compress(source);
+		
+		//source builder is read in place and is not changed
+		StringBuilder sourceBuilder = new StringBuilder(source);
+		StringBuilder builder = new StringBuilder("<!-- before -->");
+		compressor.compress(sourceBuilder, builder);
+		assertEquals("<!-- before -->" + result, builder.toString());
+		assertEquals(source, sourceBuilder.toString());
+		
+		StringWriter writer = new StringWriter();
+		compressor.compress(CharBuffer.wrap(source), writer);
+		assertEquals(result, writer.toString());
+		
+		//nothing is appended for null source
+		builder = new StringBuilder();
+		compressor.compress((CharSequence) null, builder);
+		new YuiCssCompressor().compress((CharSequence) null, builder);
+		new FastJavaScriptCompressor().compress((CharSequence) null, builder);
+		assertEquals("", builder.toString());
+		
+		//subclasses that override methods taking whole documents are still called
+		HtmlCompressor subclassCompressor = new HtmlCompressor() {
+			@Override
+			protected String processHtml(String html) {
+				return super.processHtml(html).toUpperCase();
+			}
+		};
+		writer = new StringWriter();
+		subclassCompressor.compress(new StringBuilder("<a> b  </a>"), writer);
+		assertEquals("<A> B </A>", writer.toString());
+		
+		//inline block compressors
+		String script = "var a = 1;  alert( a );";
+		YuiJavaScriptCompressor javaScriptCompressor = new YuiJavaScriptCompressor();
+		writer = new StringWriter();
+		javaScriptCompressor.compress(new StringBuilder(script), writer);
+		assertEquals(javaScriptCompressor.compress(script), writer.toString());
+		
+		String css = "a  {  color : red ;  }";
+		YuiCssCompressor cssCompressor = new YuiCssCompressor();
+		builder = new StringBuilder();
+		cssCompressor.compress(CharBuffer.wrap(css), builder);
+		assertEquals(cssCompressor.compress(css), builder.toString());
+	}
+	
+	@Test
+	public void testCompressorMetrics() throws Exception {
+		String source = readResource("testCompress.html");
+		
+		HtmlCompressor compressor = new HtmlCompressor();
+		compressor.setCompressCss(true);
+		compressor.setCssCompressor(new FastCssCompressor());
+		
+		CompressorMetrics metrics = CompressorMetrics.enable();
+		try {
+			assertSame(metrics, CompressorMetrics.getActive());
+			metrics.reset();
+			
+			String result = compressor.compress(source);
+			new XmlCompressor().compress("<a>  <b/>  </a>");
+			
+			assertEquals(1, metrics.getHtmlDocuments());
+			assertEquals(1, metrics.getXmlDocuments());
+			assertEquals(source.length() + 15, metrics.getOriginalSize());
+			assertEquals(result.length() + 11, metrics.getCompressedSize());
+			assertTrue(metrics.getPreservedSize() > 0);
+			assertEquals(1, metrics.getCssBlocks());
+			assertEquals(0, metrics.getJavaScriptBlocks());
+			
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			assertEquals(1L, server.getAttribute(new ObjectName(CompressorMetrics.OBJECT_NAME), "HtmlDocuments"));
+		} finally {
+			CompressorMetrics.disable();
+		}
+		
+		assertNull(CompressorMetrics.getActive());
+		compressor.compress(source);
+		assertEquals(1, metrics.getHtmlDocuments());
+	}
+	
+	@Test
+	public void testHistograms() throws Exception {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for(int i = 1; i <= 10000; i++) {
+			histogram.record(i * 1000L);
+		}
+		LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+		assertEquals(10000, snapshot.getCount());
+		assertEquals(10000000, snapshot.getMax());
+		assertEquals(5000000, snapshot.getP50(), 5000000 * 0.04);
+		assertEquals(9900000, snapshot.getP99(), 9900000 * 0.04);
+		assertEquals(9990000, snapshot.getP999(), 9990000 * 0.04);
+		histogram.reset();
+		assertEquals(0, histogram.snapshot().getCount());
+		assertEquals(10000, snapshot.getCount());
+		
+		String source = readResource("testCompress.html");
+		HtmlCompressor compressor = new HtmlCompressor();
+		compressor.setCompressCss(true);
+		compressor.setCssCompressor(new FastCssCompressor());
+		compressor.setHistograms(new HtmlCompressorHistograms());
+		compressor.compress(source);
+		compressor.compress(source);
+		
+		HtmlCompressorHistograms histograms = compressor.getHistograms();
+		assertEquals(2, histograms.getCompressTime().snapshot().getCount());
+		assertEquals(source.length(), histograms.getDocumentSize().snapshot().getMax());
+		assertEquals(2, histograms.getCssTime().snapshot().getCount());
+		assertEquals(0, histograms.getJavaScriptTime().snapshot().getCount());
+	}
+	
+	@Test
+	public void testCompressionListener() throws Exception {
+		final List<String> events = new ArrayList<String>();
+		CompressionListener listener = new CompressionListener() {
+			@Override
+			public void documentCompressed(Compressor compressor, int originalSize, int compressedSize, long time) {
+				events.add("document " + originalSize + " " + compressedSize);
+			}
+			
+			@Override
+			public void stageCompleted(Compressor compressor, Stage stage, long time) {
+				events.add(stage.toString());
+			}
+			
+			@Override
+			public void blockCompressed(Compressor compressor, BlockType type, int originalSize, int compressedSize, long time) {
+				events.add(type.toString());
+			}
+		};
+		
+		HtmlCompressor compressor = new HtmlCompressor();
+		compressor.setCompressCss(true);
+		compressor.setCssCompressor(new FastCssCompressor());
+		compressor.setCompressionListener(listener);
+		String source = "<div> <style> a { color : red } </style> </div>";
+		String result = compressor.compress(source);
+		assertEquals(Arrays.asList("PRESERVE_BLOCKS", "PROCESS_HTML", "CSS", "PROCESS_BLOCKS", "RETURN_BLOCKS", "document " + source.length() + " " + result.length()), events);
+		
+		events.clear();
+		XmlCompressor xmlCompressor = new XmlCompressor();
+		xmlCompressor.setCompressionListener(listener);
+		xmlCompressor.compress("<a> <b/> </a>");
+		assertEquals(Arrays.asList("PRESERVE_BLOCKS", "PROCESS_XML", "RETURN_BLOCKS", "document 13 11"), events);
+	}
+	
 	@Test
 	public void testSimpleDoctype() throws Exception {
 		String source = readResource("testSimpleDoctype.html");
@@ -287,7 +584,142 @@ public class HtmlCompressorTest {
 		
 		assertEquals(result, compressor.compress(source));
 	}
+	
+	@Test
+	public void testSimpleBooleanAttributes() throws Exception {
+		String source = readResource("testSimpleBooleanAttributes.html");
+		String result = readResource("testSimpleBooleanAttributesResult.html");
+		
+		HtmlCompressor compressor = new HtmlCompressor();
+		compressor.setSimpleBooleanAttributes(true);
+		
+		assertEquals(result, compressor.compress(source));
+	}
+	
+	@Test
+	public void testRewriteAttributes() throws Exception {
+		String source = readResource("testRewriteAttributes.html");
+		String result = readResource("testRewriteAttributesResult.html");
+		
+		HtmlCompressor compressor = new HtmlCompressor();
+		compressor.setRemoveScriptAttributes(true);
+		compressor.setRemoveStyleAttributes(true);
+		compressor.setRemoveLinkAttributes(true);
+		compressor.setRemoveFormAttributes(true);
+		compressor.setRemoveInputAttributes(true);
+		compressor.setSimpleBooleanAttributes(true);
+		compressor.setRemoveHttpProtocol(true);
+		compressor.setRemoveHttpsProtocol(true);
+		
+		assertEquals(result, compressor.compress(source));
+	}
+	
+	@Test(timeout = 30000)
+	public void testAdversarialInput() throws Exception {
+		//each of these documents takes minutes if any stage is quadratic
+		for(boolean removeMultiSpaces : new boolean[] {true, false}) {
+			HtmlCompressor compressor = AdversarialHtml.createCompressor(removeMultiSpaces);
+			for(int i = 0; i < AdversarialHtml.NAMES.length; i++) {
+				String source = AdversarialHtml.generate(i, 256 * 1024);
+				assertTrue(AdversarialHtml.NAMES[i], compressor.compress(source).length() <= source.length());
+			}
+		}
+	}
 
+	@Test
+	public void testCompressingWriter() throws Exception {
+		String source = readResource("testCompress.html");
+		
+		HtmlCompressor compressor = new HtmlCompressor();
+		StringWriter writer = new StringWriter();
+		CompressingWriter compressingWriter = new CompressingWriter(writer, compressor, 10);
+		compressingWriter.write(source, 0, 100);
+		compressingWriter.write(source.substring(100));
+		compressingWriter.finish();
+		
+		assertEquals(compressor.compress(source), writer.toString());
+		assertEquals(source.substring(0, 10) + "... (" + source.length() + " characters)", compressingWriter.getExcerpt());
+		
+		//original content is written if compression fails
+		writer = new StringWriter();
+		compressingWriter = new CompressingWriter(writer, new Compressor() {
+			public String compress(String source) {
+				throw new IllegalStateException();
+			}
+		});
+		compressingWriter.write("<a>");
+		try {
+			compressingWriter.finish();
+		} catch (IllegalStateException e) {
+			assertEquals("<a>", writer.toString());
+			assertEquals("<a>", compressingWriter.getExcerpt());
+			return;
+		}
+		fail();
+	}
+	
+	@Test
+	public void testProgressiveCompressingWriter() throws Exception {
+		String head = "<html>  <head>  <title>  Test  </title>  </head>\n  <body>";
+		String source = head + readResource("testCompress.html") + "  </body>  </html>";
+		
+		HtmlCompressor compressor = new HtmlCompressor();
+		StringWriter writer = new StringWriter();
+		CompressingWriter compressingWriter = new CompressingWriter(writer, compressor, 10, true);
+		
+		//head is written as soon as the next tag starts
+		compressingWriter.write(head);
+		assertEquals("<html> <head> <title> Test </title> </head> ", writer.toString());
+		
+		for(int i = head.length(); i < source.length(); i += 50) {
+			compressingWriter.write(source.substring(i, Math.min(i + 50, source.length())));
+			compressingWriter.flush();
+		}
+		compressingWriter.finish();
+		
+		assertEquals(compressor.compress(source), writer.toString());
+	}
+	
+	@Test
+	public void testOverriddenStages() throws Exception {
+		//overridden methods are called even if their settings are turned off
+		HtmlCompressor compressor = new HtmlCompressor() {
+			@Override
+			protected String removeComments(String html) {
+				return html.replace("<!-- a -->", "");
+			}
+			
+			@Override
+			protected String removeQuotesInsideTags(String html) {
+				return html.replace("\"b\"", "b");
+			}
+		};
+		compressor.setRemoveComments(false);
+		compressor.setRemoveQuotes(false);
+		
+		assertEquals("<p id=b> <!-- c --> </p>", compressor.compress("<!-- a --><p id=\"b\">  <!-- c -->  </p>"));
+		
+		//stage that has no setting
+		compressor = new HtmlCompressor() {
+			@Override
+			protected String removeSpacesInsideTags(String html) {
+				return super.removeSpacesInsideTags(html).replace("<p", "<div");
+			}
+		};
+		assertEquals("<div id=\"a\">b</p>", compressor.compress("<p  id = \"a\" >b</p>"));
+		
+		//attribute settings are applied one by one if a method of one of them is overridden
+		compressor = new HtmlCompressor() {
+			@Override
+			protected String removeHttpProtocol(String html) {
+				return html.replace("http://", "//");
+			}
+		};
+		compressor.setRemoveInputAttributes(true);
+		compressor.setSimpleBooleanAttributes(true);
+		assertEquals("<input checked><a href=\"//example.com\">a</a>", compressor.compress("<input type=\"text\" checked=\"checked\"><a href=\"http://example.com\">a</a>"));
+	}
+	
 	private String readResource(String filename) {
 		
 		StringBuilder builder = new StringBuilder();
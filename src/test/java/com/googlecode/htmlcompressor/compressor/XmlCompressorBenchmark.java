@@ -0,0 +1,81 @@
+package com.googlecode.htmlcompressor.compressor;
+
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Scaling benchmark for XML compression. Compresses generated text-heavy documents 
+ * of growing size and prints time per byte, which should stay flat for linear stages.
+ * 
+ * <p>Usage: <code>java -Xmx8g ... XmlCompressorBenchmark [max size in bytes]</code>, 
+ * default max size is 100MB, documents up to 1GB need a large heap.
+ * 
+ * @author <a href="mailto:serg472@gmail.com">Sergiy Kovalchuk</a>
+ */
+public class XmlCompressorBenchmark {
+	
+	public static void main(String[] args) {
+		long maxSize = args.length > 0 ? Long.parseLong(args[0]) : 100L * 1024 * 1024;
+		
+		XmlCompressor compressor = new XmlCompressor();
+		
+		//warm up
+		String warmup = generate(1024 * 1024);
+		for(int i = 0; i < 5; i++) {
+			compressor.compress(warmup);
+		}
+		
+		System.out.format("%14s | %28s | %28s |%n", "Size, bytes", "removeSpacesInsideTags, ns/B", "compress, ns/B");
+		for(long size = 10 * 1024; size <= maxSize; size *= 10) {
+			String xml = generate((int) Math.min(size, Integer.MAX_VALUE - 16));
+			
+			long start = System.nanoTime();
+			compressor.removeSpacesInsideTags(xml);
+			long spacesTime = System.nanoTime() - start;
+			
+			start = System.nanoTime();
+			compressor.compress(xml);
+			long compressTime = System.nanoTime() - start;
+			
+			System.out.format("%,14d | %28.2f | %28.2f |%n", xml.length(), (double) spacesTime / xml.length(), (double) compressTime / xml.length());
+			
+			if(size * 10 > maxSize && size < maxSize) {
+				size = maxSize / 10;
+			}
+		}
+	}
+	
+	/**
+	 * Generates a document of about given size with long text nodes, 
+	 * attributes with spaces around equal signs and CDATA blocks.
+	 */
+	private static String generate(int size) {
+		StringBuilder sb = new StringBuilder(size + 1024);
+		sb.append("<?xml version=\"1.0\"?>\n<feed>\n");
+		int i = 0;
+		while(sb.length() < size) {
+			sb.append("  <item  id = \"").append(i++).append("\"   type = 'text' >\n");
+			sb.append("    <description>");
+			for(int j = 0; j < 20; j++) {
+				sb.append("Lorem   ipsum  dolor sit amet,    consectetur adipiscing elit. ");
+			}
+			sb.append("</description>\n");
+			sb.append("    <data><![CDATA[ a < b ]]></data>  <!-- comment -->\n");
+			sb.append("  </item>\n");
+		}
+		sb.append("</feed>\n");
+		return sb.toString();
+	}
+	
+}
@@ -10,7 +10,10 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.io.Writer;
+import java.nio.CharBuffer;
 
 import org.junit.After;
 import org.junit.Before;
@@ -72,6 +75,165 @@ public class XmlCompressorTest {
 		assertEquals(result, compressor.compress(source));
 	}
 	
+	@Test
+	public void testRemoveSpacesInsideTags() throws Exception {
+		XmlCompressor compressor = new XmlCompressor();
+		compressor.setRemoveComments(false);
+		
+		//spaces are collapsed inside attribute values and comments too, 
+		//spaces around equal signs are removed only after names
+		assertEquals("<a title=\"x y=z\" b=' c '><!-- d e=f --><g h=\" =i\"/></a>", 
+				compressor.compress("<a  title = \"x  y = z\"  b='  c  ' >\n<!--  d   e = f  -->\n<g  h= \"  =i\" /></a>"));
+	}
+	
+	@Test
+	public void testCompressStream() throws Exception {
+		XmlCompressor compressor = new XmlCompressor();
+		
+		assertEquals(readResource("testCompressResult.xml"), compressStream(compressor, readResource("testCompress.xml")));
+		assertEquals(readResource("testRemoveCommentsResult.xml"), compressStream(compressor, readResource("testRemoveComments.xml")));
+		assertEquals(readResource("testRemoveIntertagSpacesResult.xml"), compressStream(compressor, readResource("testRemoveIntertagSpaces.xml")));
+		
+		String source = readResource("testCompressStream.xml");
+		String result = readResource("testCompressStreamResult.xml");
+		
+		assertEquals(result, compressStream(compressor, source));
+		
+		//feed one character at a time
+		StringWriter writer = new StringWriter();
+		XmlStreamCompressor streamCompressor = new XmlStreamCompressor(writer, true, true);
+		for(int i = 0; i < source.length(); i++) {
+			streamCompressor.write(source.charAt(i));
+		}
+		streamCompressor.finish();
+		assertEquals(result, writer.toString());
+	}
+	
+	@Test
+	public void testCompressStreamSettings() throws Exception {
+		String source = readResource("testEnabled.xml");
+		
+		XmlCompressor compressor = new XmlCompressor();
+		compressor.setEnabled(false);
+		assertEquals(readResource("testEnabledResult.xml"), compressStream(compressor, source));
+		
+		compressor.setEnabled(true);
+		compressor.setRemoveComments(false);
+		compressor.setRemoveIntertagSpaces(false);
+		assertEquals(source, compressStream(compressor, source));
+		
+		compressor.setRemoveIntertagSpaces(true);
+		assertEquals("<a><b><!-- comment -->", compressStream(compressor, source));
+	}
+	
+	@Test
+	public void testCompressParallel() throws Exception {
+		String[] sources = {readResource("testCompress.xml"), readResource("testRemoveComments.xml"), readResource("testCompressStream.xml")};
+		
+		StringBuilder feed = new StringBuilder("<?xml version=\"1.0\"?>\r\n<!-- feed -->\r\n<feed>\r\n");
+		for(int i = 0; i < 1000; i++) {
+			feed.append("  <item  id = \"" + i + "\" title=\"a > b\" >\r\n");
+			feed.append("    <name>  item   " + i + "  </name>  <!-- <b> -->  <empty  />\r\n");
+			feed.append("    <data><![CDATA[  <x>  ]]></data>   <![CDATA[ y ]]>  \r\n");
+			feed.append("  </item>\r\n");
+			
+			//cdata starting inside a comment spans over the end of the comment and following items
+			if(i % 100 == 10) {
+				feed.append("  <!-- <![CDATA[ -->  <item  id = \"x\" />\r\n");
+			} else if(i % 100 == 60) {
+				feed.append("  ]]>  -->\r\n");
+			}
+		}
+		feed.append("</feed>\r\n<!-- end -->\r\n");
+		
+		XmlCompressor compressor = new XmlCompressor();
+		XmlCompressor parallelCompressor = new XmlCompressor();
+		parallelCompressor.setParallel(true);
+		
+		for(int chunkSize : new int[] {1, 10, 100, 1000}) {
+			parallelCompressor.setParallelChunkSize(chunkSize);
+			for(String source : sources) {
+				assertEquals(compressor.compress(source), parallelCompressor.compress(source));
+			}
+			assertEquals(compressor.compress(feed.toString()), parallelCompressor.compress(feed.toString()));
+		}
+		
+		compressor.setRemoveComments(false);
+		parallelCompressor.setRemoveComments(false);
+		assertEquals(compressor.compress(feed.toString()), parallelCompressor.compress(feed.toString()));
+		
+		//preserved blocks of all chunks are reported
+		CompressorMetrics metrics = CompressorMetrics.enable();
+		try {
+			compressor.compress(feed.toString());
+			long preservedSize = metrics.getPreservedSize();
+			metrics.reset();
+			parallelCompressor.compress(feed.toString());
+			assertEquals(preservedSize, metrics.getPreservedSize());
+		} finally {
+			CompressorMetrics.disable();
+		}
+	}
+	
+	@Test
+	public void testCompressAppendable() throws Exception {
+		String[] sources = {readResource("testCompress.xml"), readResource("testRemoveComments.xml"), readResource("testCompressStream.xml"), "  \r\n  "};
+		
+		XmlCompressor compressor = new XmlCompressor();
+		XmlCompressor parallelCompressor = new XmlCompressor();
+		parallelCompressor.setParallel(true);
+		parallelCompressor.setParallelChunkSize(10);
+		
+		for(XmlCompressor xmlCompressor : new XmlCompressor[] {compressor, parallelCompressor}) {
+			for(String source : sources) {
+				StringBuilder builder = new StringBuilder("<!-- before -->");
+				xmlCompressor.compress(new StringBuilder(source), builder);
+				assertEquals("<!-- before -->" + xmlCompressor.compress(source), builder.toString());
+				
+				StringWriter writer = new StringWriter();
+				xmlCompressor.compress(CharBuffer.wrap(source), writer);
+				assertEquals(xmlCompressor.compress(source), writer.toString());
+			}
+			
+			//nothing is appended for null source
+			StringBuilder builder = new StringBuilder();
+			xmlCompressor.compress((CharSequence) null, builder);
+			assertEquals("", builder.toString());
+		}
+	}
+	
+	@Test
+	public void testCompressingWriter() throws Exception {
+		XmlCompressor compressor = new XmlCompressor();
+		
+		//result is the same as of compress(String), spaces inside attribute values are collapsed
+		for(String source : new String[] {readResource("testCompressStream.xml"), "<a title=\"x    y\"   b = \"1\" >"}) {
+			StringWriter writer = new StringWriter();
+			CompressingWriter compressingWriter = new CompressingWriter(writer, compressor);
+			for(int i = 0; i < source.length(); i += 7) {
+				compressingWriter.write(source, i, Math.min(7, source.length() - i));
+			}
+			compressingWriter.finish();
+			assertEquals(compressor.compress(source), writer.toString());
+		}
+		assertEquals("<a title=\"x y\" b=\"1\">", compressor.compress("<a title=\"x    y\"   b = \"1\" >"));
+		
+		String source = readResource("testCompressStream.xml");
+		
+		compressor.setEnabled(false);
+		StringWriter writer = new StringWriter();
+		CompressingWriter compressingWriter = new CompressingWriter(writer, compressor);
+		compressingWriter.write(source);
+		compressingWriter.finish();
+		assertEquals(source, writer.toString());
+	}
+	
+	private String compressStream(XmlCompressor compressor, String source) throws IOException {
+		StringWriter writer = new StringWriter();
+		compressor.compress(new StringReader(source), writer);
+		return writer.toString();
+	}
+	
 	private String readResource(String filename) {
 		
 		StringBuilder builder = new StringBuilder();
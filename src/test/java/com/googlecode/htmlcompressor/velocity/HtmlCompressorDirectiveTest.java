@@ -0,0 +1,61 @@
+package com.googlecode.htmlcompressor.velocity;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringWriter;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.runtime.RuntimeServices;
+import org.junit.Test;
+
+import com.googlecode.htmlcompressor.compressor.HtmlCompressor;
+
+public class HtmlCompressorDirectiveTest {
+	
+	private static final AtomicInteger compressions = new AtomicInteger();
+	
+	@Test
+	public void testStaticBlock() throws Exception {
+		VelocityEngine engine = new VelocityEngine();
+		engine.setProperty("userdirective", CountingDirective.class.getName());
+		engine.init();
+		
+		VelocityContext context = new VelocityContext();
+		context.put("name", "name");
+		
+		//static block is compressed once when the template is parsed
+		compressions.set(0);
+		String template = "#foreach($i in [1..3])#compressHtml()<b>  text  </b>  ## comment\n  <i> text </i> #* comment *# <!-- comment --> #end#end";
+		assertEquals("<b> text </b> <i> text </i><b> text </b> <i> text </i><b> text </b> <i> text </i>", evaluate(engine, context, template));
+		assertEquals(1, compressions.get());
+		
+		//block with references is compressed on every render
+		compressions.set(0);
+		template = "#foreach($i in [1..3])#compressHtml()<b>  $name  </b>#end#end";
+		assertEquals("<b> name </b><b> name </b><b> name </b>", evaluate(engine, context, template));
+		assertEquals(3, compressions.get());
+	}
+	
+	private String evaluate(VelocityEngine engine, VelocityContext context, String template) throws Exception {
+		StringWriter writer = new StringWriter();
+		engine.evaluate(context, writer, "test", template);
+		return writer.toString();
+	}
+	
+	public static class CountingDirective extends HtmlCompressorDirective {
+		
+		@Override
+		protected HtmlCompressor createCompressor(RuntimeServices rs) {
+			return new HtmlCompressor() {
+				@Override
+				public String compress(String html) {
+					compressions.incrementAndGet();
+					return super.compress(html);
+				}
+			};
+		}
+	}
+
+}
@@ -0,0 +1,80 @@
+package com.googlecode.htmlcompressor.velocity;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringWriter;
+
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.app.VelocityEngine;
+import org.junit.Test;
+
+public class HtmlCompressorResourceLoaderTest {
+	
+	private static final String resPath = "./src/test/resources/velocity/";
+	
+	@Test
+	public void testCompressTemplate() throws Exception {
+		String result = readResource("testResourceLoaderResult.html");
+		
+		assertEquals(result, render(createEngine(true), "testResourceLoader.vm"));
+	}
+	
+	@Test
+	public void testChangedVelocityBlocks() throws Exception {
+		//removed comment contains a reference, template is not compressed
+		assertEquals(render(createEngine(false), "testResourceLoaderComment.vm"), render(createEngine(true), "testResourceLoaderComment.vm"));
+	}
+	
+	private VelocityEngine createEngine(boolean compress) throws Exception {
+		VelocityEngine engine = new VelocityEngine();
+		if(compress) {
+			engine.setProperty("file.resource.loader.class", HtmlCompressorResourceLoader.class.getName());
+			engine.setProperty("file.resource.loader.loader.class", "org.apache.velocity.runtime.resource.loader.FileResourceLoader");
+			engine.setProperty("file.resource.loader.compressor.removeIntertagSpaces", "true");
+		}
+		engine.setProperty("file.resource.loader.path", resPath);
+		engine.init();
+		return engine;
+	}
+	
+	private String render(VelocityEngine engine, String template) throws Exception {
+		VelocityContext context = new VelocityContext();
+		context.put("title", "Title");
+		
+		StringWriter writer = new StringWriter();
+		engine.getTemplate(template).merge(context, writer);
+		return writer.toString();
+	}
+	
+	private String readResource(String filename) {
+		
+		StringBuilder builder = new StringBuilder();
+		try {
+			FileInputStream stream = new FileInputStream(new File(resPath + filename));
+			try {
+				Reader reader = new BufferedReader(new InputStreamReader(stream));
+				
+				char[] buffer = new char[8192];
+				int read;
+				while ((read = reader.read(buffer, 0, buffer.length)) > 0) {
+					builder.append(buffer, 0, read);
+				}
+				
+			} finally {
+				stream.close();
+			}
+
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		
+		return builder.toString();
+	}
+
+}